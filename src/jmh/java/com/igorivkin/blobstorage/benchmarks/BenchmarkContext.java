@@ -0,0 +1,77 @@
+package com.igorivkin.blobstorage.benchmarks;
+
+import com.igorivkin.blobstorage.BlobstorageApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Application context of a benchmark. Every benchmark gets its own empty database directory,
+ * so the results do not depend on the volumes left by the previous runs. The web server is not
+ * started and the background jobs are postponed, so they do not interfere with the measurements.
+ */
+public class BenchmarkContext implements AutoCloseable {
+    private static final String ONE_DAY_MILLIS = "86400000";
+
+    private final Path databaseDirectory;
+    private final ConfigurableApplicationContext applicationContext;
+
+    /**
+     * Starts the application on a new empty database directory.
+     * @param properties additional properties of the benchmark, e.g. "blobstorage.jdbc.profile.writer=fast"
+     * @throws IOException it attempts to create the database directory
+     */
+    public BenchmarkContext(String... properties) throws IOException {
+        this.databaseDirectory = Files.createTempDirectory("blobstorage-jmh");
+        String databasePath = this.databaseDirectory.toAbsolutePath() + File.separator;
+        this.applicationContext = new SpringApplicationBuilder(BlobstorageApplication.class)
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .properties(
+                        "blobstorage.databasepath=" + databasePath,
+                        "blobstorage.jdbc.connectionstring=jdbc:sqlite:" + databasePath + "%s",
+                        "blobstorage.reclaimer.delay=" + ONE_DAY_MILLIS,
+                        "blobstorage.metrics.refresh=" + ONE_DAY_MILLIS,
+                        "blobstorage.manifest.save.delay=" + ONE_DAY_MILLIS,
+                        "blobstorage.vacuum.cron=-",
+                        "blobstorage.compaction.cron=-"
+                )
+                .properties(properties)
+                .run();
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return this.applicationContext.getBean(type);
+    }
+
+    /**
+     * Returns content of a given size that can't be compressed.
+     * @param size size of the content in bytes
+     * @return random content
+     */
+    public static byte[] randomContent(int size) {
+        byte[] content = new byte[size];
+        new Random(size).nextBytes(content);
+        return content;
+    }
+
+    /**
+     * Closes the context and removes the database directory.
+     * @throws IOException it attempts to remove the files
+     */
+    @Override
+    public void close() throws IOException {
+        this.applicationContext.close();
+        try (Stream<Path> files = Files.walk(this.databaseDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
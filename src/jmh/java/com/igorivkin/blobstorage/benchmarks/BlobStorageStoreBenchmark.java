@@ -0,0 +1,88 @@
+package com.igorivkin.blobstorage.benchmarks;
+
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The whole store path of the blob storage (volume choice, reservation, compression and insert)
+ * by one, several and as many threads as there are processors. The items stored during
+ * the iteration are deleted and purged after it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlobStorageStoreBenchmark {
+
+    @Param({"1024", "65536", "1048576"})
+    public int itemSize;
+
+    private BenchmarkContext context;
+    private BlobStorage blobStorage;
+    private BlobStorageConfigProvider configProvider;
+    private byte[] content;
+    private final Queue<BlobStoredItemAddress> storedItems = new ConcurrentLinkedQueue<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.context = new BenchmarkContext();
+        this.blobStorage = this.context.getBean(BlobStorage.class);
+        this.configProvider = this.context.getBean(BlobStorageConfigProvider.class);
+        this.content = BenchmarkContext.randomContent(this.itemSize);
+    }
+
+    @TearDown(Level.Iteration)
+    public void purgeStoredItems() throws SQLException {
+        BlobStoredItemAddress storedItemAddress;
+        while ((storedItemAddress = this.storedItems.poll()) != null) {
+            this.blobStorage.deleteItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        }
+        for (BlobVolume blobVolume : this.configProvider.getBlobVolumes().values()) {
+            blobVolume.purgeDeletedItems(Integer.MAX_VALUE);
+            this.configProvider.updateBlobVolumeWritability(blobVolume);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.context.close();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public BlobStoredItemAddress storeItemOneThread() throws IOException, SQLException {
+        return this.storeItem();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public BlobStoredItemAddress storeItemFourThreads() throws IOException, SQLException {
+        return this.storeItem();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public BlobStoredItemAddress storeItemMaxThreads() throws IOException, SQLException {
+        return this.storeItem();
+    }
+
+    private BlobStoredItemAddress storeItem() throws IOException, SQLException {
+        BlobStoredItemAddress storedItemAddress = this.blobStorage.storeItem(
+                new ByteArrayInputStream(this.content), "image/png", this.content.length
+        );
+        this.storedItems.add(storedItemAddress);
+        return storedItemAddress;
+    }
+}
@@ -0,0 +1,97 @@
+package com.igorivkin.blobstorage.benchmarks;
+
+import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemStatus;
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert, read and delete of a single item by the volume itself, from 1 Kb to 20 Mb.
+ * The items inserted during the iteration are deleted and purged after it, so the volume
+ * does not grow through the whole run.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BlobVolumeBenchmark {
+
+    @Param({"1024", "65536", "1048576", "20971520"})
+    public int itemSize;
+
+    private BenchmarkContext context;
+    private BlobVolume blobVolume;
+    private byte[] content;
+    private long storedItemId;
+    private final List<Long> insertedIds = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        this.context = new BenchmarkContext();
+        this.blobVolume = this.context.getBean(BlobStorage.class).createNewBlobVolume();
+        this.content = BenchmarkContext.randomContent(this.itemSize);
+        this.storedItemId = this.blobVolume.insert(this.newItem()).getId();
+    }
+
+    @TearDown(Level.Iteration)
+    public void purgeInsertedItems() throws SQLException {
+        for (long id : this.insertedIds) {
+            this.blobVolume.delete(id);
+        }
+        this.insertedIds.clear();
+        this.blobVolume.purgeDeletedItems(Integer.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.context.close();
+    }
+
+    @Benchmark
+    public BlobStoredItemAddress insert() throws SQLException {
+        BlobStoredItemAddress storedItemAddress = this.blobVolume.insert(this.newItem());
+        this.insertedIds.add(storedItemAddress.getId());
+        return storedItemAddress;
+    }
+
+    @Benchmark
+    public BlobItem getById() throws SQLException {
+        return this.blobVolume.getById(this.storedItemId);
+    }
+
+    @Benchmark
+    public boolean delete(ItemToDelete itemToDelete) throws SQLException {
+        return this.blobVolume.delete(itemToDelete.id);
+    }
+
+    /**
+     * Item inserted before every invocation of the delete benchmark.
+     */
+    @State(Scope.Thread)
+    public static class ItemToDelete {
+        private long id;
+
+        @Setup(Level.Invocation)
+        public void insert(BlobVolumeBenchmark benchmark) throws SQLException {
+            this.id = benchmark.blobVolume.insert(benchmark.newItem()).getId();
+        }
+    }
+
+    private BlobItem newItem() {
+        BlobItem item = new BlobItem();
+        item.setMimeType("image/png");
+        item.setStatus(BlobItemStatus.COMMITTED);
+        item.setContent(this.content);
+        return item;
+    }
+}
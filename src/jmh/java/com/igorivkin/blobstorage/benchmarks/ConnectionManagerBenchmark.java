@@ -0,0 +1,59 @@
+package com.igorivkin.blobstorage.benchmarks;
+
+import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.database.ConnectionManager;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of taking a connection to the volume: a new physical connection opened by the driver
+ * compared to the pooled connections used by the volumes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ConnectionManagerBenchmark {
+    private BenchmarkContext context;
+    private ConnectionManager connectionManager;
+    private String volumeName;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        this.context = new BenchmarkContext();
+        this.connectionManager = this.context.getBean(ConnectionManager.class);
+        this.volumeName = this.context.getBean(BlobStorage.class).createNewBlobVolume().getVolumeName();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.context.close();
+    }
+
+    @Benchmark
+    public boolean getConnection() throws SQLException {
+        try (Connection connection = this.connectionManager.getConnection(this.connectionManager.getConnectionString(this.volumeName))) {
+            return connection.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    public boolean getReadConnection() throws SQLException {
+        try (Connection connection = this.connectionManager.getReadConnection(this.volumeName)) {
+            return connection.getAutoCommit();
+        }
+    }
+
+    @Benchmark
+    public boolean getWriteConnection() throws SQLException {
+        try (Connection connection = this.connectionManager.getWriteConnection(this.volumeName)) {
+            return connection.getAutoCommit();
+        }
+    }
+}
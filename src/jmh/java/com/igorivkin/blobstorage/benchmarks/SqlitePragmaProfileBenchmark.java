@@ -0,0 +1,89 @@
+package com.igorivkin.blobstorage.benchmarks;
+
+import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemStatus;
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Insert and read of a single item by the volume under the SQLite pragma profiles of config/blobstorage.json:
+ * the defaults of the driver, the durable writer (synchronous=FULL) and the fast one (synchronous=NORMAL).
+ * Except the defaults, the readers and the maintenance connection creating the volume use their own
+ * profiles, so the volume gets the page size of the maintenance profile.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SqlitePragmaProfileBenchmark {
+    private static final String DRIVER_DEFAULTS = "driverDefaults";
+
+    @Param({DRIVER_DEFAULTS, "durable", "fast"})
+    public String writerProfile;
+
+    @Param({"16384", "1048576"})
+    public int itemSize;
+
+    private BenchmarkContext context;
+    private BlobVolume blobVolume;
+    private byte[] content;
+    private long storedItemId;
+    private final List<Long> insertedIds = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException, SQLException {
+        boolean driverDefaults = DRIVER_DEFAULTS.equals(this.writerProfile);
+        this.context = new BenchmarkContext(
+                "blobstorage.jdbc.profile.writer=" + this.writerProfile,
+                "blobstorage.jdbc.profile.reader=" + (driverDefaults ? DRIVER_DEFAULTS : "reader"),
+                "blobstorage.jdbc.profile.maintenance=" + (driverDefaults ? DRIVER_DEFAULTS : "maintenance")
+        );
+        this.blobVolume = this.context.getBean(BlobStorage.class).createNewBlobVolume();
+        this.content = BenchmarkContext.randomContent(this.itemSize);
+        this.storedItemId = this.blobVolume.insert(this.newItem()).getId();
+    }
+
+    @TearDown(Level.Iteration)
+    public void purgeInsertedItems() throws SQLException {
+        for (long id : this.insertedIds) {
+            this.blobVolume.delete(id);
+        }
+        this.insertedIds.clear();
+        this.blobVolume.purgeDeletedItems(Integer.MAX_VALUE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.context.close();
+    }
+
+    @Benchmark
+    public BlobStoredItemAddress insert() throws SQLException {
+        BlobStoredItemAddress storedItemAddress = this.blobVolume.insert(this.newItem());
+        this.insertedIds.add(storedItemAddress.getId());
+        return storedItemAddress;
+    }
+
+    @Benchmark
+    public BlobItem getById() throws SQLException {
+        return this.blobVolume.getById(this.storedItemId);
+    }
+
+    private BlobItem newItem() {
+        BlobItem item = new BlobItem();
+        item.setMimeType("image/png");
+        item.setStatus(BlobItemStatus.COMMITTED);
+        item.setContent(this.content);
+        return item;
+    }
+}
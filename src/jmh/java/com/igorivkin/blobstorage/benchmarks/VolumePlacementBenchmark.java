@@ -0,0 +1,65 @@
+package com.igorivkin.blobstorage.benchmarks;
+
+import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Choice of the volume for a new item among many volumes. All the volumes but the last one
+ * are almost full, so the whole list of writable volumes is scrolled. The volumes are only
+ * registered, their databases are never opened, since the choice depends on the space
+ * tracked in memory only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VolumePlacementBenchmark {
+
+    /**
+     * Free space left in the full volumes, it's still enough to keep them writable.
+     */
+    private static final long FREE_BYTES_OF_FULL_VOLUME = 128 * 1024;
+
+    private static final long DESIRED_SPACE = 1024 * 1024;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int volumeCount;
+
+    private BenchmarkContext context;
+    private BlobStorage blobStorage;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        this.context = new BenchmarkContext();
+        this.blobStorage = this.context.getBean(BlobStorage.class);
+        BlobStorageConfigProvider configProvider = this.context.getBean(BlobStorageConfigProvider.class);
+        for (int volumeId = 1; volumeId <= this.volumeCount; volumeId++) {
+            BlobVolume blobVolume = configProvider.getBlobVolumeProvider().getObject();
+            blobVolume.setVolumeId(volumeId);
+            blobVolume.setVolumeName(String.format("blob_volume_%d.db", volumeId));
+            blobVolume.setVolumeFile(new File(blobVolume.getVolumeName()));
+            configProvider.registerBlobVolume(blobVolume);
+            if (volumeId < this.volumeCount) {
+                blobVolume.tryReserve(blobVolume.getMaxSizeInBytes() - FREE_BYTES_OF_FULL_VOLUME);
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        this.context.close();
+    }
+
+    @Benchmark
+    public BlobVolume getSuitableBlobVolume() {
+        return this.blobStorage.getSuitableBlobVolume(DESIRED_SPACE);
+    }
+}
@@ -0,0 +1,72 @@
+package com.igorivkin.blobstorage.loadtest;
+
+import org.HdrHistogram.Histogram;
+
+/**
+ * Latencies and errors of the requests to one endpoint. Every worker keeps its own stats,
+ * they are merged after the run, so the workers do not contend on recording.
+ */
+public class EndpointStats {
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final String endpoint;
+    private final Histogram latencies = new Histogram(SIGNIFICANT_DIGITS);
+    private long errors;
+    private long bytes;
+
+    public EndpointStats(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /**
+     * Records the request completed by the server.
+     * @param latencyMicros latency of the request in microseconds
+     * @param success whether the server responded with success
+     * @param bytes bytes of the item sent or received
+     */
+    public void record(long latencyMicros, boolean success, long bytes) {
+        this.latencies.recordValue(latencyMicros);
+        if (success) {
+            this.bytes += bytes;
+        } else {
+            this.errors++;
+        }
+    }
+
+    /**
+     * Records the request failed without response, e.g. the connection was reset.
+     */
+    public void recordFailure() {
+        this.errors++;
+    }
+
+    public void add(EndpointStats other) {
+        this.latencies.add(other.latencies);
+        this.errors += other.errors;
+        this.bytes += other.bytes;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getRequests() {
+        return this.latencies.getTotalCount();
+    }
+
+    public long getErrors() {
+        return errors;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public long getLatencyAtPercentile(double percentile) {
+        return this.latencies.getValueAtPercentile(percentile);
+    }
+
+    public long getMaxLatency() {
+        return this.latencies.getMaxValue();
+    }
+}
@@ -0,0 +1,159 @@
+package com.igorivkin.blobstorage.loadtest;
+
+import com.google.gson.Gson;
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * HTTP client of the storage API. The content of the stored items is cut from a shared buffer
+ * of random bytes at a random offset, so the items are neither compressible nor duplicates of
+ * each other, while no new content is generated per request.
+ */
+public class LoadTestClient {
+    public static final String STORE_FILE = "store_file";
+    public static final String GET_FILE = "get_file";
+    public static final String DELETE_FILE = "delete_file";
+
+    private static final String BOUNDARY = "blobstorage-loadtest-boundary";
+    private static final Duration REQUEST_TIMEOUT = Duration.ofMinutes(1);
+
+    private final HttpClient httpClient;
+    private final String baseUrl;
+    private final String mimeType;
+    private final byte[] contentBuffer;
+    private final Gson gson = new Gson();
+
+    public LoadTestClient(String baseUrl, String mimeType, long maxItemSize) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(REQUEST_TIMEOUT)
+                .build();
+        this.baseUrl = baseUrl;
+        this.mimeType = mimeType;
+        this.contentBuffer = new byte[(int) Math.min(Integer.MAX_VALUE - 8, maxItemSize * 2)];
+        new Random(maxItemSize).nextBytes(this.contentBuffer);
+    }
+
+    /**
+     * Stores an item of a given size by /api/store_file/.
+     * @param size size of the item in bytes
+     * @param random random generator of the calling thread
+     * @param stats stats of the endpoint
+     * @return address of the stored item or null if it was not stored
+     */
+    public BlobStoredItemAddress storeFile(long size, Random random, EndpointStats stats) {
+        int offset = random.nextInt((int) (this.contentBuffer.length - size + 1));
+        byte[] head = ("--" + BOUNDARY + "\r\n"
+                + "Content-Disposition: form-data; name=\"file_to_store\"; filename=\"item\"\r\n"
+                + "Content-Type: " + this.mimeType + "\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = ("\r\n--" + BOUNDARY + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        List<InputStream> parts = List.of(
+                new ByteArrayInputStream(head),
+                new ByteArrayInputStream(this.contentBuffer, offset, (int) size),
+                new ByteArrayInputStream(tail)
+        );
+        HttpRequest request = HttpRequest.newBuilder(URI.create(this.baseUrl + "/api/store_file/"))
+                .timeout(REQUEST_TIMEOUT)
+                .header("Content-Type", "multipart/form-data; boundary=" + BOUNDARY)
+                .POST(HttpRequest.BodyPublishers.ofInputStream(
+                        () -> new SequenceInputStream(Collections.enumeration(parts))
+                ))
+                .build();
+
+        long startedAt = System.nanoTime();
+        try {
+            HttpResponse<String> response = this.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            long latencyMicros = (System.nanoTime() - startedAt) / 1000;
+            StoreFileResponse storeFileResponse = response.statusCode() == 200
+                    ? this.gson.fromJson(response.body(), StoreFileResponse.class)
+                    : null;
+            boolean stored = storeFileResponse != null
+                    && "ok".equals(storeFileResponse.status)
+                    && storeFileResponse.result != null;
+            stats.record(latencyMicros, stored, size);
+            return stored ? storeFileResponse.result : null;
+        } catch (IOException exception) {
+            stats.recordFailure();
+            return null;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /**
+     * Reads the whole item by /api/get_file.
+     * @param address address of the item
+     * @param stats stats of the endpoint
+     */
+    public void getFile(BlobStoredItemAddress address, EndpointStats stats) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(String.format(
+                    "%s/api/get_file?id=%d&volume_id=%d", this.baseUrl, address.getId(), address.getVolumeId()
+                )))
+                .timeout(REQUEST_TIMEOUT)
+                .GET()
+                .build();
+
+        long startedAt = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = this.httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            long bytes;
+            try (InputStream body = response.body()) {
+                bytes = body.transferTo(OutputStream.nullOutputStream());
+            }
+            stats.record((System.nanoTime() - startedAt) / 1000, response.statusCode() == 200, bytes);
+        } catch (IOException exception) {
+            stats.recordFailure();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Deletes the item by /api/delete_file/.
+     * @param address address of the item
+     * @param stats stats of the endpoint
+     */
+    public void deleteFile(BlobStoredItemAddress address, EndpointStats stats) {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(String.format(
+                    "%s/api/delete_file/?id=%d&volume_id=%d", this.baseUrl, address.getId(), address.getVolumeId()
+                )))
+                .timeout(REQUEST_TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+
+        long startedAt = System.nanoTime();
+        try {
+            HttpResponse<String> response = this.httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            boolean deleted = response.statusCode() == 200
+                    && response.body().contains("\"status\":\"ok\"");
+            stats.record((System.nanoTime() - startedAt) / 1000, deleted, 0);
+        } catch (IOException exception) {
+            stats.recordFailure();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Response of /api/store_file/ as it's serialized by the controller.
+     */
+    private static class StoreFileResponse {
+        private String status;
+        private BlobStoredItemAddress result;
+    }
+}
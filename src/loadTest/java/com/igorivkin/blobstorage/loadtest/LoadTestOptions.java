@@ -0,0 +1,161 @@
+package com.igorivkin.blobstorage.loadtest;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Options of the load test, they are passed as arguments of the form --name=value, e.g.
+ * --mix=90:10:0 --skew=1.2 --threads=32. The options that are not passed keep their defaults.
+ */
+public class LoadTestOptions {
+    private int threads = 16;
+    private int durationSeconds = 60;
+    private int warmupSeconds = 10;
+    private int initialItems = 200;
+    private int readPercent = 90;
+    private int writePercent = 10;
+    private int deletePercent = 0;
+    private double skew = 1.0;
+    private long minItemSize = 1024;
+    private long maxItemSize;
+    private String mimeType = "image/png";
+    private String reportFile;
+
+    /**
+     * Parses the options from the arguments of the command line.
+     * @param args arguments of the form --name=value
+     * @return options of the load test
+     * @throws IllegalArgumentException it will crush if an argument is unknown or has a wrong value
+     */
+    public static LoadTestOptions parse(String[] args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Argument should be of the form --name=value: " + arg);
+            }
+            values.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+
+        LoadTestOptions options = new LoadTestOptions();
+        for (Map.Entry<String, String> value : values.entrySet()) {
+            switch (value.getKey()) {
+                case "threads":
+                    options.threads = Integer.parseInt(value.getValue());
+                    break;
+                case "duration":
+                    options.durationSeconds = Integer.parseInt(value.getValue());
+                    break;
+                case "warmup":
+                    options.warmupSeconds = Integer.parseInt(value.getValue());
+                    break;
+                case "items":
+                    options.initialItems = Integer.parseInt(value.getValue());
+                    break;
+                case "mix":
+                    options.parseMix(value.getValue());
+                    break;
+                case "skew":
+                    options.skew = Double.parseDouble(value.getValue());
+                    break;
+                case "min-size":
+                    options.minItemSize = Long.parseLong(value.getValue());
+                    break;
+                case "max-size":
+                    options.maxItemSize = Long.parseLong(value.getValue());
+                    break;
+                case "mime-type":
+                    options.mimeType = value.getValue();
+                    break;
+                case "report":
+                    options.reportFile = value.getValue();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + value.getKey());
+            }
+        }
+        if (options.threads < 1 || options.durationSeconds < 1 || options.warmupSeconds < 0 || options.initialItems < 0) {
+            throw new IllegalArgumentException("Threads and duration should be positive, warmup and items should not be negative");
+        }
+        if (options.skew < 0) {
+            throw new IllegalArgumentException("Skew should not be negative");
+        }
+        if (options.minItemSize < 1 || (options.maxItemSize > 0 && options.maxItemSize < options.minItemSize)) {
+            throw new IllegalArgumentException("Item sizes should be positive and the minimal size should not exceed the maximal one");
+        }
+        return options;
+    }
+
+    /**
+     * Parses the mix of operations of the form read:write:delete in percents, e.g. 90:10:0.
+     */
+    private void parseMix(String mix) {
+        String[] parts = mix.split(":");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Mix should be of the form read:write:delete, e.g. 90:10:0");
+        }
+        this.readPercent = Integer.parseInt(parts[0]);
+        this.writePercent = Integer.parseInt(parts[1]);
+        this.deletePercent = Integer.parseInt(parts[2]);
+        if (this.readPercent < 0 || this.writePercent < 0 || this.deletePercent < 0
+                || this.readPercent + this.writePercent + this.deletePercent != 100) {
+            throw new IllegalArgumentException("Mix should consist of non-negative percents summing up to 100");
+        }
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public int getWarmupSeconds() {
+        return warmupSeconds;
+    }
+
+    public int getInitialItems() {
+        return initialItems;
+    }
+
+    public int getReadPercent() {
+        return readPercent;
+    }
+
+    public int getWritePercent() {
+        return writePercent;
+    }
+
+    public int getDeletePercent() {
+        return deletePercent;
+    }
+
+    public double getSkew() {
+        return skew;
+    }
+
+    public long getMinItemSize() {
+        return minItemSize;
+    }
+
+    /**
+     * Returns the maximal size of the stored items, 0 means the maximal item size of the storage.
+     * @return maximal item size in bytes
+     */
+    public long getMaxItemSize() {
+        return maxItemSize;
+    }
+
+    public void setMaxItemSize(long maxItemSize) {
+        this.maxItemSize = maxItemSize;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public String getReportFile() {
+        return reportFile;
+    }
+}
@@ -0,0 +1,201 @@
+package com.igorivkin.blobstorage.loadtest;
+
+import com.google.gson.GsonBuilder;
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Load test of the storage API. It starts the application on a local port, stores the initial
+ * items and then drives /api/get_file, /api/store_file/ and /api/delete_file/ by a given mix
+ * of operations from several threads. The requests of the warmup are not measured. Throughput
+ * and latency percentiles are reported per endpoint, the latencies are in microseconds.
+ */
+public class LoadTestRunner {
+    private final LoadTestOptions options;
+    private final LoadTestClient client;
+    private final StoredItems storedItems;
+
+    public LoadTestRunner(LoadTestOptions options, LoadTestClient client) {
+        this.options = options;
+        this.client = client;
+        this.storedItems = new StoredItems(options.getSkew());
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        try (LoadTestServer server = new LoadTestServer()) {
+            if (options.getMaxItemSize() == 0) {
+                long maxBlobItemSize = server.getBean(BlobStorageConfigProvider.class).getMaxBlobItemSize();
+                options.setMaxItemSize(Math.max(options.getMinItemSize(), maxBlobItemSize));
+            }
+            LoadTestClient client = new LoadTestClient(server.getBaseUrl(), options.getMimeType(), options.getMaxItemSize());
+            new LoadTestRunner(options, client).run();
+        }
+    }
+
+    /**
+     * Stores the initial items, runs the load and reports the results.
+     * @throws InterruptedException it attempts to wait for the workers
+     * @throws ExecutionException it will crush if a worker fails
+     * @throws IOException it attempts to write the report file
+     */
+    public void run() throws InterruptedException, ExecutionException, IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(this.options.getThreads());
+        try {
+            System.out.printf("Storing %d initial items of %d..%d bytes%n",
+                    this.options.getInitialItems(), this.options.getMinItemSize(), this.options.getMaxItemSize());
+            this.storeInitialItems(workers);
+
+            System.out.printf("Running %d:%d:%d read:write:delete mix with skew %.2f by %d threads for %d s after %d s of warmup%n",
+                    this.options.getReadPercent(), this.options.getWritePercent(), this.options.getDeletePercent(),
+                    this.options.getSkew(), this.options.getThreads(),
+                    this.options.getDurationSeconds(), this.options.getWarmupSeconds());
+            long measuredFrom = System.nanoTime() + TimeUnit.SECONDS.toNanos(this.options.getWarmupSeconds());
+            long measuredTo = measuredFrom + TimeUnit.SECONDS.toNanos(this.options.getDurationSeconds());
+            List<Callable<Map<String, EndpointStats>>> tasks = new ArrayList<>();
+            for (int i = 0; i < this.options.getThreads(); i++) {
+                tasks.add(() -> this.drive(measuredFrom, measuredTo));
+            }
+
+            Map<String, EndpointStats> total = newStats();
+            for (Future<Map<String, EndpointStats>> result : workers.invokeAll(tasks)) {
+                for (EndpointStats stats : result.get().values()) {
+                    total.get(stats.getEndpoint()).add(stats);
+                }
+            }
+            this.report(total);
+        } finally {
+            workers.shutdownNow();
+        }
+    }
+
+    private void storeInitialItems(ExecutorService workers) throws InterruptedException, ExecutionException {
+        List<Callable<BlobStoredItemAddress>> tasks = new ArrayList<>();
+        for (int i = 0; i < this.options.getInitialItems(); i++) {
+            tasks.add(() -> {
+                Random random = ThreadLocalRandom.current();
+                BlobStoredItemAddress address = this.client.storeFile(this.nextItemSize(random), random, new EndpointStats(LoadTestClient.STORE_FILE));
+                if (address != null) {
+                    this.storedItems.add(address);
+                }
+                return address;
+            });
+        }
+        for (Future<BlobStoredItemAddress> result : workers.invokeAll(tasks)) {
+            result.get();
+        }
+        if (this.storedItems.size() < this.options.getInitialItems()) {
+            System.out.printf("Only %d of %d initial items were stored%n", this.storedItems.size(), this.options.getInitialItems());
+        }
+    }
+
+    /**
+     * Sends the requests of the mix until the end of the measurement. The requests started
+     * during the warmup are recorded to the stats that are thrown away.
+     */
+    private Map<String, EndpointStats> drive(long measuredFrom, long measuredTo) {
+        Random random = ThreadLocalRandom.current();
+        Map<String, EndpointStats> warmupStats = newStats();
+        Map<String, EndpointStats> measuredStats = newStats();
+        long now;
+        while ((now = System.nanoTime()) < measuredTo && !Thread.currentThread().isInterrupted()) {
+            Map<String, EndpointStats> stats = now < measuredFrom ? warmupStats : measuredStats;
+            int operation = random.nextInt(100);
+            if (operation < this.options.getReadPercent()) {
+                BlobStoredItemAddress address = this.storedItems.pickPopular(random);
+                if (address != null) {
+                    this.client.getFile(address, stats.get(LoadTestClient.GET_FILE));
+                    continue;
+                }
+            } else if (operation >= this.options.getReadPercent() + this.options.getWritePercent()) {
+                BlobStoredItemAddress address = this.storedItems.removeAny(random);
+                if (address != null) {
+                    this.client.deleteFile(address, stats.get(LoadTestClient.DELETE_FILE));
+                    continue;
+                }
+            }
+            // Writes, and also reads and deletes when there are no items left
+            BlobStoredItemAddress address = this.client.storeFile(this.nextItemSize(random), random, stats.get(LoadTestClient.STORE_FILE));
+            if (address != null) {
+                this.storedItems.add(address);
+            }
+        }
+        return measuredStats;
+    }
+
+    /**
+     * Returns the size of a new item, the sizes are spread uniformly on a log scale,
+     * so small items are stored as often as the large ones of the same order.
+     */
+    private long nextItemSize(Random random) {
+        double minSize = Math.log(this.options.getMinItemSize());
+        double maxSize = Math.log(this.options.getMaxItemSize());
+        long size = Math.round(Math.exp(minSize + random.nextDouble() * (maxSize - minSize)));
+        return Math.max(this.options.getMinItemSize(), Math.min(this.options.getMaxItemSize(), size));
+    }
+
+    private void report(Map<String, EndpointStats> total) throws IOException {
+        double seconds = this.options.getDurationSeconds();
+        List<Map<String, Object>> endpoints = new ArrayList<>();
+        System.out.printf("%-12s %10s %8s %10s %10s %10s %10s %10s %10s%n",
+                "endpoint", "requests", "errors", "req/s", "MB/s", "p50, us", "p99, us", "p999, us", "max, us");
+        for (EndpointStats stats : total.values()) {
+            System.out.printf("%-12s %10d %8d %10.1f %10.2f %10d %10d %10d %10d%n",
+                    stats.getEndpoint(), stats.getRequests(), stats.getErrors(),
+                    stats.getRequests() / seconds, stats.getBytes() / seconds / (1024 * 1024),
+                    stats.getLatencyAtPercentile(50), stats.getLatencyAtPercentile(99),
+                    stats.getLatencyAtPercentile(99.9), stats.getMaxLatency());
+
+            Map<String, Object> endpoint = new LinkedHashMap<>();
+            endpoint.put("endpoint", stats.getEndpoint());
+            endpoint.put("requests", stats.getRequests());
+            endpoint.put("errors", stats.getErrors());
+            endpoint.put("throughput", stats.getRequests() / seconds);
+            endpoint.put("bytesPerSecond", stats.getBytes() / seconds);
+            endpoint.put("p50", stats.getLatencyAtPercentile(50));
+            endpoint.put("p99", stats.getLatencyAtPercentile(99));
+            endpoint.put("p999", stats.getLatencyAtPercentile(99.9));
+            endpoint.put("max", stats.getMaxLatency());
+            endpoints.add(endpoint);
+        }
+
+        if (this.options.getReportFile() != null) {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("options", this.options);
+            report.put("endpoints", endpoints);
+            File reportFile = new File(this.options.getReportFile());
+            if (reportFile.getParentFile() != null) {
+                reportFile.getParentFile().mkdirs();
+            }
+            try (Writer writer = new FileWriter(reportFile)) {
+                new GsonBuilder().setPrettyPrinting().create().toJson(report, writer);
+            }
+            System.out.printf("The report is written to %s%n", reportFile.getPath());
+        }
+    }
+
+    private static Map<String, EndpointStats> newStats() {
+        Map<String, EndpointStats> stats = new LinkedHashMap<>();
+        stats.put(LoadTestClient.GET_FILE, new EndpointStats(LoadTestClient.GET_FILE));
+        stats.put(LoadTestClient.STORE_FILE, new EndpointStats(LoadTestClient.STORE_FILE));
+        stats.put(LoadTestClient.DELETE_FILE, new EndpointStats(LoadTestClient.DELETE_FILE));
+        return stats;
+    }
+}
@@ -0,0 +1,64 @@
+package com.igorivkin.blobstorage.loadtest;
+
+import com.igorivkin.blobstorage.BlobstorageApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * The application under the load. It's started with the web server on a free local port
+ * and an empty database directory, so the runs do not depend on each other. The background
+ * jobs keep their schedules, since they are a part of the load the real service deals with.
+ */
+public class LoadTestServer implements AutoCloseable {
+    private final Path databaseDirectory;
+    private final ConfigurableApplicationContext applicationContext;
+    private final int port;
+
+    public LoadTestServer() throws IOException {
+        this.databaseDirectory = Files.createTempDirectory("blobstorage-loadtest");
+        String databasePath = this.databaseDirectory.toAbsolutePath() + File.separator;
+        this.applicationContext = new SpringApplicationBuilder(BlobstorageApplication.class)
+                .web(WebApplicationType.SERVLET)
+                .logStartupInfo(false)
+                .properties(
+                        "server.port=0",
+                        "server.address=127.0.0.1",
+                        "blobstorage.databasepath=" + databasePath,
+                        "blobstorage.jdbc.connectionstring=jdbc:sqlite:" + databasePath + "%s"
+                )
+                .run();
+        this.port = this.applicationContext.getEnvironment().getProperty("local.server.port", Integer.class);
+    }
+
+    public <T> T getBean(Class<T> type) {
+        return this.applicationContext.getBean(type);
+    }
+
+    /**
+     * Returns the base URL of the started application.
+     * @return base URL without a trailing slash, e.g. http://127.0.0.1:54321
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + this.port;
+    }
+
+    /**
+     * Stops the application and removes the database directory.
+     * @throws IOException it attempts to remove the files
+     */
+    @Override
+    public void close() throws IOException {
+        this.applicationContext.close();
+        try (Stream<Path> files = Files.walk(this.databaseDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+}
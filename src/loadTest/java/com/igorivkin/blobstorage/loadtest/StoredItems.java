@@ -0,0 +1,73 @@
+package com.igorivkin.blobstorage.loadtest;
+
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Items stored during the load test and their popularity. The items are ranked by the order
+ * they were stored in, the rank of a read item follows a bounded power law: with the skew 0 all
+ * the items are read equally often, with the skew 1 and above the first items take most of the reads.
+ */
+public class StoredItems {
+    private final List<BlobStoredItemAddress> items = new ArrayList<>();
+    private final double skew;
+
+    public StoredItems(double skew) {
+        this.skew = skew;
+    }
+
+    public synchronized void add(BlobStoredItemAddress address) {
+        this.items.add(address);
+    }
+
+    public synchronized int size() {
+        return this.items.size();
+    }
+
+    /**
+     * Picks an item to read according to the popularity of items.
+     * @param random random generator of the calling thread
+     * @return address of the item or null if there are no items
+     */
+    public synchronized BlobStoredItemAddress pickPopular(Random random) {
+        if (this.items.isEmpty()) {
+            return null;
+        }
+        return this.items.get(this.rank(random.nextDouble(), this.items.size()));
+    }
+
+    /**
+     * Picks an item uniformly and removes it, so it's not read after the deletion.
+     * The last item takes the place of the removed one to keep the removal cheap.
+     * @param random random generator of the calling thread
+     * @return address of the removed item or null if there are no items
+     */
+    public synchronized BlobStoredItemAddress removeAny(Random random) {
+        if (this.items.isEmpty()) {
+            return null;
+        }
+        int index = random.nextInt(this.items.size());
+        BlobStoredItemAddress last = this.items.remove(this.items.size() - 1);
+        return index == this.items.size() ? last : this.items.set(index, last);
+    }
+
+    /**
+     * Maps a uniform value to the rank among n items by the inverse distribution
+     * of the power law with the exponent of the skew over [1, n + 1).
+     */
+    private int rank(double uniform, int n) {
+        double x;
+        if (this.skew == 0) {
+            x = 1 + uniform * n;
+        } else if (Math.abs(this.skew - 1) < 1e-9) {
+            x = Math.pow(n + 1, uniform);
+        } else {
+            double exponent = 1 - this.skew;
+            x = Math.pow(1 + uniform * (Math.pow(n + 1, exponent) - 1), 1 / exponent);
+        }
+        return Math.min(n - 1, Math.max(0, (int) x - 1));
+    }
+}
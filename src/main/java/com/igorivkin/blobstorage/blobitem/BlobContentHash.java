@@ -0,0 +1,44 @@
+package com.igorivkin.blobstorage.blobitem;
+
+import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the hash identifying the content of stored items. The digest is updated
+ * while the content is being read from the incoming stream, so no extra pass is needed.
+ */
+public class BlobContentHash {
+
+    public static final String ALGORITHM = "SHA-256";
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * Returns a new digest to compute the content hash.
+     * @return message digest
+     * @throws GenericBlobStorageException it will crush if the JVM does not provide the algorithm
+     */
+    public static MessageDigest newDigest() throws GenericBlobStorageException {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (NoSuchAlgorithmException exception) {
+            throw new GenericBlobStorageException("Hash algorithm " + ALGORITHM + " is not available");
+        }
+    }
+
+    /**
+     * Returns the hash in its textual form stored in the volumes.
+     * @param hash computed hash
+     * @return lowercase hexadecimal representation of the hash
+     */
+    public static String toHex(byte[] hash) {
+        char[] hex = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(hash[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX_DIGITS[hash[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+}
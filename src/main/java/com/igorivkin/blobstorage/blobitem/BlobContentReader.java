@@ -0,0 +1,93 @@
+package com.igorivkin.blobstorage.blobitem;
+
+import com.igorivkin.blobstorage.exceptions.TooBigItemException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.text.MessageFormat;
+import java.util.Arrays;
+
+/**
+ * Reads content of the item to store from its input stream chunk by chunk checking
+ * the maximal allowed size on the fly. The stream is never read further than the
+ * allowed size, so an oversized upload is rejected without buffering all of it.
+ */
+public class BlobContentReader {
+
+    /**
+     * Size of the chunk read from the input stream at once.
+     */
+    public static final int CHUNK_SIZE = 64 * 1024;
+
+    /**
+     * Reads the whole content of a given stream.
+     * @param inputStream stream to read
+     * @param expectedSize declared size of the content in bytes, negative if unknown
+     * @param maxAllowedSize maximal allowed size of the content in bytes
+     * @return content of the stream, array length is exactly the content size
+     * @throws IOException it attempts to read the stream
+     * @throws TooBigItemException it will crush once the content exceeds the allowed size
+     */
+    public static byte[] read(InputStream inputStream, long expectedSize, long maxAllowedSize)
+            throws IOException, TooBigItemException {
+        if (expectedSize > maxAllowedSize) {
+            throw BlobContentReader.tooBigItem(expectedSize, maxAllowedSize);
+        }
+        if (expectedSize >= 0) {
+            return BlobContentReader.readDeclaredSize(inputStream, (int) expectedSize);
+        }
+
+        // The size is unknown so the buffer grows step by step, but never more than
+        // the allowed size plus one byte that is enough to detect the overflow.
+        byte[] buffer = new byte[(int) Math.min(CHUNK_SIZE, maxAllowedSize + 1)];
+        int length = 0;
+        while (true) {
+            if (length == buffer.length) {
+                if (length > maxAllowedSize) {
+                    throw BlobContentReader.tooBigItem(length, maxAllowedSize);
+                }
+                buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, maxAllowedSize + 1));
+            }
+            int bytesRead = inputStream.read(buffer, length, Math.min(CHUNK_SIZE, buffer.length - length));
+            if (bytesRead == -1) {
+                break;
+            }
+            length += bytesRead;
+        }
+        if (length > maxAllowedSize) {
+            throw BlobContentReader.tooBigItem(length, maxAllowedSize);
+        }
+        return length == buffer.length ? buffer : Arrays.copyOf(buffer, length);
+    }
+
+    /**
+     * Reads the content into the array allocated once with exactly declared size.
+     * @param inputStream stream to read
+     * @param declaredSize declared size of the content in bytes
+     * @return content of the stream
+     * @throws IOException it will crush if the stream does not match the declared size
+     */
+    private static byte[] readDeclaredSize(InputStream inputStream, int declaredSize) throws IOException {
+        byte[] content = new byte[declaredSize];
+        int length = 0;
+        while (length < declaredSize) {
+            int bytesRead = inputStream.read(content, length, Math.min(CHUNK_SIZE, declaredSize - length));
+            if (bytesRead == -1) {
+                throw new IOException(
+                        MessageFormat.format("Stream has ended after {0} bytes, but {1} bytes were declared", length, declaredSize)
+                );
+            }
+            length += bytesRead;
+        }
+        if (inputStream.read() != -1) {
+            throw new IOException(MessageFormat.format("Stream is longer than declared size {0} bytes", declaredSize));
+        }
+        return content;
+    }
+
+    private static TooBigItemException tooBigItem(long size, long maxAllowedSize) {
+        return new TooBigItemException(
+                MessageFormat.format("Size to store is too big {0}, max allowed size is {1} bytes", size, maxAllowedSize)
+        );
+    }
+}
@@ -8,6 +8,10 @@ public class BlobItem {
     private String mimeType;
     private int status;
     private byte[] content;
+    private String contentHash;
+    private String codec;
+    private int originalSize;
+    private long createdAt;
 
     public BlobItem() {
     }
@@ -44,6 +48,80 @@ public class BlobItem {
         this.content = (content != null ? Arrays.copyOf(content, content.length) : null);
     }
 
+    /**
+     * Returns the content itself without making a defensive copy. Intended for the hot
+     * paths where copying of a large item is too expensive, the array must not be modified.
+     * @return content of the item
+     */
+    public byte[] getRawContent() {
+        return content;
+    }
+
+    /**
+     * Sets the content without making a defensive copy, the caller must not modify
+     * the given array afterwards.
+     * @param content content of the item
+     */
+    public void setRawContent(byte[] content) {
+        this.content = content;
+    }
+
+    /**
+     * Returns size of the content in bytes.
+     * @return size of the content, 0 if there is no content
+     */
+    public int getContentSize() {
+        return content != null ? content.length : 0;
+    }
+
+    /**
+     * Returns hash of the content, see {@link BlobContentHash}.
+     * @return hexadecimal content hash, null if it's not computed
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Returns the name of codec the content is encoded with before it's stored.
+     * @return codec name, null if the content is not encoded
+     */
+    public String getCodec() {
+        return codec;
+    }
+
+    public void setCodec(String codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Returns size of the content before encoding, it matters only if the codec is set.
+     * @return size of the decoded content in bytes
+     */
+    public int getOriginalSize() {
+        return originalSize;
+    }
+
+    public void setOriginalSize(int originalSize) {
+        this.originalSize = originalSize;
+    }
+
+    /**
+     * Returns the time when the item was stored.
+     * @return time in milliseconds since epoch, 0 if it's not known
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
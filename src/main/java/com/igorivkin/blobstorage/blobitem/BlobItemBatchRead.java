@@ -0,0 +1,33 @@
+package com.igorivkin.blobstorage.blobitem;
+
+/**
+ * Result of reading a single item in a batch, keeps the item itself if it was found.
+ */
+public class BlobItemBatchRead extends BlobItemBatchResult {
+    private final BlobItem item;
+
+    public BlobItemBatchRead(BlobStoredItemAddress address, String status, String reason, BlobItem item) {
+        super(address, status, reason);
+        this.item = item;
+    }
+
+    public static BlobItemBatchRead found(BlobStoredItemAddress address, BlobItem item) {
+        return new BlobItemBatchRead(address, STATUS_OK, null, item);
+    }
+
+    public static BlobItemBatchRead notFound(BlobStoredItemAddress address) {
+        return new BlobItemBatchRead(address, STATUS_NOT_FOUND, null, null);
+    }
+
+    public static BlobItemBatchRead error(BlobStoredItemAddress address, String reason) {
+        return new BlobItemBatchRead(address, STATUS_ERROR, reason, null);
+    }
+
+    /**
+     * Returns the item that was read.
+     * @return item or null if it was not found or could not be read
+     */
+    public BlobItem getItem() {
+        return item;
+    }
+}
@@ -0,0 +1,73 @@
+package com.igorivkin.blobstorage.blobitem;
+
+import java.util.Objects;
+
+/**
+ * Result of a single item of a batch operation. The batch is never failed as a whole,
+ * every item gets its own status instead.
+ */
+public class BlobItemBatchResult {
+    public static final String STATUS_OK = "ok";
+    public static final String STATUS_NOT_FOUND = "not_found";
+    public static final String STATUS_ERROR = "error";
+
+    private BlobStoredItemAddress address;
+    private String status;
+    private String reason;
+
+    public BlobItemBatchResult() {
+    }
+
+    public BlobItemBatchResult(BlobStoredItemAddress address, String status, String reason) {
+        this.address = address;
+        this.status = status;
+        this.reason = reason;
+    }
+
+    public static BlobItemBatchResult ok(BlobStoredItemAddress address) {
+        return new BlobItemBatchResult(address, STATUS_OK, null);
+    }
+
+    public static BlobItemBatchResult error(BlobStoredItemAddress address, String reason) {
+        return new BlobItemBatchResult(address, STATUS_ERROR, reason);
+    }
+
+    public BlobStoredItemAddress getAddress() {
+        return address;
+    }
+
+    public void setAddress(BlobStoredItemAddress address) {
+        this.address = address;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public String getReason() {
+        return reason;
+    }
+
+    public void setReason(String reason) {
+        this.reason = reason;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BlobItemBatchResult that = (BlobItemBatchResult) o;
+        return Objects.equals(address, that.address) &&
+                Objects.equals(status, that.status) &&
+                Objects.equals(reason, that.reason);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(address, status, reason);
+    }
+}
@@ -0,0 +1,93 @@
+package com.igorivkin.blobstorage.blobitem;
+
+import java.util.Objects;
+
+/**
+ * Describes a stored item without its content. It's enough to prepare the response
+ * headers before the content itself is streamed.
+ */
+public class BlobItemInfo {
+    private long id;
+    private String mimeType;
+    private int status;
+    private long size;
+    private String contentHash;
+    private long createdAt;
+
+    public BlobItemInfo() {
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public void setId(long id) {
+        this.id = id;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public void setMimeType(String mimeType) {
+        this.mimeType = mimeType;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(int status) {
+        this.status = status;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public void setSize(long size) {
+        this.size = size;
+    }
+
+    /**
+     * Returns hash of the content, see {@link BlobContentHash}.
+     * @return hexadecimal content hash, null for the items stored before hashing was introduced
+     */
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    /**
+     * Returns the time when the item was stored.
+     * @return time in milliseconds since epoch, 0 for the items stored before it was tracked
+     */
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        BlobItemInfo that = (BlobItemInfo) o;
+        return id == that.id &&
+                status == that.status &&
+                size == that.size &&
+                createdAt == that.createdAt &&
+                Objects.equals(mimeType, that.mimeType) &&
+                Objects.equals(contentHash, that.contentHash);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(id, mimeType, status, size, contentHash, createdAt);
+    }
+}
@@ -0,0 +1,34 @@
+package com.igorivkin.blobstorage.blobitem;
+
+/**
+ * Result of describing a single item in a batch, keeps the item description if it was found.
+ * The content is not read, so it's streamed item by item afterwards.
+ */
+public class BlobItemInfoBatchRead extends BlobItemBatchResult {
+    private final BlobItemInfo itemInfo;
+
+    public BlobItemInfoBatchRead(BlobStoredItemAddress address, String status, String reason, BlobItemInfo itemInfo) {
+        super(address, status, reason);
+        this.itemInfo = itemInfo;
+    }
+
+    public static BlobItemInfoBatchRead found(BlobStoredItemAddress address, BlobItemInfo itemInfo) {
+        return new BlobItemInfoBatchRead(address, STATUS_OK, null, itemInfo);
+    }
+
+    public static BlobItemInfoBatchRead notFound(BlobStoredItemAddress address) {
+        return new BlobItemInfoBatchRead(address, STATUS_NOT_FOUND, null, null);
+    }
+
+    public static BlobItemInfoBatchRead error(BlobStoredItemAddress address, String reason) {
+        return new BlobItemInfoBatchRead(address, STATUS_ERROR, reason, null);
+    }
+
+    /**
+     * Returns the description of the item.
+     * @return item description or null if it was not found or could not be read
+     */
+    public BlobItemInfo getItemInfo() {
+        return itemInfo;
+    }
+}
@@ -0,0 +1,35 @@
+package com.igorivkin.blobstorage.blobitem;
+
+import java.io.InputStream;
+
+/**
+ * Describes a file to store in a batch: its content stream, mime-type and declared size.
+ */
+public class BlobItemSource {
+    private final InputStream inputStream;
+    private final String mimeType;
+    private final long expectedSize;
+
+    /**
+     * @param inputStream stream of the file content
+     * @param mimeType mime-type of the file
+     * @param expectedSize declared size of the file in bytes, negative if unknown
+     */
+    public BlobItemSource(InputStream inputStream, String mimeType, long expectedSize) {
+        this.inputStream = inputStream;
+        this.mimeType = mimeType;
+        this.expectedSize = expectedSize;
+    }
+
+    public InputStream getInputStream() {
+        return inputStream;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public long getExpectedSize() {
+        return expectedSize;
+    }
+}
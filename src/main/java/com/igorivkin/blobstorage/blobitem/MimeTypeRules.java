@@ -0,0 +1,44 @@
+package com.igorivkin.blobstorage.blobitem;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Values configured by mime-types. A rule is given either for the exact mime-type
+ * ("text/plain"), for all subtypes of a type ("text/*") or for everything ("*&#47;*").
+ * The most specific rule wins.
+ * @param <T> type of configured value
+ */
+public class MimeTypeRules<T> {
+    private static final String ANY_MIME_TYPE = "*/*";
+
+    private final Map<String, T> valuesByMimeType = new HashMap<>();
+
+    /**
+     * Adds the rule.
+     * @param mimeTypePattern exact mime-type, type with "/*" or "*&#47;*"
+     * @param value value for the mime-types matching the pattern
+     */
+    public void put(String mimeTypePattern, T value) {
+        this.valuesByMimeType.put(mimeTypePattern, value);
+    }
+
+    /**
+     * Returns the value of the most specific rule matching a given mime-type.
+     * @param mimeType mime-type
+     * @return configured value or null if no rule matches
+     */
+    public T get(String mimeType) {
+        if (mimeType != null) {
+            if (this.valuesByMimeType.containsKey(mimeType)) {
+                return this.valuesByMimeType.get(mimeType);
+            }
+            int subtypeStart = mimeType.indexOf('/');
+            String typePattern = subtypeStart > 0 ? mimeType.substring(0, subtypeStart) + "/*" : null;
+            if (typePattern != null && this.valuesByMimeType.containsKey(typePattern)) {
+                return this.valuesByMimeType.get(typePattern);
+            }
+        }
+        return this.valuesByMimeType.get(ANY_MIME_TYPE);
+    }
+}
@@ -0,0 +1,32 @@
+package com.igorivkin.blobstorage.blobitem.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Encodes the content of items before it's stored in the volume and decodes it back.
+ * The name of codec is stored with the item, so the codec must never change its format.
+ */
+public interface BlobContentCodec {
+
+    /**
+     * Returns the name of codec stored with the encoded items.
+     * @return name of codec
+     */
+    String getName();
+
+    /**
+     * Encodes the whole content.
+     * @param content content to encode
+     * @return encoded content
+     */
+    byte[] encode(byte[] content);
+
+    /**
+     * Returns a stream decoding the encoded content on the fly.
+     * @param encodedContent stream of encoded content
+     * @return stream of decoded content
+     * @throws IOException it attempts to read the encoded stream
+     */
+    InputStream decode(InputStream encodedContent) throws IOException;
+}
@@ -0,0 +1,31 @@
+package com.igorivkin.blobstorage.blobitem.codec;
+
+import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+
+import java.text.MessageFormat;
+
+/**
+ * Returns content codecs by their names used in configuration file and stored with the items.
+ */
+public class BlobContentCodecs {
+    public static final String NONE = "none";
+    public static final String DEFLATE = "deflate";
+
+    private static final BlobContentCodec DEFLATE_CODEC = new DeflateBlobContentCodec();
+
+    /**
+     * Returns codec by its name, the codecs are stateless and shared.
+     * @param name name of codec
+     * @return codec or null if the content is stored as is
+     * @throws GenericBlobStorageException it will crush if there is no such codec
+     */
+    public static BlobContentCodec forName(String name) throws GenericBlobStorageException {
+        if (name == null || NONE.equals(name)) {
+            return null;
+        } else if (DEFLATE.equals(name)) {
+            return DEFLATE_CODEC;
+        } else {
+            throw new GenericBlobStorageException(MessageFormat.format("Unknown content codec: {0}", name));
+        }
+    }
+}
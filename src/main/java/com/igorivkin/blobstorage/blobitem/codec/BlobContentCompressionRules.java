@@ -0,0 +1,57 @@
+package com.igorivkin.blobstorage.blobitem.codec;
+
+import com.igorivkin.blobstorage.blobitem.MimeTypeRules;
+import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Chooses the codec compressing the content by its mime-type, see {@link MimeTypeRules}.
+ * Formats that are compressed already are never compressed again.
+ */
+public class BlobContentCompressionRules {
+
+    /**
+     * Mime-types of formats with compressed content, their compression is just a waste of CPU.
+     */
+    private static final Set<String> ALREADY_COMPRESSED_MIME_TYPES = Set.of(
+            "image/jpeg",
+            "image/jpg",
+            "image/png",
+            "image/gif",
+            "image/webp",
+            "application/zip",
+            "application/gzip"
+    );
+
+    private final MimeTypeRules<BlobContentCodec> codecsByMimeType = new MimeTypeRules<>();
+
+    /**
+     * @param rules codec names by mime-types
+     * @throws GenericBlobStorageException it will crush if some rule refers to unknown codec
+     */
+    public BlobContentCompressionRules(Map<String, String> rules) throws GenericBlobStorageException {
+        if (rules != null) {
+            rules.forEach((mimeType, codecName) -> this.codecsByMimeType.put(mimeType, BlobContentCodecs.forName(codecName)));
+        }
+    }
+
+    /**
+     * Returns the codec for the content of a given mime-type.
+     * @param mimeType mime-type of the content
+     * @return codec or null if the content should be stored as is
+     */
+    public BlobContentCodec getCodec(String mimeType) {
+        if (mimeType == null || this.isAlreadyCompressed(mimeType)) {
+            return null;
+        }
+        return this.codecsByMimeType.get(mimeType);
+    }
+
+    private boolean isAlreadyCompressed(String mimeType) {
+        return ALREADY_COMPRESSED_MIME_TYPES.contains(mimeType)
+               || mimeType.startsWith("video/")
+               || mimeType.startsWith("audio/");
+    }
+}
@@ -0,0 +1,42 @@
+package com.igorivkin.blobstorage.blobitem.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.zip.Deflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Compresses the content with deflate algorithm (zlib format) provided by the JDK.
+ */
+public class DeflateBlobContentCodec implements BlobContentCodec {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    @Override
+    public String getName() {
+        return BlobContentCodecs.DEFLATE;
+    }
+
+    @Override
+    public byte[] encode(byte[] content) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(content);
+            deflater.finish();
+            ByteArrayOutputStream encodedContent = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            byte[] buffer = new byte[Math.min(BUFFER_SIZE, Math.max(64, content.length))];
+            while (!deflater.finished()) {
+                int length = deflater.deflate(buffer);
+                encodedContent.write(buffer, 0, length);
+            }
+            return encodedContent.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    @Override
+    public InputStream decode(InputStream encodedContent) {
+        // Stream created with the default inflater releases its native memory once it's closed
+        return new InflaterInputStream(encodedContent);
+    }
+}
@@ -1,7 +1,13 @@
 package com.igorivkin.blobstorage.blobstorage;
 
 import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemBatchRead;
+import com.igorivkin.blobstorage.blobitem.BlobItemBatchResult;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfoBatchRead;
+import com.igorivkin.blobstorage.blobitem.BlobItemSource;
 import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobvolume.BlobFileRegion;
 import com.igorivkin.blobstorage.blobvolume.BlobVolume;
 import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
 import com.igorivkin.blobstorage.exceptions.NoSuchBlobVolumeException;
@@ -10,6 +16,7 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.io.InputStream;
 import java.sql.SQLException;
+import java.util.List;
 
 @Service
 public interface BlobStorage {
@@ -17,9 +24,30 @@ public interface BlobStorage {
     BlobStoredItemAddress storeItem(InputStream itemBinaryStream, String mimeType)
             throws IOException, SQLException, GenericBlobStorageException;
 
+    BlobStoredItemAddress storeItem(InputStream itemBinaryStream, String mimeType, long expectedSize)
+            throws IOException, SQLException, GenericBlobStorageException;
+
+    List<BlobItemBatchResult> storeItems(List<BlobItemSource> itemSources);
+
     BlobItem getItem(long id, int idVolume)
             throws SQLException, GenericBlobStorageException;
 
+    List<BlobItemBatchRead> getItems(List<BlobStoredItemAddress> addresses);
+
+    List<BlobItemInfoBatchRead> getItemInfos(List<BlobStoredItemAddress> addresses);
+
+    BlobItemInfo getItemInfo(long id, int idVolume)
+            throws SQLException, GenericBlobStorageException;
+
+    BlobItemInfo stat(long id, int idVolume)
+            throws SQLException, GenericBlobStorageException;
+
+    BlobFileRegion getItemFileRegion(long id, int idVolume)
+            throws SQLException, GenericBlobStorageException;
+
+    InputStream getItemContent(long id, int idVolume, long offset, long length)
+            throws SQLException, GenericBlobStorageException;
+
     void deleteItem(long id, int idVolume)
             throws SQLException, GenericBlobStorageException;
 
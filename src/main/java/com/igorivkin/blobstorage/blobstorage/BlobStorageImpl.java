@@ -1,28 +1,69 @@
 package com.igorivkin.blobstorage.blobstorage;
 
+import com.igorivkin.blobstorage.blobitem.BlobContentHash;
+import com.igorivkin.blobstorage.blobitem.BlobContentReader;
 import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemBatchRead;
+import com.igorivkin.blobstorage.blobitem.BlobItemBatchResult;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfoBatchRead;
+import com.igorivkin.blobstorage.blobitem.BlobItemSource;
 import com.igorivkin.blobstorage.blobitem.BlobItemStatus;
 import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobitem.codec.BlobContentCodec;
+import com.igorivkin.blobstorage.blobvolume.BlobFileRegion;
 import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import com.igorivkin.blobstorage.blobstorage.compaction.BlobAddressForwarding;
 import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobstorage.dedup.BlobContentIndex;
+import com.igorivkin.blobstorage.cache.BlobItemCache;
+import com.igorivkin.blobstorage.cache.CachedBlobItem;
 import com.igorivkin.blobstorage.exceptions.*;
+import com.igorivkin.blobstorage.metrics.BlobStorageMetrics;
+import io.micrometer.core.instrument.Timer;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.io.File;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.sql.SQLException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 @Service
 public class BlobStorageImpl implements BlobStorage {
+
+    /**
+     * Number of chunks of chunked item stored in one transaction.
+     */
+    private static final int CHUNKS_PER_TRANSACTION = 16;
+
     private final BlobStorageConfigProvider configProvider;
+    private final BlobItemCache blobItemCache;
+    private final BlobContentIndex blobContentIndex;
+    private final BlobAddressForwarding addressForwarding;
+    private final BlobStorageMetrics metrics;
 
     @Autowired
-    public BlobStorageImpl(BlobStorageConfigProvider configProvider) {
+    public BlobStorageImpl(BlobStorageConfigProvider configProvider,
+                           BlobItemCache blobItemCache,
+                           BlobContentIndex blobContentIndex,
+                           BlobAddressForwarding addressForwarding,
+                           BlobStorageMetrics metrics) {
         this.configProvider = configProvider;
+        this.blobItemCache = blobItemCache;
+        this.blobContentIndex = blobContentIndex;
+        this.addressForwarding = addressForwarding;
+        this.metrics = metrics;
     }
 
     /**
@@ -39,46 +80,190 @@ public class BlobStorageImpl implements BlobStorage {
     @Override
     public BlobStoredItemAddress storeItem(InputStream itemBinaryStream, String mimeType)
             throws IOException, GenericBlobStorageException, SQLException {
+        return this.storeItem(itemBinaryStream, mimeType, -1);
+    }
 
-        this.checkMimeType(mimeType);
+    /**
+     * Stores a given file (represented by InputStream to the blob storage
+     * choosing a suitable blob volume for that operation. The size declared beforehand
+     * (e.g. by the multipart request) allows to reject too big item without reading it
+     * and to read the content directly into the array of the exact size.
+     * If deduplication is enabled and the same content is already stored, the address
+     * of the stored copy is returned instead. Items bigger than the chunked item threshold
+     * are stored as chunks, so they are never kept on heap as a whole. Items of declared size
+     * bigger than the segment item threshold are kept in the segment file of the volume.
+     *
+     * @param itemBinaryStream input stream representing content of a given file
+     * @param mimeType         mime-type of a given file
+     * @param expectedSize     declared size of a given file in bytes, negative if unknown
+     * @return ID of inserted entity
+     * @throws IOException                 it attempts to read the stream
+     * @throws GenericBlobStorageException it checks for the incoming params and available blob volumes
+     * @throws SQLException                it attempts to insert data to sqlite database
+     */
+    @Override
+    public BlobStoredItemAddress storeItem(InputStream itemBinaryStream, String mimeType, long expectedSize)
+            throws IOException, GenericBlobStorageException, SQLException {
+        Timer.Sample sample = this.metrics.startTimer();
+        BlobStoredItemAddress storedItemAddress = null;
+        try {
+            storedItemAddress = this.storeSingleItem(itemBinaryStream, mimeType, expectedSize);
+            return storedItemAddress;
+        } finally {
+            this.metrics.recordOperation(sample, "storeItem",
+                    storedItemAddress != null ? storedItemAddress.getVolumeId() : 0,
+                    storedItemAddress != null ? BlobStorageMetrics.OUTCOME_SUCCESS : BlobStorageMetrics.OUTCOME_ERROR);
+        }
+    }
 
-        // Now prepare the item to store
-        BlobItem itemToStore = new BlobItem();
-        itemToStore.setMimeType(mimeType);
-        itemToStore.setStatus(BlobItemStatus.COMMITTED);
-        itemToStore.setContent(itemBinaryStream.readAllBytes());
+    /**
+     * Stores a single item choosing the way to store it by its size, see {@link #storeItem(InputStream, String, long)}.
+     */
+    private BlobStoredItemAddress storeSingleItem(InputStream itemBinaryStream, String mimeType, long expectedSize)
+            throws IOException, GenericBlobStorageException, SQLException {
+        if (expectedSize > this.configProvider.getSegmentItemThresholdInBytes()) {
+            return this.storeSegmentItem(itemBinaryStream, mimeType, expectedSize);
+        }
+        long chunkedItemThreshold = this.configProvider.getChunkedItemThresholdInBytes();
+        if (expectedSize > chunkedItemThreshold) {
+            return this.storeChunkedItem(itemBinaryStream, mimeType, expectedSize);
+        }
+        if (expectedSize < 0) {
+            // The size is unknown, so the beginning of the stream tells whether the item is big
+            this.checkMimeType(mimeType);
+            byte[] head = this.readAhead(itemBinaryStream);
+            if (head.length > chunkedItemThreshold) {
+                return this.storeChunkedItem(new SequenceInputStream(new ByteArrayInputStream(head), itemBinaryStream), mimeType, -1);
+            }
+            itemBinaryStream = new ByteArrayInputStream(head);
+            expectedSize = head.length;
+        }
 
-        // It seems to be inefficient to prepare the item object before to check for the size but actually there is no
-        // reliable way to know the size of stream than to read all of it. Method .available() is very unreliable and
-        // officially not recommended to use in such a context.
-        int sizeOfItem = itemToStore.getContent().length;
-        this.checkBlobItemSize(sizeOfItem);
+        BlobItem itemToStore = this.readItemToStore(itemBinaryStream, mimeType, expectedSize);
+        if (this.blobContentIndex.isEnabled()) {
+            BlobStoredItemAddress existingItemAddress = this.addReferenceToStoredCopy(itemToStore.getContentHash(), mimeType);
+            if (existingItemAddress != null) {
+                return existingItemAddress;
+            }
+        }
+        this.compressContent(itemToStore);
 
-        BlobVolume suitableBlobVolume = this.getSuitableBlobVolume(sizeOfItem);
-        if (suitableBlobVolume == null) {
-            synchronized (this) {
-                // Check again for the suitable blob volumes because it is possible
-                // that many threads at the same time were going to this section
-                // and somebody has already created the new blob volume
-                suitableBlobVolume = this.getSuitableBlobVolume(sizeOfItem);
-                if (suitableBlobVolume == null) {
-                    // If we found no suitable blob volume that we will try to create one
-                    // but only if we are allowed to do that (regulates in blobstorage.json config)
-                    if (this.configProvider.isAllowToCreateNewVolume()) {
-                        suitableBlobVolume = createNewBlobVolume();
-                    } else {
-                        throw new GenericBlobStorageException("No blob volumes are available to store the item");
+        // The space is reserved before the insert, so the concurrent writers can't overfill the volume.
+        // The compressed content is what's stored, so its size is taken into account.
+        long storedSize = BlobVolume.estimateStoredSize(itemToStore.getContentSize());
+        BlobVolume suitableBlobVolume = this.reserveBlobVolume(storedSize);
+
+        // Now we are able to insert the item finally
+        BlobStoredItemAddress storedItemAddress;
+        try {
+            storedItemAddress = suitableBlobVolume.insert(itemToStore);
+            suitableBlobVolume.commitReservation(storedSize);
+        } catch (SQLException | RuntimeException exception) {
+            suitableBlobVolume.releaseReservation(storedSize);
+            throw exception;
+        } finally {
+            this.configProvider.updateBlobVolumeWritability(suitableBlobVolume);
+        }
+        if (this.blobContentIndex.isEnabled()) {
+            this.blobContentIndex.put(itemToStore.getContentHash(), mimeType, storedItemAddress);
+        }
+        return storedItemAddress;
+    }
+
+    /**
+     * Stores several files at once. The files are read one by one and then inserted grouping
+     * them by blob volumes, so every volume gets all its items in one transaction. The failure
+     * of one file does not prevent the others from being stored, so the status is returned
+     * for every file. Big files and the files of unknown size above the chunked item threshold
+     * are stored in chunks on their own, so no more than the threshold is kept on heap per file.
+     *
+     * @param itemSources files to store
+     * @return results in the same order as the files were given
+     */
+    @Override
+    public List<BlobItemBatchResult> storeItems(List<BlobItemSource> itemSources) {
+        BlobItemBatchResult[] results = new BlobItemBatchResult[itemSources.size()];
+        Map<BlobVolume, List<Integer>> itemIndexesByVolume = new LinkedHashMap<>();
+        BlobItem[] itemsToStore = new BlobItem[itemSources.size()];
+        long chunkedItemThreshold = this.configProvider.getChunkedItemThresholdInBytes();
+
+        for (int i = 0; i < itemSources.size(); i++) {
+            BlobItemSource itemSource = itemSources.get(i);
+            try {
+                if (itemSource.getExpectedSize() > chunkedItemThreshold
+                        || itemSource.getExpectedSize() > this.configProvider.getSegmentItemThresholdInBytes()) {
+                    // Big items are stored on their own, they can't share a transaction anyway
+                    results[i] = BlobItemBatchResult.ok(
+                            this.storeItem(itemSource.getInputStream(), itemSource.getMimeType(), itemSource.getExpectedSize())
+                    );
+                    continue;
+                }
+                InputStream itemBinaryStream = itemSource.getInputStream();
+                long expectedSize = itemSource.getExpectedSize();
+                if (expectedSize < 0) {
+                    // The size is unknown, so the beginning of the stream tells whether the item is big
+                    this.checkMimeType(itemSource.getMimeType());
+                    byte[] head = this.readAhead(itemBinaryStream);
+                    if (head.length > chunkedItemThreshold) {
+                        results[i] = BlobItemBatchResult.ok(this.storeChunkedItem(
+                                new SequenceInputStream(new ByteArrayInputStream(head), itemBinaryStream), itemSource.getMimeType(), -1
+                        ));
+                        continue;
                     }
+                    itemBinaryStream = new ByteArrayInputStream(head);
+                    expectedSize = head.length;
                 }
+                BlobItem itemToStore = this.readItemToStore(itemBinaryStream, itemSource.getMimeType(), expectedSize);
+                if (this.blobContentIndex.isEnabled()) {
+                    BlobStoredItemAddress existingItemAddress = this.addReferenceToStoredCopy(itemToStore.getContentHash(), itemToStore.getMimeType());
+                    if (existingItemAddress != null) {
+                        results[i] = BlobItemBatchResult.ok(existingItemAddress);
+                        continue;
+                    }
+                }
+                this.compressContent(itemToStore);
+                BlobVolume blobVolume = this.reserveBlobVolume(BlobVolume.estimateStoredSize(itemToStore.getContentSize()));
+                itemsToStore[i] = itemToStore;
+                itemIndexesByVolume.computeIfAbsent(blobVolume, volume -> new ArrayList<>()).add(i);
+            } catch (IOException | SQLException | GenericBlobStorageException exception) {
+                results[i] = BlobItemBatchResult.error(null, exception.getMessage());
             }
         }
 
-        // Now we are able to insert the item finally
-        return suitableBlobVolume.insert(itemToStore);
+        for (Map.Entry<BlobVolume, List<Integer>> volumeItems : itemIndexesByVolume.entrySet()) {
+            BlobVolume blobVolume = volumeItems.getKey();
+            List<BlobItem> volumeItemsToStore = new ArrayList<>(volumeItems.getValue().size());
+            long storedSize = 0;
+            for (int itemIndex : volumeItems.getValue()) {
+                volumeItemsToStore.add(itemsToStore[itemIndex]);
+                storedSize += BlobVolume.estimateStoredSize(itemsToStore[itemIndex].getContentSize());
+            }
+            try {
+                List<BlobStoredItemAddress> storedItemAddresses = blobVolume.insertAll(volumeItemsToStore);
+                blobVolume.commitReservation(storedSize);
+                for (int j = 0; j < storedItemAddresses.size(); j++) {
+                    BlobItem storedItem = volumeItemsToStore.get(j);
+                    if (this.blobContentIndex.isEnabled()) {
+                        this.blobContentIndex.put(storedItem.getContentHash(), storedItem.getMimeType(), storedItemAddresses.get(j));
+                    }
+                    results[volumeItems.getValue().get(j)] = BlobItemBatchResult.ok(storedItemAddresses.get(j));
+                }
+            } catch (SQLException | RuntimeException exception) {
+                blobVolume.releaseReservation(storedSize);
+                for (int itemIndex : volumeItems.getValue()) {
+                    results[itemIndex] = BlobItemBatchResult.error(null, exception.getMessage());
+                }
+            } finally {
+                this.configProvider.updateBlobVolumeWritability(blobVolume);
+            }
+        }
+        return Arrays.asList(results);
     }
 
     /**
      * Returns a blob item by its given volume ID and ID inside volume.
+     * Hot items are served from the cache. The address of the item moved by the compaction
+     * is forwarded to its new place.
      *
      * @param id       ID of entity
      * @param idVolume ID of volume
@@ -88,19 +273,237 @@ public class BlobStorageImpl implements BlobStorage {
      */
     @Override
     public BlobItem getItem(long id, int idVolume) throws GenericBlobStorageException, SQLException {
-        return configProvider.getBlobVolumes()
-                .values()
-                .stream()
-                .filter(blobVolume -> blobVolume.getVolumeId() == idVolume)
-                .findFirst()
-                .orElseThrow(() -> {
-                    throw new NoSuchBlobVolumeException(MessageFormat.format("There is no such blob volume with ID {0}", idVolume));
-                })
-                .getById(id);
+        Timer.Sample sample = metrics.startTimer();
+        String outcome = BlobStorageMetrics.OUTCOME_ERROR;
+        // The volume is tagged only once it's found, so unknown IDs given by clients do not make new timers
+        int taggedVolumeId = 0;
+        try {
+            BlobStoredItemAddress address = new BlobStoredItemAddress(id, idVolume);
+            CachedBlobItem cachedItem = blobItemCache.get(address);
+            if (cachedItem != null) {
+                taggedVolumeId = idVolume;
+                outcome = BlobStorageMetrics.OUTCOME_SUCCESS;
+                return cachedItem.toBlobItem();
+            }
+            long invalidationStamp = blobItemCache.getInvalidationStamp();
+            BlobStoredItemAddress resolvedAddress = addressForwarding.resolve(address);
+            BlobVolume blobVolume = configProvider.getBlobVolumeById(resolvedAddress.getVolumeId());
+            taggedVolumeId = blobVolume.getVolumeId();
+            BlobItem item = blobVolume.getById(resolvedAddress.getId());
+            blobItemCache.put(address, item, invalidationStamp);
+            outcome = BlobStorageMetrics.outcomeOf(item);
+            return item;
+        } catch (NoSuchBlobVolumeException exception) {
+            outcome = BlobStorageMetrics.OUTCOME_NOT_FOUND;
+            throw exception;
+        } finally {
+            metrics.recordOperation(sample, "getItem", taggedVolumeId, outcome);
+        }
+    }
+
+    /**
+     * Returns several blob items at once. Cached items are taken from the cache, the others
+     * are grouped by blob volumes and every volume is queried once for all its items.
+     * The status is returned for every requested item: found, not found or failed if its
+     * volume could not be read.
+     *
+     * @param addresses addresses of items
+     * @return results with the items in the same order as the addresses were given
+     */
+    @Override
+    public List<BlobItemBatchRead> getItems(List<BlobStoredItemAddress> addresses) {
+        BlobItemBatchRead[] results = new BlobItemBatchRead[addresses.size()];
+        BlobStoredItemAddress[] resolvedAddresses = new BlobStoredItemAddress[addresses.size()];
+        Map<Integer, List<Integer>> itemIndexesByVolume = new LinkedHashMap<>();
+        for (int i = 0; i < addresses.size(); i++) {
+            BlobStoredItemAddress address = addresses.get(i);
+            CachedBlobItem cachedItem = blobItemCache.get(address);
+            if (cachedItem != null) {
+                results[i] = BlobItemBatchRead.found(address, cachedItem.toBlobItem());
+            } else {
+                resolvedAddresses[i] = addressForwarding.resolve(address);
+                itemIndexesByVolume.computeIfAbsent(resolvedAddresses[i].getVolumeId(), volumeId -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (Map.Entry<Integer, List<Integer>> volumeItems : itemIndexesByVolume.entrySet()) {
+            List<Long> ids = new ArrayList<>(volumeItems.getValue().size());
+            for (int itemIndex : volumeItems.getValue()) {
+                ids.add(resolvedAddresses[itemIndex].getId());
+            }
+            try {
+                long invalidationStamp = blobItemCache.getInvalidationStamp();
+                Map<Long, BlobItem> itemsById = configProvider.getBlobVolumeById(volumeItems.getKey()).getByIds(ids);
+                for (int itemIndex : volumeItems.getValue()) {
+                    BlobStoredItemAddress address = addresses.get(itemIndex);
+                    BlobItem item = itemsById.get(resolvedAddresses[itemIndex].getId());
+                    if (item != null) {
+                        blobItemCache.put(address, item, invalidationStamp);
+                        results[itemIndex] = BlobItemBatchRead.found(address, item);
+                    } else {
+                        results[itemIndex] = BlobItemBatchRead.notFound(address);
+                    }
+                }
+            } catch (NoSuchBlobVolumeException exception) {
+                for (int itemIndex : volumeItems.getValue()) {
+                    results[itemIndex] = BlobItemBatchRead.notFound(addresses.get(itemIndex));
+                }
+            } catch (SQLException | GenericBlobStorageException exception) {
+                for (int itemIndex : volumeItems.getValue()) {
+                    results[itemIndex] = BlobItemBatchRead.error(addresses.get(itemIndex), exception.getMessage());
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Describes several blob items at once, the content is not read. Cached items are described
+     * by the cache, the others are grouped by blob volumes and every volume is queried once
+     * for all its items. It lets the content of the items be streamed one by one afterwards,
+     * see {@link #getItemContent(long, int, long, long)}.
+     *
+     * @param addresses addresses of items
+     * @return results with the item descriptions in the same order as the addresses were given
+     */
+    @Override
+    public List<BlobItemInfoBatchRead> getItemInfos(List<BlobStoredItemAddress> addresses) {
+        BlobItemInfoBatchRead[] results = new BlobItemInfoBatchRead[addresses.size()];
+        BlobStoredItemAddress[] resolvedAddresses = new BlobStoredItemAddress[addresses.size()];
+        Map<Integer, List<Integer>> itemIndexesByVolume = new LinkedHashMap<>();
+        for (int i = 0; i < addresses.size(); i++) {
+            BlobStoredItemAddress address = addresses.get(i);
+            CachedBlobItem cachedItem = blobItemCache.get(address);
+            if (cachedItem != null) {
+                results[i] = BlobItemInfoBatchRead.found(address, cachedItem.toBlobItemInfo());
+            } else {
+                resolvedAddresses[i] = addressForwarding.resolve(address);
+                itemIndexesByVolume.computeIfAbsent(resolvedAddresses[i].getVolumeId(), volumeId -> new ArrayList<>()).add(i);
+            }
+        }
+
+        for (Map.Entry<Integer, List<Integer>> volumeItems : itemIndexesByVolume.entrySet()) {
+            List<Long> ids = new ArrayList<>(volumeItems.getValue().size());
+            for (int itemIndex : volumeItems.getValue()) {
+                ids.add(resolvedAddresses[itemIndex].getId());
+            }
+            try {
+                Map<Long, BlobItemInfo> itemInfosById = configProvider.getBlobVolumeById(volumeItems.getKey()).getInfosByIds(ids);
+                for (int itemIndex : volumeItems.getValue()) {
+                    BlobStoredItemAddress address = addresses.get(itemIndex);
+                    BlobItemInfo itemInfo = itemInfosById.get(resolvedAddresses[itemIndex].getId());
+                    results[itemIndex] = itemInfo != null
+                            ? BlobItemInfoBatchRead.found(address, itemInfo)
+                            : BlobItemInfoBatchRead.notFound(address);
+                }
+            } catch (NoSuchBlobVolumeException exception) {
+                for (int itemIndex : volumeItems.getValue()) {
+                    results[itemIndex] = BlobItemInfoBatchRead.notFound(addresses.get(itemIndex));
+                }
+            } catch (SQLException | GenericBlobStorageException exception) {
+                for (int itemIndex : volumeItems.getValue()) {
+                    results[itemIndex] = BlobItemInfoBatchRead.error(addresses.get(itemIndex), exception.getMessage());
+                }
+            }
+        }
+        return Arrays.asList(results);
+    }
+
+    /**
+     * Returns a description of blob item by its given volume ID and ID inside volume.
+     * The content itself is not read.
+     *
+     * @param id       ID of entity
+     * @param idVolume ID of volume
+     * @return blob item description, null if there is no such item
+     * @throws GenericBlobStorageException it is possible that there will be no such blob volume
+     * @throws SQLException                it attempts to perform select query
+     */
+    @Override
+    public BlobItemInfo getItemInfo(long id, int idVolume) throws GenericBlobStorageException, SQLException {
+        CachedBlobItem cachedItem = blobItemCache.get(new BlobStoredItemAddress(id, idVolume));
+        if (cachedItem != null) {
+            return cachedItem.toBlobItemInfo();
+        }
+        return this.stat(id, idVolume);
+    }
+
+    /**
+     * Returns mime-type, status, size, content hash and creation time of blob item. Served by
+     * the metadata of the volume only, so it costs a single index lookup and never reads
+     * the content, which makes it suitable for existence checks and conditional requests.
+     *
+     * @param id       ID of entity
+     * @param idVolume ID of volume
+     * @return blob item description, null if there is no such item
+     * @throws GenericBlobStorageException it is possible that there will be no such blob volume
+     * @throws SQLException                it attempts to perform select query
+     */
+    @Override
+    public BlobItemInfo stat(long id, int idVolume) throws GenericBlobStorageException, SQLException {
+        BlobStoredItemAddress resolvedAddress = addressForwarding.resolve(new BlobStoredItemAddress(id, idVolume));
+        return configProvider.getBlobVolumeById(resolvedAddress.getVolumeId()).getInfoById(resolvedAddress.getId());
+    }
+
+    /**
+     * Returns the region of the segment file keeping the content of blob item, so the content
+     * can be sent by the file itself without reading it into memory.
+     *
+     * @param id       ID of entity
+     * @param idVolume ID of volume
+     * @return region of the segment file, null if the item is not kept in the segment file
+     * @throws GenericBlobStorageException it is possible that there will be no such blob volume
+     * @throws SQLException                it attempts to perform select query
+     */
+    @Override
+    public BlobFileRegion getItemFileRegion(long id, int idVolume) throws GenericBlobStorageException, SQLException {
+        BlobStoredItemAddress resolvedAddress = addressForwarding.resolve(new BlobStoredItemAddress(id, idVolume));
+        return configProvider.getBlobVolumeById(resolvedAddress.getVolumeId()).getFileRegion(resolvedAddress.getId());
+    }
+
+    /**
+     * Returns a stream reading the content of blob item chunk by chunk. The stream
+     * reads exactly the given range of bytes, so the caller should know the item size
+     * beforehand (see {@link #getItemInfo(long, int)}). Items small enough to be cached are
+     * loaded at once and put into the cache, so the next requests are served from memory.
+     * It's the stored size of the item that is checked, not the size of the requested range,
+     * so a short range of a big item never loads the whole item.
+     *
+     * @param id       ID of entity
+     * @param idVolume ID of volume
+     * @param offset   zero-based offset of the first byte to read
+     * @param length   number of bytes to read
+     * @return stream of the content, null if there is no such item or it's deleted
+     * @throws GenericBlobStorageException it is possible that there will be no such blob volume
+     * @throws SQLException                it attempts to load the small item to cache it
+     */
+    @Override
+    public InputStream getItemContent(long id, int idVolume, long offset, long length) throws GenericBlobStorageException, SQLException {
+        BlobStoredItemAddress address = new BlobStoredItemAddress(id, idVolume);
+        CachedBlobItem cachedItem = blobItemCache.get(address);
+        if (cachedItem != null) {
+            return cachedItem.openStream(offset, length);
+        }
+        BlobStoredItemAddress resolvedAddress = addressForwarding.resolve(address);
+        BlobVolume blobVolume = configProvider.getBlobVolumeById(resolvedAddress.getVolumeId());
+        // The range is a part of the item, so the item is too big to cache if the range is
+        if (blobItemCache.isAdmissible(length)) {
+            long invalidationStamp = blobItemCache.getInvalidationStamp();
+            BlobItemInfo itemInfo = blobVolume.getInfoById(resolvedAddress.getId());
+            if (itemInfo != null && blobItemCache.isAdmissible(itemInfo.getSize())) {
+                cachedItem = blobItemCache.put(address, blobVolume.getById(resolvedAddress.getId()), invalidationStamp);
+                if (cachedItem != null) {
+                    return cachedItem.openStream(offset, length);
+                }
+            }
+        }
+        return blobVolume.openContentStream(resolvedAddress.getId(), offset, length);
     }
 
     /**
      * Deletes a blob item with a given ID and volume ID. Returns nothing normally.
+     * If the content is shared by several stored items (see deduplication) only
+     * one reference is dropped and the content is removed with the last one.
      *
      * @param id       ID of entity
      * @param idVolume ID of volume
@@ -109,15 +512,27 @@ public class BlobStorageImpl implements BlobStorage {
      */
     @Override
     public void deleteItem(long id, int idVolume) throws SQLException, GenericBlobStorageException {
-        configProvider.getBlobVolumes()
-                .values()
-                .stream()
-                .filter(blobVolume -> blobVolume.getVolumeId() == idVolume)
-                .findFirst()
-                .orElseThrow(() -> {
-                    throw new NoSuchBlobVolumeException(MessageFormat.format("There is no such blob volume with ID {0}", idVolume));
-                })
-                .delete(id);
+        Timer.Sample sample = metrics.startTimer();
+        String outcome = BlobStorageMetrics.OUTCOME_ERROR;
+        int taggedVolumeId = 0;
+        try {
+            BlobStoredItemAddress address = new BlobStoredItemAddress(id, idVolume);
+            BlobStoredItemAddress resolvedAddress = addressForwarding.resolve(address);
+            BlobVolume blobVolume = configProvider.getBlobVolumeById(resolvedAddress.getVolumeId());
+            taggedVolumeId = blobVolume.getVolumeId();
+            if (blobVolume.delete(resolvedAddress.getId())) {
+                blobContentIndex.remove(resolvedAddress);
+                blobItemCache.invalidate(address);
+                blobItemCache.invalidate(resolvedAddress);
+            }
+            configProvider.updateBlobVolumeWritability(blobVolume);
+            outcome = BlobStorageMetrics.OUTCOME_SUCCESS;
+        } catch (NoSuchBlobVolumeException exception) {
+            outcome = BlobStorageMetrics.OUTCOME_NOT_FOUND;
+            throw exception;
+        } finally {
+            metrics.recordOperation(sample, "deleteItem", taggedVolumeId, outcome);
+        }
     }
 
     /**
@@ -128,46 +543,367 @@ public class BlobStorageImpl implements BlobStorage {
      * @throws SQLException it will try to execute DDL query
      */
     @Override
-    public synchronized BlobVolume createNewBlobVolume() throws SQLException {
-        int blobVolumeIndex = this.configProvider.getBlobVolumes().size() + 1;
-        BlobVolume blobVolume = this.configProvider.getBlobVolumeProvider().getObject();
-        blobVolume.initialize(blobVolumeIndex);
-        this.configProvider.appendToDatabaseVolumes(blobVolume.getVolumeFile());
-        this.configProvider.getBlobVolumes().put(blobVolume.getVolumeName(), blobVolume);
-        return blobVolume;
+    public BlobVolume createNewBlobVolume() throws SQLException {
+        return this.configProvider.createBlobVolume();
     }
 
     /**
      * Returns suitable database volume that has free space to store that
      * should be normally lesser than maximal blob volume size in bytes.
+     * The space is not reserved, so the result is just a hint for the caller.
      *
      * @param desiredSpace space of entity we want to store
-     * @return a file of suitable database to store the entity
+     * @return a suitable blob volume to store the entity, null if there is no one
      */
     @Override
     public BlobVolume getSuitableBlobVolume(long desiredSpace) throws GenericBlobStorageException {
-        // If there is no volumes at all then return null immediately
-        if (this.configProvider.getDatabaseVolumes().size() == 0) {
-            return null;
+        Timer.Sample sample = this.metrics.startTimer();
+        BlobVolume suitableBlobVolume = null;
+        try {
+            // The free space is tracked in memory, so there is no need to ask the file system
+            // and to lock anything, only the volumes that still have some space are scrolled.
+            for (BlobVolume blobVolume : this.configProvider.getWritableBlobVolumes()) {
+                if (blobVolume.getFreeBytes() >= desiredSpace) {
+                    suitableBlobVolume = blobVolume;
+                    break;
+                }
+            }
+            return suitableBlobVolume;
+        } finally {
+            this.metrics.recordOperation(sample, "getSuitableBlobVolume",
+                    suitableBlobVolume != null ? suitableBlobVolume.getVolumeId() : 0,
+                    BlobStorageMetrics.outcomeOf(suitableBlobVolume));
+        }
+    }
+
+    /**
+     * Reads the beginning of the stream of unknown size, it tells whether the item is big.
+     * No more than the chunked item threshold (or the allowed size) plus one byte is read ahead.
+     *
+     * @param itemBinaryStream input stream representing content of a given file
+     * @return beginning of the content, it's longer than the threshold if the item is big
+     * @throws IOException it attempts to read the stream
+     */
+    private byte[] readAhead(InputStream itemBinaryStream) throws IOException {
+        long readAheadLimit = Math.min(this.configProvider.getChunkedItemThresholdInBytes(), this.configProvider.getMaxBlobItemSize()) + 1;
+        return itemBinaryStream.readNBytes((int) Math.min(readAheadLimit, Integer.MAX_VALUE - 8));
+    }
+
+    /**
+     * Reads the content of item to store. The size is checked while the stream is being read,
+     * so the oversized item is rejected as soon as the limit is exceeded and no more than
+     * the allowed size is kept on heap. The hash is computed on the fly as well.
+     *
+     * @param itemBinaryStream input stream representing content of a given file
+     * @param mimeType         mime-type of a given file
+     * @param expectedSize     declared size of a given file in bytes, negative if unknown
+     * @return item to store, the content is not compressed yet
+     * @throws IOException                 it attempts to read the stream
+     * @throws GenericBlobStorageException it checks the mime-type and the size of content
+     */
+    private BlobItem readItemToStore(InputStream itemBinaryStream, String mimeType, long expectedSize)
+            throws IOException, GenericBlobStorageException {
+        this.checkMimeType(mimeType);
+        MessageDigest contentDigest = BlobContentHash.newDigest();
+        byte[] content = BlobContentReader.read(
+                new DigestInputStream(itemBinaryStream, contentDigest), expectedSize, this.configProvider.getMaxBlobItemSize()
+        );
+
+        // The content is passed further without copying
+        BlobItem itemToStore = new BlobItem();
+        itemToStore.setMimeType(mimeType);
+        itemToStore.setStatus(BlobItemStatus.COMMITTED);
+        itemToStore.setRawContent(content);
+        itemToStore.setContentHash(BlobContentHash.toHex(contentDigest.digest()));
+        return itemToStore;
+    }
+
+    /**
+     * Stores the item as fixed-size chunks reading its stream chunk by chunk, so only a few chunks
+     * are kept on heap at once. The chunks go to a single volume in transactions of
+     * {@link #CHUNKS_PER_TRANSACTION} chunks, the item stays pending and invisible until the last
+     * chunk is stored. If the size is declared, the space is reserved for the whole item beforehand,
+     * otherwise it's reserved chunk by chunk and the item fails once the volume is full.
+     *
+     * @param itemBinaryStream input stream representing content of a given file
+     * @param mimeType         mime-type of a given file
+     * @param expectedSize     declared size of a given file in bytes, negative if unknown
+     * @return address of the stored item
+     * @throws IOException                 it attempts to read the stream
+     * @throws GenericBlobStorageException it checks the mime-type, the size of content and available blob volumes
+     * @throws SQLException                it attempts to insert data to sqlite database
+     */
+    private BlobStoredItemAddress storeChunkedItem(InputStream itemBinaryStream, String mimeType, long expectedSize)
+            throws IOException, GenericBlobStorageException, SQLException {
+        this.checkMimeType(mimeType);
+        long maxAllowedSize = this.configProvider.getMaxBlobItemSize();
+        if (expectedSize > maxAllowedSize) {
+            throw this.tooBigItem(expectedSize, maxAllowedSize);
+        }
+        int chunkSize = this.configProvider.getChunkSizeInBytes();
+        MessageDigest contentDigest = BlobContentHash.newDigest();
+
+        long reservedSize = BlobVolume.estimateStoredSize(expectedSize >= 0 ? expectedSize : (long) chunkSize * CHUNKS_PER_TRANSACTION);
+        BlobVolume blobVolume = this.reserveBlobVolume(reservedSize);
+        BlobStoredItemAddress storedItemAddress = null;
+        boolean committed = false;
+        try {
+            storedItemAddress = blobVolume.createChunkedItem(mimeType, chunkSize);
+            List<byte[]> chunks = new ArrayList<>(CHUNKS_PER_TRANSACTION);
+            long batchSize = 0;
+            long contentSize = 0;
+            int chunkIndex = 0;
+            byte[] chunk;
+            do {
+                chunk = itemBinaryStream.readNBytes(chunkSize);
+                if (chunk.length > 0) {
+                    contentSize += chunk.length;
+                    if (contentSize > maxAllowedSize) {
+                        throw this.tooBigItem(contentSize, maxAllowedSize);
+                    }
+                    contentDigest.update(chunk);
+                    chunks.add(chunk);
+                    batchSize += chunk.length;
+                }
+                // The last chunk is shorter than the others or empty
+                boolean lastChunk = chunk.length < chunkSize;
+                if (!chunks.isEmpty() && (chunks.size() == CHUNKS_PER_TRANSACTION || lastChunk)) {
+                    long batchStoredSize = BlobVolume.estimateStoredSize(batchSize);
+                    if (batchStoredSize > reservedSize) {
+                        if (!blobVolume.tryReserve(batchStoredSize - reservedSize)) {
+                            throw new GenericBlobStorageException(MessageFormat.format(
+                                    "Item of {0} bytes does not fit into blob volume {1}", contentSize, blobVolume.getVolumeId()
+                            ));
+                        }
+                        reservedSize = batchStoredSize;
+                    }
+                    blobVolume.insertChunks(storedItemAddress.getId(), chunkIndex, chunks);
+                    // The stored chunks are counted as used space now
+                    long storedSize = Math.min(reservedSize, batchStoredSize);
+                    blobVolume.commitReservation(storedSize);
+                    reservedSize -= storedSize;
+                    chunkIndex += chunks.size();
+                    chunks.clear();
+                    batchSize = 0;
+                }
+            } while (chunk.length == chunkSize);
+            if (expectedSize >= 0 && contentSize != expectedSize) {
+                throw new IOException(
+                        MessageFormat.format("Stream has {0} bytes, but {1} bytes were declared", contentSize, expectedSize)
+                );
+            }
+
+            String contentHash = BlobContentHash.toHex(contentDigest.digest());
+            if (this.blobContentIndex.isEnabled()) {
+                BlobStoredItemAddress existingItemAddress = this.addReferenceToStoredCopy(contentHash, mimeType);
+                if (existingItemAddress != null) {
+                    return existingItemAddress;
+                }
+            }
+            blobVolume.commitChunkedItem(storedItemAddress.getId(), contentSize, contentHash);
+            committed = true;
+            if (this.blobContentIndex.isEnabled()) {
+                this.blobContentIndex.put(contentHash, mimeType, storedItemAddress);
+            }
+            return storedItemAddress;
+        } finally {
+            blobVolume.releaseReservation(reservedSize);
+            if (storedItemAddress != null && !committed) {
+                this.discardChunkedItem(blobVolume, storedItemAddress.getId());
+            }
+            this.configProvider.updateBlobVolumeWritability(blobVolume);
+        }
+    }
+
+    /**
+     * Appends the content of the item to the segment file of a suitable volume and inserts
+     * the item row pointing to it. The content is copied from the stream straight to the file,
+     * so it's never kept on heap as a whole. The region of the item that was not stored
+     * completely stays unused in the segment file.
+     *
+     * @param itemBinaryStream input stream representing content of a given file
+     * @param mimeType         mime-type of a given file
+     * @param expectedSize     declared size of a given file in bytes
+     * @return address of the stored item
+     * @throws IOException                 it attempts to read the stream and to write the segment file
+     * @throws GenericBlobStorageException it checks the mime-type, the size of content and available blob volumes
+     * @throws SQLException                it attempts to insert data to sqlite database
+     */
+    private BlobStoredItemAddress storeSegmentItem(InputStream itemBinaryStream, String mimeType, long expectedSize)
+            throws IOException, GenericBlobStorageException, SQLException {
+        this.checkMimeType(mimeType);
+        long maxAllowedSize = this.configProvider.getMaxBlobItemSize();
+        if (expectedSize > maxAllowedSize) {
+            throw this.tooBigItem(expectedSize, maxAllowedSize);
+        }
+
+        long storedSize = BlobVolume.estimateStoredSize(expectedSize);
+        BlobVolume blobVolume = this.reserveBlobVolume(storedSize);
+        try {
+            MessageDigest contentDigest = BlobContentHash.newDigest();
+            long segmentOffset = blobVolume.getSegment().append(new DigestInputStream(itemBinaryStream, contentDigest), expectedSize);
+
+            String contentHash = BlobContentHash.toHex(contentDigest.digest());
+            if (this.blobContentIndex.isEnabled()) {
+                // The content is already appended, so the duplicate just leaves an unused region
+                BlobStoredItemAddress existingItemAddress = this.addReferenceToStoredCopy(contentHash, mimeType);
+                if (existingItemAddress != null) {
+                    return existingItemAddress;
+                }
+            }
+            BlobStoredItemAddress storedItemAddress = blobVolume.insertSegmentItem(mimeType, contentHash, expectedSize, segmentOffset);
+            if (this.blobContentIndex.isEnabled()) {
+                this.blobContentIndex.put(contentHash, mimeType, storedItemAddress);
+            }
+            return storedItemAddress;
+        } finally {
+            // The appended region is counted as used space by the segment itself
+            blobVolume.releaseReservation(storedSize);
+            this.configProvider.updateBlobVolumeWritability(blobVolume);
+        }
+    }
+
+    /**
+     * Removes the chunks of the item that was not stored completely. The failure is not thrown
+     * further, so it can't hide the reason why the item was not stored.
+     *
+     * @param blobVolume blob volume where the chunks are stored
+     * @param id         ID of the pending item
+     */
+    private void discardChunkedItem(BlobVolume blobVolume, long id) {
+        try {
+            blobVolume.discardChunkedItem(id);
+        } catch (SQLException | RuntimeException exception) {
+            // The item stays pending and invisible, its space is taken until it's removed
+        }
+    }
+
+    private TooBigItemException tooBigItem(long size, long maxAllowedSize) {
+        return new TooBigItemException(
+                MessageFormat.format("Size to store is too big {0}, max allowed size is {1} bytes", size, maxAllowedSize)
+        );
+    }
+
+    /**
+     * Reserves the space for the item in a suitable blob volume, creates a new volume if needed
+     * and allowed by configuration.
+     *
+     * @param storedSize space to reserve in bytes
+     * @return a blob volume where the space is reserved
+     * @throws GenericBlobStorageException it will crush if there is no volume to store the item
+     * @throws SQLException                it attempts to create a new volume
+     */
+    private BlobVolume reserveBlobVolume(long storedSize) throws GenericBlobStorageException, SQLException {
+        BlobVolume suitableBlobVolume = this.reserveSuitableBlobVolume(storedSize);
+        if (suitableBlobVolume == null) {
+            synchronized (this) {
+                // Check again for the suitable blob volumes because it is possible
+                // that many threads at the same time were going to this section
+                // and somebody has already created the new blob volume
+                suitableBlobVolume = this.reserveSuitableBlobVolume(storedSize);
+                if (suitableBlobVolume == null) {
+                    // If we found no suitable blob volume that we will try to create one
+                    // but only if we are allowed to do that (regulates in blobstorage.json config)
+                    if (this.configProvider.isAllowToCreateNewVolume()) {
+                        suitableBlobVolume = createNewBlobVolume();
+                        if (!suitableBlobVolume.tryReserve(storedSize)) {
+                            throw new GenericBlobStorageException("The item does not fit even into a new blob volume");
+                        }
+                    } else {
+                        throw new GenericBlobStorageException("No blob volumes are available to store the item");
+                    }
+                }
+            }
+        }
+        return suitableBlobVolume;
+    }
+
+    /**
+     * Finds the volume that has enough free space and reserves the space there.
+     * The volumes open for writes are tried first in the order defined by placement
+     * strategy, so the concurrent writers are spread across several SQLite write locks.
+     * The reservation is lock-free, so concurrent writers do not wait for each other.
+     *
+     * @param storedSize space to reserve in bytes
+     * @return a blob volume where the space is reserved, null if there is no one
+     * @throws SQLException it attempts to create new volumes if there are not enough open ones
+     */
+    private BlobVolume reserveSuitableBlobVolume(long storedSize) throws SQLException {
+        List<BlobVolume> openVolumes = this.configProvider.getOpenBlobVolumes();
+        if (openVolumes.size() < this.configProvider.getOpenVolumesForWrites() && this.configProvider.isAllowToCreateNewVolume()) {
+            openVolumes = this.openMoreBlobVolumes();
         }
 
-        // Scroll all the existing volumes and returns the one that has enough space to
-        // store the entity. Return null if no such volumes are presented.
-        File suitableDatabaseVolume = null;
-        synchronized (this) {
-            for (File databaseVolume : this.configProvider.getDatabaseVolumes()) {
-                if (databaseVolume.length() + desiredSpace <= this.configProvider.getMaxBlobVolumeSizeInBytes()) {
-                    suitableDatabaseVolume = databaseVolume;
+        BlobVolume reservedVolume = this.configProvider.getPlacementStrategy().reserve(openVolumes, storedSize);
+        if (reservedVolume == null) {
+            // A big item may not fit into the open volumes but still fit into some other one
+            for (BlobVolume blobVolume : this.configProvider.getWritableBlobVolumes()) {
+                if (blobVolume.tryReserve(storedSize)) {
+                    reservedVolume = blobVolume;
                     break;
                 }
             }
         }
+        if (reservedVolume != null) {
+            this.configProvider.updateBlobVolumeWritability(reservedVolume);
+        }
+        return reservedVolume;
+    }
+
+    /**
+     * Creates new blob volumes until the configured number of them is open for writes.
+     *
+     * @return list of blob volumes open for writes
+     * @throws SQLException it will try to execute DDL query
+     */
+    private synchronized List<BlobVolume> openMoreBlobVolumes() throws SQLException {
+        int missingVolumesCount = this.configProvider.getOpenVolumesForWrites() - this.configProvider.getOpenBlobVolumes().size();
+        for (int i = 0; i < missingVolumesCount; i++) {
+            this.createNewBlobVolume();
+        }
+        return this.configProvider.getOpenBlobVolumes();
+    }
+
+    /**
+     * Compresses the content of item if there is a compression rule for its mime-type.
+     * The content is kept as is if the compression does not make it smaller.
+     *
+     * @param item item to store
+     */
+    private void compressContent(BlobItem item) {
+        BlobContentCodec codec = this.configProvider.getCompressionRules().getCodec(item.getMimeType());
+        if (codec == null) {
+            return;
+        }
+        byte[] compressedContent = codec.encode(item.getRawContent());
+        if (compressedContent.length < item.getContentSize()) {
+            item.setOriginalSize(item.getContentSize());
+            item.setCodec(codec.getName());
+            item.setRawContent(compressedContent);
+        }
+    }
 
-        // We want to return null in case if no suitable File object is found
-        // else we will extract corresponding BlobVolume object.
-        return suitableDatabaseVolume == null
-                ? null
-                : this.configProvider.getBlobVolumes().get(suitableDatabaseVolume.getName());
+    /**
+     * Looks for the already stored copy of the content and adds a reference to it.
+     *
+     * @param contentHash hash of the content
+     * @param mimeType    mime-type of the content
+     * @return address of the stored copy, null if there is no one
+     * @throws SQLException it attempts to update the reference counter
+     */
+    private BlobStoredItemAddress addReferenceToStoredCopy(String contentHash, String mimeType) throws SQLException {
+        BlobStoredItemAddress indexedAddress = this.blobContentIndex.get(contentHash, mimeType);
+        if (indexedAddress == null) {
+            return null;
+        }
+        BlobStoredItemAddress storedItemAddress = this.addressForwarding.resolve(indexedAddress);
+        BlobVolume blobVolume = this.configProvider.getBlobVolumeById(storedItemAddress.getVolumeId());
+        if (blobVolume.addReference(storedItemAddress.getId(), contentHash, mimeType)) {
+            return storedItemAddress;
+        }
+        // The copy has been deleted meanwhile, so the content has to be stored again
+        this.blobContentIndex.remove(indexedAddress);
+        return null;
     }
 
     /**
@@ -196,18 +932,4 @@ public class BlobStorageImpl implements BlobStorage {
             throw new IncorrectMimeTypeException(MessageFormat.format("This mime type is not allowed: {0}", mimeType));
         }
     }
-
-    /**
-     * Checks a given size to be corresponding to max allowed size to store
-     * blob item.
-     *
-     * @param size size of item to store in bytes
-     * @throws GenericBlobStorageException it will crush if size is not ok
-     */
-    private void checkBlobItemSize(long size) throws GenericBlobStorageException {
-        long maxAllowedSize = this.configProvider.getMaxBlobItemSize();
-        if (size > maxAllowedSize) {
-            throw new TooBigItemException(MessageFormat.format("Size to store is too big {0}, max allowed size is {1} bytes", size, maxAllowedSize));
-        }
-    }
 }
@@ -0,0 +1,34 @@
+package com.igorivkin.blobstorage.blobstorage.async;
+
+import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobvolume.BlobFileRegion;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Blob storage that never blocks the calling thread on a blob volume. The operations
+ * are the same as the ones of {@link com.igorivkin.blobstorage.blobstorage.BlobStorage},
+ * their failures complete the returned futures exceptionally.
+ */
+@Service
+public interface AsyncBlobStorage {
+
+    CompletableFuture<BlobStoredItemAddress> storeItem(InputStream itemBinaryStream, String mimeType, long expectedSize);
+
+    CompletableFuture<BlobItem> getItem(long id, int idVolume);
+
+    CompletableFuture<BlobItemInfo> getItemInfo(long id, int idVolume);
+
+    CompletableFuture<BlobItemInfo> stat(long id, int idVolume);
+
+    CompletableFuture<BlobFileRegion> getItemFileRegion(long id, int idVolume);
+
+    CompletableFuture<InputStream> getItemContent(long id, int idVolume, long offset, long length);
+
+    CompletableFuture<Void> deleteItem(long id, int idVolume);
+
+}
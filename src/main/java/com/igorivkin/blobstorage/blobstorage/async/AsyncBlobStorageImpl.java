@@ -0,0 +1,149 @@
+package com.igorivkin.blobstorage.blobstorage.async;
+
+import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobstorage.compaction.BlobAddressForwarding;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobvolume.BlobContentInputStream;
+import com.igorivkin.blobstorage.blobvolume.BlobFileRegion;
+import com.igorivkin.blobstorage.cache.BlobItemCache;
+import com.igorivkin.blobstorage.cache.CachedBlobItem;
+import com.igorivkin.blobstorage.exceptions.NoSuchBlobVolumeException;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+@Service
+public class AsyncBlobStorageImpl implements AsyncBlobStorage {
+    private final BlobStorage blobStorage;
+    private final BlobStorageConfigProvider configProvider;
+    private final BlobVolumeExecutors volumeExecutors;
+    private final BlobAddressForwarding addressForwarding;
+    private final BlobItemCache blobItemCache;
+
+    @Autowired
+    public AsyncBlobStorageImpl(BlobStorage blobStorage,
+                                BlobStorageConfigProvider configProvider,
+                                BlobVolumeExecutors volumeExecutors,
+                                BlobAddressForwarding addressForwarding,
+                                BlobItemCache blobItemCache) {
+        this.blobStorage = blobStorage;
+        this.configProvider = configProvider;
+        this.volumeExecutors = volumeExecutors;
+        this.addressForwarding = addressForwarding;
+        this.blobItemCache = blobItemCache;
+    }
+
+    /**
+     * Stores a given item by the executor of stores, the volume is chosen while storing.
+     * The stream is read by the executor, so it should stay open until the future is completed.
+     *
+     * @param itemBinaryStream input stream representing content of a given file
+     * @param mimeType         mime-type of a given file
+     * @param expectedSize     size of the file in bytes
+     * @return future of the address of the stored item
+     */
+    @Override
+    public CompletableFuture<BlobStoredItemAddress> storeItem(InputStream itemBinaryStream, String mimeType, long expectedSize) {
+        return volumeExecutors.submitStore(() -> blobStorage.storeItem(itemBinaryStream, mimeType, expectedSize));
+    }
+
+    /**
+     * Returns blob item, the cached item is returned at once by the calling thread.
+     *
+     * @param id       ID of entity
+     * @param idVolume ID of volume
+     * @return future of the blob item, null if there is no such item
+     */
+    @Override
+    public CompletableFuture<BlobItem> getItem(long id, int idVolume) {
+        CachedBlobItem cachedItem = blobItemCache.get(new BlobStoredItemAddress(id, idVolume));
+        if (cachedItem != null) {
+            return CompletableFuture.completedFuture(cachedItem.toBlobItem());
+        }
+        return onVolume(id, idVolume, () -> blobStorage.getItem(id, idVolume));
+    }
+
+    /**
+     * Returns blob item description, the description of the cached item is returned
+     * at once by the calling thread.
+     *
+     * @param id       ID of entity
+     * @param idVolume ID of volume
+     * @return future of the blob item description, null if there is no such item
+     */
+    @Override
+    public CompletableFuture<BlobItemInfo> getItemInfo(long id, int idVolume) {
+        CachedBlobItem cachedItem = blobItemCache.get(new BlobStoredItemAddress(id, idVolume));
+        if (cachedItem != null) {
+            return CompletableFuture.completedFuture(cachedItem.toBlobItemInfo());
+        }
+        return onVolume(id, idVolume, () -> blobStorage.stat(id, idVolume));
+    }
+
+    @Override
+    public CompletableFuture<BlobItemInfo> stat(long id, int idVolume) {
+        return onVolume(id, idVolume, () -> blobStorage.stat(id, idVolume));
+    }
+
+    @Override
+    public CompletableFuture<BlobFileRegion> getItemFileRegion(long id, int idVolume) {
+        return onVolume(id, idVolume, () -> blobStorage.getItemFileRegion(id, idVolume));
+    }
+
+    /**
+     * Returns a stream of the item content. The stream is opened by the executor of the volume
+     * and its further reads go through that executor as well, see {@link BlobVolumeExecutorInputStream}.
+     * The content of the cached item is returned at once by the calling thread.
+     *
+     * @param id       ID of entity
+     * @param idVolume ID of volume
+     * @param offset   zero-based offset of the first byte to read
+     * @param length   number of bytes to read
+     * @return future of the content stream
+     */
+    @Override
+    public CompletableFuture<InputStream> getItemContent(long id, int idVolume, long offset, long length) {
+        BlobStoredItemAddress address = new BlobStoredItemAddress(id, idVolume);
+        CachedBlobItem cachedItem = blobItemCache.get(address);
+        if (cachedItem != null) {
+            return CompletableFuture.completedFuture(cachedItem.openStream(offset, length));
+        }
+        int resolvedVolumeId = addressForwarding.resolve(address).getVolumeId();
+        int bufferSize = (int) Math.min(BlobContentInputStream.CHUNK_SIZE, length);
+        return onVolume(id, idVolume, () -> {
+            InputStream contentStream = blobStorage.getItemContent(id, idVolume, offset, length);
+            return contentStream != null
+                    ? new BlobVolumeExecutorInputStream(volumeExecutors, resolvedVolumeId, contentStream, bufferSize)
+                    : null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteItem(long id, int idVolume) {
+        return onVolume(id, idVolume, () -> {
+            blobStorage.deleteItem(id, idVolume);
+            return null;
+        });
+    }
+
+    /**
+     * Runs the operation by the executor of the volume actually keeping the item,
+     * so the items moved by compaction are served by their new volume. The volume is checked
+     * beforehand, so the IDs of unknown volumes given by clients do not make new executors.
+     */
+    private <T> CompletableFuture<T> onVolume(long id, int idVolume, Callable<T> operation) {
+        BlobStoredItemAddress resolvedAddress = addressForwarding.resolve(new BlobStoredItemAddress(id, idVolume));
+        try {
+            configProvider.getBlobVolumeById(resolvedAddress.getVolumeId());
+        } catch (NoSuchBlobVolumeException exception) {
+            return CompletableFuture.failedFuture(exception);
+        }
+        return volumeExecutors.submit(resolvedAddress.getVolumeId(), operation);
+    }
+}
@@ -0,0 +1,102 @@
+package com.igorivkin.blobstorage.blobstorage.async;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.text.MessageFormat;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Reads the content of an item by the executor of its volume, so the reading of the content
+ * is bounded by the same queue as the other operations of the volume. The content is read
+ * a buffer at once, the threads of the volume are not held while the client consumes the buffer.
+ * The read rejected by the busy volume fails the stream.
+ */
+public class BlobVolumeExecutorInputStream extends InputStream {
+    private final BlobVolumeExecutors volumeExecutors;
+    private final int volumeId;
+    private final InputStream contentStream;
+    private final byte[] buffer;
+
+    private int bufferPosition;
+    private int bufferLimit;
+    private boolean ended;
+
+    /**
+     * @param volumeExecutors executors of the volumes
+     * @param volumeId ID of the volume keeping the item
+     * @param contentStream stream of the item content reading the volume
+     * @param bufferSize number of bytes read by the volume executor at once
+     */
+    public BlobVolumeExecutorInputStream(BlobVolumeExecutors volumeExecutors, int volumeId, InputStream contentStream, int bufferSize) {
+        this.volumeExecutors = volumeExecutors;
+        this.volumeId = volumeId;
+        this.contentStream = contentStream;
+        this.buffer = new byte[Math.max(1, bufferSize)];
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.ensureBuffer()) {
+            return -1;
+        }
+        return this.buffer[this.bufferPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.ensureBuffer()) {
+            return -1;
+        }
+        int bytesToCopy = Math.min(length, this.bufferLimit - this.bufferPosition);
+        System.arraycopy(this.buffer, this.bufferPosition, buffer, offset, bytesToCopy);
+        this.bufferPosition += bytesToCopy;
+        return bytesToCopy;
+    }
+
+    @Override
+    public int available() {
+        return this.bufferLimit - this.bufferPosition;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.contentStream.close();
+    }
+
+    /**
+     * Makes sure there is unread data in the buffer, fills it by the volume executor if needed.
+     * @return false if the end of the content is reached
+     * @throws IOException it attempts to read from the volume, the volume may be busy as well
+     */
+    private boolean ensureBuffer() throws IOException {
+        if (this.bufferPosition < this.bufferLimit) {
+            return true;
+        }
+        if (this.ended) {
+            return false;
+        }
+        int bytesRead;
+        try {
+            bytesRead = this.volumeExecutors
+                    .submit(this.volumeId, () -> this.contentStream.readNBytes(this.buffer, 0, this.buffer.length))
+                    .get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(MessageFormat.format("Reading of blob volume {0} is interrupted", this.volumeId));
+        } catch (ExecutionException exception) {
+            if (exception.getCause() instanceof IOException) {
+                throw (IOException) exception.getCause();
+            }
+            throw new IOException(exception.getCause().getMessage(), exception.getCause());
+        }
+        // The buffer is not filled up only at the end of the content
+        this.ended = bytesRead < this.buffer.length;
+        this.bufferPosition = 0;
+        this.bufferLimit = bytesRead;
+        return bytesRead > 0;
+    }
+}
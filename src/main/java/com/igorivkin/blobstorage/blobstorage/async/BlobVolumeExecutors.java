@@ -0,0 +1,131 @@
+package com.igorivkin.blobstorage.blobstorage.async;
+
+import com.igorivkin.blobstorage.exceptions.BlobVolumeBusyException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Small bounded executors running the blocking operations of blob volumes, one executor
+ * per volume. A volume that got slow (e.g. it's checkpointing) fills up its own queue only,
+ * the operations of the other volumes keep running, and the operations beyond the queue
+ * are rejected at once instead of waiting. The stores are run by a separate executor of the
+ * same kind, since their volume is chosen only while storing.
+ * The threads of idle executors are stopped, so the rarely used volumes cost nothing.
+ */
+@Component
+public class BlobVolumeExecutors {
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final int volumeThreads;
+    private final int volumeQueueCapacity;
+    private final Map<Integer, ThreadPoolExecutor> volumeExecutors = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor storeExecutor;
+
+    public BlobVolumeExecutors(@Value("${blobstorage.async.volume.threads:2}") int volumeThreads,
+                               @Value("${blobstorage.async.volume.queue:64}") int volumeQueueCapacity,
+                               @Value("${blobstorage.async.store.threads:4}") int storeThreads,
+                               @Value("${blobstorage.async.store.queue:64}") int storeQueueCapacity) {
+        this.volumeThreads = Math.max(1, volumeThreads);
+        this.volumeQueueCapacity = Math.max(1, volumeQueueCapacity);
+        this.storeExecutor = newExecutor("blob-store", Math.max(1, storeThreads), Math.max(1, storeQueueCapacity));
+    }
+
+    /**
+     * Runs the operation by the executor of a given volume.
+     * @param volumeId ID of volume
+     * @param operation blocking operation of the volume
+     * @param <T> type of operation result
+     * @return future of the operation result, it's completed with {@link BlobVolumeBusyException}
+     * if the queue of the volume is full
+     */
+    public <T> CompletableFuture<T> submit(int volumeId, Callable<T> operation) {
+        ThreadPoolExecutor executor = this.volumeExecutors.computeIfAbsent(
+                volumeId,
+                id -> newExecutor("blob-volume-" + id, this.volumeThreads, this.volumeQueueCapacity)
+        );
+        return submit(executor, operation, MessageFormat.format("Blob volume {0} is busy, try again later", volumeId));
+    }
+
+    /**
+     * Runs the store operation by the executor of stores.
+     * @param operation blocking store operation
+     * @param <T> type of operation result
+     * @return future of the operation result, it's completed with {@link BlobVolumeBusyException}
+     * if the queue of stores is full
+     */
+    public <T> CompletableFuture<T> submitStore(Callable<T> operation) {
+        return submit(this.storeExecutor, operation, "Blob storage is busy storing other items, try again later");
+    }
+
+    /**
+     * Returns the number of operations waiting for the executor of a given volume.
+     * @param volumeId ID of volume
+     * @return queue depth, 0 if the volume had no operations yet
+     */
+    public int getQueueDepth(int volumeId) {
+        ThreadPoolExecutor executor = this.volumeExecutors.get(volumeId);
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    /**
+     * Stops the executor of a volume that is not used anymore, e.g. retired by compaction.
+     * The operations already queued are still run, the new ones get a new executor.
+     * @param volumeId ID of volume
+     */
+    public void remove(int volumeId) {
+        ThreadPoolExecutor executor = this.volumeExecutors.remove(volumeId);
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.storeExecutor.shutdownNow();
+        this.volumeExecutors.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+    private static <T> CompletableFuture<T> submit(ThreadPoolExecutor executor, Callable<T> operation, String busyMessage) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> {
+                try {
+                    future.complete(operation.call());
+                } catch (Throwable exception) {
+                    future.completeExceptionally(exception);
+                }
+            });
+        } catch (RejectedExecutionException exception) {
+            future.completeExceptionally(new BlobVolumeBusyException(busyMessage));
+        }
+        return future;
+    }
+
+    private static ThreadPoolExecutor newExecutor(String name, int threads, int queueCapacity) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                threads, threads,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
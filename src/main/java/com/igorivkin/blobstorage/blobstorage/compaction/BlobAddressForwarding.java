@@ -0,0 +1,183 @@
+package com.igorivkin.blobstorage.blobstorage.compaction;
+
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.database.ConnectionManager;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Forwarding of the item addresses changed by the compaction. Once an item is moved to another
+ * volume its old address is forwarded to the new one, so the addresses given to the clients
+ * before keep resolving. The forwards and the IDs of retired volumes are kept in their own
+ * database next to the volumes and in memory, so the resolution costs a single map lookup.
+ */
+@Component
+public class BlobAddressForwarding {
+
+    /**
+     * Name of the database keeping the forwards, it does not match the names of volumes.
+     */
+    public static final String FORWARDING_DATABASE_NAME = "blob_forwarding.db";
+
+    /**
+     * An item may be moved several times, but the chain of forwards is never that long.
+     */
+    private static final int MAX_FORWARDS = 64;
+
+    private final ConnectionManager connectionManager;
+
+    private final Map<BlobStoredItemAddress, BlobStoredItemAddress> forwards = new ConcurrentHashMap<>();
+
+    /**
+     * The greatest ID of retired volume, the IDs are never given to new volumes again.
+     */
+    private final AtomicInteger maxRetiredVolumeId = new AtomicInteger();
+
+    /**
+     * IDs of all the retired volumes, their files that are not yet removed should not be taken for volumes.
+     */
+    private final Set<Integer> retiredVolumeIds = ConcurrentHashMap.newKeySet();
+
+    public BlobAddressForwarding(ConnectionManager connectionManager) {
+        this.connectionManager = connectionManager;
+    }
+
+    @PostConstruct
+    public void initialize() throws SQLException {
+        try (Connection connection = this.connectionManager.getWriteConnection(FORWARDING_DATABASE_NAME)) {
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE IF NOT EXISTS forwards (\n"
+                                  + " old_volume_id integer NOT NULL,\n"
+                                  + " old_id integer NOT NULL,\n"
+                                  + " new_volume_id integer NOT NULL,\n"
+                                  + " new_id integer NOT NULL,\n"
+                                  + " PRIMARY KEY (old_volume_id, old_id)\n"
+                                  + ") WITHOUT ROWID;");
+                statement.execute("CREATE TABLE IF NOT EXISTS retired_volumes (volume_id integer PRIMARY KEY);");
+                try (ResultSet resultSet = statement.executeQuery("SELECT old_volume_id, old_id, new_volume_id, new_id FROM forwards")) {
+                    while (resultSet.next()) {
+                        this.forwards.put(
+                                new BlobStoredItemAddress(resultSet.getLong(2), resultSet.getInt(1)),
+                                new BlobStoredItemAddress(resultSet.getLong(4), resultSet.getInt(3))
+                        );
+                    }
+                }
+                try (ResultSet resultSet = statement.executeQuery("SELECT volume_id FROM retired_volumes")) {
+                    while (resultSet.next()) {
+                        this.retiredVolumeIds.add(resultSet.getInt(1));
+                        this.maxRetiredVolumeId.accumulateAndGet(resultSet.getInt(1), Math::max);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the current address of an item following the forwards.
+     * @param address address of the item given to the client
+     * @return current address of the item, the given one if it was never moved
+     */
+    public BlobStoredItemAddress resolve(BlobStoredItemAddress address) {
+        if (this.forwards.isEmpty()) {
+            return address;
+        }
+        BlobStoredItemAddress currentAddress = address;
+        for (int i = 0; i < MAX_FORWARDS; i++) {
+            BlobStoredItemAddress nextAddress = this.forwards.get(currentAddress);
+            if (nextAddress == null) {
+                break;
+            }
+            currentAddress = nextAddress;
+        }
+        return currentAddress;
+    }
+
+    /**
+     * Forwards the old address of the moved item to the new one.
+     * @param oldAddress address of the item before the move
+     * @param newAddress address of the item after the move
+     * @throws SQLException it attempts to store the forward
+     */
+    public void put(BlobStoredItemAddress oldAddress, BlobStoredItemAddress newAddress) throws SQLException {
+        String sql = "INSERT OR REPLACE INTO forwards(old_volume_id, old_id, new_volume_id, new_id) VALUES(?, ?, ?, ?)";
+        try (Connection connection = this.connectionManager.getWriteConnection(FORWARDING_DATABASE_NAME)) {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, oldAddress.getVolumeId());
+                statement.setLong(2, oldAddress.getId());
+                statement.setInt(3, newAddress.getVolumeId());
+                statement.setLong(4, newAddress.getId());
+                statement.executeUpdate();
+            }
+        }
+        this.forwards.put(oldAddress, newAddress);
+    }
+
+    /**
+     * Drops the forward of the old address, e.g. if the item was deleted while being moved.
+     * @param oldAddress address of the item before the move
+     * @throws SQLException it attempts to delete the forward
+     */
+    public void remove(BlobStoredItemAddress oldAddress) throws SQLException {
+        String sql = "DELETE FROM forwards WHERE old_volume_id = ? AND old_id = ?";
+        try (Connection connection = this.connectionManager.getWriteConnection(FORWARDING_DATABASE_NAME)) {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, oldAddress.getVolumeId());
+                statement.setLong(2, oldAddress.getId());
+                statement.executeUpdate();
+            }
+        }
+        this.forwards.remove(oldAddress);
+    }
+
+    /**
+     * Remembers that the volume is retired, so its ID is never given to a new volume.
+     * @param volumeId ID of retired volume
+     * @throws SQLException it attempts to store the volume ID
+     */
+    public void retireVolume(int volumeId) throws SQLException {
+        String sql = "INSERT OR IGNORE INTO retired_volumes(volume_id) VALUES(?)";
+        try (Connection connection = this.connectionManager.getWriteConnection(FORWARDING_DATABASE_NAME)) {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, volumeId);
+                statement.executeUpdate();
+            }
+        }
+        this.retiredVolumeIds.add(volumeId);
+        this.maxRetiredVolumeId.accumulateAndGet(volumeId, Math::max);
+    }
+
+    /**
+     * Returns true if the volume is retired.
+     * @param volumeId ID of volume
+     * @return true if the volume is retired
+     */
+    public boolean isRetiredVolume(int volumeId) {
+        return this.retiredVolumeIds.contains(volumeId);
+    }
+
+    /**
+     * Returns the greatest ID of retired volume.
+     * @return ID of volume, 0 if no volume was retired
+     */
+    public int getMaxRetiredVolumeId() {
+        return this.maxRetiredVolumeId.get();
+    }
+
+    /**
+     * Returns number of forwarded addresses.
+     * @return number of forwards
+     */
+    public int size() {
+        return this.forwards.size();
+    }
+}
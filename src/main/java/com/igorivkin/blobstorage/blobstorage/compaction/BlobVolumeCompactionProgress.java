@@ -0,0 +1,103 @@
+package com.igorivkin.blobstorage.blobstorage.compaction;
+
+/**
+ * Progress of the current or the last compaction run. The counters are updated by the compaction
+ * thread and read by the others, so a reader may see the counters of slightly different moments.
+ */
+public class BlobVolumeCompactionProgress {
+    private volatile boolean running;
+    private volatile long startedAt;
+    private volatile long finishedAt;
+    private volatile int volumesTotal;
+    private volatile int volumesCompacted;
+    private volatile int currentVolumeId;
+    private volatile long itemsTotal;
+    private volatile long itemsMoved;
+    private volatile long bytesTotal;
+    private volatile long bytesMoved;
+    private volatile String lastError;
+
+    /**
+     * Starts a new run, the counters of the previous one are dropped.
+     * @param volumesTotal number of volumes to compact
+     * @param itemsTotal number of items to move
+     * @param bytesTotal size of the items to move in bytes
+     */
+    void start(int volumesTotal, long itemsTotal, long bytesTotal) {
+        this.startedAt = System.currentTimeMillis();
+        this.finishedAt = 0;
+        this.volumesTotal = volumesTotal;
+        this.volumesCompacted = 0;
+        this.currentVolumeId = 0;
+        this.itemsTotal = itemsTotal;
+        this.itemsMoved = 0;
+        this.bytesTotal = bytesTotal;
+        this.bytesMoved = 0;
+        this.lastError = null;
+        this.running = true;
+    }
+
+    void startVolume(int volumeId) {
+        this.currentVolumeId = volumeId;
+    }
+
+    void itemMoved(long itemSize) {
+        this.itemsMoved++;
+        this.bytesMoved += itemSize;
+    }
+
+    void volumeCompacted() {
+        this.volumesCompacted++;
+    }
+
+    void finish(String error) {
+        this.lastError = error;
+        this.currentVolumeId = 0;
+        this.finishedAt = System.currentTimeMillis();
+        this.running = false;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long getStartedAt() {
+        return startedAt;
+    }
+
+    public long getFinishedAt() {
+        return finishedAt;
+    }
+
+    public int getVolumesTotal() {
+        return volumesTotal;
+    }
+
+    public int getVolumesCompacted() {
+        return volumesCompacted;
+    }
+
+    public int getCurrentVolumeId() {
+        return currentVolumeId;
+    }
+
+    public long getItemsTotal() {
+        return itemsTotal;
+    }
+
+    public long getItemsMoved() {
+        return itemsMoved;
+    }
+
+    public long getBytesTotal() {
+        return bytesTotal;
+    }
+
+    public long getBytesMoved() {
+        return bytesMoved;
+    }
+
+    public String getLastError() {
+        return lastError;
+    }
+}
@@ -0,0 +1,292 @@
+package com.igorivkin.blobstorage.blobstorage.compaction;
+
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobstorage.dedup.BlobContentIndex;
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Compaction of sparse blob volumes. After heavy deletes many volumes keep just a little of live
+ * content, the compaction moves their items to fresh volumes and removes the emptied ones.
+ *
+ * The items are moved one by one while the volumes keep serving the requests. Every moved item
+ * gets a forward from its old address to the new one (see {@link BlobAddressForwarding}) before
+ * its old copy is hidden, so the item is always readable by the address known to the client.
+ * The volume is sealed before its items are moved, so nothing new is stored there and lost with its files.
+ * The copying is throttled to the configured rate, so it does not take the whole disk bandwidth.
+ */
+@Component
+public class BlobVolumeCompactor {
+
+    /**
+     * Number of passes over the items of the volume. The items left by a pass are moved
+     * by the next one, the volume is retired once it's empty.
+     */
+    private static final int MAX_PASSES_PER_VOLUME = 3;
+
+    /**
+     * Maximal time in milliseconds to wait for the writes started before the volume was sealed.
+     */
+    private static final long WRITES_DRAIN_TIMEOUT_MILLIS = 60_000;
+
+    @Value("${blobstorage.compaction.retiredelay:30000}")
+    private long retireDelayMillis;
+
+    private final BlobStorage blobStorage;
+    private final BlobStorageConfigProvider configProvider;
+    private final BlobAddressForwarding addressForwarding;
+    private final BlobContentIndex blobContentIndex;
+
+    private final AtomicBoolean running = new AtomicBoolean();
+    private final BlobVolumeCompactionProgress progress = new BlobVolumeCompactionProgress();
+
+    /**
+     * Volume receiving the moved items, a new one is created once it's full.
+     */
+    private BlobVolume targetVolume;
+
+    /**
+     * Start of the current run by System.nanoTime, used to throttle the copying.
+     */
+    private long startedNanos;
+
+    public BlobVolumeCompactor(BlobStorage blobStorage,
+                               BlobStorageConfigProvider configProvider,
+                               BlobAddressForwarding addressForwarding,
+                               BlobContentIndex blobContentIndex) {
+        this.blobStorage = blobStorage;
+        this.configProvider = configProvider;
+        this.addressForwarding = addressForwarding;
+        this.blobContentIndex = blobContentIndex;
+    }
+
+    /**
+     * Compacts the volumes whose live content is below the compaction threshold. The volumes open
+     * for writes are never compacted, and there should be at least two sparse volumes,
+     * otherwise nothing is merged.
+     * @throws SQLException it attempts to read and to move the items
+     */
+    @Scheduled(cron = "${blobstorage.compaction.cron:0 0 4 * * *}")
+    public void compactSparseVolumes() throws SQLException {
+        List<BlobVolume> openVolumes = this.configProvider.getOpenBlobVolumes();
+        long compactionThreshold = this.configProvider.getCompactionThresholdInBytes();
+        List<BlobVolume> sparseVolumes = new ArrayList<>();
+        for (BlobVolume blobVolume : this.configProvider.getBlobVolumes().values()) {
+            // The volumes that are not open yet are sized by the manifest, so they are not opened just for that
+            if (!openVolumes.contains(blobVolume) && this.configProvider.getLiveBytes(blobVolume) < compactionThreshold) {
+                sparseVolumes.add(blobVolume);
+            }
+        }
+        if (sparseVolumes.size() > 1) {
+            this.compact(sparseVolumes);
+        }
+    }
+
+    /**
+     * Moves all the items of given volumes to fresh volumes and removes the given ones.
+     * Does nothing if another compaction is running.
+     * @param sourceVolumes volumes to compact
+     * @return true if the compaction was run
+     * @throws SQLException it attempts to read and to move the items
+     */
+    public boolean compact(List<BlobVolume> sourceVolumes) throws SQLException {
+        if (!this.running.compareAndSet(false, true)) {
+            return false;
+        }
+        String error = null;
+        try {
+            long itemsTotal = 0;
+            long bytesTotal = 0;
+            for (BlobVolume sourceVolume : sourceVolumes) {
+                itemsTotal += sourceVolume.getItemIds().size();
+                bytesTotal += sourceVolume.getLiveBytes();
+            }
+            this.progress.start(sourceVolumes.size(), itemsTotal, bytesTotal);
+            this.startedNanos = System.nanoTime();
+            this.targetVolume = null;
+            for (BlobVolume sourceVolume : sourceVolumes) {
+                this.progress.startVolume(sourceVolume.getVolumeId());
+                this.compactVolume(sourceVolume);
+            }
+            return true;
+        } catch (SQLException | RuntimeException exception) {
+            error = exception.getMessage();
+            throw exception;
+        } finally {
+            this.targetVolume = null;
+            this.progress.finish(error);
+            this.running.set(false);
+        }
+    }
+
+    /**
+     * Returns progress of the current or the last compaction.
+     * @return compaction progress
+     */
+    public BlobVolumeCompactionProgress getProgress() {
+        return this.progress;
+    }
+
+    /**
+     * Seals the volume, so the items stored after the last pass are not removed together with
+     * its files, moves all its items and retires it. The volume is unsealed if it's not emptied.
+     * @param sourceVolume volume to compact
+     * @throws SQLException it attempts to read and to move the items
+     */
+    private void compactVolume(BlobVolume sourceVolume) throws SQLException {
+        sourceVolume.seal();
+        this.configProvider.updateBlobVolumeWritability(sourceVolume);
+        boolean retired = false;
+        try {
+            // The writes started before the seal are waited for, no new items appear in the volume then
+            if (sourceVolume.awaitWritesDrained(WRITES_DRAIN_TIMEOUT_MILLIS) && this.moveAllItems(sourceVolume)) {
+                this.retireVolume(sourceVolume);
+                retired = true;
+                this.progress.volumeCompacted();
+            }
+        } finally {
+            if (!retired) {
+                sourceVolume.unseal();
+                this.configProvider.updateBlobVolumeWritability(sourceVolume);
+            }
+        }
+    }
+
+    /**
+     * Moves the items of the sealed volume pass by pass until it's empty.
+     * @param sourceVolume volume to empty
+     * @return true if the volume is empty now
+     * @throws SQLException it attempts to read and to move the items
+     */
+    private boolean moveAllItems(BlobVolume sourceVolume) throws SQLException {
+        for (int pass = 0; pass < MAX_PASSES_PER_VOLUME; pass++) {
+            List<Long> ids = sourceVolume.getItemIds();
+            if (ids.isEmpty()) {
+                return true;
+            }
+            for (long id : ids) {
+                this.moveItem(sourceVolume, id);
+                if (!this.throttle()) {
+                    return false;
+                }
+            }
+        }
+        return sourceVolume.getItemIds().isEmpty();
+    }
+
+    /**
+     * Moves a single item. The copy is made first, then the old address is forwarded to it
+     * and only then the old copy is hidden, so the item is readable all the time. The references
+     * taken or dropped by address while it was being copied are transferred to the new copy.
+     * @param sourceVolume volume of the item
+     * @param id ID of the item
+     * @throws SQLException it attempts to read and to move the item
+     */
+    private void moveItem(BlobVolume sourceVolume, long id) throws SQLException {
+        BlobItemInfo itemInfo = sourceVolume.getInfoById(id);
+        if (itemInfo == null) {
+            return;
+        }
+        long storedSize = BlobVolume.estimateStoredSize(itemInfo.getSize());
+        BlobVolume currentTargetVolume = this.reserveTargetVolume(storedSize);
+        BlobStoredItemAddress newAddress;
+        try {
+            newAddress = sourceVolume.copyItemTo(id, currentTargetVolume);
+        } finally {
+            currentTargetVolume.commitReservation(storedSize);
+        }
+        if (newAddress == null) {
+            // The item is deleted meanwhile
+            return;
+        }
+        int copiedRefCount = currentTargetVolume.getReferenceCount(newAddress.getId());
+        BlobStoredItemAddress oldAddress = new BlobStoredItemAddress(id, sourceVolume.getVolumeId());
+        this.addressForwarding.put(oldAddress, newAddress);
+        int refCount = sourceVolume.retireItem(id);
+        if (refCount == 0) {
+            // The item is deleted before the forward was taken into account, so is the copy
+            this.addressForwarding.remove(oldAddress);
+            currentTargetVolume.retireItem(newAddress.getId());
+        } else {
+            if (refCount != copiedRefCount) {
+                currentTargetVolume.adjustReferenceCount(newAddress.getId(), refCount - copiedRefCount);
+            }
+            this.blobContentIndex.move(oldAddress, newAddress);
+            this.progress.itemMoved(itemInfo.getSize());
+        }
+        this.configProvider.updateBlobVolumeWritability(currentTargetVolume);
+    }
+
+    /**
+     * Reserves the space for the moved item in the current target volume or in a new one.
+     * @param storedSize space to reserve in bytes
+     * @return volume with reserved space
+     * @throws SQLException it attempts to create a new volume
+     */
+    private BlobVolume reserveTargetVolume(long storedSize) throws SQLException {
+        if (this.targetVolume != null && this.targetVolume.tryReserve(storedSize)) {
+            return this.targetVolume;
+        }
+        this.targetVolume = this.blobStorage.createNewBlobVolume();
+        if (!this.targetVolume.tryReserve(storedSize)) {
+            throw new GenericBlobStorageException("Cannot reserve space for the moved item in a new blob volume");
+        }
+        return this.targetVolume;
+    }
+
+    /**
+     * Excludes the emptied volume from the lookups, waits for the reads started before
+     * and removes the files of the volume.
+     * @param sourceVolume volume to retire
+     * @throws SQLException it attempts to store the ID of retired volume
+     */
+    private void retireVolume(BlobVolume sourceVolume) throws SQLException {
+        this.addressForwarding.retireVolume(sourceVolume.getVolumeId());
+        this.configProvider.unregisterBlobVolume(sourceVolume);
+        this.pause(this.retireDelayMillis);
+        sourceVolume.deleteFiles();
+    }
+
+    /**
+     * Sleeps as long as the copying is ahead of the configured rate.
+     * @return false if the thread was interrupted and the work should be stopped
+     */
+    private boolean throttle() {
+        long compactionRate = this.configProvider.getCompactionRateInBytes();
+        if (compactionRate == Long.MAX_VALUE) {
+            return true;
+        }
+        long expectedMillis = (long) (this.progress.getBytesMoved() * 1000.0 / compactionRate);
+        long elapsedMillis = (System.nanoTime() - this.startedNanos) / 1_000_000;
+        return this.pause(expectedMillis - elapsedMillis);
+    }
+
+    /**
+     * Sleeps for a given time.
+     * @param millis time to sleep in milliseconds, nothing is done if it's not positive
+     * @return false if the thread was interrupted and the work should be stopped
+     */
+    private boolean pause(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
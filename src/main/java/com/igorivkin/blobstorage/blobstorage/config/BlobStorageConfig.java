@@ -1,9 +1,16 @@
 package com.igorivkin.blobstorage.blobstorage.config;
 
+import com.igorivkin.blobstorage.database.config.SqlitePragmaProfile;
+
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 public class BlobStorageConfig {
+    public static final String WRITE_MODE_SYNC = "sync";
+    public static final String WRITE_MODE_GROUP = "group";
+
     /**
      * Maximal blob volume size in megabytes by default.
      */
@@ -27,6 +34,103 @@ public class BlobStorageConfig {
      */
     private List<String> allowedMimeTypes;
 
+    /**
+     * Mode of writing to blob volumes: "sync" executes every write in its own
+     * transaction right away, "group" batches concurrent writes into one transaction.
+     */
+    private String writeMode = WRITE_MODE_SYNC;
+
+    /**
+     * Time in milliseconds the volume writer waits for other writes to join the batch
+     * in group commit mode.
+     */
+    private long groupCommitWindow = 5;
+
+    /**
+     * Maximal number of writes executed in one transaction in group commit mode.
+     */
+    private int groupCommitMaxBatchSize = 64;
+
+    /**
+     * Number of blob volumes that are open for writes at the same time. The new items are
+     * spread across them, so the writers do not contend on a single SQLite write lock.
+     */
+    private int openVolumesForWrites = 1;
+
+    /**
+     * Name of strategy choosing the volume among the open ones: "firstFit",
+     * "roundRobin", "leastQueueDepth" or "leastRecentlyLocked".
+     */
+    private String volumePlacementStrategy = "firstFit";
+
+    /**
+     * Budget of the hot-blob cache in megabytes, 0 disables the cache.
+     */
+    private long hotCacheSize;
+
+    /**
+     * Maximal size of the item admitted to the hot-blob cache in kilobytes.
+     */
+    private long hotCacheMaxItemSize = 512;
+
+    /**
+     * True if the content of cached items is kept in the direct (off-heap) memory.
+     */
+    private boolean hotCacheOffHeap;
+
+    /**
+     * True if the same content stored several times is kept only once.
+     */
+    private boolean deduplication;
+
+    /**
+     * Codecs compressing the content by mime-types, e.g. "text/plain": "deflate" or "text/*": "deflate".
+     */
+    private Map<String, String> compressionRules = new HashMap<>();
+
+    /**
+     * Items bigger than this size in megabytes are stored as chunks, so they are never kept
+     * on heap as a whole.
+     */
+    private long chunkedItemThreshold = 8;
+
+    /**
+     * Size of the chunk of chunked items in kilobytes.
+     */
+    private int chunkSize = 256;
+
+    /**
+     * Items bigger than this size in megabytes are kept in the segment file next to the volume
+     * instead of the database, 0 disables the segment files. Applies to the items of declared size only.
+     */
+    private long segmentItemThreshold;
+
+    /**
+     * Volumes whose live content takes less than this percentage of the maximal volume size
+     * are compacted: their items are moved to fresh volumes and the volumes are removed.
+     */
+    private int compactionThreshold = 50;
+
+    /**
+     * Maximal rate of copying the items by the compaction in megabytes per second, 0 means unlimited.
+     */
+    private int compactionRate = 20;
+
+    /**
+     * Values of Cache-Control header by mime-types, e.g. "image/*": "public, max-age=31536000, immutable".
+     */
+    private Map<String, String> cacheControlProfiles = new HashMap<>();
+
+    /**
+     * SQLite pragma profiles by their names.
+     */
+    private Map<String, SqlitePragmaProfile> sqliteProfiles = new HashMap<>();
+
+    /**
+     * Names of the SQLite profiles by connection roles: writer, reader or maintenance.
+     */
+    private Map<String, String> connectionProfiles = new HashMap<>();
+
     public BlobStorageConfig() {
         this.allowedMimeTypes = new ArrayList<>();
     }
@@ -62,4 +166,148 @@ public class BlobStorageConfig {
     public void setAllowedMimeTypes(List<String> allowedMimeTypes) {
         this.allowedMimeTypes = allowedMimeTypes;
     }
+
+    public String getWriteMode() {
+        return writeMode;
+    }
+
+    public void setWriteMode(String writeMode) {
+        this.writeMode = writeMode;
+    }
+
+    public long getGroupCommitWindow() {
+        return groupCommitWindow;
+    }
+
+    public void setGroupCommitWindow(long groupCommitWindow) {
+        this.groupCommitWindow = groupCommitWindow;
+    }
+
+    public int getGroupCommitMaxBatchSize() {
+        return groupCommitMaxBatchSize;
+    }
+
+    public void setGroupCommitMaxBatchSize(int groupCommitMaxBatchSize) {
+        this.groupCommitMaxBatchSize = groupCommitMaxBatchSize;
+    }
+
+    public int getOpenVolumesForWrites() {
+        return openVolumesForWrites;
+    }
+
+    public void setOpenVolumesForWrites(int openVolumesForWrites) {
+        this.openVolumesForWrites = openVolumesForWrites;
+    }
+
+    public String getVolumePlacementStrategy() {
+        return volumePlacementStrategy;
+    }
+
+    public void setVolumePlacementStrategy(String volumePlacementStrategy) {
+        this.volumePlacementStrategy = volumePlacementStrategy;
+    }
+
+    public long getHotCacheSize() {
+        return hotCacheSize;
+    }
+
+    public void setHotCacheSize(long hotCacheSize) {
+        this.hotCacheSize = hotCacheSize;
+    }
+
+    public long getHotCacheMaxItemSize() {
+        return hotCacheMaxItemSize;
+    }
+
+    public void setHotCacheMaxItemSize(long hotCacheMaxItemSize) {
+        this.hotCacheMaxItemSize = hotCacheMaxItemSize;
+    }
+
+    public boolean isHotCacheOffHeap() {
+        return hotCacheOffHeap;
+    }
+
+    public void setHotCacheOffHeap(boolean hotCacheOffHeap) {
+        this.hotCacheOffHeap = hotCacheOffHeap;
+    }
+
+    public boolean isDeduplication() {
+        return deduplication;
+    }
+
+    public void setDeduplication(boolean deduplication) {
+        this.deduplication = deduplication;
+    }
+
+    public Map<String, String> getCompressionRules() {
+        return compressionRules;
+    }
+
+    public void setCompressionRules(Map<String, String> compressionRules) {
+        this.compressionRules = compressionRules;
+    }
+
+    public long getChunkedItemThreshold() {
+        return chunkedItemThreshold;
+    }
+
+    public void setChunkedItemThreshold(long chunkedItemThreshold) {
+        this.chunkedItemThreshold = chunkedItemThreshold;
+    }
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    public long getSegmentItemThreshold() {
+        return segmentItemThreshold;
+    }
+
+    public void setSegmentItemThreshold(long segmentItemThreshold) {
+        this.segmentItemThreshold = segmentItemThreshold;
+    }
+
+    public int getCompactionThreshold() {
+        return compactionThreshold;
+    }
+
+    public void setCompactionThreshold(int compactionThreshold) {
+        this.compactionThreshold = compactionThreshold;
+    }
+
+    public int getCompactionRate() {
+        return compactionRate;
+    }
+
+    public void setCompactionRate(int compactionRate) {
+        this.compactionRate = compactionRate;
+    }
+
+    public Map<String, String> getCacheControlProfiles() {
+        return cacheControlProfiles;
+    }
+
+    public void setCacheControlProfiles(Map<String, String> cacheControlProfiles) {
+        this.cacheControlProfiles = cacheControlProfiles;
+    }
+
+    public Map<String, SqlitePragmaProfile> getSqliteProfiles() {
+        return sqliteProfiles;
+    }
+
+    public void setSqliteProfiles(Map<String, SqlitePragmaProfile> sqliteProfiles) {
+        this.sqliteProfiles = sqliteProfiles;
+    }
+
+    public Map<String, String> getConnectionProfiles() {
+        return connectionProfiles;
+    }
+
+    public void setConnectionProfiles(Map<String, String> connectionProfiles) {
+        this.connectionProfiles = connectionProfiles;
+    }
 }
@@ -0,0 +1,45 @@
+package com.igorivkin.blobstorage.blobstorage.config;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads the file config/blobstorage.json once for everything that is configured by it.
+ * The volumes are configured by {@link BlobStorageConfigProvider}, the SQLite profiles are
+ * read by the database config, which is required by the connections the provider opens,
+ * so the file is not read by the provider itself.
+ */
+@Component
+public class BlobStorageConfigLoader {
+    @Value("${blobstorage.configpath}")
+    private String blobStorageConfigPath;
+
+    private BlobStorageConfig blobStorageConfig;
+
+    /**
+     * Reads the config from the json-file.
+     * @throws IOException it attempts to open json-file so exception is possible
+     */
+    @PostConstruct
+    public void initialize() throws IOException {
+        Gson jsonConfig = new Gson();
+        try (JsonReader jsonReader = new JsonReader(new FileReader(this.blobStorageConfigPath, StandardCharsets.UTF_8))) {
+            this.blobStorageConfig = jsonConfig.fromJson(jsonReader, BlobStorageConfig.class);
+        }
+    }
+
+    /**
+     * Returns the config read from the file config/blobstorage.json.
+     * @return generic blob storage config
+     */
+    public BlobStorageConfig getBlobStorageConfig() {
+        return blobStorageConfig;
+    }
+}
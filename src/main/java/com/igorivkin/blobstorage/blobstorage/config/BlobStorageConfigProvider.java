@@ -1,30 +1,67 @@
 package com.igorivkin.blobstorage.blobstorage.config;
 
-import com.google.gson.Gson;
-import com.google.gson.stream.JsonReader;
+import com.igorivkin.blobstorage.blobitem.MimeTypeRules;
+import com.igorivkin.blobstorage.blobitem.codec.BlobContentCompressionRules;
+import com.igorivkin.blobstorage.blobstorage.async.BlobVolumeExecutors;
+import com.igorivkin.blobstorage.blobstorage.compaction.BlobAddressForwarding;
+import com.igorivkin.blobstorage.blobstorage.placement.BlobVolumePlacementStrategies;
+import com.igorivkin.blobstorage.blobstorage.placement.BlobVolumePlacementStrategy;
 import com.igorivkin.blobstorage.blobvolume.BlobVolume;
 import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+import com.igorivkin.blobstorage.exceptions.NoSuchBlobVolumeException;
 import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
 import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.text.MessageFormat;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class BlobStorageConfigProvider {
 
-    @Value("${blobstorage.configpath}")
-    private String blobStorageConfigPath;
+    /**
+     * Volume is not considered for the new items anymore once its free space is lesser than this value.
+     */
+    private static final long MIN_WRITABLE_FREE_SPACE = 64 * 1024;
+
+    /**
+     * Cache-Control header value used when no profile matches the mime-type.
+     */
+    private static final String DEFAULT_CACHE_CONTROL = "no-cache";
 
     @Value("${blobstorage.databasepath}")
     private String databasePath;
 
+    @Value("${blobstorage.jdbc.volumename}")
+    private String volumeNamePattern;
+
+    /**
+     * True if the volumes are registered by the manifest at startup and opened on the first access.
+     */
+    @Value("${blobstorage.manifest.enabled:true}")
+    private boolean manifestEnabled;
+
+    /**
+     * Number of threads checking the manifest against the directory in the background.
+     */
+    @Value("${blobstorage.manifest.check.threads:4}")
+    private int manifestCheckThreads;
+
     /**
      * Generic config that is initialized from the file config/blobstorage.json.
      */
@@ -40,18 +77,75 @@ public class BlobStorageConfigProvider {
      */
     private Map<String, BlobVolume> blobVolumes;
 
+    /**
+     * The same blob volumes indexed by their IDs, used to resolve the item address.
+     */
+    private BlobVolumeRegistry blobVolumeRegistry;
+
+    /**
+     * The blob volumes that still have free space to store new items, ordered by their IDs.
+     */
+    private ConcurrentSkipListMap<Integer, BlobVolume> writableBlobVolumes;
+
+    /**
+     * Strategy choosing the volume for the next item among the ones open for writes.
+     */
+    private BlobVolumePlacementStrategy placementStrategy;
+
+    /**
+     * Rules choosing the codec compressing the content of new items.
+     */
+    private BlobContentCompressionRules compressionRules;
+
+    /**
+     * Values of Cache-Control header by mime-types.
+     */
+    private MimeTypeRules<String> cacheControlProfiles;
+
+    /**
+     * Manifest listing the volumes with their used space, see {@link BlobVolumeManifest}.
+     */
+    private BlobVolumeManifest volumeManifest;
+
+    /**
+     * Background check of the manifest against the directory, completed at once if there was no manifest.
+     */
+    private volatile CompletableFuture<Void> manifestCheck = CompletableFuture.completedFuture(null);
+
+    /**
+     * Callback set to every registered volume, see {@link #setVolumeOpenListener(BlobVolume.OpenListener)}.
+     */
+    private volatile BlobVolume.OpenListener volumeOpenListener;
+
     private final ObjectProvider<BlobVolume> blobVolumeProvider;
+    private final BlobAddressForwarding addressForwarding;
+    private final BlobStorageConfigLoader configLoader;
+    private final BlobVolumeExecutors volumeExecutors;
 
-    public BlobStorageConfigProvider(ObjectProvider<BlobVolume> blobVolumeProvider) {
+    public BlobStorageConfigProvider(ObjectProvider<BlobVolume> blobVolumeProvider,
+                                     BlobAddressForwarding addressForwarding,
+                                     BlobStorageConfigLoader configLoader,
+                                     BlobVolumeExecutors volumeExecutors) {
         this.blobVolumeProvider = blobVolumeProvider;
+        this.addressForwarding = addressForwarding;
+        this.configLoader = configLoader;
+        this.volumeExecutors = volumeExecutors;
     }
 
     @PostConstruct
-    public void initialize() throws IOException, GenericBlobStorageException {
-        this.databaseVolumes = new ArrayList<>();
-        this.blobVolumes = new HashMap<>();
+    public void initialize() throws IOException, SQLException, GenericBlobStorageException {
+        this.databaseVolumes = new CopyOnWriteArrayList<>();
+        this.blobVolumes = new ConcurrentHashMap<>();
+        this.blobVolumeRegistry = new BlobVolumeRegistry();
+        this.writableBlobVolumes = new ConcurrentSkipListMap<>();
 
         initializeBlobStorageConfig();
+        this.placementStrategy = BlobVolumePlacementStrategies.forName(this.blobStorageConfig.getVolumePlacementStrategy());
+        this.compressionRules = new BlobContentCompressionRules(this.blobStorageConfig.getCompressionRules());
+        this.cacheControlProfiles = new MimeTypeRules<>();
+        if (this.blobStorageConfig.getCacheControlProfiles() != null) {
+            this.blobStorageConfig.getCacheControlProfiles().forEach(this.cacheControlProfiles::put);
+        }
         initializeBlobVolumes();
     }
 
@@ -88,6 +182,98 @@ public class BlobStorageConfigProvider {
         return this.blobStorageConfig.getMaxBlobItemSize() * 1024 * 1024;
     }
 
+    /**
+     * Returns the budget of hot-blob cache in bytes.
+     * @return hot-blob cache size in bytes, 0 if the cache is disabled
+     */
+    public long getHotCacheSizeInBytes() {
+        return this.blobStorageConfig.getHotCacheSize() * 1024 * 1024;
+    }
+
+    /**
+     * Returns the maximal size of item admitted to hot-blob cache in bytes.
+     * @return maximal cached item size in bytes
+     */
+    public long getHotCacheMaxItemSizeInBytes() {
+        return this.blobStorageConfig.getHotCacheMaxItemSize() * 1024;
+    }
+
+    /**
+     * Returns true if the hot-blob cache keeps the content off-heap.
+     * @return true if off-heap cache is enabled
+     */
+    public boolean isHotCacheOffHeap() {
+        return this.blobStorageConfig.isHotCacheOffHeap();
+    }
+
+    /**
+     * Returns true if the content stored several times should be kept only once.
+     * @return true if deduplication is enabled
+     */
+    public boolean isDeduplicationEnabled() {
+        return this.blobStorageConfig.isDeduplication();
+    }
+
+    /**
+     * Returns the size above which the items are stored as chunks, in bytes.
+     * @return chunked item threshold in bytes
+     */
+    public long getChunkedItemThresholdInBytes() {
+        return this.blobStorageConfig.getChunkedItemThreshold() * 1024 * 1024;
+    }
+
+    /**
+     * Returns the size of the chunk of chunked items in bytes.
+     * @return chunk size in bytes
+     */
+    public int getChunkSizeInBytes() {
+        return this.blobStorageConfig.getChunkSize() * 1024;
+    }
+
+    /**
+     * Returns the size above which the items are kept in the segment files, in bytes.
+     * @return segment item threshold in bytes, Long.MAX_VALUE if the segment files are disabled
+     */
+    public long getSegmentItemThresholdInBytes() {
+        long segmentItemThreshold = this.blobStorageConfig.getSegmentItemThreshold();
+        return segmentItemThreshold > 0 ? segmentItemThreshold * 1024 * 1024 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the live content size below which the volume is compacted, in bytes.
+     * @return compaction threshold in bytes
+     */
+    public long getCompactionThresholdInBytes() {
+        return this.getMaxBlobVolumeSizeInBytes() / 100 * this.blobStorageConfig.getCompactionThreshold();
+    }
+
+    /**
+     * Returns the maximal rate of copying the items by the compaction, in bytes per second.
+     * @return compaction rate in bytes per second, Long.MAX_VALUE if it's unlimited
+     */
+    public long getCompactionRateInBytes() {
+        long compactionRate = this.blobStorageConfig.getCompactionRate();
+        return compactionRate > 0 ? compactionRate * 1024 * 1024 : Long.MAX_VALUE;
+    }
+
+    /**
+     * Returns the rules choosing the codec compressing the content of new items.
+     * @return compression rules
+     */
+    public BlobContentCompressionRules getCompressionRules() {
+        return this.compressionRules;
+    }
+
+    /**
+     * Returns the value of Cache-Control header for the files of a given mime-type.
+     * @param mimeType mime-type of the file
+     * @return Cache-Control header value
+     */
+    public String getCacheControl(String mimeType) {
+        String cacheControl = this.cacheControlProfiles.get(mimeType);
+        return cacheControl != null ? cacheControl : DEFAULT_CACHE_CONTROL;
+    }
+
     /**
      * Returns currently available database volumes. They are presented by their files.
      * @return list of currently available database volumes
@@ -105,6 +291,149 @@ public class BlobStorageConfigProvider {
         return blobVolumes;
     }
 
+    /**
+     * Returns blob volume by its ID.
+     * @param volumeId ID of blob volume
+     * @return blob volume
+     * @throws NoSuchBlobVolumeException it will crush if there is no such blob volume
+     */
+    public BlobVolume getBlobVolumeById(int volumeId) throws NoSuchBlobVolumeException {
+        BlobVolume blobVolume = this.blobVolumeRegistry.get(volumeId);
+        if (blobVolume == null) {
+            throw new NoSuchBlobVolumeException(MessageFormat.format("There is no such blob volume with ID {0}", volumeId));
+        }
+        return blobVolume;
+    }
+
+    /**
+     * Returns ID that should be assigned to the next new blob volume. IDs of the retired
+     * volumes are not reused, so the forwarded addresses never point to a wrong volume.
+     * @return ID of next blob volume
+     */
+    public int getNextBlobVolumeId() {
+        int volumeId = Math.max(this.blobVolumeRegistry.getMaxVolumeId(), this.addressForwarding.getMaxRetiredVolumeId()) + 1;
+        // The volumes missing in the manifest are registered by the background check later,
+        // their files should not be taken for new volumes meanwhile
+        while (new File(this.databasePath, String.format(this.volumeNamePattern, volumeId)).exists()) {
+            volumeId++;
+        }
+        return volumeId;
+    }
+
+    /**
+     * Creates a new blob volume with the next ID and registers it. Serialized with the registration
+     * of the volumes found by the manifest check, so the same file is never registered twice.
+     * @return new blob volume
+     * @throws SQLException it attempts to create the schema of the volume
+     */
+    public synchronized BlobVolume createBlobVolume() throws SQLException {
+        BlobVolume blobVolume = this.getBlobVolumeProvider().getObject();
+        blobVolume.initialize(this.getNextBlobVolumeId());
+        this.registerBlobVolume(blobVolume);
+        this.appendToDatabaseVolumes(blobVolume.getVolumeFile());
+        return blobVolume;
+    }
+
+    /**
+     * Registers a blob volume making it available for lookups by its name and ID.
+     * @param blobVolume blob volume to register
+     * @throws GenericBlobStorageException it will crush if no blob storage config is defined
+     */
+    public void registerBlobVolume(BlobVolume blobVolume) throws GenericBlobStorageException {
+        blobVolume.setMaxSizeInBytes(this.getMaxBlobVolumeSizeInBytes());
+        if (this.isGroupCommitEnabled()) {
+            blobVolume.enableGroupCommit(
+                    this.blobStorageConfig.getGroupCommitWindow(),
+                    this.blobStorageConfig.getGroupCommitMaxBatchSize()
+            );
+        }
+        blobVolume.setOpenListener(this.volumeOpenListener);
+        this.blobVolumes.put(blobVolume.getVolumeName(), blobVolume);
+        this.blobVolumeRegistry.register(blobVolume);
+        this.updateBlobVolumeWritability(blobVolume);
+    }
+
+    /**
+     * Sets the callback of opening to the registered volumes and to the ones registered later.
+     * The volumes opened already are not reported, so they should be checked by {@link BlobVolume#isOpened()}.
+     * @param volumeOpenListener callback called once a volume is opened
+     */
+    public void setVolumeOpenListener(BlobVolume.OpenListener volumeOpenListener) {
+        this.volumeOpenListener = volumeOpenListener;
+        for (BlobVolume blobVolume : this.blobVolumes.values()) {
+            blobVolume.setOpenListener(volumeOpenListener);
+        }
+    }
+
+    /**
+     * Excludes a blob volume from the lookups and from the writes, e.g. once all its items
+     * are moved to other volumes. The volume itself is not closed, but its executor is stopped.
+     * @param blobVolume blob volume to exclude
+     */
+    public void unregisterBlobVolume(BlobVolume blobVolume) {
+        this.writableBlobVolumes.remove(blobVolume.getVolumeId(), blobVolume);
+        this.blobVolumeRegistry.unregister(blobVolume.getVolumeId());
+        this.blobVolumes.remove(blobVolume.getVolumeName(), blobVolume);
+        this.databaseVolumes.remove(blobVolume.getVolumeFile());
+        this.volumeExecutors.remove(blobVolume.getVolumeId());
+    }
+
+    /**
+     * Returns the blob volumes that still have free space, ordered by their IDs.
+     * @return collection of writable blob volumes, it reflects the further changes
+     */
+    public Collection<BlobVolume> getWritableBlobVolumes() {
+        return this.writableBlobVolumes.values();
+    }
+
+    /**
+     * Returns the blob volumes open for writes: the first writable volumes by their IDs,
+     * but no more than it is defined by configuration.
+     * @return list of blob volumes open for writes
+     */
+    public List<BlobVolume> getOpenBlobVolumes() {
+        int openVolumesCount = this.getOpenVolumesForWrites();
+        List<BlobVolume> openVolumes = new ArrayList<>(openVolumesCount);
+        for (BlobVolume blobVolume : this.writableBlobVolumes.values()) {
+            if (openVolumes.size() == openVolumesCount) {
+                break;
+            }
+            openVolumes.add(blobVolume);
+        }
+        return openVolumes;
+    }
+
+    /**
+     * Returns number of blob volumes that should be open for writes at the same time.
+     * @return number of volumes open for writes
+     */
+    public int getOpenVolumesForWrites() {
+        return Math.max(1, this.blobStorageConfig.getOpenVolumesForWrites());
+    }
+
+    /**
+     * Returns strategy choosing the volume for the next item.
+     * @return volume placement strategy
+     */
+    public BlobVolumePlacementStrategy getPlacementStrategy() {
+        return this.placementStrategy;
+    }
+
+    /**
+     * Includes the blob volume to the writable ones or excludes it depending on its
+     * current free space. Should be called once the space of volume is changed.
+     * The sealed and the unregistered volumes are never writable.
+     * @param blobVolume blob volume to check
+     */
+    public void updateBlobVolumeWritability(BlobVolume blobVolume) {
+        if (!blobVolume.isSealed() && blobVolume.getFreeBytes() >= MIN_WRITABLE_FREE_SPACE
+                && this.blobVolumes.get(blobVolume.getVolumeName()) == blobVolume) {
+            this.writableBlobVolumes.putIfAbsent(blobVolume.getVolumeId(), blobVolume);
+        } else {
+            this.writableBlobVolumes.remove(blobVolume.getVolumeId(), blobVolume);
+        }
+    }
+
     /**
      * Appends a new database volume file to a list of database volume files.
      * @param databaseVolume file of database volume
@@ -121,6 +450,109 @@ public class BlobStorageConfigProvider {
         return this.blobStorageConfig.isAllowToCreateNewVolumes();
     }
 
+    /**
+     * Returns true if the writes to blob volumes are batched into group commits.
+     * @return true if group commit mode is enabled
+     */
+    public boolean isGroupCommitEnabled() {
+        String writeMode = this.blobStorageConfig.getWriteMode();
+        if (BlobStorageConfig.WRITE_MODE_GROUP.equals(writeMode)) {
+            return true;
+        } else if (writeMode == null || BlobStorageConfig.WRITE_MODE_SYNC.equals(writeMode)) {
+            return false;
+        } else {
+            throw new GenericBlobStorageException(MessageFormat.format("Unknown write mode: {0}", writeMode));
+        }
+    }
+
+    /**
+     * Stops the writers of all the blob volumes on application shutdown,
+     * the already queued writes are committed before.
+     */
+    @PreDestroy
+    public void closeBlobVolumes() throws IOException, SQLException {
+        if (!this.manifestEnabled) {
+            this.blobVolumes.values().forEach(BlobVolume::close);
+            return;
+        }
+        // The items are counted while the volumes are still open...
+        this.refreshVolumeManifest();
+        this.blobVolumes.values().forEach(BlobVolume::close);
+        // ... and closing checkpoints WAL-files, so the files get their final modification time
+        for (BlobVolume blobVolume : this.blobVolumes.values()) {
+            BlobVolumeManifestEntry entry = this.volumeManifest.get(blobVolume.getVolumeId());
+            if (blobVolume.isOpened() && entry != null) {
+                entry.setModifiedAt(blobVolume.getLastModified());
+            }
+        }
+        this.volumeManifest.save();
+    }
+
+    /**
+     * Saves the current state of the volumes to the manifest, so the next startup does not
+     * need to open them. The items are counted only in the volumes modified since the last save.
+     * @throws IOException it attempts to write the manifest file
+     * @throws SQLException it attempts to count the items of modified volumes
+     */
+    @Scheduled(initialDelayString = "${blobstorage.manifest.save.delay:60000}", fixedDelayString = "${blobstorage.manifest.save.delay:60000}")
+    public void saveVolumeManifest() throws IOException, SQLException {
+        if (!this.manifestEnabled) {
+            return;
+        }
+        this.refreshVolumeManifest();
+        this.volumeManifest.save();
+    }
+
+    /**
+     * Returns the manifest of the volumes.
+     * @return volume manifest
+     */
+    public BlobVolumeManifest getVolumeManifest() {
+        return this.volumeManifest;
+    }
+
+    /**
+     * Returns the background check of the manifest against the directory.
+     * @return future completed once the check is finished
+     */
+    public CompletableFuture<Void> getManifestCheck() {
+        return this.manifestCheck;
+    }
+
+    /**
+     * Returns number of items in the volume. The volume that is not open yet is not opened
+     * just for that, the number is taken from the manifest.
+     * @param blobVolume blob volume
+     * @return number of visible items
+     * @throws SQLException it attempts to count the items of the volume
+     */
+    public long getItemCount(BlobVolume blobVolume) throws SQLException {
+        if (!blobVolume.isOpened()) {
+            BlobVolumeManifestEntry entry = this.volumeManifest.get(blobVolume.getVolumeId());
+            if (entry != null) {
+                return entry.getItemCount();
+            }
+        }
+        return blobVolume.getItemCount();
+    }
+
+    /**
+     * Returns size of the live content of the volume. The volume that is not open yet is not opened
+     * just for that, its used space from the manifest is taken as the upper bound of the live content.
+     * @param blobVolume blob volume
+     * @return size of live content in bytes
+     * @throws SQLException it attempts to sum up the items of the volume
+     */
+    public long getLiveBytes(BlobVolume blobVolume) throws SQLException {
+        if (!blobVolume.isOpened()) {
+            BlobVolumeManifestEntry entry = this.volumeManifest.get(blobVolume.getVolumeId());
+            if (entry != null) {
+                return entry.getItemCount() > 0 ? entry.getUsedBytes() : 0;
+            }
+        }
+        return blobVolume.getLiveBytes();
+    }
+
     /**
      * Returns list of allowed mime-types.
      * @return list of strings representing allowed mime-types.
@@ -131,38 +563,214 @@ public class BlobStorageConfigProvider {
 
     /**
      * Initializes blob storage config - it contains configuration things
-     * for entire blob storage application.
-     * @throws IOException it attempts to open json-file so exception is possible
+     * for entire blob storage application, see {@link BlobStorageConfigLoader}.
      */
-    private void initializeBlobStorageConfig() throws IOException {
-        Gson jsonConfig = new Gson();
-        try(JsonReader jsonReader = new JsonReader(new FileReader(this.blobStorageConfigPath, StandardCharsets.UTF_8 ))) {
-            this.blobStorageConfig = jsonConfig.fromJson(jsonReader, BlobStorageConfig.class);
-        }
+    private void initializeBlobStorageConfig() {
+        this.blobStorageConfig = this.configLoader.getBlobStorageConfig();
     }
 
     /**
-     * Initializes blob volumes list.
+     * Initializes blob volumes list. If there is a manifest, the volumes are registered by it
+     * with their used space and opened on the first access, otherwise every volume found
+     * in the directory is opened right away.
      * @throws GenericBlobStorageException it will crush in case if not possible to get list of files
+     * @throws IOException it attempts to read the manifest file
+     * @throws SQLException it attempts to read the used space of every volume
      */
-    private void initializeBlobVolumes() throws GenericBlobStorageException {
+    private void initializeBlobVolumes() throws GenericBlobStorageException, IOException, SQLException {
+        File databaseDirectory = new File(this.databasePath);
+        this.volumeManifest = new BlobVolumeManifest(new File(databaseDirectory, BlobVolumeManifest.MANIFEST_FILE_NAME));
+        if (this.manifestEnabled && this.volumeManifest.load()) {
+            List<File> manifestVolumes = new ArrayList<>();
+            for (BlobVolumeManifestEntry entry : this.volumeManifest.getEntries()) {
+                File databaseVolume = new File(databaseDirectory, entry.getPath());
+                BlobVolume blobVolume = this.newBlobVolume(databaseVolume);
+                blobVolume.restoreUsedSpace(entry.getUsedBytes());
+                if (entry.isSealed()) {
+                    // The compaction may have been interrupted, so the volume is kept out of the writes
+                    blobVolume.seal();
+                }
+                this.registerBlobVolume(blobVolume);
+                manifestVolumes.add(databaseVolume);
+            }
+            this.databaseVolumes = new CopyOnWriteArrayList<>(manifestVolumes);
+            this.manifestCheck = this.startManifestCheck();
+            return;
+        }
+
         // First we initialize file-defined blob volumes...
+        this.databaseVolumes = new CopyOnWriteArrayList<>(this.listDatabaseFiles());
+
+        // ... and then we initialize blob volumes list with corresponding objects
+        for(File databaseVolume: this.getDatabaseVolumes()) {
+            BlobVolume blobVolume = this.newBlobVolume(databaseVolume);
+            blobVolume.open();
+            this.registerBlobVolume(blobVolume);
+        }
+        if (this.manifestEnabled) {
+            this.saveVolumeManifest();
+        }
+    }
+
+    /**
+     * Lists the database files of the volumes.
+     * @return database files
+     * @throws GenericBlobStorageException it will crush in case if not possible to get list of files
+     */
+    private File[] listDatabaseFiles() throws GenericBlobStorageException {
         File databaseDirectory = new File(this.databasePath);
         File[] databaseFiles = databaseDirectory.listFiles((dir, name) -> name.startsWith("blob_volume_") && name.endsWith(".db"));
-        if(databaseFiles != null) {
-            this.databaseVolumes = new ArrayList<>(Arrays.asList(databaseFiles));
-        } else {
+        if(databaseFiles == null) {
             throw new GenericBlobStorageException("Cannot get database files, probably path is defined incorrectly");
         }
+        return databaseFiles;
+    }
 
-        // ... and then we initialize blob volumes list with corresponding objects
-        for(File databaseVolume: this.getDatabaseVolumes()) {
-            BlobVolume blobVolume = this.getBlobVolumeProvider().getObject();
-            blobVolume.setVolumeFile(databaseVolume);
-            blobVolume.setVolumeName(databaseVolume.getName());
-            blobVolume.setVolumeId(this.extractVolumeIdFromVolumeName(blobVolume.getVolumeName()));
-            this.blobVolumes.put(blobVolume.getVolumeName(), blobVolume);
+    /**
+     * Creates the object of existing blob volume, the volume is not opened.
+     * @param databaseVolume database file of the volume
+     * @return blob volume
+     */
+    private BlobVolume newBlobVolume(File databaseVolume) {
+        BlobVolume blobVolume = this.getBlobVolumeProvider().getObject();
+        blobVolume.setVolumeFile(databaseVolume);
+        blobVolume.setVolumeName(databaseVolume.getName());
+        blobVolume.setVolumeId(this.extractVolumeIdFromVolumeName(blobVolume.getVolumeName()));
+        return blobVolume;
+    }
+
+    /**
+     * Checks the manifest against the directory by several threads in the background. The volumes
+     * whose files are gone are excluded, the volumes modified after the manifest was saved are opened
+     * to refresh their used space, and the volumes missing in the manifest are registered.
+     * The manifest is saved once everything is checked.
+     * @return future completed once the check is finished
+     */
+    private CompletableFuture<Void> startManifestCheck() {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, this.manifestCheckThreads), runnable -> {
+            Thread thread = new Thread(runnable, "blob-manifest-check-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        List<BlobVolume> manifestVolumes = new ArrayList<>(this.blobVolumes.values());
+        return CompletableFuture.supplyAsync(this::listDatabaseFiles, executorService)
+                .thenCompose(databaseFiles -> {
+                    List<CompletableFuture<Void>> checks = new ArrayList<>();
+                    for (BlobVolume blobVolume : manifestVolumes) {
+                        checks.add(CompletableFuture.runAsync(() -> this.checkManifestVolume(blobVolume), executorService));
+                    }
+                    for (File databaseFile : databaseFiles) {
+                        if (this.blobVolumeRegistry.get(this.extractVolumeIdFromVolumeName(databaseFile.getName())) == null) {
+                            checks.add(CompletableFuture.runAsync(() -> this.registerFoundBlobVolume(databaseFile), executorService));
+                        }
+                    }
+                    return CompletableFuture.allOf(checks.toArray(new CompletableFuture[0]));
+                })
+                .thenRun(() -> {
+                    try {
+                        this.saveVolumeManifest();
+                    } catch (IOException | SQLException exception) {
+                        throw new CompletionException(exception);
+                    }
+                })
+                .whenComplete((result, exception) -> executorService.shutdown());
+    }
+
+    /**
+     * Checks a single volume registered by the manifest.
+     * @param blobVolume blob volume to check
+     */
+    private void checkManifestVolume(BlobVolume blobVolume) {
+        if (!blobVolume.getVolumeFile().exists()) {
+            // The files are removed behind the storage (or the volume is retired), it can't be served anymore
+            this.unregisterBlobVolume(blobVolume);
+            this.volumeManifest.remove(blobVolume.getVolumeId());
+            blobVolume.close();
+            return;
+        }
+        BlobVolumeManifestEntry entry = this.volumeManifest.get(blobVolume.getVolumeId());
+        if (entry != null && entry.getModifiedAt() == blobVolume.getLastModified()) {
+            return;
+        }
+        // The volume was modified after the manifest had been saved, e.g. the storage was not stopped gracefully
+        try {
+            blobVolume.open();
+            this.updateBlobVolumeWritability(blobVolume);
+            this.volumeManifest.put(this.describeBlobVolume(blobVolume));
+        } catch (NoSuchBlobVolumeException exception) {
+            // The volume is retired meanwhile
+        } catch (SQLException exception) {
+            throw new CompletionException(exception);
+        }
+    }
+
+    /**
+     * Opens and registers the volume found in the directory but missing in the manifest, unless
+     * it's registered meanwhile or it's a retired volume whose files are not yet removed.
+     * @param databaseVolume database file of the volume
+     */
+    private void registerFoundBlobVolume(File databaseVolume) {
+        BlobVolume blobVolume = this.newBlobVolume(databaseVolume);
+        if (this.addressForwarding.isRetiredVolume(blobVolume.getVolumeId())) {
+            return;
+        }
+        try {
+            blobVolume.open();
+            BlobVolumeManifestEntry entry = this.describeBlobVolume(blobVolume);
+            synchronized (this) {
+                if (this.blobVolumeRegistry.get(blobVolume.getVolumeId()) != null) {
+                    blobVolume.close();
+                    return;
+                }
+                this.registerBlobVolume(blobVolume);
+                this.appendToDatabaseVolumes(databaseVolume);
+                this.volumeManifest.put(entry);
+            }
+        } catch (NoSuchBlobVolumeException exception) {
+            // The files are removed meanwhile
+        } catch (SQLException exception) {
+            throw new CompletionException(exception);
+        }
+    }
+
+    /**
+     * Refreshes the entries of the manifest by the registered volumes and drops the entries
+     * of the volumes that are not registered anymore. The file is not written.
+     * @throws SQLException it attempts to count the items of modified volumes
+     */
+    private void refreshVolumeManifest() throws SQLException {
+        for (BlobVolume blobVolume : this.blobVolumes.values()) {
+            this.volumeManifest.put(this.describeBlobVolume(blobVolume));
+        }
+        this.volumeManifest.getEntries().removeIf(entry -> this.blobVolumeRegistry.get(entry.getVolumeId()) == null);
+    }
+
+    /**
+     * Makes the manifest entry describing the current state of the volume. The items are counted
+     * only if the volume is open and modified since its previous entry, otherwise the previous
+     * number is kept.
+     * @param blobVolume blob volume
+     * @return manifest entry
+     * @throws SQLException it attempts to count the items
+     */
+    private BlobVolumeManifestEntry describeBlobVolume(BlobVolume blobVolume) throws SQLException {
+        BlobVolumeManifestEntry previousEntry = this.volumeManifest.get(blobVolume.getVolumeId());
+        // The time is taken before counting, so the writes done meanwhile outdate the entry
+        long modifiedAt = blobVolume.getLastModified();
+        BlobVolumeManifestEntry entry = new BlobVolumeManifestEntry();
+        entry.setVolumeId(blobVolume.getVolumeId());
+        entry.setPath(blobVolume.getVolumeName());
+        entry.setUsedBytes(blobVolume.getUsedBytes());
+        entry.setSealed(blobVolume.isSealed() || blobVolume.getFreeBytes() < MIN_WRITABLE_FREE_SPACE);
+        if (previousEntry != null && (previousEntry.getModifiedAt() == modifiedAt || !blobVolume.isOpened())) {
+            entry.setItemCount(previousEntry.getItemCount());
+            entry.setModifiedAt(previousEntry.getModifiedAt());
+        } else if (blobVolume.isOpened()) {
+            entry.setItemCount(blobVolume.getItemCount());
+            entry.setModifiedAt(modifiedAt);
         }
+        return entry;
     }
 
     /**
@@ -0,0 +1,128 @@
+package com.igorivkin.blobstorage.blobstorage.config;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.stream.JsonReader;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Manifest of the blob volumes kept in a JSON-file next to them. It lists the volumes with their
+ * used space, so the volumes are registered at startup without opening every database, and they
+ * are opened on the first access. The manifest is only a hint: it's checked against the directory
+ * in the background and outdated entries are refreshed from the volumes themselves.
+ */
+public class BlobVolumeManifest {
+
+    /**
+     * Name of the manifest file, it does not match the names of volumes.
+     */
+    public static final String MANIFEST_FILE_NAME = "blob_volumes.json";
+
+    private final File manifestFile;
+
+    private final Map<Integer, BlobVolumeManifestEntry> entries = new ConcurrentHashMap<>();
+
+    public BlobVolumeManifest(File manifestFile) {
+        this.manifestFile = manifestFile;
+    }
+
+    /**
+     * Loads the entries from the manifest file.
+     * @return false if there is no manifest file or it can't be parsed, so the volumes should be found by the directory
+     * @throws IOException it attempts to read the manifest file
+     */
+    public boolean load() throws IOException {
+        this.entries.clear();
+        if (!this.manifestFile.exists()) {
+            return false;
+        }
+        Content content;
+        try (JsonReader jsonReader = new JsonReader(new FileReader(this.manifestFile, StandardCharsets.UTF_8))) {
+            content = new Gson().fromJson(jsonReader, Content.class);
+        } catch (JsonParseException exception) {
+            // A broken manifest is not fatal, the volumes are just found by the directory
+            return false;
+        }
+        if (content == null || content.volumes == null) {
+            return false;
+        }
+        for (BlobVolumeManifestEntry entry : content.volumes) {
+            this.entries.put(entry.getVolumeId(), entry);
+        }
+        return true;
+    }
+
+    /**
+     * Writes the entries to the manifest file. The content is written to a temporary file first,
+     * which replaces the manifest then, so the manifest is never seen half-written.
+     * @throws IOException it attempts to write the manifest file
+     */
+    public synchronized void save() throws IOException {
+        Content content = new Content();
+        content.volumes = new ArrayList<>(this.entries.values());
+        content.volumes.sort((first, second) -> Integer.compare(first.getVolumeId(), second.getVolumeId()));
+        File temporaryFile = new File(this.manifestFile.getPath() + ".tmp");
+        try (Writer writer = new FileWriter(temporaryFile, StandardCharsets.UTF_8)) {
+            new Gson().toJson(content, writer);
+        }
+        Files.move(temporaryFile.toPath(), this.manifestFile.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Returns the entry of the volume.
+     * @param volumeId ID of volume
+     * @return entry or null if the volume is not in the manifest
+     */
+    public BlobVolumeManifestEntry get(int volumeId) {
+        return this.entries.get(volumeId);
+    }
+
+    /**
+     * Returns all the entries.
+     * @return entries of the manifest, they reflect the further changes
+     */
+    public Collection<BlobVolumeManifestEntry> getEntries() {
+        return this.entries.values();
+    }
+
+    /**
+     * Adds the entry or replaces the previous entry of the same volume.
+     * @param entry entry to put
+     */
+    public void put(BlobVolumeManifestEntry entry) {
+        this.entries.put(entry.getVolumeId(), entry);
+    }
+
+    /**
+     * Removes the entry of the volume.
+     * @param volumeId ID of volume
+     */
+    public void remove(int volumeId) {
+        this.entries.remove(volumeId);
+    }
+
+    public File getManifestFile() {
+        return manifestFile;
+    }
+
+    /**
+     * Content of the manifest file as it's serialized.
+     */
+    private static class Content {
+        private List<BlobVolumeManifestEntry> volumes;
+    }
+}
@@ -0,0 +1,88 @@
+package com.igorivkin.blobstorage.blobstorage.config;
+
+/**
+ * State of a single blob volume as it's kept in the manifest, see {@link BlobVolumeManifest}.
+ */
+public class BlobVolumeManifestEntry {
+
+    /**
+     * ID of the volume.
+     */
+    private int volumeId;
+
+    /**
+     * Name of the database file of the volume relative to the database path.
+     */
+    private String path;
+
+    /**
+     * Space taken by the stored items in bytes.
+     */
+    private long usedBytes;
+
+    /**
+     * True if the volume had no room for new items or was sealed by compaction when the manifest
+     * was saved. The volume is registered sealed then, it's unsealed by the next compaction
+     * that does not retire it.
+     */
+    private boolean sealed;
+
+    /**
+     * Number of visible items in the volume.
+     */
+    private long itemCount;
+
+    /**
+     * Time of the last modification of the volume files in milliseconds, the entry is outdated
+     * once the files are modified later.
+     */
+    private long modifiedAt;
+
+    public int getVolumeId() {
+        return volumeId;
+    }
+
+    public void setVolumeId(int volumeId) {
+        this.volumeId = volumeId;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public void setPath(String path) {
+        this.path = path;
+    }
+
+    public long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public void setUsedBytes(long usedBytes) {
+        this.usedBytes = usedBytes;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    public void setSealed(boolean sealed) {
+        this.sealed = sealed;
+    }
+
+    public long getItemCount() {
+        return itemCount;
+    }
+
+    public void setItemCount(long itemCount) {
+        this.itemCount = itemCount;
+    }
+
+    public long getModifiedAt() {
+        return modifiedAt;
+    }
+
+    public void setModifiedAt(long modifiedAt) {
+        this.modifiedAt = modifiedAt;
+    }
+}
@@ -0,0 +1,101 @@
+package com.igorivkin.blobstorage.blobstorage.config;
+
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+
+import java.text.MessageFormat;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Registry of blob volumes indexed by their numeric IDs. Volume IDs are small positive
+ * sequential numbers, so the volume is kept in the array slot equal to its ID. Lookups are
+ * lock-free, constant-time and allocation-free, modifications are serialized and the array
+ * is copied only when it has to grow.
+ */
+public class BlobVolumeRegistry {
+    private static final int INITIAL_CAPACITY = 64;
+
+    private final Object modificationLock = new Object();
+
+    private volatile AtomicReferenceArray<BlobVolume> volumesById = new AtomicReferenceArray<>(INITIAL_CAPACITY);
+    private volatile int maxVolumeId;
+    private volatile int size;
+
+    /**
+     * Returns the volume by its ID.
+     * @param volumeId ID of volume
+     * @return volume or null if there is no such volume
+     */
+    public BlobVolume get(int volumeId) {
+        AtomicReferenceArray<BlobVolume> currentVolumes = this.volumesById;
+        if (volumeId <= 0 || volumeId >= currentVolumes.length()) {
+            return null;
+        }
+        return currentVolumes.get(volumeId);
+    }
+
+    /**
+     * Registers the volume using its ID, replaces previously registered volume with the same ID.
+     * @param blobVolume volume to register
+     */
+    public void register(BlobVolume blobVolume) {
+        int volumeId = blobVolume.getVolumeId();
+        if (volumeId <= 0) {
+            throw new IllegalArgumentException(MessageFormat.format("Volume ID should be positive, given {0}", volumeId));
+        }
+        synchronized (this.modificationLock) {
+            AtomicReferenceArray<BlobVolume> currentVolumes = this.volumesById;
+            if (volumeId >= currentVolumes.length()) {
+                int newCapacity = currentVolumes.length();
+                while (newCapacity <= volumeId) {
+                    newCapacity *= 2;
+                }
+                AtomicReferenceArray<BlobVolume> grownVolumes = new AtomicReferenceArray<>(newCapacity);
+                for (int i = 0; i < currentVolumes.length(); i++) {
+                    grownVolumes.set(i, currentVolumes.get(i));
+                }
+                currentVolumes = grownVolumes;
+            }
+            if (currentVolumes.getAndSet(volumeId, blobVolume) == null) {
+                this.size++;
+            }
+            this.volumesById = currentVolumes;
+            this.maxVolumeId = Math.max(this.maxVolumeId, volumeId);
+        }
+    }
+
+    /**
+     * Removes the volume from the registry.
+     * @param volumeId ID of volume
+     * @return removed volume or null if there was no such volume
+     */
+    public BlobVolume unregister(int volumeId) {
+        synchronized (this.modificationLock) {
+            AtomicReferenceArray<BlobVolume> currentVolumes = this.volumesById;
+            if (volumeId <= 0 || volumeId >= currentVolumes.length()) {
+                return null;
+            }
+            BlobVolume removedVolume = currentVolumes.getAndSet(volumeId, null);
+            if (removedVolume != null) {
+                this.size--;
+            }
+            return removedVolume;
+        }
+    }
+
+    /**
+     * Returns the greatest ID that was ever registered. IDs of removed volumes
+     * are not reused, so the next new volume should get the ID greater than this one.
+     * @return the greatest registered volume ID, 0 if nothing was registered
+     */
+    public int getMaxVolumeId() {
+        return this.maxVolumeId;
+    }
+
+    /**
+     * Returns number of registered volumes.
+     * @return number of volumes
+     */
+    public int size() {
+        return this.size;
+    }
+}
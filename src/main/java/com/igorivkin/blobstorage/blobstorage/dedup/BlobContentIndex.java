@@ -0,0 +1,138 @@
+package com.igorivkin.blobstorage.blobstorage.dedup;
+
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cross-volume index of the stored content by its hash and mime-type, used to find
+ * the already stored copy of the content. The index is kept in memory and, if deduplication
+ * is enabled, every volume is indexed once it's opened: the volumes registered by the manifest
+ * are opened on the first access, so the index does not slow the startup down, and the copies
+ * kept in the volumes not accessed yet are just not found. The volumes for writes are opened
+ * by the first store anyway.
+ *
+ * The index is a hint only: the volume itself checks that the found entity still has
+ * the same content before adding a reference to it, so a stale entry just leads to
+ * storing one more copy.
+ */
+@Component
+public class BlobContentIndex {
+    private final BlobStorageConfigProvider configProvider;
+
+    private final Map<String, BlobStoredItemAddress> addressesByContent = new ConcurrentHashMap<>();
+    private final Map<BlobStoredItemAddress, String> contentsByAddress = new ConcurrentHashMap<>();
+
+    /**
+     * IDs of the volumes indexed already, the volume opened by the manifest check while
+     * the index is initialized could be reported twice.
+     */
+    private final Set<Integer> indexedVolumeIds = ConcurrentHashMap.newKeySet();
+
+    public BlobContentIndex(BlobStorageConfigProvider configProvider) {
+        this.configProvider = configProvider;
+    }
+
+    @PostConstruct
+    public void initialize() throws SQLException {
+        if (!this.isEnabled()) {
+            return;
+        }
+        this.configProvider.setVolumeOpenListener(this::indexVolume);
+        for (BlobVolume blobVolume : this.configProvider.getBlobVolumes().values()) {
+            if (blobVolume.isOpened()) {
+                this.indexVolume(blobVolume);
+            }
+        }
+    }
+
+    /**
+     * Puts all the items of a volume to the index unless the volume is indexed already.
+     * @param blobVolume opened volume
+     * @throws SQLException it attempts to read the item descriptions of the volume
+     */
+    private void indexVolume(BlobVolume blobVolume) throws SQLException {
+        if (!this.indexedVolumeIds.add(blobVolume.getVolumeId())) {
+            return;
+        }
+        blobVolume.forEachItemInfo(itemInfo -> {
+            if (itemInfo.getContentHash() != null) {
+                this.put(itemInfo.getContentHash(), itemInfo.getMimeType(),
+                        new BlobStoredItemAddress(itemInfo.getId(), blobVolume.getVolumeId()));
+            }
+        });
+    }
+
+    /**
+     * Returns true if deduplication is enabled by configuration.
+     * @return true if the index is maintained
+     */
+    public boolean isEnabled() {
+        return this.configProvider.isDeduplicationEnabled();
+    }
+
+    /**
+     * Returns the address of already stored content.
+     * @param contentHash hash of the content
+     * @param mimeType mime-type of the content
+     * @return address of the stored copy or null if there is no one
+     */
+    public BlobStoredItemAddress get(String contentHash, String mimeType) {
+        return this.addressesByContent.get(BlobContentIndex.key(contentHash, mimeType));
+    }
+
+    /**
+     * Remembers the address of stored content unless another copy is already known.
+     * @param contentHash hash of the content
+     * @param mimeType mime-type of the content
+     * @param address address of the stored copy
+     */
+    public void put(String contentHash, String mimeType, BlobStoredItemAddress address) {
+        String key = BlobContentIndex.key(contentHash, mimeType);
+        if (this.addressesByContent.putIfAbsent(key, address) == null) {
+            this.contentsByAddress.put(address, key);
+        }
+    }
+
+    /**
+     * Forgets the stored copy, should be called once the content is removed from the volume.
+     * @param address address of the removed copy
+     */
+    public void remove(BlobStoredItemAddress address) {
+        String key = this.contentsByAddress.remove(address);
+        if (key != null) {
+            this.addressesByContent.remove(key, address);
+        }
+    }
+
+    /**
+     * Points the index to the new address of stored copy once it's moved to another volume.
+     * @param oldAddress address of the copy before the move
+     * @param newAddress address of the copy after the move
+     */
+    public void move(BlobStoredItemAddress oldAddress, BlobStoredItemAddress newAddress) {
+        String key = this.contentsByAddress.remove(oldAddress);
+        if (key != null && this.addressesByContent.replace(key, oldAddress, newAddress)) {
+            this.contentsByAddress.put(newAddress, key);
+        }
+    }
+
+    /**
+     * Returns number of indexed contents.
+     * @return size of the index
+     */
+    public int size() {
+        return this.addressesByContent.size();
+    }
+
+    private static String key(String contentHash, String mimeType) {
+        return contentHash + ':' + mimeType;
+    }
+}
@@ -0,0 +1,35 @@
+package com.igorivkin.blobstorage.blobstorage.placement;
+
+import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+
+import java.text.MessageFormat;
+
+/**
+ * Creates placement strategies by their names used in configuration file.
+ */
+public class BlobVolumePlacementStrategies {
+    public static final String FIRST_FIT = "firstFit";
+    public static final String ROUND_ROBIN = "roundRobin";
+    public static final String LEAST_QUEUE_DEPTH = "leastQueueDepth";
+    public static final String LEAST_RECENTLY_LOCKED = "leastRecentlyLocked";
+
+    /**
+     * Returns new placement strategy by its name.
+     * @param name name of strategy, first-fit strategy is used if it's null
+     * @return placement strategy
+     * @throws GenericBlobStorageException it will crush if there is no such strategy
+     */
+    public static BlobVolumePlacementStrategy forName(String name) throws GenericBlobStorageException {
+        if (name == null || FIRST_FIT.equals(name)) {
+            return new FirstFitPlacementStrategy();
+        } else if (ROUND_ROBIN.equals(name)) {
+            return new RoundRobinPlacementStrategy();
+        } else if (LEAST_QUEUE_DEPTH.equals(name)) {
+            return new LeastQueueDepthPlacementStrategy();
+        } else if (LEAST_RECENTLY_LOCKED.equals(name)) {
+            return new LeastRecentlyLockedPlacementStrategy();
+        } else {
+            throw new GenericBlobStorageException(MessageFormat.format("Unknown volume placement strategy: {0}", name));
+        }
+    }
+}
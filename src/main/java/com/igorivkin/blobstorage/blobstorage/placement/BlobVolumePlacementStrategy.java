@@ -0,0 +1,19 @@
+package com.igorivkin.blobstorage.blobstorage.placement;
+
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+
+import java.util.List;
+
+/**
+ * Decides which of the volumes open for writes receives the next item.
+ */
+public interface BlobVolumePlacementStrategy {
+
+    /**
+     * Reserves the space for the item in one of the given volumes.
+     * @param openVolumes volumes open for writes, ordered by their IDs
+     * @param storedSize space to reserve in bytes
+     * @return a volume where the space is reserved, null if no one has enough space
+     */
+    BlobVolume reserve(List<BlobVolume> openVolumes, long storedSize);
+}
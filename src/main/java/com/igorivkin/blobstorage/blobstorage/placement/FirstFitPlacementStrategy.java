@@ -0,0 +1,22 @@
+package com.igorivkin.blobstorage.blobstorage.placement;
+
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+
+import java.util.List;
+
+/**
+ * Always tries the volumes in the order of their IDs, so the first volume is filled
+ * before the next one is used.
+ */
+public class FirstFitPlacementStrategy implements BlobVolumePlacementStrategy {
+
+    @Override
+    public BlobVolume reserve(List<BlobVolume> openVolumes, long storedSize) {
+        for (BlobVolume blobVolume : openVolumes) {
+            if (blobVolume.tryReserve(storedSize)) {
+                return blobVolume;
+            }
+        }
+        return null;
+    }
+}
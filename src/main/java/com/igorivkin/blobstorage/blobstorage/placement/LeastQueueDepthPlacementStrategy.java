@@ -0,0 +1,19 @@
+package com.igorivkin.blobstorage.blobstorage.placement;
+
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+
+import java.util.List;
+
+/**
+ * Prefers the volume with the smallest number of writes in progress,
+ * so a volume busy with a large item does not delay the others.
+ */
+public class LeastQueueDepthPlacementStrategy implements BlobVolumePlacementStrategy {
+    private final FirstFitPlacementStrategy firstFitStrategy = new FirstFitPlacementStrategy();
+
+    @Override
+    public BlobVolume reserve(List<BlobVolume> openVolumes, long storedSize) {
+        List<BlobVolume> orderedVolumes = SnapshotOrdering.ascending(openVolumes, BlobVolume::getPendingWrites);
+        return this.firstFitStrategy.reserve(orderedVolumes, storedSize);
+    }
+}
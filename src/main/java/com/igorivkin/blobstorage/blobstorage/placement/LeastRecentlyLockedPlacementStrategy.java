@@ -0,0 +1,19 @@
+package com.igorivkin.blobstorage.blobstorage.placement;
+
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+
+import java.util.List;
+
+/**
+ * Prefers the volume whose write lock was taken least recently,
+ * it's the one that most likely has its writer idle right now.
+ */
+public class LeastRecentlyLockedPlacementStrategy implements BlobVolumePlacementStrategy {
+    private final FirstFitPlacementStrategy firstFitStrategy = new FirstFitPlacementStrategy();
+
+    @Override
+    public BlobVolume reserve(List<BlobVolume> openVolumes, long storedSize) {
+        List<BlobVolume> orderedVolumes = SnapshotOrdering.ascending(openVolumes, BlobVolume::getLastWriteLockedNanos);
+        return this.firstFitStrategy.reserve(orderedVolumes, storedSize);
+    }
+}
@@ -0,0 +1,30 @@
+package com.igorivkin.blobstorage.blobstorage.placement;
+
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Spreads the items evenly: every next item starts looking for the space
+ * from the volume following the one used before.
+ */
+public class RoundRobinPlacementStrategy implements BlobVolumePlacementStrategy {
+    private final AtomicInteger counter = new AtomicInteger();
+
+    @Override
+    public BlobVolume reserve(List<BlobVolume> openVolumes, long storedSize) {
+        int volumesCount = openVolumes.size();
+        if (volumesCount == 0) {
+            return null;
+        }
+        int start = Math.floorMod(this.counter.getAndIncrement(), volumesCount);
+        for (int i = 0; i < volumesCount; i++) {
+            BlobVolume blobVolume = openVolumes.get((start + i) % volumesCount);
+            if (blobVolume.tryReserve(storedSize)) {
+                return blobVolume;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,33 @@
+package com.igorivkin.blobstorage.blobstorage.placement;
+
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * Orders the volumes by a key that changes concurrently (queue depth, lock time etc).
+ * The keys are taken once before sorting, otherwise the comparator would be inconsistent.
+ */
+class SnapshotOrdering {
+
+    static List<BlobVolume> ascending(List<BlobVolume> blobVolumes, ToLongFunction<BlobVolume> key) {
+        int volumesCount = blobVolumes.size();
+        long[] keys = new long[volumesCount];
+        Integer[] indexes = new Integer[volumesCount];
+        for (int i = 0; i < volumesCount; i++) {
+            keys[i] = key.applyAsLong(blobVolumes.get(i));
+            indexes[i] = i;
+        }
+        Arrays.sort(indexes, Comparator.comparingLong(index -> keys[index]));
+
+        List<BlobVolume> orderedVolumes = new ArrayList<>(volumesCount);
+        for (Integer index : indexes) {
+            orderedVolumes.add(blobVolumes.get(index));
+        }
+        return orderedVolumes;
+    }
+}
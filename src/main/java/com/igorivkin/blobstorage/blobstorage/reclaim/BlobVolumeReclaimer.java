@@ -0,0 +1,131 @@
+package com.igorivkin.blobstorage.blobstorage.reclaim;
+
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import com.igorivkin.blobstorage.exceptions.NoSuchBlobVolumeException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Background maintenance of the blob volumes. The deleted items are only marked by the delete
+ * request itself, the reclaimer purges them in small batches with pauses in between, so the
+ * writers are never blocked for long. The free pages are returned to the file system by
+ * incremental vacuum once a day at off-peak time.
+ */
+@Component
+public class BlobVolumeReclaimer {
+
+    @Value("${blobstorage.reclaimer.batchsize:100}")
+    private int batchSize;
+
+    @Value("${blobstorage.reclaimer.maxbatches:10}")
+    private int maxBatchesPerRun;
+
+    @Value("${blobstorage.reclaimer.pause:50}")
+    private long pauseMillis;
+
+    @Value("${blobstorage.vacuum.pages:1024}")
+    private int vacuumPagesPerStep;
+
+    /**
+     * Whether the volumes created without auto_vacuum=INCREMENTAL are rebuilt by the vacuum run.
+     */
+    @Value("${blobstorage.vacuum.convert:true}")
+    private boolean convertVolumes;
+
+    private final BlobStorageConfigProvider configProvider;
+
+    private final AtomicLong reclaimedItems = new AtomicLong();
+
+    public BlobVolumeReclaimer(BlobStorageConfigProvider configProvider) {
+        this.configProvider = configProvider;
+    }
+
+    /**
+     * Purges the deleted items of every open volume. No more than the configured number of batches
+     * is purged per volume in one run, the rest is left for the next runs.
+     * @throws SQLException it attempts to delete from the volumes
+     */
+    @Scheduled(initialDelayString = "${blobstorage.reclaimer.delay:60000}", fixedDelayString = "${blobstorage.reclaimer.delay:60000}")
+    public void reclaimDeletedItems() throws SQLException {
+        for (BlobVolume blobVolume : this.configProvider.getBlobVolumes().values()) {
+            if (!blobVolume.isOpened()) {
+                // Nothing is deleted from the volume since the start, it's purged once it's opened
+                continue;
+            }
+            try {
+                for (int batch = 0; batch < this.maxBatchesPerRun; batch++) {
+                    int purgedItems = blobVolume.purgeDeletedItems(this.batchSize);
+                    this.reclaimedItems.addAndGet(purgedItems);
+                    if (purgedItems < this.batchSize || !this.pause()) {
+                        break;
+                    }
+                }
+            } catch (NoSuchBlobVolumeException exception) {
+                // The volume is retired by the compaction meanwhile, its files are removed anyway
+                continue;
+            }
+            // The purged pages are free space now, so the volume may become writable again
+            this.configProvider.updateBlobVolumeWritability(blobVolume);
+        }
+    }
+
+    /**
+     * Returns the free pages of every open volume to the file system step by step.
+     * The volume not in auto_vacuum=INCREMENTAL mode yet is rebuilt instead, if it's allowed.
+     * The volume retired by the compaction meanwhile is just skipped.
+     * @throws SQLException it attempts to vacuum the volumes
+     */
+    @Scheduled(cron = "${blobstorage.vacuum.cron:0 0 3 * * *}")
+    public void vacuumFreePages() throws SQLException {
+        for (BlobVolume blobVolume : this.configProvider.getBlobVolumes().values()) {
+            if (!blobVolume.isOpened()) {
+                // Nothing is purged from the volume since the start, so it has no new free pages
+                continue;
+            }
+            try {
+                if (this.convertVolumes && blobVolume.convertToIncrementalVacuum()) {
+                    // The rebuilt volume has no free pages left
+                    this.configProvider.updateBlobVolumeWritability(blobVolume);
+                    if (!this.pause()) {
+                        return;
+                    }
+                    continue;
+                }
+                while (blobVolume.incrementalVacuum(this.vacuumPagesPerStep) > 0) {
+                    if (!this.pause()) {
+                        return;
+                    }
+                }
+            } catch (NoSuchBlobVolumeException exception) {
+                // The volume is retired, its files are removed anyway
+            }
+        }
+    }
+
+    /**
+     * Returns number of items purged since the start.
+     * @return number of purged items
+     */
+    public long getReclaimedItems() {
+        return reclaimedItems.get();
+    }
+
+    /**
+     * Gives the way to the other writers between the batches.
+     * @return false if the thread was interrupted and the work should be stopped
+     */
+    private boolean pause() {
+        try {
+            Thread.sleep(this.pauseMillis);
+            return true;
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+}
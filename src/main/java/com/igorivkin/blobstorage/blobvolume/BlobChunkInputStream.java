@@ -0,0 +1,140 @@
+package com.igorivkin.blobstorage.blobvolume;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads a range of the chunked item content. Only the chunks covering the range are read,
+ * several next chunks are read ahead in parallel while the client consumes the current one.
+ * So no more than the read-ahead number of chunks is kept on heap at once.
+ */
+public class BlobChunkInputStream extends InputStream {
+    private final BlobVolume blobVolume;
+    private final long id;
+    private final int chunkSize;
+    private final long end;
+    private final int lastChunkIndex;
+    private final Executor executor;
+    private final int readAhead;
+
+    private final Deque<CompletableFuture<byte[]>> chunksAhead = new ArrayDeque<>();
+    private int nextChunkIndex;
+
+    private long position;
+    private byte[] chunk;
+    private int chunkPosition;
+    private int chunkLimit;
+
+    /**
+     * @param blobVolume volume where the item is stored
+     * @param id ID of the item inside the volume
+     * @param chunkSize size of the item chunks in bytes
+     * @param offset offset of the first byte to read
+     * @param length number of bytes to read
+     * @param executor executor reading the chunks ahead
+     * @param readAhead number of chunks read at the same time
+     */
+    public BlobChunkInputStream(BlobVolume blobVolume, long id, int chunkSize, long offset, long length,
+                                Executor executor, int readAhead) {
+        this.blobVolume = blobVolume;
+        this.id = id;
+        this.chunkSize = chunkSize;
+        this.position = offset;
+        this.end = offset + length;
+        this.nextChunkIndex = (int) (offset / chunkSize);
+        this.lastChunkIndex = length > 0 ? (int) ((this.end - 1) / chunkSize) : -1;
+        this.executor = executor;
+        this.readAhead = Math.max(1, readAhead);
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.ensureChunk()) {
+            return -1;
+        }
+        this.position++;
+        return this.chunk[this.chunkPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.ensureChunk()) {
+            return -1;
+        }
+        int bytesToCopy = Math.min(length, this.chunkLimit - this.chunkPosition);
+        System.arraycopy(this.chunk, this.chunkPosition, buffer, offset, bytesToCopy);
+        this.chunkPosition += bytesToCopy;
+        this.position += bytesToCopy;
+        return bytesToCopy;
+    }
+
+    @Override
+    public int available() {
+        return this.chunk != null ? this.chunkLimit - this.chunkPosition : 0;
+    }
+
+    @Override
+    public void close() {
+        // The chunks read ahead are not needed anymore
+        CompletableFuture<byte[]> chunkAhead;
+        while ((chunkAhead = this.chunksAhead.poll()) != null) {
+            chunkAhead.cancel(false);
+        }
+        this.chunk = null;
+    }
+
+    /**
+     * Makes sure there is unread data in the current chunk, takes the next one if needed
+     * and schedules reading of the following chunks.
+     * @return false if the end of the requested range is reached
+     * @throws IOException it attempts to read from the volume
+     */
+    private boolean ensureChunk() throws IOException {
+        if (this.chunk != null && this.chunkPosition < this.chunkLimit) {
+            return true;
+        }
+        if (this.position >= this.end) {
+            return false;
+        }
+        while (this.chunksAhead.size() < this.readAhead && this.nextChunkIndex <= this.lastChunkIndex) {
+            int chunkIndex = this.nextChunkIndex++;
+            this.chunksAhead.add(CompletableFuture.supplyAsync(() -> this.readChunk(chunkIndex), this.executor));
+        }
+        try {
+            this.chunk = this.chunksAhead.remove().join();
+        } catch (CompletionException exception) {
+            throw new IOException(
+                    MessageFormat.format("Cannot read item {0} from volume {1}", this.id, this.blobVolume.getVolumeId()),
+                    exception.getCause()
+            );
+        }
+        // The chunks are aligned, so the position inside the chunk is defined by the position itself
+        this.chunkPosition = (int) (this.position % this.chunkSize);
+        this.chunkLimit = (int) Math.min(this.chunk.length, this.chunkPosition + (this.end - this.position));
+        if (this.chunkPosition >= this.chunkLimit) {
+            throw new IOException(
+                    MessageFormat.format("Item {0} in volume {1} ended unexpectedly at {2}", this.id, this.blobVolume.getVolumeId(), this.position)
+            );
+        }
+        return true;
+    }
+
+    private byte[] readChunk(int chunkIndex) {
+        try {
+            byte[] content = this.blobVolume.readChunk(this.id, chunkIndex);
+            return content != null ? content : new byte[0];
+        } catch (SQLException exception) {
+            throw new CompletionException(exception);
+        }
+    }
+}
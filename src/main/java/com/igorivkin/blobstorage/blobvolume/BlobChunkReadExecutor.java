@@ -0,0 +1,85 @@
+package com.igorivkin.blobstorage.blobvolume;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executors reading the chunks of large items ahead of the client, see {@link BlobChunkInputStream}.
+ * Every volume has its own executor sized by the number of pooled read connections of a volume,
+ * so the prefetching never waits for a connection longer than the reading itself would, and
+ * the downloads of a slow volume do not hold up the chunked reads of the others.
+ * The threads of idle executors are stopped, so the rarely used volumes cost nothing.
+ */
+@Component
+public class BlobChunkReadExecutor {
+    private static final long KEEP_ALIVE_SECONDS = 60;
+
+    private final int parallelism;
+    private final int readAhead;
+    private final Map<Integer, ThreadPoolExecutor> volumeExecutors = new ConcurrentHashMap<>();
+
+    public BlobChunkReadExecutor(@Value("${blobstorage.jdbc.pool.readers:4}") int poolReadersCount,
+                                 @Value("${blobstorage.chunks.readahead:2}") int readAhead) {
+        this.parallelism = Math.max(1, poolReadersCount);
+        // A single stream never takes more than the threads of its volume
+        this.readAhead = Math.max(1, Math.min(readAhead, this.parallelism));
+    }
+
+    /**
+     * Returns the executor reading the chunks of a given volume.
+     * @param volumeId ID of volume
+     * @return executor of the volume, it's created on the first use
+     */
+    public Executor forVolume(int volumeId) {
+        return this.volumeExecutors.computeIfAbsent(volumeId, this::newExecutor);
+    }
+
+    /**
+     * Returns the number of chunks read ahead by a single stream.
+     * @return number of chunks, not bigger than the number of reading threads of a volume
+     */
+    public int getReadAhead() {
+        return readAhead;
+    }
+
+    /**
+     * Stops the executor of a volume, the chunks not read yet are abandoned.
+     * @param volumeId ID of volume
+     */
+    public void remove(int volumeId) {
+        ThreadPoolExecutor executor = this.volumeExecutors.remove(volumeId);
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        this.volumeExecutors.values().forEach(ThreadPoolExecutor::shutdownNow);
+    }
+
+    private ThreadPoolExecutor newExecutor(int volumeId) {
+        AtomicInteger threadCounter = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                this.parallelism, this.parallelism,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "blob-chunk-reader-" + volumeId + "-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
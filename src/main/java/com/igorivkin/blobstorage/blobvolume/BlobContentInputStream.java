@@ -0,0 +1,104 @@
+package com.igorivkin.blobstorage.blobvolume;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+
+/**
+ * Reads the content of a stored item directly from the blob volume. SQLite loads the whole
+ * blob for every substr() of it, so the requested range is read by a single query on the first
+ * read and then handed out from heap. The items stored inline are not bigger than the chunked
+ * item threshold, the bigger ones are read by {@link BlobChunkInputStream}. A pooled connection
+ * is borrowed just for the time of that query, so slow clients do not hold the connections.
+ */
+public class BlobContentInputStream extends InputStream {
+
+    /**
+     * Size of the part of content the callers are advised to read at once.
+     */
+    public static final int CHUNK_SIZE = 256 * 1024;
+
+    private final BlobVolume blobVolume;
+    private final long id;
+    private final long end;
+
+    private final long offset;
+    private byte[] content;
+    private int contentPosition;
+
+    /**
+     * @param blobVolume volume where the item is stored
+     * @param id ID of the item inside the volume
+     * @param offset offset of the first byte to read
+     * @param length number of bytes to read
+     */
+    public BlobContentInputStream(BlobVolume blobVolume, long id, long offset, long length) {
+        this.blobVolume = blobVolume;
+        this.id = id;
+        this.offset = offset;
+        this.end = offset + length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.ensureContent()) {
+            return -1;
+        }
+        return this.content[this.contentPosition++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.ensureContent()) {
+            return -1;
+        }
+        int bytesToCopy = Math.min(length, this.content.length - this.contentPosition);
+        System.arraycopy(this.content, this.contentPosition, buffer, offset, bytesToCopy);
+        this.contentPosition += bytesToCopy;
+        return bytesToCopy;
+    }
+
+    @Override
+    public int available() {
+        return this.content != null ? this.content.length - this.contentPosition : 0;
+    }
+
+    @Override
+    public void close() {
+        this.content = null;
+        this.contentPosition = 0;
+    }
+
+    /**
+     * Makes sure there is unread content, reads the requested range on the first call.
+     * @return false if the end of the requested range is reached
+     * @throws IOException it attempts to read from the volume
+     */
+    private boolean ensureContent() throws IOException {
+        if (this.content == null) {
+            if (this.offset >= this.end) {
+                return false;
+            }
+            try {
+                this.content = this.blobVolume.readContent(this.id, this.offset, (int) (this.end - this.offset));
+            } catch (SQLException exception) {
+                throw new IOException(
+                        MessageFormat.format("Cannot read item {0} from volume {1}", this.id, this.blobVolume.getVolumeId()),
+                        exception
+                );
+            }
+            if (this.content == null || this.content.length < this.end - this.offset) {
+                long readLength = this.content != null ? this.content.length : 0;
+                throw new IOException(
+                        MessageFormat.format("Item {0} in volume {1} ended unexpectedly at {2}", this.id, this.blobVolume.getVolumeId(), this.offset + readLength)
+                );
+            }
+            this.contentPosition = 0;
+        }
+        return this.contentPosition < this.content.length;
+    }
+}
@@ -0,0 +1,77 @@
+package com.igorivkin.blobstorage.blobvolume;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads the given range of the content from a stream that starts at the beginning of
+ * the content. It's used for the encoded items that can be decoded only from the start.
+ */
+public class BlobContentRangeInputStream extends InputStream {
+    private final InputStream contentStream;
+    private long bytesToSkip;
+    private long bytesToRead;
+
+    /**
+     * @param contentStream stream of the whole content
+     * @param offset offset of the first byte to read
+     * @param length number of bytes to read
+     */
+    public BlobContentRangeInputStream(InputStream contentStream, long offset, long length) {
+        this.contentStream = contentStream;
+        this.bytesToSkip = offset;
+        this.bytesToRead = length;
+    }
+
+    @Override
+    public int read() throws IOException {
+        if (!this.skipToRange() || this.bytesToRead <= 0) {
+            return -1;
+        }
+        int value = this.contentStream.read();
+        if (value != -1) {
+            this.bytesToRead--;
+        }
+        return value;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) throws IOException {
+        if (length == 0) {
+            return 0;
+        }
+        if (!this.skipToRange() || this.bytesToRead <= 0) {
+            return -1;
+        }
+        int bytesRead = this.contentStream.read(buffer, offset, (int) Math.min(length, this.bytesToRead));
+        if (bytesRead > 0) {
+            this.bytesToRead -= bytesRead;
+        }
+        return bytesRead;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.contentStream.close();
+    }
+
+    /**
+     * Skips the content before the range on the first read.
+     * @return false if the content ended before the range
+     * @throws IOException it attempts to read the content
+     */
+    private boolean skipToRange() throws IOException {
+        while (this.bytesToSkip > 0) {
+            long skipped = this.contentStream.skip(this.bytesToSkip);
+            if (skipped <= 0) {
+                // Method skip() may return 0 before the end, read() tells it for sure
+                if (this.contentStream.read() == -1) {
+                    return false;
+                }
+                skipped = 1;
+            }
+            this.bytesToSkip -= skipped;
+        }
+        return true;
+    }
+}
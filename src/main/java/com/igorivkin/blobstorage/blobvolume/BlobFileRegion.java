@@ -0,0 +1,44 @@
+package com.igorivkin.blobstorage.blobvolume;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Region of the segment file keeping the content of an item, see {@link BlobVolumeSegment}.
+ * It allows to send the content by the file itself, e.g. with sendfile of the servlet container.
+ */
+public class BlobFileRegion {
+    private final BlobVolumeSegment segment;
+    private final long offset;
+    private final long length;
+
+    public BlobFileRegion(BlobVolumeSegment segment, long offset, long length) {
+        this.segment = segment;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    public File getFile() {
+        return segment.getFile();
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLength() {
+        return length;
+    }
+
+    /**
+     * Sends a part of the item content to a given output stream.
+     * @param contentOffset zero-based offset of the first byte of the content to send
+     * @param contentLength number of bytes to send
+     * @param outputStream stream to write to
+     * @throws IOException it attempts to read the file and to write the stream
+     */
+    public void transferTo(long contentOffset, long contentLength, OutputStream outputStream) throws IOException {
+        this.segment.transferTo(this.offset + contentOffset, contentLength, outputStream);
+    }
+}
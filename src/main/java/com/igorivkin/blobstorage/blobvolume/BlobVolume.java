@@ -2,30 +2,178 @@ package com.igorivkin.blobstorage.blobvolume;
 
 import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
 import com.igorivkin.blobstorage.database.ConnectionManager;
+import com.igorivkin.blobstorage.database.pool.VolumeConnectionPool;
 import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+import com.igorivkin.blobstorage.blobitem.BlobItemStatus;
 import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+import com.igorivkin.blobstorage.exceptions.NoSuchBlobVolumeException;
 import com.igorivkin.blobstorage.blobitem.BlobItemValidator;
+import com.igorivkin.blobstorage.blobitem.codec.BlobContentCodec;
+import com.igorivkin.blobstorage.blobitem.codec.BlobContentCodecs;
+import com.igorivkin.blobstorage.metrics.BlobStorageMetrics;
 import org.springframework.beans.factory.config.BeanDefinition;
 import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
 import java.sql.*;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 @Component
 @Scope(BeanDefinition.SCOPE_PROTOTYPE)
 public class BlobVolume {
+    /**
+     * Approximate space taken by a row apart from the content itself: row header,
+     * mime-type, index entry and the pointers of overflow pages.
+     */
+    private static final long ROW_OVERHEAD_BYTES = 256;
+
+    /**
+     * Takes the number of used pages that are not in the free list and the page size
+     * in one statement using table-valued pragma functions.
+     */
+    private static final String USED_SPACE_SQL = "SELECT (page_count - freelist_count) * page_size "
+                                                 + "FROM pragma_page_count(), pragma_freelist_count(), pragma_page_size()";
+
+    /**
+     * Selects the description of entities. The metadata table keeps no content, so its rows
+     * are small and many of them fit into a single page.
+     */
+    private static final String SELECT_ITEM_INFO = "SELECT id, mime_type, status, content_size AS size, content_hash, created_at "
+                                                   + "FROM items WHERE status = " + BlobItemStatus.COMMITTED;
+
+    /**
+     * Selects the entities together with their content. Chunked entities and the ones kept in the segment
+     * file have no row in the contents table, their content is read from the chunks or the segment.
+     */
+    private static final String SELECT_ITEM = "SELECT items.id, mime_type, status, content_size, content_hash, codec, created_at, chunk_size, "
+                                              + "segment_offset, content "
+                                              + "FROM items LEFT JOIN contents ON contents.id = items.id "
+                                              + "WHERE status = " + BlobItemStatus.COMMITTED;
+
+    /**
+     * Pending items (e.g. chunked items being uploaded) older than that are considered abandoned
+     * and purged by the reclaimer.
+     */
+    private static final long PENDING_ITEM_TTL_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Value of auto_vacuum pragma enabling incremental vacuum.
+     */
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    /**
+     * Maximal number of IDs in one IN-query, SQLite limits the number of query parameters.
+     */
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    /**
+     * Number of chunks copied to another volume in one transaction.
+     */
+    private static final int CHUNKS_PER_COPY = 16;
+
+    /**
+     * Interval in milliseconds to check whether the writes of the sealed volume are finished.
+     */
+    private static final long WRITES_DRAIN_POLL_MILLIS = 10;
+
     private final ConnectionManager connectionManager;
     private final BlobItemValidator blobItemValidator;
+    private final BlobChunkReadExecutor chunkReadExecutor;
+    private final BlobStorageMetrics metrics;
 
     private String volumeName;
     private File volumeFile;
     private int volumeId;
 
+    /**
+     * Maximal size of the volume in bytes, the space can't be reserved above it.
+     */
+    private long maxSizeInBytes;
+
+    /**
+     * Space in bytes taken by the stored items. It's tracked in memory and refreshed by
+     * the writer after every modification, so the allocation does not depend on the file
+     * size on disk that lags behind the content of WAL-file.
+     */
+    private final AtomicLong usedBytes = new AtomicLong();
+
+    /**
+     * Space in bytes reserved for the items being stored right now.
+     */
+    private final AtomicLong reservedBytes = new AtomicLong();
+
+    /**
+     * Segment file keeping the content of large items, null until the first such item is stored.
+     */
+    private volatile BlobVolumeSegment segment;
+
+    /**
+     * Writer executing the writes in batches, null in synchronous mode.
+     */
+    private volatile BlobVolumeWriter writer;
+
+    /**
+     * Number of writes that are started but not yet finished (including queued ones).
+     */
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+
+    /**
+     * Time (by System.nanoTime) when the write lock of the volume was taken last time.
+     */
+    private volatile long lastWriteLockedNanos = System.nanoTime();
+
+    /**
+     * Set once the files of the volume are removed, the volume can't be written anymore.
+     */
+    private volatile boolean retired;
+
+    /**
+     * Set once the volume is being compacted, no more items are stored into it then.
+     */
+    private volatile boolean sealed;
+
+    /**
+     * Set once the schema of the volume is migrated and its used space is loaded. The volumes known
+     * from the manifest are registered without that, so they are opened on the first access.
+     */
+    private volatile boolean opened;
+
+    /**
+     * Called once the volume is opened, see {@link #setOpenListener(OpenListener)}.
+     */
+    private volatile OpenListener openListener;
+
+    /**
+     * Callback of the volume being opened, e.g. to index its items only once they are needed.
+     */
+    @FunctionalInterface
+    public interface OpenListener {
+        void onOpen(BlobVolume blobVolume) throws SQLException;
+    }
+
     public BlobVolume(ConnectionManager connectionManager,
-                      BlobItemValidator blobItemValidator) {
+                      BlobItemValidator blobItemValidator,
+                      BlobChunkReadExecutor chunkReadExecutor,
+                      BlobStorageMetrics metrics) {
         this.connectionManager = connectionManager;
         this.blobItemValidator = blobItemValidator;
+        this.chunkReadExecutor = chunkReadExecutor;
+        this.metrics = metrics;
     }
 
     public String getVolumeName() {
@@ -52,18 +200,281 @@ public class BlobVolume {
         this.volumeId = volumeId;
     }
 
+    public long getMaxSizeInBytes() {
+        return maxSizeInBytes;
+    }
+
+    public void setMaxSizeInBytes(long maxSizeInBytes) {
+        this.maxSizeInBytes = maxSizeInBytes;
+    }
+
+    /**
+     * Returns the space taken by stored items and reserved for the items being stored.
+     * @return allocated space in bytes
+     */
+    public long getAllocatedBytes() {
+        return this.usedBytes.get() + this.reservedBytes.get();
+    }
+
+    /**
+     * Returns the space taken by stored items only.
+     * @return used space in bytes
+     */
+    public long getUsedBytes() {
+        return this.usedBytes.get();
+    }
+
+    /**
+     * Returns the space that is still possible to reserve.
+     * @return free space in bytes
+     */
+    public long getFreeBytes() {
+        return Math.max(0, this.maxSizeInBytes - this.getAllocatedBytes());
+    }
+
+    /**
+     * Returns the space that an item with content of given size takes in the volume.
+     * @param contentSize size of the content in bytes
+     * @return estimated stored size in bytes
+     */
+    public static long estimateStoredSize(long contentSize) {
+        // Each overflow page keeps 4-byte pointer to the next one, it's ~0.1% of 4 Kb page
+        return contentSize + contentSize / 1024 + ROW_OVERHEAD_BYTES;
+    }
+
+    /**
+     * Atomically reserves the space for an item if the volume has enough free space.
+     * No locks are taken, concurrent reservations compete using compare-and-set.
+     * @param bytes space to reserve in bytes
+     * @return true if the space is reserved
+     */
+    public boolean tryReserve(long bytes) {
+        long reserved;
+        do {
+            reserved = this.reservedBytes.get();
+            if (this.isSealed() || this.usedBytes.get() + reserved + bytes > this.maxSizeInBytes) {
+                return false;
+            }
+        } while (!this.reservedBytes.compareAndSet(reserved, reserved + bytes));
+        if (this.isSealed()) {
+            // Sealed meanwhile, the one draining the writes might have missed this reservation
+            this.reservedBytes.addAndGet(-bytes);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Stops storing new items into the volume: no more space is reserved there and the pending
+     * chunked items are not committed anymore. The writes started before are still finished,
+     * see {@link #awaitWritesDrained(long)}.
+     */
+    public void seal() {
+        this.sealed = true;
+    }
+
+    /**
+     * Allows to store new items into the volume again, e.g. once its compaction is stopped.
+     */
+    public void unseal() {
+        this.sealed = false;
+    }
+
+    /**
+     * Returns true if no more items can be stored into the volume.
+     * @return true if the volume is sealed or retired
+     */
+    public boolean isSealed() {
+        return this.sealed || this.retired;
+    }
+
+    /**
+     * Waits for the writes and the space reservations started before the volume was sealed.
+     * Once they are finished no more items appear in the sealed volume.
+     * @param timeoutMillis maximal time to wait in milliseconds
+     * @return true if nothing is being written into the volume anymore
+     */
+    public boolean awaitWritesDrained(long timeoutMillis) {
+        long deadlineNanos = System.nanoTime() + timeoutMillis * 1_000_000;
+        while (this.pendingWrites.get() > 0 || this.reservedBytes.get() > 0) {
+            if (System.nanoTime() - deadlineNanos >= 0) {
+                return false;
+            }
+            try {
+                Thread.sleep(WRITES_DRAIN_POLL_MILLIS);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Confirms the reservation once the item is stored. The used space is already
+     * refreshed by the insert, so the reservation is just dropped.
+     * @param bytes previously reserved space in bytes
+     */
+    public void commitReservation(long bytes) {
+        this.reservedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Cancels the reservation if the item was not stored.
+     * @param bytes previously reserved space in bytes
+     */
+    public void releaseReservation(long bytes) {
+        this.reservedBytes.addAndGet(-bytes);
+    }
+
+    /**
+     * Seeds the used space counter from the database itself: the pages that are not
+     * in the free list are used. WAL content and the segment file are taken into account as well.
+     * @throws SQLException it attempts to read pragmas of the database
+     */
+    public void loadUsedSpace() throws SQLException {
+        if (BlobVolumeSegment.segmentFile(this.getVolumeFile()).exists()) {
+            this.openSegment();
+        }
+        // A short-living connection is used on purpose, there is no need to keep
+        // pooled connections for every volume just because it was checked once.
+        try (Connection connection = this.connectionManager.getMaintenanceConnection(this.getVolumeName())) {
+            this.refreshUsedSpace(connection);
+        }
+    }
+
     public void initialize(int newVolumeIndex) throws SQLException {
         this.setVolumeName(String.format(this.connectionManager.getVolumeName(), newVolumeIndex));
-        String createEntitiesTable = "CREATE TABLE IF NOT EXISTS entities (\n"
-                                     + " id integer PRIMARY KEY,\n"
-                                     + " mime_type text NOT NULL,\n"
-                                     + " status integer NOT NULL,\n"
-                                     + " content blob\n"
-                                     + ");";
-        this.ddl(createEntitiesTable);
+        this.migrate();
         File volumeFile = new File(this.connectionManager.getDatabasePath() + this.getVolumeName());
         this.setVolumeFile(volumeFile);
         this.setVolumeId(newVolumeIndex);
+        this.loadUsedSpace();
+        this.opened = true;
+    }
+
+    /**
+     * Opens the volume: brings its schema to the current version and loads the used space.
+     * It's called on the first access to the database, so nothing is done if the volume is already open.
+     * @throws SQLException it attempts to migrate the volume and to read its used space
+     * @throws NoSuchBlobVolumeException it will crush if the database file of the volume is missing
+     */
+    public void open() throws SQLException {
+        if (this.opened) {
+            return;
+        }
+        synchronized (this) {
+            if (this.opened) {
+                return;
+            }
+            if (this.retired || !this.getVolumeFile().exists()) {
+                // Opening the connection would create an empty database in place of the missing one
+                throw new NoSuchBlobVolumeException(MessageFormat.format("Blob volume {0} has no database file", this.getVolumeId()));
+            }
+            this.migrate();
+            this.loadUsedSpace();
+            this.opened = true;
+            // The listener may query the volume, it's already open by then
+            OpenListener listener = this.openListener;
+            if (listener != null) {
+                listener.onOpen(this);
+            }
+        }
+    }
+
+    /**
+     * Sets the callback of the volume being opened by {@link #open()}. The volume opened already
+     * is not reported, as well as the new volume, which is open since it's created.
+     * @param openListener callback, null to remove it
+     */
+    public void setOpenListener(OpenListener openListener) {
+        this.openListener = openListener;
+    }
+
+    /**
+     * Returns true if the volume is already open, see {@link #open()}.
+     * @return true if the volume is open
+     */
+    public boolean isOpened() {
+        return this.opened;
+    }
+
+    /**
+     * Seeds the used space counter by the value known beforehand (e.g. from the manifest),
+     * it's replaced by the actual value once the volume is open.
+     * @param usedBytes used space in bytes
+     */
+    public void restoreUsedSpace(long usedBytes) {
+        this.usedBytes.set(usedBytes);
+    }
+
+    /**
+     * Returns the time of the last modification of the volume files: the database,
+     * its WAL-file and the segment file.
+     * @return modification time in milliseconds, 0 if there are no files
+     */
+    public long getLastModified() {
+        File volumeFile = this.getVolumeFile();
+        return Math.max(volumeFile.lastModified(), Math.max(
+                new File(volumeFile.getPath() + "-wal").lastModified(),
+                BlobVolumeSegment.segmentFile(volumeFile).lastModified()));
+    }
+
+    /**
+     * Brings the schema of the volume to the current version, see {@link BlobVolumeSchema}.
+     * It's done by a maintenance connection, so a new volume is created with the page size
+     * of the maintenance profile and is switched to WAL mode only afterwards.
+     * @throws SQLException it attempts to modify the schema
+     */
+    public void migrate() throws SQLException {
+        try (Connection connection = this.connectionManager.getMaintenanceConnection(this.getVolumeName())) {
+            this.enableIncrementalVacuum(connection);
+            connection.setAutoCommit(false);
+            BlobVolumeSchema.migrate(connection);
+            connection.commit();
+            connection.setAutoCommit(true);
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("PRAGMA journal_mode = WAL");
+            }
+        }
+    }
+
+    /**
+     * Creates a new volume in auto_vacuum=INCREMENTAL mode, so the free pages can be returned
+     * to the file system by {@link #incrementalVacuum(int)}. An existing volume is left as is,
+     * it's rebuilt by the scheduled maintenance, see {@link #convertToIncrementalVacuum()}.
+     * @param connection maintenance connection to the volume
+     * @throws SQLException it attempts to modify the database
+     */
+    private void enableIncrementalVacuum(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            // The mode is set before the first table is created, so no rebuilding is needed
+            if (this.queryLong(statement, "PRAGMA page_count") == 0) {
+                statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            }
+        }
+    }
+
+    /**
+     * Switches the existing volume to auto_vacuum=INCREMENTAL. The mode of the existing database
+     * is changed only by rebuilding it with VACUUM, it takes as long as copying the whole volume
+     * and holds the write connection meanwhile, so it's done at off-peak time only.
+     * @return true if the volume was rebuilt, false if it's already in incremental mode
+     * @throws SQLException it attempts to rebuild the database
+     */
+    public boolean convertToIncrementalVacuum() throws SQLException {
+        try (Connection connection = this.getWriteConnection()) {
+            this.lastWriteLockedNanos = System.nanoTime();
+            try (Statement statement = connection.createStatement()) {
+                if (this.queryLong(statement, "PRAGMA auto_vacuum") == AUTO_VACUUM_INCREMENTAL) {
+                    return false;
+                }
+                statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+                statement.execute("VACUUM");
+            }
+            this.refreshUsedSpace(connection);
+            return true;
+        }
     }
 
     /**
@@ -73,7 +484,7 @@ public class BlobVolume {
      * @throws SQLException it attempts to open connection and execute statement
      */
     public void ddl(String query) throws SQLException {
-        try (Connection connection = this.connectionManager.getConnection(this.getConnectionString())) {
+        try (Connection connection = this.getWriteConnection()) {
             try (Statement statement = connection.createStatement()) {
                 statement.execute(query);
             }
@@ -82,84 +493,1286 @@ public class BlobVolume {
 
     /**
      * Inserts the entity given by its parameters like mime-type, status and content
-     * to a database.
+     * to a database. In group commit mode the insert is executed by the volume writer
+     * together with other concurrent writes and this method waits for the commit.
      * @param item entity representing the file that need to be stored in blob storage
-     * @return number of affected rows, normally 1
+     * @return address of the stored entity
      * @throws SQLException it attempts to store data to SQL-database
      * @throws GenericBlobStorageException it attempts to validate data before the insert
      */
     public BlobStoredItemAddress insert(BlobItem item) throws SQLException, GenericBlobStorageException {
-        if(this.blobItemValidator.validate(item)) {
-            String sql = "INSERT INTO entities(mime_type, status, content) VALUES(?, ?, ?)";
-            try (Connection connection = this.connectionManager.getConnection(this.getConnectionString())) {
-                try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                    statement.setString(1, item.getMimeType());
-                    statement.setInt(2, item.getStatus());
-                    statement.setBytes(3, item.getContent());
-                    statement.executeUpdate();
-                    ResultSet resultSet = statement.getGeneratedKeys();
-                    if(resultSet.next()) {
-                        BlobStoredItemAddress storedItem = new BlobStoredItemAddress();
-                        storedItem.setId(resultSet.getLong(1));
-                        storedItem.setVolumeId(this.getVolumeId());
-                        return storedItem;
-                    } else {
-                        throw new GenericBlobStorageException("Cannot get generated key for an inserted item");
-                    }
+        return this.timed("insert", () -> {
+            this.validateBeforeInsert(item);
+            return this.write(connection -> this.insertRow(connection, item));
+        });
+    }
+
+    /**
+     * Inserts several entities in one transaction, so they share a single commit.
+     * Either all of them are stored or none.
+     * @param items entities to store
+     * @return addresses of the stored entities in the same order
+     * @throws SQLException it attempts to store data to SQL-database
+     * @throws GenericBlobStorageException it attempts to validate data before the insert
+     */
+    public List<BlobStoredItemAddress> insertAll(List<BlobItem> items) throws SQLException, GenericBlobStorageException {
+        return this.timed("insertAll", () -> {
+            for (BlobItem item : items) {
+                this.validateBeforeInsert(item);
+            }
+            return this.write(connection -> {
+                List<BlobStoredItemAddress> storedItems = new ArrayList<>(items.size());
+                for (BlobItem item : items) {
+                    storedItems.add(this.insertRow(connection, item));
                 }
+                return storedItems;
+            });
+        });
+    }
+
+    /**
+     * Inserts the entity without waiting for the result. In synchronous mode the insert
+     * is executed right away and the returned future is already completed.
+     * @param item entity representing the file that need to be stored in blob storage
+     * @return future of the address of the stored entity
+     */
+    public CompletableFuture<BlobStoredItemAddress> insertAsync(BlobItem item) {
+        BlobVolumeWriter currentWriter = this.writer;
+        try {
+            if (currentWriter == null) {
+                return CompletableFuture.completedFuture(this.insert(item));
             }
-        } else {
-            throw new GenericBlobStorageException("Cannot store the item because validator returned false result");
+            this.validateBeforeInsert(item);
+            this.pendingWrites.incrementAndGet();
+            long startNanos = System.nanoTime();
+            return currentWriter.submit(connection -> this.insertRow(connection, item))
+                    .whenComplete((storedItem, exception) -> {
+                        this.pendingWrites.decrementAndGet();
+                        this.metrics.recordVolumeOperation(this.getVolumeId(), "insert",
+                                exception == null ? BlobStorageMetrics.OUTCOME_SUCCESS : BlobStorageMetrics.OUTCOME_ERROR,
+                                System.nanoTime() - startNanos);
+                    });
+        } catch (SQLException | RuntimeException exception) {
+            return CompletableFuture.failedFuture(exception);
         }
     }
 
     /**
-     * Deletes the entity by its given ID.
+     * Adds one more reference to the already stored content, so the next deletion of the
+     * entity only drops the reference. The entity is checked to have the same content hash
+     * and mime-type, because the entity could be deleted and its ID reused meanwhile.
+     * @param id id of entity
+     * @param contentHash expected hash of the entity content
+     * @param mimeType expected mime-type of the entity
+     * @return true if the reference is added, false if there is no such entity anymore
+     * @throws SQLException it attempts to update sqlite database
+     */
+    public boolean addReference(long id, String contentHash, String mimeType) throws SQLException {
+        return this.timed("addReference", () -> this.write(connection -> this.addReferenceToRow(connection, id, contentHash, mimeType)));
+    }
+
+    /**
+     * Deletes the entity by its given ID. The entity is only marked as deleted, so it's cheap
+     * and the entity is not visible anymore, the content is purged later by
+     * {@link #purgeDeletedItems(int)}. If the content of entity is referenced several times
+     * (see {@link #addReference(long, String, String)}) only one reference is dropped and the entity
+     * stays in place.
+     * @return true if the entity itself is deleted
+     * @throws SQLException it attempts to update sqlite database
+     */
+    public boolean delete(long id) throws SQLException {
+        return this.timed("delete", () -> this.write(connection -> this.deleteRow(connection, id)));
+    }
+
+    /**
+     * Removes the content and the rows of the entities marked as deleted, as well as of
+     * the pending entities that were abandoned long ago. The pages go to the free list and
+     * SQLite reuses them for new items, so they are counted as free space again.
+     * @param limit maximal number of entities to purge in one transaction
+     * @return number of purged entities
      * @throws SQLException it attempts to delete from sqlite database
      */
-    public void delete(long id) throws SQLException {
-        String sql = "DELETE FROM entities WHERE id = ?";
-        try (Connection connection = this.connectionManager.getConnection(this.getConnectionString())) {
-            try (PreparedStatement statement = connection.prepareStatement(sql)) {
-                statement.setLong(1, id);
-                statement.executeUpdate();
+    public int purgeDeletedItems(int limit) throws SQLException {
+        return this.timed("purgeDeletedItems", () -> this.write(connection -> {
+            List<Long> ids = new ArrayList<>(limit);
+            String selectSql = "SELECT id FROM items WHERE status = ? OR (status = ? AND created_at < ?) LIMIT ?";
+            try (PreparedStatement statement = connection.prepareStatement(selectSql)) {
+                statement.setInt(1, BlobItemStatus.DELETED);
+                statement.setInt(2, BlobItemStatus.PENDING);
+                statement.setLong(3, System.currentTimeMillis() - PENDING_ITEM_TTL_MILLIS);
+                statement.setInt(4, limit);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getLong(1));
+                    }
+                }
+            }
+            for (long id : ids) {
+                this.purgeRow(connection, id);
+            }
+            return ids.size();
+        }));
+    }
+
+    /**
+     * Returns up to a given number of free pages to the file system and truncates the volume file,
+     * so the work is limited and can be spread over time.
+     * @param pages maximal number of pages to free
+     * @return number of free pages that are still left, 0 if the volume is not in incremental mode
+     * @throws SQLException it attempts to modify the database
+     */
+    public long incrementalVacuum(int pages) throws SQLException {
+        return this.write(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                if (this.queryLong(statement, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL) {
+                    // The volume is not converted yet, its free pages can't be returned step by step
+                    return 0L;
+                }
+                long pagesToFree = Math.min(pages, this.queryLong(statement, "PRAGMA freelist_count"));
+                // The pragma frees a single page per step, but the statement is stepped
+                // only once by the driver, so it's executed once per page
+                for (long i = 0; i < pagesToFree; i++) {
+                    statement.execute("PRAGMA incremental_vacuum(1)");
+                }
+                return this.queryLong(statement, "PRAGMA freelist_count");
+            }
+        });
+    }
+
+    /**
+     * Returns the summary size of the content of visible entities. Unlike the used space it does
+     * not include the deleted entities and the free pages, so it shows how densely the volume is filled.
+     * @return size of the live content in bytes
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public long getLiveBytes() throws SQLException {
+        String sql = "SELECT coalesce(sum(content_size), 0) FROM items WHERE status = " + BlobItemStatus.COMMITTED;
+        try (Connection connection = this.getReadConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                return this.queryLong(statement, sql);
             }
         }
     }
 
     /**
-     * Returns an entity by its given id.
-     * @param id id of entity to return
-     * @return entity that corresponds to its ID, null if nothing was found.
+     * Returns number of visible entities.
+     * @return number of entities
      * @throws SQLException it attempts to select from sqlite database.
      */
-    public BlobItem getById(long id) throws SQLException {
-        String sql = "SELECT * FROM entities WHERE id = ?";
-        try (Connection connection = this.connectionManager.getConnection(this.getConnectionString())) {
+    public long getItemCount() throws SQLException {
+        String sql = "SELECT count(*) FROM items WHERE status = " + BlobItemStatus.COMMITTED;
+        try (Connection connection = this.getReadConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                return this.queryLong(statement, sql);
+            }
+        }
+    }
+
+    /**
+     * Returns the size of WAL-file of the volume, it grows until the content is checkpointed
+     * into the database file.
+     * @return size of WAL-file in bytes, 0 if there is no such file
+     */
+    public long getWalSizeInBytes() {
+        return new File(this.getVolumeFile().getPath() + "-wal").length();
+    }
+
+    /**
+     * Returns IDs of all visible entities in the order they were stored.
+     * @return IDs of entities
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public List<Long> getItemIds() throws SQLException {
+        String sql = "SELECT id FROM items WHERE status = " + BlobItemStatus.COMMITTED + " ORDER BY id";
+        List<Long> ids = new ArrayList<>();
+        try (Connection connection = this.getReadConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    while (resultSet.next()) {
+                        ids.add(resultSet.getLong(1));
+                    }
+                }
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Copies the entity to another volume keeping the form it's stored in: the encoded content
+     * stays encoded, the chunks are copied chunk by chunk and the content of the segment file goes
+     * to the segment file of the target volume. The creation time and the reference counter are kept,
+     * the entity itself stays in place.
+     * @param id id of entity
+     * @param targetVolume volume to copy to
+     * @return address of the copy, null if the entity is not found
+     * @throws SQLException it attempts to read this volume and to write the target one
+     */
+    public BlobStoredItemAddress copyItemTo(long id, BlobVolume targetVolume) throws SQLException {
+        String sql = "SELECT mime_type, content_size, content_hash, codec, ref_count, created_at, chunk_size, segment_offset, content "
+                     + "FROM items LEFT JOIN contents ON contents.id = items.id WHERE items.id = ? AND status = ?";
+        StoredItemRow row;
+        try (Connection connection = this.getReadConnection()) {
             try (PreparedStatement statement = connection.prepareStatement(sql)) {
                 statement.setLong(1, id);
+                statement.setInt(2, BlobItemStatus.COMMITTED);
                 try (ResultSet resultSet = statement.executeQuery()) {
-                    if(resultSet.next()) {
-                        BlobItem item = new BlobItem();
-                        item.setId(resultSet.getLong("id"));
-                        item.setMimeType(resultSet.getString("mime_type"));
-                        item.setStatus(resultSet.getInt("status"));
-                        item.setContent(resultSet.getBytes("content"));
-                        return item;
-                    } else {
+                    if (!resultSet.next()) {
                         return null;
                     }
+                    row = new StoredItemRow(resultSet);
                 }
             }
         }
+        if (row.segmentOffset != null) {
+            try (InputStream contentStream = this.getSegment().openStream(row.segmentOffset, row.contentSize)) {
+                row.segmentOffset = targetVolume.getSegment().append(contentStream, row.contentSize);
+            } catch (IOException exception) {
+                throw new SQLException(MessageFormat.format("Cannot copy item {0} from segment of volume {1}", id, this.getVolumeId()), exception);
+            }
+            return targetVolume.write(connection -> targetVolume.insertCopiedRow(connection, row, BlobItemStatus.COMMITTED));
+        }
+        if (row.chunkSize != null) {
+            return this.copyChunksTo(id, row, targetVolume);
+        }
+        return targetVolume.write(connection -> targetVolume.insertCopiedRow(connection, row, BlobItemStatus.COMMITTED));
     }
 
     /**
-     * A shortcut to get connection string based on connection manager's
-     * connection string and current volume name.
-     * @return a connection string to establish the connection
+     * Makes the entity invisible regardless of its references, e.g. once it's moved to another volume.
+     * The content is purged later by {@link #purgeDeletedItems(int)}.
+     * @param id id of entity
+     * @return number of references the entity had, 0 if it's not found
+     * @throws SQLException it attempts to update sqlite database
      */
-    private String getConnectionString() {
-        return this.connectionManager.getConnectionString(this.getVolumeName());
+    public int retireItem(long id) throws SQLException {
+        return this.write(connection -> {
+            int refCount;
+            String selectSql = "SELECT ref_count FROM items WHERE id = ? AND status = ?";
+            try (PreparedStatement statement = connection.prepareStatement(selectSql)) {
+                statement.setLong(1, id);
+                statement.setInt(2, BlobItemStatus.COMMITTED);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (!resultSet.next()) {
+                        return 0;
+                    }
+                    refCount = resultSet.getInt(1);
+                }
+            }
+            String updateSql = "UPDATE items SET status = ? WHERE id = ?";
+            try (PreparedStatement statement = connection.prepareStatement(updateSql)) {
+                statement.setInt(1, BlobItemStatus.DELETED);
+                statement.setLong(2, id);
+                statement.executeUpdate();
+            }
+            return refCount;
+        });
+    }
+
+    /**
+     * Returns number of references to the entity.
+     * @param id id of entity
+     * @return number of references, 0 if the entity is not found
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public int getReferenceCount(long id) throws SQLException {
+        String sql = "SELECT ref_count FROM items WHERE id = ? AND status = ?";
+        try (Connection connection = this.getReadConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, id);
+                statement.setInt(2, BlobItemStatus.COMMITTED);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? resultSet.getInt(1) : 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds a given number of references to the entity, the number may be negative.
+     * @param id id of entity
+     * @param delta number of references to add
+     * @throws SQLException it attempts to update sqlite database
+     */
+    public void adjustReferenceCount(long id, int delta) throws SQLException {
+        this.write(connection -> {
+            String sql = "UPDATE items SET ref_count = ref_count + ? WHERE id = ? AND status = ?";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, delta);
+                statement.setLong(2, id);
+                statement.setInt(3, BlobItemStatus.COMMITTED);
+                statement.executeUpdate();
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Closes the volume and removes its files: the database with its WAL-files and the segment file.
+     * The volume should be excluded from the lookups and the reads should be finished before.
+     * @throws GenericBlobStorageException it will crush if some file can't be removed
+     */
+    public void deleteFiles() throws GenericBlobStorageException {
+        this.retired = true;
+        this.close();
+        File volumeFile = this.getVolumeFile().getAbsoluteFile();
+        File[] files = {
+                volumeFile,
+                new File(volumeFile.getPath() + "-wal"),
+                new File(volumeFile.getPath() + "-shm"),
+                BlobVolumeSegment.segmentFile(volumeFile)
+        };
+        for (File file : files) {
+            if (file.exists() && !file.delete()) {
+                throw new GenericBlobStorageException(MessageFormat.format("Cannot delete file {0} of volume {1}", file, this.getVolumeId()));
+            }
+        }
+    }
+
+    /**
+     * Returns the segment file of the volume, it's created on the first call.
+     * @return segment of the volume
+     * @throws SQLException it will crush if the segment file can't be opened
+     */
+    public BlobVolumeSegment getSegment() throws SQLException {
+        BlobVolumeSegment currentSegment = this.segment;
+        return currentSegment != null ? currentSegment : this.openSegment();
+    }
+
+    /**
+     * Inserts the entity whose content is already appended to the segment file,
+     * see {@link #getSegment()}.
+     * @param mimeType mime-type of the entity
+     * @param contentHash hash of the content
+     * @param contentSize size of the content in bytes
+     * @param segmentOffset offset of the content in the segment file
+     * @return address of the stored entity
+     * @throws SQLException it attempts to store data to SQL-database
+     */
+    public BlobStoredItemAddress insertSegmentItem(String mimeType, String contentHash, long contentSize, long segmentOffset)
+            throws SQLException {
+        return this.write(connection -> {
+            String sql = "INSERT INTO items(mime_type, status, content_size, content_hash, segment_offset, created_at) "
+                         + "VALUES(?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setString(1, mimeType);
+                statement.setInt(2, BlobItemStatus.COMMITTED);
+                statement.setLong(3, contentSize);
+                statement.setString(4, contentHash);
+                statement.setLong(5, segmentOffset);
+                statement.setLong(6, System.currentTimeMillis());
+                statement.executeUpdate();
+                try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                    if(resultSet.next()) {
+                        return new BlobStoredItemAddress(resultSet.getLong(1), this.getVolumeId());
+                    } else {
+                        throw new GenericBlobStorageException("Cannot get generated key for an inserted item");
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Creates the manifest of a chunked entity, the entity stays pending and invisible
+     * until it's committed by {@link #commitChunkedItem(long, long, String)}.
+     * @param mimeType mime-type of the entity
+     * @param chunkSize size of the chunks in bytes
+     * @return address of the pending entity
+     * @throws SQLException it attempts to store data to SQL-database
+     */
+    public BlobStoredItemAddress createChunkedItem(String mimeType, int chunkSize) throws SQLException {
+        return this.write(connection -> this.insertManifestRow(connection, mimeType, chunkSize));
+    }
+
+    /**
+     * Stores several next chunks of the pending chunked entity in one transaction.
+     * @param id id of the pending entity
+     * @param firstChunkIndex index of the first given chunk
+     * @param chunks content of the chunks, all of them but the last one of the entity have the chunk size
+     * @throws SQLException it attempts to store data to SQL-database
+     */
+    public void insertChunks(long id, int firstChunkIndex, List<byte[]> chunks) throws SQLException {
+        this.write(connection -> {
+            String sql = "INSERT INTO chunks(item_id, chunk_index, content) VALUES(?, ?, ?)";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                for (int i = 0; i < chunks.size(); i++) {
+                    statement.setLong(1, id);
+                    statement.setInt(2, firstChunkIndex + i);
+                    statement.setBytes(3, chunks.get(i));
+                    statement.executeUpdate();
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Makes the chunked entity visible once all its chunks are stored.
+     * @param id id of the pending entity
+     * @param contentSize summary size of the chunks in bytes
+     * @param contentHash hash of the whole content
+     * @throws SQLException it attempts to update sqlite database
+     */
+    public void commitChunkedItem(long id, long contentSize, String contentHash) throws SQLException {
+        this.write(true, connection -> {
+            String sql = "UPDATE items SET status = ?, content_size = ?, content_hash = ? WHERE id = ? AND status = ?";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setInt(1, BlobItemStatus.COMMITTED);
+                statement.setLong(2, contentSize);
+                statement.setString(3, contentHash);
+                statement.setLong(4, id);
+                statement.setInt(5, BlobItemStatus.PENDING);
+                if (statement.executeUpdate() == 0) {
+                    throw new GenericBlobStorageException(
+                            MessageFormat.format("Pending item {0} is not found in volume {1}", id, this.getVolumeId())
+                    );
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Removes the pending chunked entity together with its already stored chunks.
+     * @param id id of the pending entity
+     * @throws SQLException it attempts to delete from sqlite database
+     */
+    public void discardChunkedItem(long id) throws SQLException {
+        this.write(connection -> {
+            String sql = "DELETE FROM items WHERE id = ? AND status = ?";
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, id);
+                statement.setInt(2, BlobItemStatus.PENDING);
+                if (statement.executeUpdate() > 0) {
+                    this.deleteChunks(connection, id);
+                }
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Executes the write operation right away in synchronous mode or by the volume writer
+     * in group commit mode, waits for the commit in both cases.
+     * @param operation operation to execute
+     * @param <T> type of operation result
+     * @return result of the operation
+     * @throws SQLException it attempts to modify the database
+     */
+    private <T> T write(BlobVolumeWriter.WriteOperation<T> operation) throws SQLException {
+        return this.write(false, operation);
+    }
+
+    /**
+     * Executes the write operation, the operations making new items visible are refused
+     * once the volume is sealed.
+     * @param storesItems true if the operation makes new items visible
+     * @param operation operation to execute
+     * @param <T> type of operation result
+     * @return result of the operation
+     * @throws SQLException it attempts to modify the database
+     */
+    private <T> T write(boolean storesItems, BlobVolumeWriter.WriteOperation<T> operation) throws SQLException {
+        if (this.retired) {
+            // Opening the connection would create an empty database in place of the removed one
+            throw new NoSuchBlobVolumeException(MessageFormat.format("Blob volume {0} is retired", this.getVolumeId()));
+        }
+        this.open();
+        BlobVolumeWriter currentWriter = this.writer;
+        this.pendingWrites.incrementAndGet();
+        try {
+            if (storesItems && this.sealed) {
+                // Checked once the write is counted, so the one draining the writes can't miss it
+                throw new GenericBlobStorageException(MessageFormat.format("Blob volume {0} is sealed", this.getVolumeId()));
+            }
+            if (currentWriter == null) {
+                return this.executeInTransaction(operation);
+            }
+            return this.awaitWrite(currentWriter.submit(operation));
+        } finally {
+            this.pendingWrites.decrementAndGet();
+        }
+    }
+
+    /**
+     * Executes the given write operation in its own transaction on the write connection.
+     * The used space counter is refreshed after the commit.
+     * @param operation operation to execute
+     * @param <T> type of operation result
+     * @return result of the operation
+     * @throws SQLException it attempts to modify the database
+     */
+    public <T> T executeInTransaction(BlobVolumeWriter.WriteOperation<T> operation) throws SQLException {
+        try (Connection connection = this.connectionManager.getWriteConnection(this.getVolumeName())) {
+            this.lastWriteLockedNanos = System.nanoTime();
+            connection.setAutoCommit(false);
+            T result = operation.execute(connection);
+            connection.commit();
+            connection.setAutoCommit(true);
+            this.refreshUsedSpace(connection);
+            return result;
+        }
+    }
+
+    /**
+     * Switches the volume to group commit mode: the writes are queued and executed
+     * in batches by the writer thread, it runs only while the volume is being written.
+     * @param windowMillis time in milliseconds to wait for other writes to join the batch
+     * @param maxBatchSize maximal number of writes in one transaction
+     */
+    public synchronized void enableGroupCommit(long windowMillis, int maxBatchSize) {
+        if (this.writer == null) {
+            this.writer = new BlobVolumeWriter(this, windowMillis, maxBatchSize);
+        }
+    }
+
+    /**
+     * Returns number of writes that are started but not yet finished.
+     * @return number of pending writes
+     */
+    public int getPendingWrites() {
+        return this.pendingWrites.get();
+    }
+
+    /**
+     * Returns the time when the write lock of the volume was taken last time.
+     * @return time in nanoseconds by System.nanoTime
+     */
+    public long getLastWriteLockedNanos() {
+        return this.lastWriteLockedNanos;
+    }
+
+    /**
+     * Returns number of writes waiting for the next batch, always 0 in synchronous mode.
+     * @return write queue depth
+     */
+    public int getWriteQueueDepth() {
+        BlobVolumeWriter currentWriter = this.writer;
+        return currentWriter != null ? currentWriter.getQueueDepth() : 0;
+    }
+
+    /**
+     * Stops the volume writer if any, the already queued writes are executed before.
+     * The pooled connections are closed as well, so the WAL-file is checkpointed.
+     */
+    public synchronized void close() {
+        if (this.writer != null) {
+            this.writer.close();
+            this.writer = null;
+        }
+        if (this.segment != null) {
+            try {
+                this.segment.close();
+            } catch (IOException exception) {
+                // Everything is already flushed by the appends, nothing is lost
+            }
+            this.segment = null;
+        }
+        this.connectionManager.closeConnectionPool(this.getVolumeName());
+        this.chunkReadExecutor.remove(this.getVolumeId());
+    }
+
+    /**
+     * Returns an entity by its given id. Encoded content is decoded.
+     * @param id id of entity to return
+     * @return entity that corresponds to its ID, null if nothing was found.
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public BlobItem getById(long id) throws SQLException {
+        return this.timed("getById", () -> {
+            String sql = SELECT_ITEM + " AND items.id = ?";
+            try (Connection connection = this.getReadConnection()) {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setLong(1, id);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        if(resultSet.next()) {
+                            return this.readItem(connection, resultSet);
+                        } else {
+                            return null;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns several entities by their IDs. The entities are selected by IN-queries,
+     * one query per {@link #MAX_IDS_PER_QUERY} IDs. Encoded content is decoded.
+     * @param ids IDs of entities to return
+     * @return found entities by their IDs, the IDs of missing entities are absent
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public Map<Long, BlobItem> getByIds(List<Long> ids) throws SQLException {
+        return this.timed("getByIds", () -> {
+            if (ids.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            Map<Long, BlobItem> itemsById = new HashMap<>();
+            try (Connection connection = this.getReadConnection()) {
+                for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+                    List<Long> idsToSelect = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+                    String sql = SELECT_ITEM + " AND items.id IN (" + String.join(", ", Collections.nCopies(idsToSelect.size(), "?")) + ")";
+                    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                        for (int i = 0; i < idsToSelect.size(); i++) {
+                            statement.setLong(i + 1, idsToSelect.get(i));
+                        }
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                BlobItem item = this.readItem(connection, resultSet);
+                                itemsById.put(item.getId(), item);
+                            }
+                        }
+                    }
+                }
+            }
+            return itemsById;
+        });
+    }
+
+    /**
+     * Returns an entity description by its given id without reading the content. It costs
+     * a single lookup in the covering index and never touches the pages of the content.
+     * @param id id of entity to return
+     * @return entity description, null if nothing was found.
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public BlobItemInfo getInfoById(long id) throws SQLException {
+        return this.timed("getInfoById", () -> {
+            String sql = SELECT_ITEM_INFO + " AND id = ?";
+            try (Connection connection = this.getReadConnection()) {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setLong(1, id);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        if(resultSet.next()) {
+                            return this.readItemInfo(resultSet);
+                        } else {
+                            return null;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the descriptions of several entities by their IDs without reading the content.
+     * The entities are selected by IN-queries, one query per {@link #MAX_IDS_PER_QUERY} IDs.
+     * @param ids IDs of entities to describe
+     * @return found entity descriptions by their IDs, the IDs of missing entities are absent
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public Map<Long, BlobItemInfo> getInfosByIds(List<Long> ids) throws SQLException {
+        return this.timed("getInfosByIds", () -> {
+            if (ids.isEmpty()) {
+                return Collections.emptyMap();
+            }
+            Map<Long, BlobItemInfo> itemInfosById = new HashMap<>();
+            try (Connection connection = this.getReadConnection()) {
+                for (int from = 0; from < ids.size(); from += MAX_IDS_PER_QUERY) {
+                    List<Long> idsToSelect = ids.subList(from, Math.min(from + MAX_IDS_PER_QUERY, ids.size()));
+                    String sql = SELECT_ITEM_INFO + " AND id IN (" + String.join(", ", Collections.nCopies(idsToSelect.size(), "?")) + ")";
+                    try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                        for (int i = 0; i < idsToSelect.size(); i++) {
+                            statement.setLong(i + 1, idsToSelect.get(i));
+                        }
+                        try (ResultSet resultSet = statement.executeQuery()) {
+                            while (resultSet.next()) {
+                                BlobItemInfo itemInfo = this.readItemInfo(resultSet);
+                                itemInfosById.put(itemInfo.getId(), itemInfo);
+                            }
+                        }
+                    }
+                }
+            }
+            return itemInfosById;
+        });
+    }
+
+    /**
+     * Passes the descriptions of all stored entities to a given consumer one by one,
+     * the content is not read.
+     * @param consumer consumer of entity descriptions
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public void forEachItemInfo(Consumer<BlobItemInfo> consumer) throws SQLException {
+        String sql = SELECT_ITEM_INFO;
+        try (Connection connection = this.getReadConnection()) {
+            try (Statement statement = connection.createStatement()) {
+                try (ResultSet resultSet = statement.executeQuery(sql)) {
+                    while (resultSet.next()) {
+                        consumer.accept(this.readItemInfo(resultSet));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a part of entity content as it's stored, the encoded content is not decoded.
+     * @param id id of entity
+     * @param offset zero-based offset of the first byte to read
+     * @param length number of bytes to read
+     * @return requested part of the content, it's shorter than requested if the content ends earlier,
+     * null if nothing was found
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public byte[] readContent(long id, long offset, int length) throws SQLException {
+        return this.timed("readContent", () -> {
+            // Function substr() works with bytes when applied to blob, its positions start from 1
+            String sql = "SELECT substr(content, ?, ?) FROM contents WHERE id = ?";
+            try (Connection connection = this.getReadConnection()) {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setLong(1, offset + 1);
+                    statement.setInt(2, length);
+                    statement.setLong(3, id);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        return resultSet.next() ? resultSet.getBytes(1) : null;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * Returns the region of the segment file keeping the content of entity.
+     * @param id id of entity
+     * @return region of the segment file, null if the entity is not kept in the segment or not found
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public BlobFileRegion getFileRegion(long id) throws SQLException {
+        String sql = "SELECT segment_offset, content_size FROM items WHERE id = ? AND status = ? AND segment_offset IS NOT NULL";
+        try (Connection connection = this.getReadConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, id);
+                statement.setInt(2, BlobItemStatus.COMMITTED);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    if (resultSet.next()) {
+                        return new BlobFileRegion(this.getSegment(), resultSet.getLong(1), resultSet.getLong(2));
+                    }
+                    return null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads a single chunk of chunked entity.
+     * @param id id of entity
+     * @param chunkIndex zero-based index of the chunk
+     * @return content of the chunk, null if nothing was found
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public byte[] readChunk(long id, int chunkIndex) throws SQLException {
+        String sql = "SELECT content FROM chunks WHERE item_id = ? AND chunk_index = ?";
+        try (Connection connection = this.getReadConnection()) {
+            try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                statement.setLong(1, id);
+                statement.setInt(2, chunkIndex);
+                try (ResultSet resultSet = statement.executeQuery()) {
+                    return resultSet.next() ? resultSet.getBytes(1) : null;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns a stream reading a part of entity content chunk by chunk. Encoded content
+     * is decoded on the fly starting from its beginning, since the part of encoded content
+     * can't be decoded on its own.
+     * @param id id of entity
+     * @param offset zero-based offset of the first byte to read
+     * @param length number of bytes to read
+     * @return stream of the content, null if no committed entity was found
+     * @throws SQLException it attempts to select from sqlite database.
+     */
+    public InputStream openContentStream(long id, long offset, long length) throws SQLException {
+        return this.timed("openContentStream", () -> {
+            // The deleted items are kept until they are purged and the chunked ones are pending until committed
+            String sql = "SELECT codec, length(content), chunk_size, segment_offset "
+                         + "FROM items LEFT JOIN contents ON contents.id = items.id WHERE items.id = ? AND items.status = ?";
+            String codecName = null;
+            long storedSize = 0;
+            int chunkSize = 0;
+            long segmentOffset = -1;
+            try (Connection connection = this.getReadConnection()) {
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setLong(1, id);
+                    statement.setInt(2, BlobItemStatus.COMMITTED);
+                    try (ResultSet resultSet = statement.executeQuery()) {
+                        if (!resultSet.next()) {
+                            return null;
+                        }
+                        codecName = resultSet.getString(1);
+                        storedSize = resultSet.getLong(2);
+                        chunkSize = resultSet.getInt(3);
+                        segmentOffset = resultSet.getLong(4);
+                        if (resultSet.wasNull()) {
+                            segmentOffset = -1;
+                        }
+                    }
+                }
+            }
+            if (segmentOffset >= 0) {
+                return this.getSegment().openStream(segmentOffset + offset, length);
+            }
+            if (chunkSize > 0) {
+                // Chunked content is never encoded, so only the chunks covering the range are read
+                return new BlobChunkInputStream(this, id, chunkSize, offset, length,
+                        this.chunkReadExecutor.forVolume(this.getVolumeId()), this.chunkReadExecutor.getReadAhead());
+            }
+            BlobContentCodec codec = BlobContentCodecs.forName(codecName);
+            if (codec == null) {
+                return new BlobContentInputStream(this, id, offset, length);
+            }
+            try {
+                InputStream decodedStream = codec.decode(new BlobContentInputStream(this, id, 0, storedSize));
+                return new BlobContentRangeInputStream(decodedStream, offset, length);
+            } catch (IOException exception) {
+                throw new SQLException(MessageFormat.format("Cannot decode item {0} from volume {1}", id, this.getVolumeId()), exception);
+            }
+        });
+    }
+
+    private void validateBeforeInsert(BlobItem item) throws GenericBlobStorageException {
+        if(!this.blobItemValidator.validate(item)) {
+            throw new GenericBlobStorageException("Cannot store the item because validator returned false result");
+        }
+    }
+
+    /**
+     * Decodes the whole content read from the volume.
+     * @param content content as it's stored
+     * @param codecName name of codec, null if the content is not encoded
+     * @param originalSize size of decoded content
+     * @return decoded content
+     * @throws SQLException it will crush if the content can't be decoded
+     */
+    private byte[] decodeContent(byte[] content, String codecName, int originalSize) throws SQLException {
+        BlobContentCodec codec = BlobContentCodecs.forName(codecName);
+        if (codec == null || content == null) {
+            return content;
+        }
+        try (InputStream decodedStream = codec.decode(new ByteArrayInputStream(content))) {
+            byte[] decodedContent = decodedStream.readNBytes(originalSize);
+            if (decodedContent.length != originalSize || decodedStream.read() != -1) {
+                throw new IOException("Decoded size does not match the original size " + originalSize);
+            }
+            return decodedContent;
+        } catch (IOException exception) {
+            throw new SQLException(MessageFormat.format("Cannot decode item content of volume {0}", this.getVolumeId()), exception);
+        }
+    }
+
+    /**
+     * Reads all the chunks of chunked entity into a single array.
+     * @param connection connection to the volume
+     * @param id id of entity
+     * @param contentSize size of the content in bytes
+     * @return content of the entity
+     * @throws SQLException it will crush if the content is too big for a single array or some chunk is missing
+     */
+    private byte[] readAllChunks(Connection connection, long id, long contentSize) throws SQLException {
+        if (contentSize > Integer.MAX_VALUE - 8) {
+            throw new SQLException(MessageFormat.format(
+                    "Item {0} of volume {1} is too big to be read at once, its content should be streamed", id, this.getVolumeId()
+            ));
+        }
+        byte[] content = new byte[(int) contentSize];
+        int length = 0;
+        String sql = "SELECT content FROM chunks WHERE item_id = ? ORDER BY chunk_index";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, id);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                while (resultSet.next()) {
+                    byte[] chunk = resultSet.getBytes(1);
+                    if (length + chunk.length > content.length) {
+                        break;
+                    }
+                    System.arraycopy(chunk, 0, content, length, chunk.length);
+                    length += chunk.length;
+                }
+            }
+        }
+        if (length != content.length) {
+            throw new SQLException(MessageFormat.format(
+                    "Chunks of item {0} in volume {1} do not match its size {2}", id, this.getVolumeId(), contentSize
+            ));
+        }
+        return content;
+    }
+
+    /**
+     * Reads the content of entity kept in the segment file into a single array.
+     * @param id id of entity
+     * @param segmentOffset offset of the content in the segment file
+     * @param contentSize size of the content in bytes
+     * @return content of the entity
+     * @throws SQLException it will crush if the content is too big for a single array or can't be read
+     */
+    private byte[] readFromSegment(long id, long segmentOffset, long contentSize) throws SQLException {
+        if (contentSize > Integer.MAX_VALUE - 8) {
+            throw new SQLException(MessageFormat.format(
+                    "Item {0} of volume {1} is too big to be read at once, its content should be streamed", id, this.getVolumeId()
+            ));
+        }
+        try {
+            return this.getSegment().read(segmentOffset, (int) contentSize);
+        } catch (IOException exception) {
+            throw new SQLException(MessageFormat.format("Cannot read item {0} from segment of volume {1}", id, this.getVolumeId()), exception);
+        }
+    }
+
+    private BlobItem readItem(Connection connection, ResultSet resultSet) throws SQLException {
+        BlobItem item = new BlobItem();
+        item.setId(resultSet.getLong(1));
+        item.setMimeType(resultSet.getString("mime_type"));
+        item.setStatus(resultSet.getInt("status"));
+        long segmentOffset = resultSet.getLong("segment_offset");
+        if (!resultSet.wasNull()) {
+            item.setRawContent(this.readFromSegment(item.getId(), segmentOffset, resultSet.getLong("content_size")));
+        } else if (resultSet.getInt("chunk_size") > 0) {
+            item.setRawContent(this.readAllChunks(connection, item.getId(), resultSet.getLong("content_size")));
+        } else {
+            item.setRawContent(this.decodeContent(
+                    resultSet.getBytes("content"), resultSet.getString("codec"), resultSet.getInt("content_size")
+            ));
+        }
+        item.setContentHash(resultSet.getString("content_hash"));
+        item.setCreatedAt(resultSet.getLong("created_at"));
+        return item;
+    }
+
+    private BlobItemInfo readItemInfo(ResultSet resultSet) throws SQLException {
+        BlobItemInfo itemInfo = new BlobItemInfo();
+        itemInfo.setId(resultSet.getLong("id"));
+        itemInfo.setMimeType(resultSet.getString("mime_type"));
+        itemInfo.setStatus(resultSet.getInt("status"));
+        itemInfo.setSize(resultSet.getLong("size"));
+        itemInfo.setContentHash(resultSet.getString("content_hash"));
+        itemInfo.setCreatedAt(resultSet.getLong("created_at"));
+        return itemInfo;
+    }
+
+    private BlobStoredItemAddress insertRow(Connection connection, BlobItem item) throws SQLException {
+        String itemSql = "INSERT INTO items(mime_type, status, content_size, content_hash, codec, created_at) "
+                         + "VALUES(?, ?, ?, ?, ?, ?)";
+        long createdAt = System.currentTimeMillis();
+        BlobStoredItemAddress storedItem = new BlobStoredItemAddress();
+        try (PreparedStatement statement = connection.prepareStatement(itemSql)) {
+            statement.setString(1, item.getMimeType());
+            statement.setInt(2, item.getStatus());
+            statement.setLong(3, item.getCodec() != null ? item.getOriginalSize() : item.getContentSize());
+            statement.setString(4, item.getContentHash());
+            if (item.getCodec() != null) {
+                statement.setString(5, item.getCodec());
+            } else {
+                statement.setNull(5, Types.VARCHAR);
+            }
+            statement.setLong(6, createdAt);
+            statement.executeUpdate();
+            try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                if(resultSet.next()) {
+                    storedItem.setId(resultSet.getLong(1));
+                    storedItem.setVolumeId(this.getVolumeId());
+                } else {
+                    throw new GenericBlobStorageException("Cannot get generated key for an inserted item");
+                }
+            }
+        }
+
+        String contentSql = "INSERT INTO contents(id, content) VALUES(?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(contentSql)) {
+            statement.setLong(1, storedItem.getId());
+            statement.setBytes(2, item.getRawContent());
+            statement.executeUpdate();
+        }
+        item.setCreatedAt(createdAt);
+        return storedItem;
+    }
+
+    private BlobStoredItemAddress insertManifestRow(Connection connection, String mimeType, int chunkSize) throws SQLException {
+        String sql = "INSERT INTO items(mime_type, status, content_size, chunk_size, created_at) VALUES(?, ?, 0, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, mimeType);
+            statement.setInt(2, BlobItemStatus.PENDING);
+            statement.setInt(3, chunkSize);
+            statement.setLong(4, System.currentTimeMillis());
+            statement.executeUpdate();
+            try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                if(resultSet.next()) {
+                    return new BlobStoredItemAddress(resultSet.getLong(1), this.getVolumeId());
+                } else {
+                    throw new GenericBlobStorageException("Cannot get generated key for an inserted item");
+                }
+            }
+        }
+    }
+
+    /**
+     * Copies the chunks of chunked entity to the target volume, a few chunks per transaction.
+     * The copy stays pending until all its chunks are stored.
+     */
+    private BlobStoredItemAddress copyChunksTo(long id, StoredItemRow row, BlobVolume targetVolume) throws SQLException {
+        BlobStoredItemAddress copyAddress = targetVolume.write(connection -> targetVolume.insertCopiedRow(connection, row, BlobItemStatus.PENDING));
+        boolean committed = false;
+        try {
+            long chunkCount = (row.contentSize + row.chunkSize - 1) / row.chunkSize;
+            for (int firstChunkIndex = 0; firstChunkIndex < chunkCount; firstChunkIndex += CHUNKS_PER_COPY) {
+                List<byte[]> chunks = new ArrayList<>(CHUNKS_PER_COPY);
+                for (int chunkIndex = firstChunkIndex; chunkIndex < Math.min(chunkCount, firstChunkIndex + CHUNKS_PER_COPY); chunkIndex++) {
+                    byte[] chunk = this.readChunk(id, chunkIndex);
+                    if (chunk == null) {
+                        throw new SQLException(MessageFormat.format("Chunk {0} of item {1} is missing in volume {2}", chunkIndex, id, this.getVolumeId()));
+                    }
+                    chunks.add(chunk);
+                }
+                targetVolume.insertChunks(copyAddress.getId(), firstChunkIndex, chunks);
+            }
+            targetVolume.write(connection -> {
+                String sql = "UPDATE items SET status = ? WHERE id = ? AND status = ?";
+                try (PreparedStatement statement = connection.prepareStatement(sql)) {
+                    statement.setInt(1, BlobItemStatus.COMMITTED);
+                    statement.setLong(2, copyAddress.getId());
+                    statement.setInt(3, BlobItemStatus.PENDING);
+                    statement.executeUpdate();
+                }
+                return null;
+            });
+            committed = true;
+            return copyAddress;
+        } finally {
+            if (!committed) {
+                targetVolume.discardChunkedItem(copyAddress.getId());
+            }
+        }
+    }
+
+    private BlobStoredItemAddress insertCopiedRow(Connection connection, StoredItemRow row, int status) throws SQLException {
+        String sql = "INSERT INTO items(mime_type, status, content_size, content_hash, codec, ref_count, created_at, chunk_size, segment_offset) "
+                     + "VALUES(?, ?, ?, ?, ?, ?, ?, ?, ?)";
+        BlobStoredItemAddress copyAddress;
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, row.mimeType);
+            statement.setInt(2, status);
+            statement.setLong(3, row.contentSize);
+            statement.setString(4, row.contentHash);
+            statement.setString(5, row.codec);
+            statement.setInt(6, row.refCount);
+            statement.setLong(7, row.createdAt);
+            statement.setObject(8, row.chunkSize);
+            statement.setObject(9, row.segmentOffset);
+            statement.executeUpdate();
+            try (ResultSet resultSet = statement.getGeneratedKeys()) {
+                if(resultSet.next()) {
+                    copyAddress = new BlobStoredItemAddress(resultSet.getLong(1), this.getVolumeId());
+                } else {
+                    throw new GenericBlobStorageException("Cannot get generated key for an inserted item");
+                }
+            }
+        }
+        if (row.content != null) {
+            String contentSql = "INSERT INTO contents(id, content) VALUES(?, ?)";
+            try (PreparedStatement statement = connection.prepareStatement(contentSql)) {
+                statement.setLong(1, copyAddress.getId());
+                statement.setBytes(2, row.content);
+                statement.executeUpdate();
+            }
+        }
+        return copyAddress;
+    }
+
+    private void deleteChunks(Connection connection, long id) throws SQLException {
+        String sql = "DELETE FROM chunks WHERE item_id = ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, id);
+            statement.executeUpdate();
+        }
+    }
+
+    private Boolean addReferenceToRow(Connection connection, long id, String contentHash, String mimeType) throws SQLException {
+        String sql = "UPDATE items SET ref_count = ref_count + 1 WHERE id = ? AND content_hash = ? AND mime_type = ? AND status = ?";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setLong(1, id);
+            statement.setString(2, contentHash);
+            statement.setString(3, mimeType);
+            statement.setInt(4, BlobItemStatus.COMMITTED);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    private Boolean deleteRow(Connection connection, long id) throws SQLException {
+        String releaseSql = "UPDATE items SET ref_count = ref_count - 1 WHERE id = ? AND status = ?";
+        try (PreparedStatement statement = connection.prepareStatement(releaseSql)) {
+            statement.setLong(1, id);
+            statement.setInt(2, BlobItemStatus.COMMITTED);
+            statement.executeUpdate();
+        }
+        String deleteSql = "UPDATE items SET status = ? WHERE id = ? AND status = ? AND ref_count <= 0";
+        try (PreparedStatement statement = connection.prepareStatement(deleteSql)) {
+            statement.setInt(1, BlobItemStatus.DELETED);
+            statement.setLong(2, id);
+            statement.setInt(3, BlobItemStatus.COMMITTED);
+            return statement.executeUpdate() > 0;
+        }
+    }
+
+    private void purgeRow(Connection connection, long id) throws SQLException {
+        String deleteSql = "DELETE FROM items WHERE id = ?";
+        try (PreparedStatement statement = connection.prepareStatement(deleteSql)) {
+            statement.setLong(1, id);
+            statement.executeUpdate();
+        }
+        String deleteContentSql = "DELETE FROM contents WHERE id = ?";
+        try (PreparedStatement statement = connection.prepareStatement(deleteContentSql)) {
+            statement.setLong(1, id);
+            statement.executeUpdate();
+        }
+        this.deleteChunks(connection, id);
+    }
+
+    private long queryLong(Statement statement, String sql) throws SQLException {
+        try (ResultSet resultSet = statement.executeQuery(sql)) {
+            return resultSet.next() ? resultSet.getLong(1) : 0;
+        }
+    }
+
+    /**
+     * Executes the operation recording its time and outcome, see {@link BlobStorageMetrics}.
+     * @param operationName name of operation
+     * @param operation operation to execute
+     * @param <T> type of operation result
+     * @return result of the operation
+     * @throws SQLException if the operation failed with SQL error
+     */
+    private <T> T timed(String operationName, VolumeOperation<T> operation) throws SQLException {
+        long startNanos = System.nanoTime();
+        String outcome = BlobStorageMetrics.OUTCOME_ERROR;
+        try {
+            T result = operation.execute();
+            outcome = BlobStorageMetrics.outcomeOf(result);
+            return result;
+        } finally {
+            this.metrics.recordVolumeOperation(this.getVolumeId(), operationName, outcome, System.nanoTime() - startNanos);
+        }
+    }
+
+    /**
+     * Waits for the write executed by the volume writer and unwraps its failure.
+     * @param future future of the write
+     * @param <T> type of write result
+     * @return result of the write
+     * @throws SQLException if the write failed with SQL error
+     */
+    private <T> T awaitWrite(CompletableFuture<T> future) throws SQLException {
+        try {
+            return future.get();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for the write to be committed", exception);
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            if (cause instanceof SQLException) {
+                throw (SQLException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else {
+                throw new GenericBlobStorageException(cause.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Refreshes the used space counter. It's cheap because the page counters are taken
+     * from the database header and the segment size is tracked in memory, so it's done
+     * after every modification.
+     * @param connection connection to the volume
+     * @throws SQLException it attempts to read pragmas of the database
+     */
+    private void refreshUsedSpace(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            try (ResultSet resultSet = statement.executeQuery(USED_SPACE_SQL)) {
+                if (resultSet.next()) {
+                    BlobVolumeSegment currentSegment = this.segment;
+                    this.usedBytes.set(resultSet.getLong(1) + (currentSegment != null ? currentSegment.getSize() : 0));
+                }
+            }
+        }
+    }
+
+    /**
+     * Borrows a read connection, the volume is opened beforehand if it's not yet.
+     * @return pooled read connection
+     * @throws SQLException it attempts to open the volume and to get the connection
+     */
+    private Connection getReadConnection() throws SQLException {
+        this.open();
+        return this.connectionManager.getReadConnection(this.getVolumeName());
+    }
+
+    /**
+     * Borrows a write connection, the volume is opened beforehand if it's not yet.
+     * @return pooled write connection
+     * @throws SQLException it attempts to open the volume and to get the connection
+     */
+    private Connection getWriteConnection() throws SQLException {
+        this.open();
+        return this.connectionManager.getWriteConnection(this.getVolumeName());
+    }
+
+    private synchronized BlobVolumeSegment openSegment() throws SQLException {
+        if (this.segment == null) {
+            try {
+                this.segment = BlobVolumeSegment.open(this.getVolumeFile());
+            } catch (IOException exception) {
+                throw new SQLException(MessageFormat.format("Cannot open segment file of volume {0}", this.getVolumeId()), exception);
+            }
+        }
+        return this.segment;
+    }
+
+    /**
+     * Returns the state of connection pool serving this volume.
+     * @return connection pool of the volume
+     */
+    public VolumeConnectionPool getConnectionPool() {
+        return this.connectionManager.getConnectionPool(this.getVolumeName());
+    }
+
+    /**
+     * Operation of the volume whose time is recorded by {@link #timed(String, VolumeOperation)}.
+     * @param <T> type of operation result
+     */
+    private interface VolumeOperation<T> {
+        T execute() throws SQLException;
+    }
+
+    /**
+     * Row of the entity as it's stored, used to copy the entity to another volume.
+     */
+    private static class StoredItemRow {
+        private final String mimeType;
+        private final long contentSize;
+        private final String contentHash;
+        private final String codec;
+        private final int refCount;
+        private final long createdAt;
+        private final Integer chunkSize;
+        private Long segmentOffset;
+        private final byte[] content;
+
+        private StoredItemRow(ResultSet resultSet) throws SQLException {
+            this.mimeType = resultSet.getString("mime_type");
+            this.contentSize = resultSet.getLong("content_size");
+            this.contentHash = resultSet.getString("content_hash");
+            this.codec = resultSet.getString("codec");
+            this.refCount = resultSet.getInt("ref_count");
+            this.createdAt = resultSet.getLong("created_at");
+            int chunkSizeValue = resultSet.getInt("chunk_size");
+            this.chunkSize = resultSet.wasNull() ? null : chunkSizeValue;
+            long segmentOffsetValue = resultSet.getLong("segment_offset");
+            this.segmentOffset = resultSet.wasNull() ? null : segmentOffsetValue;
+            this.content = resultSet.getBytes("content");
+        }
     }
 }
@@ -0,0 +1,131 @@
+package com.igorivkin.blobstorage.blobvolume;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Schema of the blob volume database. The version of the schema is kept in the
+ * user_version pragma of the database, so the volumes created by the previous versions
+ * are migrated step by step once they are opened. The migrations are never changed after
+ * release, a new change of the schema goes to a new migration.
+ */
+public class BlobVolumeSchema {
+
+    /**
+     * Statements of migrations, the migration with index N brings the schema to version N + 1.
+     */
+    private static final String[][] MIGRATIONS = {
+            // Version 1: the original table of items
+            {
+                    "CREATE TABLE IF NOT EXISTS entities (\n"
+                    + " id integer PRIMARY KEY,\n"
+                    + " mime_type text NOT NULL,\n"
+                    + " status integer NOT NULL,\n"
+                    + " content blob\n"
+                    + ");"
+            },
+            // Version 2: content hash and reference counter for deduplication
+            {
+                    "ALTER TABLE entities ADD COLUMN content_hash text",
+                    "ALTER TABLE entities ADD COLUMN ref_count integer NOT NULL DEFAULT 1",
+                    "CREATE INDEX IF NOT EXISTS entities_content_hash ON entities (content_hash)"
+            },
+            // Version 3: codec of compressed content and its size before compression
+            {
+                    "ALTER TABLE entities ADD COLUMN codec text",
+                    "ALTER TABLE entities ADD COLUMN original_size integer"
+            },
+            // Version 4: stored size and creation time, the covering index allows to describe
+            // the item without reading the table row, since the columns placed after the content
+            // can be read only by walking through the overflow pages of the content
+            {
+                    "ALTER TABLE entities ADD COLUMN content_size integer",
+                    "ALTER TABLE entities ADD COLUMN created_at integer",
+                    "UPDATE entities SET content_size = coalesce(original_size, length(content))",
+                    "CREATE INDEX IF NOT EXISTS entities_stat "
+                    + "ON entities (id, mime_type, status, content_size, content_hash, created_at)"
+            },
+            // Version 5: metadata and content are split into separate tables, so the metadata
+            // pages are not mixed with overflow chains of the content. Item IDs are never reused
+            // anymore (AUTOINCREMENT), so the address of a deleted item can't point to another one.
+            {
+                    "CREATE TABLE items (\n"
+                    + " id integer PRIMARY KEY AUTOINCREMENT,\n"
+                    + " mime_type text NOT NULL,\n"
+                    + " status integer NOT NULL,\n"
+                    + " content_size integer NOT NULL,\n"
+                    + " content_hash text,\n"
+                    + " codec text,\n"
+                    + " ref_count integer NOT NULL DEFAULT 1,\n"
+                    + " created_at integer\n"
+                    + ");",
+                    "CREATE TABLE contents (\n"
+                    + " id integer PRIMARY KEY,\n"
+                    + " content blob\n"
+                    + ");",
+                    "INSERT INTO items (id, mime_type, status, content_size, content_hash, codec, ref_count, created_at) "
+                    + "SELECT id, mime_type, status, content_size, content_hash, codec, ref_count, created_at FROM entities",
+                    "INSERT INTO contents (id, content) SELECT id, content FROM entities",
+                    "DROP TABLE entities",
+                    "CREATE INDEX items_content_hash ON items (content_hash)"
+            },
+            // Version 6: large items are stored as fixed-size chunks, the item row is their manifest
+            // keeping the chunk size, the content of chunked item is not kept in the contents table
+            {
+                    "ALTER TABLE items ADD COLUMN chunk_size integer",
+                    "CREATE TABLE chunks (\n"
+                    + " id integer PRIMARY KEY,\n"
+                    + " item_id integer NOT NULL,\n"
+                    + " chunk_index integer NOT NULL,\n"
+                    + " content blob NOT NULL\n"
+                    + ");",
+                    "CREATE UNIQUE INDEX chunks_item ON chunks (item_id, chunk_index)"
+            },
+            // Version 7: content of large items kept in the segment file next to the volume,
+            // the item row keeps its offset there, the length is the content size
+            {
+                    "ALTER TABLE items ADD COLUMN segment_offset integer"
+            },
+            // Version 8: deleted items are only marked and purged later in background,
+            // the index lets the reclaimer find them without scanning the table
+            {
+                    "CREATE INDEX items_status ON items (status)"
+            }
+    };
+
+    /**
+     * Current version of the schema.
+     */
+    public static final int VERSION = MIGRATIONS.length;
+
+    /**
+     * Applies the migrations that were not applied to the volume yet. Should be called
+     * within a transaction, so the volume is never left with a partially applied migration.
+     * @param connection connection to the volume
+     * @return version of the schema before the migration
+     * @throws SQLException it attempts to modify the schema
+     */
+    public static int migrate(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            int version;
+            try (ResultSet resultSet = statement.executeQuery("PRAGMA user_version")) {
+                version = resultSet.next() ? resultSet.getInt(1) : 0;
+            }
+            if (version > VERSION) {
+                throw new SQLException("Volume schema version " + version + " is newer than supported " + VERSION);
+            }
+            for (int i = version; i < VERSION; i++) {
+                for (String migrationStatement : MIGRATIONS[i]) {
+                    statement.execute(migrationStatement);
+                }
+            }
+            if (version < VERSION) {
+                // Pragma does not support parameters, but the value is a constant
+                statement.execute("PRAGMA user_version = " + VERSION);
+            }
+            return version;
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.igorivkin.blobstorage.blobvolume;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.text.MessageFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Append-only segment file kept next to the volume database, the content of large items
+ * is stored there and the database keeps only its offset and length. Every append takes
+ * its own region at the end of the file, so concurrent appends never wait for each other.
+ * The regions of deleted items are not reused, the file is never overwritten.
+ */
+public class BlobVolumeSegment implements AutoCloseable {
+
+    /**
+     * Size of the buffer copying the content from the input stream.
+     */
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private final File file;
+    private final FileChannel channel;
+
+    /**
+     * End of the already allocated regions, the next append starts there.
+     */
+    private final AtomicLong end;
+
+    private BlobVolumeSegment(File file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.end = new AtomicLong(this.channel.size());
+    }
+
+    /**
+     * Opens the segment file of a given volume, the file is created if it does not exist.
+     * @param volumeFile database file of the volume
+     * @return segment of the volume
+     * @throws IOException it attempts to open the file
+     */
+    public static BlobVolumeSegment open(File volumeFile) throws IOException {
+        return new BlobVolumeSegment(BlobVolumeSegment.segmentFile(volumeFile));
+    }
+
+    /**
+     * Returns the segment file of a given volume, e.g. blob_volume_1.seg for blob_volume_1.db.
+     * @param volumeFile database file of the volume
+     * @return segment file, it may not exist
+     */
+    public static File segmentFile(File volumeFile) {
+        String volumeFileName = volumeFile.getName();
+        int extensionIndex = volumeFileName.lastIndexOf('.');
+        String segmentFileName = (extensionIndex > 0 ? volumeFileName.substring(0, extensionIndex) : volumeFileName) + ".seg";
+        return new File(volumeFile.getAbsoluteFile().getParentFile(), segmentFileName);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns the size of the segment including the regions being written right now.
+     * @return size in bytes
+     */
+    public long getSize() {
+        return this.end.get();
+    }
+
+    /**
+     * Appends the content of a given length to the end of the segment and flushes it to disk.
+     * If the stream does not match the length, the region stays allocated but unused.
+     * @param inputStream stream of the content
+     * @param length exact length of the content in bytes
+     * @return offset of the content in the segment
+     * @throws IOException it attempts to read the stream and to write the file
+     */
+    public long append(InputStream inputStream, long length) throws IOException {
+        long offset = this.end.getAndAdd(length);
+        byte[] buffer = new byte[(int) Math.min(BUFFER_SIZE, Math.max(length, 1))];
+        long written = 0;
+        while (written < length) {
+            int bytesRead = inputStream.read(buffer, 0, (int) Math.min(buffer.length, length - written));
+            if (bytesRead == -1) {
+                throw new IOException(
+                        MessageFormat.format("Stream has ended after {0} bytes, but {1} bytes were declared", written, length)
+                );
+            }
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, bytesRead);
+            while (byteBuffer.hasRemaining()) {
+                written += this.channel.write(byteBuffer, offset + written);
+            }
+        }
+        if (inputStream.read() != -1) {
+            throw new IOException(MessageFormat.format("Stream is longer than declared size {0} bytes", length));
+        }
+        this.channel.force(false);
+        return offset;
+    }
+
+    /**
+     * Reads the region of the segment into a single array.
+     * @param offset offset of the region
+     * @param length length of the region
+     * @return content of the region
+     * @throws IOException it will crush if the segment ends before the region
+     */
+    public byte[] read(long offset, int length) throws IOException {
+        byte[] content = new byte[length];
+        ByteBuffer byteBuffer = ByteBuffer.wrap(content);
+        while (byteBuffer.hasRemaining()) {
+            if (this.channel.read(byteBuffer, offset + byteBuffer.position()) == -1) {
+                throw new IOException(MessageFormat.format("Segment {0} ended unexpectedly at {1}", this.file.getName(), offset + byteBuffer.position()));
+            }
+        }
+        return content;
+    }
+
+    /**
+     * Returns a stream reading the region of the segment. Positional reads are used,
+     * so any number of streams can read the segment at the same time.
+     * @param offset offset of the region
+     * @param length length of the region
+     * @return stream of the region content
+     */
+    public InputStream openStream(long offset, long length) {
+        return new InputStream() {
+            private long position = offset;
+            private final long regionEnd = offset + length;
+
+            @Override
+            public int read() throws IOException {
+                byte[] singleByte = new byte[1];
+                return this.read(singleByte, 0, 1) == -1 ? -1 : singleByte[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] buffer, int bufferOffset, int bufferLength) throws IOException {
+                if (bufferLength == 0) {
+                    return 0;
+                }
+                if (this.position >= this.regionEnd) {
+                    return -1;
+                }
+                ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, bufferOffset, (int) Math.min(bufferLength, this.regionEnd - this.position));
+                int bytesRead = channel.read(byteBuffer, this.position);
+                if (bytesRead == -1) {
+                    throw new IOException(MessageFormat.format("Segment {0} ended unexpectedly at {1}", file.getName(), this.position));
+                }
+                this.position += bytesRead;
+                return bytesRead;
+            }
+        };
+    }
+
+    /**
+     * Sends the region of the segment to a given output stream. The file channel transfers
+     * the bytes itself, so the content is not copied through the Java heap when the platform
+     * supports it for the target.
+     * @param offset offset of the region
+     * @param length length of the region
+     * @param outputStream stream to write to
+     * @throws IOException it attempts to read the file and to write the stream
+     */
+    public void transferTo(long offset, long length, OutputStream outputStream) throws IOException {
+        WritableByteChannel targetChannel = Channels.newChannel(outputStream);
+        long transferred = 0;
+        while (transferred < length) {
+            long bytesTransferred = this.channel.transferTo(offset + transferred, length - transferred, targetChannel);
+            if (bytesTransferred <= 0) {
+                throw new IOException(MessageFormat.format("Segment {0} ended unexpectedly at {1}", this.file.getName(), offset + transferred));
+            }
+            transferred += bytesTransferred;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.channel.close();
+    }
+}
@@ -0,0 +1,238 @@
+package com.igorivkin.blobstorage.blobvolume;
+
+import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single writer of a blob volume that implements group commit. Concurrent write operations
+ * are queued, the writer thread takes as many of them as arrived during the commit window
+ * (but no more than the batch size) and executes them in one transaction, so all of them
+ * share one WAL sync. Every caller gets its own result through a future completed after
+ * the commit. The writer thread is started by the first queued write and stops once nothing
+ * is written for a while, so the volumes that are not written (full, sealed or just idle)
+ * keep no threads.
+ */
+public class BlobVolumeWriter implements AutoCloseable {
+
+    /**
+     * A single write operation executed on the connection of the batch transaction.
+     * @param <T> type of operation result
+     */
+    @FunctionalInterface
+    public interface WriteOperation<T> {
+        T execute(Connection connection) throws SQLException;
+    }
+
+    private static class PendingWrite<T> {
+        private final WriteOperation<T> operation;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+        private T result;
+
+        PendingWrite(WriteOperation<T> operation) {
+            this.operation = operation;
+        }
+
+        void execute(Connection connection) throws SQLException {
+            this.result = this.operation.execute(connection);
+        }
+
+        void complete() {
+            this.future.complete(this.result);
+        }
+    }
+
+    /**
+     * Time in milliseconds the idle writer thread waits for the next write before it stops.
+     */
+    private static final long IDLE_KEEP_ALIVE_MILLIS = 1000;
+
+    private final BlobVolume blobVolume;
+    private final long windowNanos;
+    private final int maxBatchSize;
+    private final BlockingQueue<PendingWrite<?>> queue = new LinkedBlockingQueue<>();
+
+    /**
+     * Running writer thread, null while the writer is idle.
+     */
+    private Thread writerThread;
+
+    private volatile boolean closed;
+
+    public BlobVolumeWriter(BlobVolume blobVolume, long windowMillis, int maxBatchSize) {
+        this.blobVolume = blobVolume;
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.maxBatchSize = Math.max(1, maxBatchSize);
+    }
+
+    /**
+     * Queues the operation to be executed within the next batch.
+     * @param operation operation to execute
+     * @param <T> type of operation result
+     * @return future completed once the batch is committed
+     */
+    public <T> CompletableFuture<T> submit(WriteOperation<T> operation) {
+        PendingWrite<T> pendingWrite = new PendingWrite<>(operation);
+        if (this.closed) {
+            this.failClosed(pendingWrite);
+        } else {
+            this.queue.add(pendingWrite);
+            this.startWriterThread();
+        }
+        return pendingWrite.future;
+    }
+
+    /**
+     * Returns number of operations waiting for the next batch.
+     * @return queue depth
+     */
+    public int getQueueDepth() {
+        return this.queue.size();
+    }
+
+    /**
+     * Stops the writer once the already queued operations are executed.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        Thread currentThread;
+        synchronized (this) {
+            currentThread = this.writerThread;
+        }
+        if (currentThread != null) {
+            try {
+                currentThread.join(TimeUnit.SECONDS.toMillis(30));
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        // Something could be queued right before the writer was closed
+        this.failQueuedWrites();
+    }
+
+    /**
+     * Starts the writer thread unless it's running already. It's synchronized with
+     * {@link #stopIdleWriterThread()}, so the write queued while the thread is stopping
+     * is taken either by that thread or by a new one.
+     */
+    private synchronized void startWriterThread() {
+        if (this.closed) {
+            // The writer is closed meanwhile and may have already failed its queue
+            this.failQueuedWrites();
+            return;
+        }
+        if (this.writerThread == null) {
+            this.writerThread = new Thread(this::processQueue, "blob-volume-writer-" + this.blobVolume.getVolumeId());
+            this.writerThread.setDaemon(true);
+            this.writerThread.start();
+        }
+    }
+
+    /**
+     * Lets the writer thread stop if nothing was queued meanwhile.
+     * @return true if the thread has to stop
+     */
+    private synchronized boolean stopIdleWriterThread() {
+        if (this.queue.isEmpty()) {
+            this.writerThread = null;
+            return true;
+        }
+        return false;
+    }
+
+    private void processQueue() {
+        List<PendingWrite<?>> batch = new ArrayList<>(this.maxBatchSize);
+        while (true) {
+            try {
+                PendingWrite<?> firstWrite = this.closed
+                        ? this.queue.poll()
+                        : this.queue.poll(IDLE_KEEP_ALIVE_MILLIS, TimeUnit.MILLISECONDS);
+                if (firstWrite == null) {
+                    if (this.stopIdleWriterThread()) {
+                        return;
+                    }
+                    continue;
+                }
+                batch.add(firstWrite);
+
+                // Wait for the other writers during the window, but don't wait at all
+                // if the batch is already full
+                long deadline = System.nanoTime() + this.windowNanos;
+                while (batch.size() < this.maxBatchSize) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    PendingWrite<?> nextWrite = remainingNanos > 0
+                            ? this.queue.poll(remainingNanos, TimeUnit.NANOSECONDS)
+                            : this.queue.poll();
+                    if (nextWrite == null) {
+                        break;
+                    }
+                    batch.add(nextWrite);
+                }
+
+                this.executeBatch(batch);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                this.closed = true;
+                batch.forEach(this::failClosed);
+                this.failQueuedWrites();
+                this.stopIdleWriterThread();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void failQueuedWrites() {
+        PendingWrite<?> pendingWrite;
+        while ((pendingWrite = this.queue.poll()) != null) {
+            this.failClosed(pendingWrite);
+        }
+    }
+
+    private void failClosed(PendingWrite<?> pendingWrite) {
+        pendingWrite.future.completeExceptionally(
+                new GenericBlobStorageException("Writer of blob volume " + this.blobVolume.getVolumeId() + " is closed")
+        );
+    }
+
+    /**
+     * Executes the batch in one transaction. Each operation is wrapped into its own savepoint,
+     * so the failure of one operation does not affect the others.
+     * @param batch operations to execute
+     */
+    private void executeBatch(List<PendingWrite<?>> batch) {
+        List<PendingWrite<?>> succeededWrites = new ArrayList<>(batch.size());
+        try {
+            this.blobVolume.executeInTransaction(connection -> {
+                for (PendingWrite<?> pendingWrite : batch) {
+                    Savepoint savepoint = connection.setSavepoint();
+                    try {
+                        pendingWrite.execute(connection);
+                        connection.releaseSavepoint(savepoint);
+                        succeededWrites.add(pendingWrite);
+                    } catch (SQLException | RuntimeException exception) {
+                        connection.rollback(savepoint);
+                        pendingWrite.future.completeExceptionally(exception);
+                    }
+                }
+                return null;
+            });
+            succeededWrites.forEach(PendingWrite::complete);
+        } catch (SQLException | RuntimeException exception) {
+            // The transaction was not committed, so nothing from the batch is stored
+            for (PendingWrite<?> pendingWrite : batch) {
+                pendingWrite.future.completeExceptionally(exception);
+            }
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package com.igorivkin.blobstorage.cache;
+
+import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Read-through cache of the hot blob items keyed by their addresses. The cache is limited
+ * by the summary size of the content in bytes and uses segmented LRU eviction: a new item
+ * goes to the probation segment and is promoted to the protected segment only when it's
+ * requested once again. So a scan through many cold items can't wash out the hot ones.
+ */
+@Component
+public class BlobItemCache {
+
+    /**
+     * Part of the budget given to the protected segment.
+     */
+    private static final double PROTECTED_SEGMENT_RATIO = 0.8;
+
+    private final long maxSizeInBytes;
+    private final long maxProtectedSizeInBytes;
+    private final long maxItemSizeInBytes;
+    private final boolean offHeap;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<BlobStoredItemAddress, CachedBlobItem> probationSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private final LinkedHashMap<BlobStoredItemAddress, CachedBlobItem> protectedSegment = new LinkedHashMap<>(16, 0.75f, true);
+    private long probationSizeInBytes;
+    private long protectedSizeInBytes;
+
+    /**
+     * Incremented on every invalidation. The item loaded from the volume is put only if no
+     * invalidation happened meanwhile, so a deleted item can't get back to the cache.
+     */
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public BlobItemCache(BlobStorageConfigProvider configProvider) {
+        this.maxSizeInBytes = configProvider.getHotCacheSizeInBytes();
+        this.maxProtectedSizeInBytes = (long) (this.maxSizeInBytes * PROTECTED_SEGMENT_RATIO);
+        this.maxItemSizeInBytes = Math.min(configProvider.getHotCacheMaxItemSizeInBytes(), this.maxSizeInBytes);
+        this.offHeap = configProvider.isHotCacheOffHeap();
+    }
+
+    /**
+     * Returns true if the cache is enabled by configuration.
+     * @return true if the cache is enabled
+     */
+    public boolean isEnabled() {
+        return this.maxSizeInBytes > 0;
+    }
+
+    /**
+     * Returns true if an item of a given size can be put into the cache.
+     * @param size size of the item content in bytes
+     * @return true if the item is small enough to be cached
+     */
+    public boolean isAdmissible(long size) {
+        return this.isEnabled() && size <= this.maxItemSizeInBytes;
+    }
+
+    /**
+     * Returns the cached item.
+     * @param address address of the item
+     * @return cached item or null if it's not in the cache
+     */
+    public CachedBlobItem get(BlobStoredItemAddress address) {
+        if (!this.isEnabled()) {
+            return null;
+        }
+        CachedBlobItem cachedItem;
+        this.lock.lock();
+        try {
+            cachedItem = this.protectedSegment.get(address);
+            if (cachedItem == null) {
+                cachedItem = this.probationSegment.remove(address);
+                if (cachedItem != null) {
+                    // The second request promotes the item to the protected segment
+                    this.probationSizeInBytes -= cachedItem.getSize();
+                    this.protectedSegment.put(address, cachedItem);
+                    this.protectedSizeInBytes += cachedItem.getSize();
+                    this.evictIfNeeded();
+                }
+            }
+        } finally {
+            this.lock.unlock();
+        }
+        (cachedItem != null ? this.hits : this.misses).incrementAndGet();
+        return cachedItem;
+    }
+
+    /**
+     * Returns the current invalidation stamp that should be passed to
+     * {@link #put(BlobStoredItemAddress, BlobItem, long)} after the item is loaded.
+     * @return invalidation stamp
+     */
+    public long getInvalidationStamp() {
+        return this.invalidations.get();
+    }
+
+    /**
+     * Puts the item loaded from the volume into the cache if it's small enough
+     * and no item was invalidated since the loading has been started.
+     * @param address address of the item
+     * @param item item to cache
+     * @param invalidationStamp stamp taken before loading the item
+     * @return cached item or null if the item was not admitted
+     */
+    public CachedBlobItem put(BlobStoredItemAddress address, BlobItem item, long invalidationStamp) {
+        if (item == null || !this.isAdmissible(item.getContentSize())) {
+            return null;
+        }
+        CachedBlobItem cachedItem = CachedBlobItem.of(item, this.offHeap);
+        this.lock.lock();
+        try {
+            if (this.invalidations.get() != invalidationStamp) {
+                return null;
+            }
+            if (this.protectedSegment.containsKey(address) || this.probationSegment.containsKey(address)) {
+                return cachedItem;
+            }
+            this.probationSegment.put(address, cachedItem);
+            this.probationSizeInBytes += cachedItem.getSize();
+            this.evictIfNeeded();
+        } finally {
+            this.lock.unlock();
+        }
+        return cachedItem;
+    }
+
+    /**
+     * Removes the item from the cache.
+     * @param address address of the item
+     */
+    public void invalidate(BlobStoredItemAddress address) {
+        if (!this.isEnabled()) {
+            return;
+        }
+        this.lock.lock();
+        try {
+            this.invalidations.incrementAndGet();
+            CachedBlobItem removedItem = this.probationSegment.remove(address);
+            if (removedItem != null) {
+                this.probationSizeInBytes -= removedItem.getSize();
+            }
+            removedItem = this.protectedSegment.remove(address);
+            if (removedItem != null) {
+                this.protectedSizeInBytes -= removedItem.getSize();
+            }
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getMaxSizeInBytes() {
+        return maxSizeInBytes;
+    }
+
+    /**
+     * Returns the summary size of the cached content.
+     * @return size of the cache in bytes
+     */
+    public long getSizeInBytes() {
+        this.lock.lock();
+        try {
+            return this.probationSizeInBytes + this.protectedSizeInBytes;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Returns number of cached items.
+     * @return number of items
+     */
+    public int getItemsCount() {
+        this.lock.lock();
+        try {
+            return this.probationSegment.size() + this.protectedSegment.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Demotes the least recently used protected items to the probation segment and then
+     * evicts the least recently used probation items until the budget is met.
+     * Should be called under the lock.
+     */
+    private void evictIfNeeded() {
+        Iterator<Map.Entry<BlobStoredItemAddress, CachedBlobItem>> protectedIterator = this.protectedSegment.entrySet().iterator();
+        while (this.protectedSizeInBytes > this.maxProtectedSizeInBytes && protectedIterator.hasNext()) {
+            Map.Entry<BlobStoredItemAddress, CachedBlobItem> demotedEntry = protectedIterator.next();
+            protectedIterator.remove();
+            this.protectedSizeInBytes -= demotedEntry.getValue().getSize();
+            this.probationSegment.put(demotedEntry.getKey(), demotedEntry.getValue());
+            this.probationSizeInBytes += demotedEntry.getValue().getSize();
+        }
+
+        Iterator<CachedBlobItem> probationIterator = this.probationSegment.values().iterator();
+        while (this.probationSizeInBytes + this.protectedSizeInBytes > this.maxSizeInBytes && probationIterator.hasNext()) {
+            CachedBlobItem evictedItem = probationIterator.next();
+            probationIterator.remove();
+            this.probationSizeInBytes -= evictedItem.getSize();
+            this.evictions.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.igorivkin.blobstorage.cache;
+
+import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * An item kept in the hot-blob cache. The content is kept either on heap or
+ * in the direct (off-heap) memory, so a large cache does not burden the garbage collector.
+ */
+public class CachedBlobItem {
+    private final long id;
+    private final String mimeType;
+    private final int status;
+    private final String contentHash;
+    private final long createdAt;
+    private final byte[] heapContent;
+    private final ByteBuffer offHeapContent;
+
+    private CachedBlobItem(BlobItem item, boolean offHeap) {
+        this.id = item.getId();
+        this.mimeType = item.getMimeType();
+        this.status = item.getStatus();
+        this.contentHash = item.getContentHash();
+        this.createdAt = item.getCreatedAt();
+        byte[] content = item.getRawContent() != null ? item.getRawContent() : new byte[0];
+        if (offHeap) {
+            this.heapContent = null;
+            this.offHeapContent = ByteBuffer.allocateDirect(content.length);
+            this.offHeapContent.put(content).flip();
+        } else {
+            this.heapContent = content;
+            this.offHeapContent = null;
+        }
+    }
+
+    /**
+     * Prepares the item for caching. The content array of a given item is shared
+     * for on-heap caching, so it must not be modified afterwards.
+     * @param item item to cache
+     * @param offHeap true if the content should be kept in the direct memory
+     * @return item to put into the cache
+     */
+    public static CachedBlobItem of(BlobItem item, boolean offHeap) {
+        return new CachedBlobItem(item, offHeap);
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    /**
+     * Returns size of the content in bytes.
+     * @return size of the content
+     */
+    public int getSize() {
+        return this.heapContent != null ? this.heapContent.length : this.offHeapContent.capacity();
+    }
+
+    /**
+     * Returns the item itself, its content is not shared with the cache.
+     * @return blob item
+     */
+    public BlobItem toBlobItem() {
+        BlobItem item = new BlobItem();
+        item.setId(this.id);
+        item.setMimeType(this.mimeType);
+        item.setStatus(this.status);
+        item.setContentHash(this.contentHash);
+        item.setCreatedAt(this.createdAt);
+        item.setRawContent(this.readContent(0, this.getSize()));
+        return item;
+    }
+
+    /**
+     * Returns the description of the item.
+     * @return blob item description
+     */
+    public BlobItemInfo toBlobItemInfo() {
+        BlobItemInfo itemInfo = new BlobItemInfo();
+        itemInfo.setId(this.id);
+        itemInfo.setMimeType(this.mimeType);
+        itemInfo.setStatus(this.status);
+        itemInfo.setSize(this.getSize());
+        itemInfo.setContentHash(this.contentHash);
+        itemInfo.setCreatedAt(this.createdAt);
+        return itemInfo;
+    }
+
+    /**
+     * Returns a stream reading the given part of the content.
+     * @param offset zero-based offset of the first byte to read
+     * @param length number of bytes to read
+     * @return stream of the content
+     */
+    public InputStream openStream(long offset, long length) {
+        int from = (int) Math.min(offset, this.getSize());
+        int to = (int) Math.min(offset + length, this.getSize());
+        if (this.heapContent != null) {
+            return new ByteArrayInputStream(this.heapContent, from, to - from);
+        }
+        return new ByteArrayInputStream(this.readContent(from, to - from));
+    }
+
+    private byte[] readContent(int offset, int length) {
+        byte[] content = new byte[length];
+        if (this.heapContent != null) {
+            System.arraycopy(this.heapContent, offset, content, 0, length);
+        } else {
+            this.offHeapContent.duplicate().position(offset).get(content, 0, length);
+        }
+        return content;
+    }
+}
@@ -0,0 +1,67 @@
+package com.igorivkin.blobstorage.controllers.api;
+
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Headers describing the returned file, they are the same for the servlet
+ * and the reactive variants of the storage API.
+ */
+public class BlobFileHeaders {
+
+    /**
+     * Prepares the headers describing the file that are sent with 200, 206 and 304 responses:
+     * ETag, Cache-Control, Last-Modified and Accept-Ranges.
+     * @param itemInfo item description
+     * @param cacheControl value of Cache-Control configured for the mime-type of the file
+     * @return headers of the file
+     */
+    public static HttpHeaders of(BlobItemInfo itemInfo, String cacheControl) {
+        HttpHeaders headers = new HttpHeaders();
+        // Cache-Control is built from configured profiles as is, so any directive
+        // (e.g. "immutable") can be used there
+        headers.setCacheControl(cacheControl);
+        String eTag = eTag(itemInfo);
+        if(eTag != null) {
+            headers.setETag(eTag);
+        }
+        if(itemInfo.getCreatedAt() > 0) {
+            headers.setLastModified(itemInfo.getCreatedAt());
+        }
+        headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
+        return headers;
+    }
+
+    /**
+     * Checks the entity tag against If-None-Match header using weak comparison
+     * as RFC 7232 requires for this header.
+     * @param eTag entity tag of the item, may be null
+     * @param ifNoneMatch value of If-None-Match header, may be null
+     * @return true if the client already has the same content
+     */
+    public static boolean eTagMatches(String eTag, String ifNoneMatch) {
+        if(eTag == null || ifNoneMatch == null) {
+            return false;
+        }
+        for(String requestedETag : ifNoneMatch.split(",")) {
+            String trimmedETag = requestedETag.trim();
+            if(trimmedETag.startsWith("W/")) {
+                trimmedETag = trimmedETag.substring(2);
+            }
+            if(trimmedETag.equals("*") || trimmedETag.equals(eTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the strong entity tag of the item made of its content hash. Items are never
+     * modified, so the hash identifies the content of the address exactly.
+     * @param itemInfo item description
+     * @return entity tag in quotes, null if the item has no content hash
+     */
+    private static String eTag(BlobItemInfo itemInfo) {
+        return itemInfo.getContentHash() != null ? "\"" + itemInfo.getContentHash() + "\"" : null;
+    }
+}
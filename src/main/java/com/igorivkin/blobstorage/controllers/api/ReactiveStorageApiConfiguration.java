@@ -0,0 +1,42 @@
+package com.igorivkin.blobstorage.controllers.api;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Beans of the reactive variant of the storage API, see {@link ReactiveStorageApiController}.
+ * They are created only if the application is started as a reactive one
+ * (spring.main.web-application-type=reactive).
+ */
+@Configuration
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveStorageApiConfiguration {
+
+    /**
+     * Scheduler running the blocking calls of the volumes. It has a few threads, so the other
+     * tasks wait in its bounded queue, and the tasks beyond the queue are rejected at once.
+     * @param threads maximal number of threads
+     * @param queuedTasks maximal number of tasks waiting for a thread
+     * @return bounded scheduler
+     */
+    @Bean(destroyMethod = "dispose")
+    public Scheduler blobStorageScheduler(@Value("${blobstorage.reactive.threads:8}") int threads,
+                                          @Value("${blobstorage.reactive.queue:100000}") int queuedTasks) {
+        return Schedulers.newBoundedElastic(Math.max(1, threads), Math.max(1, queuedTasks), "blob-storage");
+    }
+
+    /**
+     * Netty is chosen explicitly, since otherwise Tomcat of the servlet variant would be
+     * picked up from the classpath, while Netty holds the idle connections much cheaper.
+     * @return factory of the web server
+     */
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+}
@@ -0,0 +1,407 @@
+package com.igorivkin.blobstorage.controllers.api;
+
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobstorage.compaction.BlobVolumeCompactor;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.exceptions.*;
+import com.igorivkin.blobstorage.responses.JsonResponse;
+import com.igorivkin.blobstorage.responses.ResponseHelper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.*;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.http.server.reactive.ServerHttpResponse;
+import org.springframework.web.bind.annotation.*;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Reactive variant of the storage API, it's used instead of {@link StorageApiController}
+ * once the application is started as a reactive one. No thread is held by a client
+ * while its content goes through the network: the uploads are written to temporary files
+ * and the downloads are read from the volumes buffer by buffer, both only as fast as the
+ * client goes. The blocking calls of the volumes are run by the bounded scheduler only,
+ * see {@link ReactiveStorageApiConfiguration}.
+ */
+@RestController
+@RequestMapping(value = "/api/")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+public class ReactiveStorageApiController {
+
+    /**
+     * Size of the buffers the content is sent by.
+     */
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Size of the multipart body besides the file itself (boundaries and part headers) allowed
+     * by the check of the request length.
+     */
+    private static final long MAX_MULTIPART_OVERHEAD = 16 * 1024;
+
+    private final BlobStorage blobStorage;
+    private final BlobStorageConfigProvider configProvider;
+    private final BlobVolumeCompactor volumeCompactor;
+
+    /**
+     * Runs the blocking calls of the volumes.
+     */
+    private final Scheduler scheduler;
+
+    @Autowired
+    public ReactiveStorageApiController(BlobStorage blobStorage,
+                                        BlobStorageConfigProvider configProvider,
+                                        BlobVolumeCompactor volumeCompactor,
+                                        @Qualifier("blobStorageScheduler") Scheduler scheduler) {
+        this.blobStorage = blobStorage;
+        this.configProvider = configProvider;
+        this.volumeCompactor = volumeCompactor;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Stores the file. The content is written to a temporary file as it comes, the next part
+     * of the content is requested only once the previous one is written, so the slow client
+     * is read as slowly as it sends. The item is stored from the complete file then, so the
+     * thread of the volume is never waiting for the network. The request declaring a bigger
+     * body than the item may have is rejected before reading it, the upload growing beyond
+     * the maximal item size is aborted as soon as it does, so no client fills up the disk.
+     */
+    @PostMapping(
+            value = "/store_file/",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public Mono<ResponseEntity<JsonResponse>> processStoreFile(@RequestPart(name = "file_to_store") Mono<FilePart> fileToStore,
+                                                               @RequestHeader(name = HttpHeaders.CONTENT_LENGTH, required = false) Long contentLength) {
+        long maxItemSize = this.configProvider.getMaxBlobItemSize();
+        Mono<BlobStoredItemAddress> storedItem = contentLength != null && contentLength > maxItemSize + MAX_MULTIPART_OVERHEAD
+                ? Mono.error(tooBigItem(contentLength, maxItemSize))
+                : fileToStore.flatMap(filePart -> Mono.usingWhen(
+                        this.blocking(() -> Files.createTempFile("blobstorage-upload", null)),
+                        spooledFile -> DataBufferUtils.write(limitContent(filePart.content(), maxItemSize), spooledFile)
+                                .then(this.blocking(() -> this.storeSpooledFile(spooledFile, filePart.headers().getContentType()))),
+                        spooledFile -> this.blocking(() -> Files.deleteIfExists(spooledFile))
+                ));
+        return storedItem
+                .map(ResponseHelper::normalJsonResponse)
+                .onErrorResume(exception -> {
+                    if(isBusy(exception)) {
+                        return Mono.just(ResponseHelper.busyJsonResponse("Blob storage is busy, try again later"));
+                    } else if(exception instanceof TooBigItemException) {
+                        return Mono.just(ResponseHelper.errorJsonResponse(
+                                MessageFormat.format("The item is too big to store. Reason: {0}", exception.getMessage())
+                        ));
+                    } else if(exception instanceof IncorrectMimeTypeException) {
+                        return Mono.just(ResponseHelper.errorJsonResponse(
+                                MessageFormat.format("The item has incorrect mime-type. Reason: {0}", exception.getMessage())
+                        ));
+                    } else if(exception instanceof IOException) {
+                        return Mono.just(ResponseHelper.errorJsonResponse(
+                                MessageFormat.format("Unknown I/O error. Reason: {0}", exception.getMessage())
+                        ));
+                    } else if(exception instanceof GenericBlobStorageException || exception instanceof SQLException) {
+                        return Mono.just(ResponseHelper.errorJsonResponse(
+                                MessageFormat.format("An error was occurred while saving the file. Reason: {0}", exception.getMessage())
+                        ));
+                    }
+                    return Mono.error(exception);
+                });
+    }
+
+    /**
+     * Returns the file or its requested range with the same headers as the servlet variant does.
+     * The content is read from the volume only as the client consumes it. The items kept in
+     * the segment files are sent by the server straight from the file (zero-copy) if it's supported.
+     */
+    @GetMapping(value = "get_file")
+    public Mono<Void> processGetFile(@RequestParam(name = "id") long id,
+                                     @RequestParam(name = "volume_id") int volumeId,
+                                     @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+                                     @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                     ServerHttpResponse response) {
+        return this.blocking(() -> Optional.ofNullable(this.blobStorage.getItemInfo(id, volumeId)))
+                .flatMap(itemInfo -> itemInfo.isPresent()
+                        ? this.writeFile(response, id, volumeId, itemInfo.get(), range, ifNoneMatch)
+                        : this.writeStatus(response, HttpStatus.NOT_FOUND))
+                .onErrorResume(exception -> {
+                    if(exception instanceof NoSuchBlobVolumeException) {
+                        // In case if "no such volume" exception occurred then it means we passed
+                        // wrong volume id in parameters. So just return 404.
+                        return this.writeStatus(response, HttpStatus.NOT_FOUND);
+                    } else if(isBusy(exception)) {
+                        return this.writeStatus(response, HttpStatus.SERVICE_UNAVAILABLE);
+                    }
+                    return Mono.error(exception);
+                });
+    }
+
+    /**
+     * Returns the headers of the file without its content.
+     */
+    @RequestMapping(
+            method = RequestMethod.HEAD,
+            value = "get_file"
+    )
+    public Mono<ResponseEntity<Void>> processHeadFile(@RequestParam(name = "id") long id,
+                                                      @RequestParam(name = "volume_id") int volumeId,
+                                                      @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        return this.blocking(() -> Optional.ofNullable(this.blobStorage.stat(id, volumeId)))
+                .map(itemInfo -> {
+                    if(itemInfo.isEmpty()) {
+                        return new ResponseEntity<Void>(null, null, HttpStatus.NOT_FOUND);
+                    }
+                    HttpHeaders headers = this.fileHeaders(itemInfo.get());
+                    if(BlobFileHeaders.eTagMatches(headers.getETag(), ifNoneMatch)) {
+                        return new ResponseEntity<Void>(null, headers, HttpStatus.NOT_MODIFIED);
+                    }
+                    headers.setContentType(MediaType.valueOf(itemInfo.get().getMimeType()));
+                    headers.setContentLength(itemInfo.get().getSize());
+                    return new ResponseEntity<Void>(null, headers, HttpStatus.OK);
+                })
+                .onErrorResume(exception -> {
+                    if(exception instanceof NoSuchBlobVolumeException) {
+                        return Mono.just(new ResponseEntity<>(null, null, HttpStatus.NOT_FOUND));
+                    } else if(isBusy(exception)) {
+                        return Mono.just(new ResponseEntity<>(null, null, HttpStatus.SERVICE_UNAVAILABLE));
+                    }
+                    return Mono.error(exception);
+                });
+    }
+
+    @RequestMapping(
+            method = {RequestMethod.GET, RequestMethod.POST},
+            value = "/delete_file/",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public Mono<ResponseEntity<JsonResponse>> deleteFile(@RequestParam(name = "id") long id,
+                                                         @RequestParam(name = "volume_id") int volumeId) {
+        return this.blocking(() -> {
+                    this.blobStorage.deleteItem(id, volumeId);
+                    return ResponseHelper.normalJsonResponse(
+                            "The item was successfully deleted"
+                    );
+                })
+                .onErrorResume(exception -> {
+                    if(isBusy(exception)) {
+                        return Mono.just(ResponseHelper.busyJsonResponse("Blob storage is busy, try again later"));
+                    } else if(exception instanceof GenericBlobStorageException || exception instanceof SQLException) {
+                        return Mono.just(ResponseHelper.errorJsonResponse(
+                                MessageFormat.format("An error was occurred while deleting the file. Reason: {0}", exception.getMessage())
+                        ));
+                    }
+                    return Mono.error(exception);
+                });
+    }
+
+    @GetMapping(
+            value = "/compaction_status/",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<JsonResponse> compactionStatus() {
+        return ResponseHelper.normalJsonResponse(
+                this.volumeCompactor.getProgress()
+        );
+    }
+
+    /**
+     * Stores the item from the complete temporary file, its size is known exactly,
+     * so the way to store the item is chosen at once.
+     * @param spooledFile temporary file keeping the uploaded content
+     * @param contentType content type of the uploaded part, may be null
+     * @return address of the stored item
+     * @throws IOException it attempts to read the temporary file
+     * @throws SQLException it attempts to insert data to sqlite database
+     */
+    /**
+     * Passes the uploaded content through until it gets bigger than the item may be.
+     * @param content uploaded content
+     * @param maxItemSize maximal size of item in bytes
+     * @return the same content, it fails with {@link TooBigItemException} once the limit is passed
+     */
+    private static Flux<DataBuffer> limitContent(Flux<DataBuffer> content, long maxItemSize) {
+        AtomicLong spooledBytes = new AtomicLong();
+        return content.handle((dataBuffer, sink) -> {
+            long size = spooledBytes.addAndGet(dataBuffer.readableByteCount());
+            if(size > maxItemSize) {
+                DataBufferUtils.release(dataBuffer);
+                sink.error(tooBigItem(size, maxItemSize));
+            } else {
+                sink.next(dataBuffer);
+            }
+        });
+    }
+
+    private static TooBigItemException tooBigItem(long size, long maxAllowedSize) {
+        return new TooBigItemException(
+                MessageFormat.format("Size to store is too big {0}, max allowed size is {1} bytes", size, maxAllowedSize)
+        );
+    }
+
+    private BlobStoredItemAddress storeSpooledFile(Path spooledFile, MediaType contentType) throws IOException, SQLException {
+        try (InputStream itemStream = Files.newInputStream(spooledFile)) {
+            return this.blobStorage.storeItem(
+                    itemStream,
+                    contentType != null ? contentType.toString() : null,
+                    Files.size(spooledFile)
+            );
+        }
+    }
+
+    /**
+     * Writes the response to the request of the file or its range, once the item description is found.
+     * @param response current response
+     * @param id ID of item
+     * @param volumeId ID of volume
+     * @param itemInfo item description
+     * @param range value of Range header, may be null
+     * @param ifNoneMatch value of If-None-Match header, may be null
+     * @return completion of the response
+     */
+    private Mono<Void> writeFile(ServerHttpResponse response,
+                                 long id,
+                                 int volumeId,
+                                 BlobItemInfo itemInfo,
+                                 String range,
+                                 String ifNoneMatch) {
+        long size = itemInfo.getSize();
+        HttpHeaders headers = this.fileHeaders(itemInfo);
+        response.getHeaders().putAll(headers);
+        if(BlobFileHeaders.eTagMatches(headers.getETag(), ifNoneMatch)) {
+            return this.writeStatus(response, HttpStatus.NOT_MODIFIED);
+        }
+        response.getHeaders().setContentType(MediaType.valueOf(itemInfo.getMimeType()));
+
+        if(range == null) {
+            return this.writeContent(response, HttpStatus.OK, id, volumeId, size, 0, size);
+        }
+
+        // Only a single range is supported, the same way as the servlet variant does
+        List<HttpRange> ranges;
+        try {
+            ranges = HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException exception) {
+            return this.rangeNotSatisfiable(response, size);
+        }
+        if(ranges.size() != 1) {
+            return this.writeContent(response, HttpStatus.OK, id, volumeId, size, 0, size);
+        }
+
+        long rangeStart;
+        long rangeEnd;
+        try {
+            rangeStart = ranges.get(0).getRangeStart(size);
+            rangeEnd = ranges.get(0).getRangeEnd(size);
+        } catch (IllegalArgumentException exception) {
+            return this.rangeNotSatisfiable(response, size);
+        }
+        if(rangeStart >= size || rangeStart > rangeEnd) {
+            return this.rangeNotSatisfiable(response, size);
+        }
+
+        long rangeLength = rangeEnd - rangeStart + 1;
+        response.getHeaders().set(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", rangeStart, rangeEnd, size));
+        return this.writeContent(response, HttpStatus.PARTIAL_CONTENT, id, volumeId, size, rangeStart, rangeLength);
+    }
+
+    /**
+     * Writes the given range of item content. The items kept in the segment files are sent
+     * by the server from the file itself if it supports zero-copy, the others are read from
+     * the volume by the scheduler one buffer at a time as the client requests them.
+     * @param response current response
+     * @param status status of the response
+     * @param id ID of item
+     * @param volumeId ID of volume
+     * @param itemSize size of the whole item
+     * @param offset zero-based offset of the first byte to send
+     * @param length number of bytes to send
+     * @return completion of the response
+     */
+    private Mono<Void> writeContent(ServerHttpResponse response, HttpStatus status, long id, int volumeId, long itemSize, long offset, long length) {
+        response.setStatusCode(status);
+        response.getHeaders().setContentLength(length);
+        if(itemSize > this.configProvider.getSegmentItemThresholdInBytes() && response instanceof ZeroCopyHttpOutputMessage) {
+            return this.blocking(() -> Optional.ofNullable(this.blobStorage.getItemFileRegion(id, volumeId)))
+                    .flatMap(fileRegion -> fileRegion.isPresent()
+                            ? ((ZeroCopyHttpOutputMessage) response).writeWith(
+                                    fileRegion.get().getFile(), fileRegion.get().getOffset() + offset, length)
+                            : this.writeStream(response, id, volumeId, offset, length));
+        }
+        return this.writeStream(response, id, volumeId, offset, length);
+    }
+
+    /**
+     * Opens the given range of item content and writes it. The item may be deleted since its
+     * headers were prepared, then the file is answered with 404 instead.
+     */
+    private Mono<Void> writeStream(ServerHttpResponse response, long id, int volumeId, long offset, long length) {
+        return this.blocking(() -> Optional.ofNullable(this.blobStorage.getItemContent(id, volumeId, offset, length)))
+                .flatMap(contentStream -> {
+                    if(contentStream.isPresent()) {
+                        return response.writeWith(this.readContent(response, contentStream.get()));
+                    }
+                    response.getHeaders().clear();
+                    return this.writeStatus(response, HttpStatus.NOT_FOUND);
+                });
+    }
+
+    /**
+     * Reads the opened item content buffer by buffer. The next buffer is read only
+     * once the client requested it, so the slow client costs neither a thread nor memory.
+     */
+    private Flux<DataBuffer> readContent(ServerHttpResponse response, InputStream contentStream) {
+        return DataBufferUtils.readInputStream(
+                () -> contentStream,
+                response.bufferFactory(),
+                BUFFER_SIZE
+        ).subscribeOn(this.scheduler);
+    }
+
+    private Mono<Void> writeStatus(ServerHttpResponse response, HttpStatus status) {
+        response.setStatusCode(status);
+        return response.setComplete();
+    }
+
+    private Mono<Void> rangeNotSatisfiable(ServerHttpResponse response, long size) {
+        response.getHeaders().set(HttpHeaders.CONTENT_RANGE, String.format("bytes */%d", size));
+        return this.writeStatus(response, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
+
+    private HttpHeaders fileHeaders(BlobItemInfo itemInfo) {
+        return BlobFileHeaders.of(itemInfo, this.configProvider.getCacheControl(itemInfo.getMimeType()));
+    }
+
+    /**
+     * Runs the blocking call by the scheduler of the volumes.
+     * @param call blocking call
+     * @param <T> type of call result
+     * @return result of the call, it fails with {@link RejectedExecutionException} if the scheduler is full
+     */
+    private <T> Mono<T> blocking(Callable<T> call) {
+        return Mono.fromCallable(call).subscribeOn(this.scheduler);
+    }
+
+    /**
+     * Checks whether the call was rejected, since the queue of the scheduler is full.
+     */
+    private static boolean isBusy(Throwable exception) {
+        return exception instanceof RejectedExecutionException;
+    }
+}
@@ -1,66 +1,244 @@
 package com.igorivkin.blobstorage.controllers.api;
 
-import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemBatchResult;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfoBatchRead;
+import com.igorivkin.blobstorage.blobitem.BlobItemSource;
 import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
 import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobstorage.async.AsyncBlobStorage;
+import com.igorivkin.blobstorage.blobstorage.compaction.BlobVolumeCompactor;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobvolume.BlobFileRegion;
 import com.igorivkin.blobstorage.exceptions.*;
 import com.igorivkin.blobstorage.responses.JsonResponse;
+import com.igorivkin.blobstorage.responses.MultipartMixedWriter;
 import com.igorivkin.blobstorage.responses.ResponseHelper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.http.*;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.SQLException;
 import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 @RestController
 @RequestMapping(value = "/api/")
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 public class StorageApiController {
 
+    /**
+     * Maximal number of files stored or returned by one batch request.
+     */
+    private static final int MAX_BATCH_SIZE = 100;
+
+    /**
+     * Request attributes of Tomcat sendfile: once they are set, the container sends
+     * the region of the file to the socket by itself after the headers.
+     */
+    private static final String SENDFILE_SUPPORT_ATTRIBUTE = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTRIBUTE = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTRIBUTE = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTRIBUTE = "org.apache.tomcat.sendfile.end";
+
     /**
      * This blob storage actually behaves like a service here.
      */
     private final BlobStorage blobStorage;
 
+    /**
+     * Runs the operations of single items off the request threads, so a slow volume
+     * does not take all of them.
+     */
+    private final AsyncBlobStorage asyncBlobStorage;
+
+    /**
+     * Provides Cache-Control profiles for the returned files.
+     */
+    private final BlobStorageConfigProvider configProvider;
+
+    /**
+     * Reports the progress of volume compaction.
+     */
+    private final BlobVolumeCompactor volumeCompactor;
+
+    /**
+     * Time in milliseconds the asynchronous request waits for the volume before it's answered with 503.
+     */
+    private final long asyncTimeout;
+
     @Autowired
-    public StorageApiController(BlobStorage blobStorage) {
+    public StorageApiController(BlobStorage blobStorage,
+                                AsyncBlobStorage asyncBlobStorage,
+                                BlobStorageConfigProvider configProvider,
+                                BlobVolumeCompactor volumeCompactor,
+                                @Value("${blobstorage.async.timeout:30000}") long asyncTimeout) {
         this.blobStorage = blobStorage;
+        this.asyncBlobStorage = asyncBlobStorage;
+        this.configProvider = configProvider;
+        this.volumeCompactor = volumeCompactor;
+        this.asyncTimeout = asyncTimeout;
     }
 
     @PostMapping(
             value = "/store_file/",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<JsonResponse> processStoreFile(@RequestParam(name = "file_to_store") MultipartFile fileToStore) {
+    public DeferredResult<ResponseEntity<JsonResponse>> processStoreFile(@RequestParam(name = "file_to_store") MultipartFile fileToStore) {
+        DeferredResult<ResponseEntity<JsonResponse>> result = new DeferredResult<>(
+                this.asyncTimeout,
+                ResponseHelper.busyJsonResponse("The file was not saved in time, try again later")
+        );
+        InputStream itemStream;
         try {
-            BlobStoredItemAddress itemAddress = this.blobStorage.storeItem(fileToStore.getInputStream(), fileToStore.getContentType());
-            return ResponseHelper.normalJsonResponse(
-                    itemAddress
-            );
-        } catch(TooBigItemException exception) {
-            return ResponseHelper.errorJsonResponse(
-                    MessageFormat.format("The item is too big to store. Reason: {0}", exception.getMessage())
-            );
+            itemStream = fileToStore.getInputStream();
+        } catch(IOException exception) {
+            result.setResult(ResponseHelper.errorJsonResponse(
+                    MessageFormat.format("Unknown I/O error. Reason: {0}", exception.getMessage())
+            ));
+            return result;
         }
-        catch(IncorrectMimeTypeException exception) {
+
+        this.asyncBlobStorage.storeItem(itemStream, fileToStore.getContentType(), fileToStore.getSize())
+                .whenComplete((itemAddress, exception) -> {
+                    Throwable cause = unwrap(exception);
+                    if(cause == null) {
+                        result.setResult(ResponseHelper.normalJsonResponse(
+                                itemAddress
+                        ));
+                    } else if(cause instanceof BlobVolumeBusyException) {
+                        result.setResult(ResponseHelper.busyJsonResponse(cause.getMessage()));
+                    } else if(cause instanceof TooBigItemException) {
+                        result.setResult(ResponseHelper.errorJsonResponse(
+                                MessageFormat.format("The item is too big to store. Reason: {0}", cause.getMessage())
+                        ));
+                    } else if(cause instanceof IncorrectMimeTypeException) {
+                        result.setResult(ResponseHelper.errorJsonResponse(
+                                MessageFormat.format("The item has incorrect mime-type. Reason: {0}", cause.getMessage())
+                        ));
+                    } else if(cause instanceof IOException) {
+                        result.setResult(ResponseHelper.errorJsonResponse(
+                                MessageFormat.format("Unknown I/O error. Reason: {0}", cause.getMessage())
+                        ));
+                    } else if(cause instanceof GenericBlobStorageException || cause instanceof SQLException) {
+                        result.setResult(ResponseHelper.errorJsonResponse(
+                                MessageFormat.format("An error was occurred while saving the file. Reason: {0}", cause.getMessage())
+                        ));
+                    } else {
+                        result.setErrorResult(cause);
+                    }
+                });
+        return result;
+    }
+
+    @PostMapping(
+            value = "/store_files/",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<JsonResponse> processStoreFiles(@RequestParam(name = "files_to_store") List<MultipartFile> filesToStore) {
+        if(filesToStore.size() > MAX_BATCH_SIZE) {
             return ResponseHelper.errorJsonResponse(
-                    MessageFormat.format("The item has incorrect mime-type. Reason: {0}", exception.getMessage())
+                    MessageFormat.format("Too many files to store, max allowed number is {0}", MAX_BATCH_SIZE)
             );
         }
-        catch(IOException exception) {
+        try {
+            List<BlobItemSource> itemSources = new ArrayList<>(filesToStore.size());
+            for(MultipartFile fileToStore : filesToStore) {
+                itemSources.add(new BlobItemSource(
+                        fileToStore.getInputStream(),
+                        fileToStore.getContentType(),
+                        fileToStore.getSize()
+                ));
+            }
+            // Every file gets its own status, so the response is normal even if some of them failed
+            List<BlobItemBatchResult> results = this.blobStorage.storeItems(itemSources);
+            return ResponseHelper.normalJsonResponse(
+                    results
+            );
+        } catch(IOException exception) {
             return ResponseHelper.errorJsonResponse(
                     MessageFormat.format("Unknown I/O error. Reason: {0}", exception.getMessage())
             );
         }
-        catch(GenericBlobStorageException | SQLException exception) {
-            return ResponseHelper.errorJsonResponse(
-                    MessageFormat.format("An error was occurred while saving the file. Reason: {0}", exception.getMessage())
-            );
+    }
+
+    /**
+     * Returns several files at once as a multipart/mixed body. Every part has the headers
+     * X-Blob-Id, X-Blob-Volume-Id and X-Blob-Status (ok, not_found or error), the parts
+     * go in the same order as the requested addresses. The addresses are given by pairs
+     * of repeated parameters: ?id=1&volume_id=1&id=2&volume_id=1. The items are described
+     * by one query per volume, then their content is streamed one by one, so no more than
+     * a single small item is kept in memory at once.
+     */
+    @GetMapping(value = "get_files")
+    public ResponseEntity<StreamingResponseBody> processGetFiles(@RequestParam(name = "id") long[] ids,
+                                                                 @RequestParam(name = "volume_id") int[] volumeIds) {
+        if(ids.length != volumeIds.length || ids.length > MAX_BATCH_SIZE) {
+            return new ResponseEntity<>(null, null, HttpStatus.BAD_REQUEST);
+        }
+        List<BlobStoredItemAddress> addresses = new ArrayList<>(ids.length);
+        for(int i = 0; i < ids.length; i++) {
+            addresses.add(new BlobStoredItemAddress(ids[i], volumeIds[i]));
         }
+
+        String boundary = MultipartMixedWriter.newBoundary();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_TYPE, MultipartMixedWriter.contentType(boundary));
+        headers.setCacheControl(CacheControl.noCache().getHeaderValue());
+
+        // The items are read once the response is being written, so the request thread is released
+        StreamingResponseBody body = outputStream -> {
+            MultipartMixedWriter multipartWriter = new MultipartMixedWriter(outputStream, boundary);
+            for(BlobItemInfoBatchRead result : this.blobStorage.getItemInfos(addresses)) {
+                BlobStoredItemAddress address = result.getAddress();
+                String status = result.getStatus();
+                String reason = result.getReason();
+                if(result.getItemInfo() != null) {
+                    try(InputStream contentStream = this.blobStorage.getItemContent(
+                            address.getId(), address.getVolumeId(), 0, result.getItemInfo().getSize())) {
+                        if(contentStream != null) {
+                            Map<String, String> partHeaders = this.partHeaders(address, status, result.getItemInfo().getMimeType());
+                            multipartWriter.writePart(partHeaders, contentStream, result.getItemInfo().getSize());
+                            continue;
+                        }
+                        // The item was deleted since it was described
+                        status = BlobItemBatchResult.STATUS_NOT_FOUND;
+                    } catch(NoSuchBlobVolumeException exception) {
+                        status = BlobItemBatchResult.STATUS_NOT_FOUND;
+                    } catch(SQLException | GenericBlobStorageException exception) {
+                        status = BlobItemBatchResult.STATUS_ERROR;
+                        reason = exception.getMessage();
+                    }
+                }
+                Map<String, String> partHeaders = this.partHeaders(address, status, MediaType.TEXT_PLAIN_VALUE);
+                multipartWriter.writePart(partHeaders, (reason != null ? reason : "").getBytes(StandardCharsets.UTF_8));
+            }
+            multipartWriter.close();
+        };
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
     }
 
+    /**
+     * Returns the file or its requested range. The content hash is sent as ETag, so the
+     * conditional request with matching If-None-Match is answered with 304 using the item
+     * description only and the content itself is not read at all. The items kept in the segment
+     * files are sent by the container straight from the file (sendfile) if it's supported.
+     * The volume is queried by its own executor, so the request thread is released at once.
+     */
     @GetMapping(
             value = "get_file",
             produces = {
@@ -69,23 +247,117 @@ public class StorageApiController {
                 MediaType.IMAGE_GIF_VALUE,
                 MediaType.TEXT_PLAIN_VALUE
             })
-    public ResponseEntity<?> processGetFile(@RequestParam(name = "id") long id,
-                                            @RequestParam(name = "volume_id") int volumeId) throws GenericBlobStorageException, SQLException {
+    public DeferredResult<ResponseEntity<StreamingResponseBody>> processGetFile(@RequestParam(name = "id") long id,
+                                                                                @RequestParam(name = "volume_id") int volumeId,
+                                                                                @RequestHeader(name = HttpHeaders.RANGE, required = false) String range,
+                                                                                @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+                                                                                HttpServletRequest request) {
+        DeferredResult<ResponseEntity<StreamingResponseBody>> result = new DeferredResult<>(
+                this.asyncTimeout,
+                new ResponseEntity<>(null, null, HttpStatus.SERVICE_UNAVAILABLE)
+        );
+        this.asyncBlobStorage.getItemInfo(id, volumeId)
+                .thenCompose(itemInfo -> this.fileResponse(request, id, volumeId, itemInfo, range, ifNoneMatch))
+                .whenComplete((response, exception) -> this.completeFileResult(result, response, exception));
+        return result;
+    }
+
+    /**
+     * Prepares the response to the request of the file or its range, once the item description is found.
+     * @param request current request
+     * @param id ID of item
+     * @param volumeId ID of volume
+     * @param itemInfo item description, null if there is no such item
+     * @param range value of Range header, may be null
+     * @param ifNoneMatch value of If-None-Match header, may be null
+     * @return future of the response, the region of segment file is looked up by the volume if needed
+     */
+    private CompletableFuture<ResponseEntity<StreamingResponseBody>> fileResponse(HttpServletRequest request,
+                                                                                  long id,
+                                                                                  int volumeId,
+                                                                                  BlobItemInfo itemInfo,
+                                                                                  String range,
+                                                                                  String ifNoneMatch) {
+        if(itemInfo == null) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(null, null, HttpStatus.NOT_FOUND));
+        }
+
+        long size = itemInfo.getSize();
+        HttpHeaders headers = BlobFileHeaders.of(itemInfo, this.configProvider.getCacheControl(itemInfo.getMimeType()));
+        if(BlobFileHeaders.eTagMatches(headers.getETag(), ifNoneMatch)) {
+            return CompletableFuture.completedFuture(new ResponseEntity<>(null, headers, HttpStatus.NOT_MODIFIED));
+        }
+        headers.setContentType(MediaType.valueOf(itemInfo.getMimeType()));
+
+        if(range == null) {
+            headers.setContentLength(size);
+            return this.streamContent(request, id, volumeId, size, 0, size)
+                    .thenApply(body -> new ResponseEntity<>(body, headers, HttpStatus.OK));
+        }
+
+        // Only a single range is supported, the multiple ranges are rare for the files
+        // of such kind and according to RFC 7233 server is free to ignore them.
+        List<HttpRange> ranges;
         try {
-            BlobItem item = this.blobStorage.getItem(id, volumeId);
-            if(item != null) {
-                HttpHeaders headers = new HttpHeaders();
-                headers.setContentType(MediaType.valueOf(item.getMimeType()));
-                headers.setCacheControl(CacheControl.noCache().getHeaderValue());
-                return new ResponseEntity<>(item.getContent(), headers, HttpStatus.OK);
-            } else {
-                return new ResponseEntity<>(null, null, HttpStatus.NOT_FOUND);
-            }
-        } catch (NoSuchBlobVolumeException exception) {
-            // In case if "no such volume" exception occurred then it means we passed
-            // wrong volume id in parameters. So just return 404.
-            return new ResponseEntity<>(null, null, HttpStatus.NOT_FOUND);
+            ranges = HttpRange.parseRanges(range);
+        } catch (IllegalArgumentException exception) {
+            return CompletableFuture.completedFuture(this.rangeNotSatisfiable(size));
+        }
+        if(ranges.size() != 1) {
+            headers.setContentLength(size);
+            return this.streamContent(request, id, volumeId, size, 0, size)
+                    .thenApply(body -> new ResponseEntity<>(body, headers, HttpStatus.OK));
+        }
+
+        long rangeStart;
+        long rangeEnd;
+        try {
+            rangeStart = ranges.get(0).getRangeStart(size);
+            rangeEnd = ranges.get(0).getRangeEnd(size);
+        } catch (IllegalArgumentException exception) {
+            return CompletableFuture.completedFuture(this.rangeNotSatisfiable(size));
         }
+        if(rangeStart >= size || rangeStart > rangeEnd) {
+            return CompletableFuture.completedFuture(this.rangeNotSatisfiable(size));
+        }
+
+        long rangeLength = rangeEnd - rangeStart + 1;
+        headers.set(HttpHeaders.CONTENT_RANGE, String.format("bytes %d-%d/%d", rangeStart, rangeEnd, size));
+        headers.setContentLength(rangeLength);
+        return this.streamContent(request, id, volumeId, size, rangeStart, rangeLength)
+                .thenApply(body -> new ResponseEntity<>(body, headers, HttpStatus.PARTIAL_CONTENT));
+    }
+
+    /**
+     * Returns the headers of the file without its content. Served by the item metadata only,
+     * so it's cheap enough for existence checks.
+     */
+    @RequestMapping(
+            method = RequestMethod.HEAD,
+            value = "get_file"
+    )
+    public DeferredResult<ResponseEntity<Void>> processHeadFile(@RequestParam(name = "id") long id,
+                                                                @RequestParam(name = "volume_id") int volumeId,
+                                                                @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        DeferredResult<ResponseEntity<Void>> result = new DeferredResult<>(
+                this.asyncTimeout,
+                new ResponseEntity<>(null, null, HttpStatus.SERVICE_UNAVAILABLE)
+        );
+        this.asyncBlobStorage.stat(id, volumeId)
+                .thenApply(itemInfo -> {
+                    if(itemInfo == null) {
+                        return new ResponseEntity<Void>(null, null, HttpStatus.NOT_FOUND);
+                    }
+                    HttpHeaders headers = BlobFileHeaders.of(itemInfo, this.configProvider.getCacheControl(itemInfo.getMimeType()));
+                    if(BlobFileHeaders.eTagMatches(headers.getETag(), ifNoneMatch)) {
+                        return new ResponseEntity<Void>(null, headers, HttpStatus.NOT_MODIFIED);
+                    }
+                    headers.setContentType(MediaType.valueOf(itemInfo.getMimeType()));
+                    headers.setContentLength(itemInfo.getSize());
+                    return new ResponseEntity<Void>(null, headers, HttpStatus.OK);
+                })
+                .whenComplete((response, exception) -> this.completeFileResult(result, response, exception));
+        return result;
     }
 
     @RequestMapping(
@@ -93,17 +365,159 @@ public class StorageApiController {
             value = "/delete_file/",
             produces = MediaType.APPLICATION_JSON_VALUE
     )
-    public ResponseEntity<JsonResponse> deleteFile(@RequestParam(name = "id") long id,
-                                                   @RequestParam(name = "volume_id") int volumeId) {
-        try {
-            this.blobStorage.deleteItem(id, volumeId);
-            return ResponseHelper.normalJsonResponse(
-                    "The item was successfully deleted"
-            );
-        } catch(GenericBlobStorageException | SQLException exception) {
-            return ResponseHelper.errorJsonResponse(
-                    MessageFormat.format("An error was occurred while deleting the file. Reason: {0}", exception.getMessage())
-            );
+    public DeferredResult<ResponseEntity<JsonResponse>> deleteFile(@RequestParam(name = "id") long id,
+                                                                   @RequestParam(name = "volume_id") int volumeId) {
+        DeferredResult<ResponseEntity<JsonResponse>> result = new DeferredResult<>(
+                this.asyncTimeout,
+                ResponseHelper.busyJsonResponse("The file was not deleted in time, try again later")
+        );
+        this.asyncBlobStorage.deleteItem(id, volumeId)
+                .whenComplete((nothing, exception) -> {
+                    Throwable cause = unwrap(exception);
+                    if(cause == null) {
+                        result.setResult(ResponseHelper.normalJsonResponse(
+                                "The item was successfully deleted"
+                        ));
+                    } else if(cause instanceof BlobVolumeBusyException) {
+                        result.setResult(ResponseHelper.busyJsonResponse(cause.getMessage()));
+                    } else if(cause instanceof GenericBlobStorageException || cause instanceof SQLException) {
+                        result.setResult(ResponseHelper.errorJsonResponse(
+                                MessageFormat.format("An error was occurred while deleting the file. Reason: {0}", cause.getMessage())
+                        ));
+                    } else {
+                        result.setErrorResult(cause);
+                    }
+                });
+        return result;
+    }
+
+    @GetMapping(
+            value = "/compaction_status/",
+            produces = MediaType.APPLICATION_JSON_VALUE
+    )
+    public ResponseEntity<JsonResponse> compactionStatus() {
+        return ResponseHelper.normalJsonResponse(
+                this.volumeCompactor.getProgress()
+        );
+    }
+
+    /**
+     * Prepares the response body that streams the given range of item content straight
+     * from the blob volume, so the item is never loaded on heap as a whole.
+     * @param request current request
+     * @param id ID of item
+     * @param volumeId ID of volume
+     * @param itemSize size of the whole item
+     * @param offset zero-based offset of the first byte to send
+     * @param length number of bytes to send
+     * @return future of response body writing the content, the body is null if the content is sent by the container
+     */
+    private CompletableFuture<StreamingResponseBody> streamContent(HttpServletRequest request, long id, int volumeId, long itemSize, long offset, long length) {
+        if(itemSize > this.configProvider.getSegmentItemThresholdInBytes()) {
+            return this.asyncBlobStorage.getItemFileRegion(id, volumeId)
+                    .thenCompose(fileRegion -> fileRegion != null
+                            ? CompletableFuture.completedFuture(this.sendFileRegion(request, fileRegion, offset, length))
+                            : this.readContent(id, volumeId, offset, length));
+        }
+        return this.readContent(id, volumeId, offset, length);
+    }
+
+    /**
+     * Prepares the response body reading the given range of item content from the blob volume
+     * while the response is being written. The content is opened and read by the executor
+     * of the volume, so the busy volume is answered with 503 before the response is started,
+     * as well as the item deleted since its description was read is answered with 404.
+     * @param id ID of item
+     * @param volumeId ID of volume
+     * @param offset zero-based offset of the first byte to send
+     * @param length number of bytes to send
+     * @return future of response body writing the content, it fails with {@link NoSuchBlobItemException}
+     * if there is no such item anymore
+     */
+    private CompletableFuture<StreamingResponseBody> readContent(long id, int volumeId, long offset, long length) {
+        return this.asyncBlobStorage.getItemContent(id, volumeId, offset, length)
+                .thenApply(contentStream -> {
+                    if(contentStream == null) {
+                        throw new CompletionException(new NoSuchBlobItemException(
+                                MessageFormat.format("Item {0} is not found in volume {1}", id, volumeId)
+                        ));
+                    }
+                    return outputStream -> {
+                        try (InputStream stream = contentStream) {
+                            stream.transferTo(outputStream);
+                        }
+                    };
+                });
+    }
+
+    /**
+     * Sends the given range of the item kept in the segment file. If the container supports
+     * sendfile, the region of the file goes to the socket by the kernel without any copying
+     * through the application. Otherwise the file channel transfers the region to the response.
+     * @param request current request
+     * @param fileRegion region of the segment file keeping the item
+     * @param offset zero-based offset of the first byte to send
+     * @param length number of bytes to send
+     * @return response body writing the content, null if the content is sent by the container
+     */
+    private StreamingResponseBody sendFileRegion(HttpServletRequest request, BlobFileRegion fileRegion, long offset, long length) {
+        if(Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTRIBUTE))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTRIBUTE, fileRegion.getFile().getAbsolutePath());
+            request.setAttribute(SENDFILE_START_ATTRIBUTE, fileRegion.getOffset() + offset);
+            // The end is exclusive
+            request.setAttribute(SENDFILE_END_ATTRIBUTE, fileRegion.getOffset() + offset + length);
+            return null;
+        }
+        return outputStream -> fileRegion.transferTo(offset, length, outputStream);
+    }
+
+    /**
+     * Completes the request of the file by the response or by the failure of the volume:
+     * an unknown volume means the wrong volume id was passed, so it's 404 as well as the unknown item,
+     * a busy volume is 503, so the client may repeat the request later.
+     * @param result deferred result of the request
+     * @param response response to complete the request with, if there is no failure
+     * @param exception failure of the volume, null if there is none
+     * @param <T> type of response body
+     */
+    private <T> void completeFileResult(DeferredResult<ResponseEntity<T>> result, ResponseEntity<T> response, Throwable exception) {
+        Throwable cause = unwrap(exception);
+        if(cause == null) {
+            result.setResult(response);
+        } else if(cause instanceof NoSuchBlobVolumeException || cause instanceof NoSuchBlobItemException) {
+            result.setResult(new ResponseEntity<>(null, null, HttpStatus.NOT_FOUND));
+        } else if(cause instanceof BlobVolumeBusyException) {
+            result.setResult(new ResponseEntity<>(null, null, HttpStatus.SERVICE_UNAVAILABLE));
+        } else {
+            result.setErrorResult(cause);
         }
     }
+
+    private Map<String, String> partHeaders(BlobStoredItemAddress address, String status, String contentType) {
+        Map<String, String> partHeaders = new LinkedHashMap<>();
+        partHeaders.put("X-Blob-Id", String.valueOf(address.getId()));
+        partHeaders.put("X-Blob-Volume-Id", String.valueOf(address.getVolumeId()));
+        partHeaders.put("X-Blob-Status", status);
+        partHeaders.put(HttpHeaders.CONTENT_TYPE, contentType);
+        return partHeaders;
+    }
+
+    /**
+     * Returns the actual failure of the asynchronous operation, since the dependent
+     * stages of the futures wrap it into CompletionException.
+     * @param exception failure of the future, may be null
+     * @return the cause of the failure, null if there is no failure
+     */
+    private static Throwable unwrap(Throwable exception) {
+        if(exception instanceof CompletionException && exception.getCause() != null) {
+            return exception.getCause();
+        }
+        return exception;
+    }
+
+    private ResponseEntity<StreamingResponseBody> rangeNotSatisfiable(long size) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.CONTENT_RANGE, String.format("bytes */%d", size));
+        return new ResponseEntity<>(null, headers, HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE);
+    }
 }
@@ -1,13 +1,18 @@
 package com.igorivkin.blobstorage.database;
 
 import com.igorivkin.blobstorage.database.config.DatabaseConfig;
+import com.igorivkin.blobstorage.database.pool.VolumeConnectionPool;
 import com.igorivkin.blobstorage.exceptions.GenericDatabaseException;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Component
 public class ConnectionManager {
@@ -20,8 +25,22 @@ public class ConnectionManager {
     @Value("${blobstorage.jdbc.volumename}")
     private String volumeName;
 
+    @Value("${blobstorage.jdbc.pool.readers:4}")
+    private int poolReadersCount;
+
+    @Value("${blobstorage.jdbc.pool.writers:1}")
+    private int poolWritersCount;
+
+    @Value("${blobstorage.jdbc.pool.timeout:30000}")
+    private long poolTimeoutMillis;
+
     private final DatabaseConfig databaseConfig;
 
+    /**
+     * Long-lived connection pools, one per blob volume, keyed by connection string.
+     */
+    private final Map<String, VolumeConnectionPool> connectionPools = new ConcurrentHashMap<>();
+
     public ConnectionManager(DatabaseConfig databaseConfig) {
         this.databaseConfig = databaseConfig;
     }
@@ -59,6 +78,94 @@ public class ConnectionManager {
         return this.getConnection(String.format(this.connectionString, String.format(this.volumeName, 1)));
     }
 
+    /**
+     * Returns pooled connection to the given volume intended for reading.
+     * Closing the connection returns it back to the pool.
+     * @param volumeName name of blob volume
+     * @return database connection to interact with
+     * @throws SQLException it attempts to establish connection to SQLite
+     */
+    public Connection getReadConnection(String volumeName) throws SQLException {
+        return this.getConnectionPool(volumeName).getReadConnection();
+    }
+
+    /**
+     * Returns pooled connection to the given volume intended for writing.
+     * Closing the connection returns it back to the pool.
+     * @param volumeName name of blob volume
+     * @return database connection to interact with
+     * @throws SQLException it attempts to establish connection to SQLite
+     */
+    public Connection getWriteConnection(String volumeName) throws SQLException {
+        return this.getConnectionPool(volumeName).getWriteConnection();
+    }
+
+    /**
+     * Returns a new short-living connection to the given volume intended for maintenance:
+     * creation and migration of the database, checks of the volume. It's not pooled, so closing
+     * the connection closes it. Unlike the pooled ones it does not switch the database to WAL mode,
+     * so a new database gets the page size of the maintenance profile.
+     * @param volumeName name of blob volume
+     * @return database connection to interact with
+     * @throws SQLException it attempts to establish connection to SQLite
+     */
+    public Connection getMaintenanceConnection(String volumeName) throws SQLException {
+        Connection connection = DriverManager.getConnection(
+                this.getConnectionString(volumeName),
+                this.databaseConfig.getMaintenanceConnectionConfig().toProperties()
+        );
+        try (Statement statement = connection.createStatement()) {
+            for (String pragma : this.databaseConfig.getPragmas(DatabaseConfig.ROLE_MAINTENANCE)) {
+                statement.execute(pragma);
+            }
+        } catch (SQLException | RuntimeException exception) {
+            connection.close();
+            throw exception;
+        }
+        return connection;
+    }
+
+    /**
+     * Returns connection pool of the given volume, creates it if there is no one yet.
+     * @param volumeName name of blob volume
+     * @return connection pool of blob volume
+     */
+    public VolumeConnectionPool getConnectionPool(String volumeName) {
+        return this.connectionPools.computeIfAbsent(
+                this.getConnectionString(volumeName),
+                volumeConnectionString -> new VolumeConnectionPool(
+                        volumeConnectionString,
+                        this.databaseConfig.getConnectionConfig().toProperties(),
+                        this.databaseConfig.getPragmas(DatabaseConfig.ROLE_READER),
+                        this.databaseConfig.getPragmas(DatabaseConfig.ROLE_WRITER),
+                        this.poolReadersCount,
+                        this.poolWritersCount,
+                        this.poolTimeoutMillis
+                )
+        );
+    }
+
+    /**
+     * Closes connection pool of the given volume if it exists. Mostly required before
+     * the volume file is going to be removed or replaced.
+     * @param volumeName name of blob volume
+     */
+    public void closeConnectionPool(String volumeName) {
+        VolumeConnectionPool connectionPool = this.connectionPools.remove(this.getConnectionString(volumeName));
+        if(connectionPool != null) {
+            connectionPool.close();
+        }
+    }
+
+    /**
+     * Closes all the pooled connections on application shutdown.
+     */
+    @PreDestroy
+    public void closeConnectionPools() {
+        this.connectionPools.values().forEach(VolumeConnectionPool::close);
+        this.connectionPools.clear();
+    }
+
     /**
      * Closes the given connection.
      * @param connection connection to close
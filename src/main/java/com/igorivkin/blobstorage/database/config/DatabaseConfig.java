@@ -1,13 +1,54 @@
 package com.igorivkin.blobstorage.database.config;
 
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfig;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigLoader;
+import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.sqlite.SQLiteConfig;
 
+import javax.annotation.PostConstruct;
+import java.text.MessageFormat;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Component
 public class DatabaseConfig {
+    public static final String ROLE_WRITER = "writer";
+    public static final String ROLE_READER = "reader";
+    public static final String ROLE_MAINTENANCE = "maintenance";
+
+    /**
+     * Names of the profiles overriding the ones of the file config/blobstorage.json, empty to keep them.
+     */
+    @Value("${blobstorage.jdbc.profile.writer:}")
+    private String writerProfile;
+
+    @Value("${blobstorage.jdbc.profile.reader:}")
+    private String readerProfile;
+
+    @Value("${blobstorage.jdbc.profile.maintenance:}")
+    private String maintenanceProfile;
+
     private SQLiteConfig connectionConfig;
 
-    public DatabaseConfig() {
+    /**
+     * Config of the maintenance connections. The journal mode is not set there, so a new database
+     * is not created before its page size is set by the profile.
+     */
+    private SQLiteConfig maintenanceConnectionConfig;
+
+    /**
+     * PRAGMA statements of the profiles by connection roles.
+     */
+    private final Map<String, List<String>> pragmasByRole = new HashMap<>();
+
+    private final BlobStorageConfigLoader configLoader;
+
+    public DatabaseConfig(BlobStorageConfigLoader configLoader) {
+        this.configLoader = configLoader;
         connectionConfig = new SQLiteConfig();
 
         // Journal mode WAL allows to improve concurrency between readers and writers
@@ -18,6 +59,44 @@ public class DatabaseConfig {
         // We will use basic encoding UTF-8 for everything.
         // https://www.sqlite.org/pragma.html#pragma_encoding
         connectionConfig.setEncoding(SQLiteConfig.Encoding.UTF8);
+
+        maintenanceConnectionConfig = new SQLiteConfig();
+        maintenanceConnectionConfig.setEncoding(SQLiteConfig.Encoding.UTF8);
+    }
+
+    /**
+     * Binds the pragma profiles of the file config/blobstorage.json to the connection roles.
+     * @throws GenericBlobStorageException it will crush if a role refers to an unknown profile
+     */
+    @PostConstruct
+    public void initialize() throws GenericBlobStorageException {
+        BlobStorageConfig blobStorageConfig = this.configLoader.getBlobStorageConfig();
+        Map<String, String> connectionProfiles = new HashMap<>();
+        if (blobStorageConfig != null && blobStorageConfig.getConnectionProfiles() != null) {
+            connectionProfiles.putAll(blobStorageConfig.getConnectionProfiles());
+        }
+        DatabaseConfig.overrideProfile(connectionProfiles, ROLE_WRITER, this.writerProfile);
+        DatabaseConfig.overrideProfile(connectionProfiles, ROLE_READER, this.readerProfile);
+        DatabaseConfig.overrideProfile(connectionProfiles, ROLE_MAINTENANCE, this.maintenanceProfile);
+        for (Map.Entry<String, String> roleProfile : connectionProfiles.entrySet()) {
+            SqlitePragmaProfile profile = blobStorageConfig != null && blobStorageConfig.getSqliteProfiles() != null
+                    ? blobStorageConfig.getSqliteProfiles().get(roleProfile.getValue())
+                    : null;
+            if (profile == null) {
+                throw new GenericBlobStorageException(MessageFormat.format(
+                        "Unknown SQLite profile {0} of {1} connections", roleProfile.getValue(), roleProfile.getKey()));
+            }
+            this.pragmasByRole.put(roleProfile.getKey(), profile.toPragmas());
+        }
+    }
+
+    /**
+     * Returns PRAGMA statements executed on every new connection of the role.
+     * @param role connection role: writer, reader or maintenance
+     * @return list of statements, empty if no profile is bound to the role
+     */
+    public List<String> getPragmas(String role) {
+        return this.pragmasByRole.getOrDefault(role, Collections.emptyList());
     }
 
     public SQLiteConfig getConnectionConfig() {
@@ -27,4 +106,14 @@ public class DatabaseConfig {
     public void setConnectionConfig(SQLiteConfig connectionConfig) {
         this.connectionConfig = connectionConfig;
     }
+
+    public SQLiteConfig getMaintenanceConnectionConfig() {
+        return maintenanceConnectionConfig;
+    }
+
+    private static void overrideProfile(Map<String, String> connectionProfiles, String role, String profileName) {
+        if (profileName != null && !profileName.isEmpty()) {
+            connectionProfiles.put(role, profileName);
+        }
+    }
 }
@@ -0,0 +1,156 @@
+package com.igorivkin.blobstorage.database.config;
+
+import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Named set of SQLite pragmas applied to every new connection of some role (writer, reader
+ * or maintenance), see {@link DatabaseConfig}. The pragmas that are not defined keep
+ * the defaults of the driver.
+ * https://www.sqlite.org/pragma.html
+ */
+public class SqlitePragmaProfile {
+    private static final List<String> SYNCHRONOUS_MODES = Arrays.asList("OFF", "NORMAL", "FULL", "EXTRA");
+    private static final List<String> TEMP_STORES = Arrays.asList("DEFAULT", "FILE", "MEMORY");
+
+    /**
+     * Page size in bytes, it takes effect only while the database is created, so it matters
+     * for the maintenance profile creating new volumes. Larger pages keep large blobs
+     * in shorter chains of overflow pages.
+     */
+    private Integer pageSize;
+
+    /**
+     * Size of the page cache of the connection: pages if positive, kibibytes if negative.
+     */
+    private Integer cacheSize;
+
+    /**
+     * Maximal number of bytes of the database read through memory-mapped I/O, 0 disables it.
+     */
+    private Long mmapSize;
+
+    /**
+     * "FULL" syncs WAL-file on every commit, "NORMAL" syncs it only on checkpoints: the database
+     * stays consistent, but the last commits may be lost on power failure.
+     */
+    private String synchronous;
+
+    /**
+     * Where the temporary tables and indexes are kept: "DEFAULT", "FILE" or "MEMORY".
+     */
+    private String tempStore;
+
+    /**
+     * Number of WAL-pages after which the committing connection checkpoints WAL-file, 0 disables it.
+     */
+    private Integer walAutocheckpoint;
+
+    /**
+     * Time in milliseconds the connection waits for a lock held by another connection.
+     */
+    private Integer busyTimeout;
+
+    /**
+     * Returns the statements applying the profile to a connection, page_size goes first,
+     * since nothing should be written to a new database before.
+     * @return list of PRAGMA statements
+     * @throws GenericBlobStorageException it will crush if a mode of the profile is unknown
+     */
+    public List<String> toPragmas() throws GenericBlobStorageException {
+        List<String> pragmas = new ArrayList<>();
+        if (this.pageSize != null) {
+            pragmas.add("PRAGMA page_size = " + this.pageSize);
+        }
+        if (this.cacheSize != null) {
+            pragmas.add("PRAGMA cache_size = " + this.cacheSize);
+        }
+        if (this.mmapSize != null) {
+            pragmas.add("PRAGMA mmap_size = " + this.mmapSize);
+        }
+        if (this.synchronous != null) {
+            pragmas.add("PRAGMA synchronous = " + SqlitePragmaProfile.checkMode("synchronous", this.synchronous, SYNCHRONOUS_MODES));
+        }
+        if (this.tempStore != null) {
+            pragmas.add("PRAGMA temp_store = " + SqlitePragmaProfile.checkMode("temp_store", this.tempStore, TEMP_STORES));
+        }
+        if (this.walAutocheckpoint != null) {
+            pragmas.add("PRAGMA wal_autocheckpoint = " + this.walAutocheckpoint);
+        }
+        if (this.busyTimeout != null) {
+            pragmas.add("PRAGMA busy_timeout = " + this.busyTimeout);
+        }
+        return pragmas;
+    }
+
+    public Integer getPageSize() {
+        return pageSize;
+    }
+
+    public void setPageSize(Integer pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    public Integer getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(Integer cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public Long getMmapSize() {
+        return mmapSize;
+    }
+
+    public void setMmapSize(Long mmapSize) {
+        this.mmapSize = mmapSize;
+    }
+
+    public String getSynchronous() {
+        return synchronous;
+    }
+
+    public void setSynchronous(String synchronous) {
+        this.synchronous = synchronous;
+    }
+
+    public String getTempStore() {
+        return tempStore;
+    }
+
+    public void setTempStore(String tempStore) {
+        this.tempStore = tempStore;
+    }
+
+    public Integer getWalAutocheckpoint() {
+        return walAutocheckpoint;
+    }
+
+    public void setWalAutocheckpoint(Integer walAutocheckpoint) {
+        this.walAutocheckpoint = walAutocheckpoint;
+    }
+
+    public Integer getBusyTimeout() {
+        return busyTimeout;
+    }
+
+    public void setBusyTimeout(Integer busyTimeout) {
+        this.busyTimeout = busyTimeout;
+    }
+
+    /**
+     * Checks that the mode is known, the value goes to the statement as is.
+     */
+    private static String checkMode(String pragma, String mode, List<String> knownModes) throws GenericBlobStorageException {
+        String upperCaseMode = mode.toUpperCase();
+        if (!knownModes.contains(upperCaseMode)) {
+            throw new GenericBlobStorageException(MessageFormat.format("Unknown {0} mode: {1}", pragma, mode));
+        }
+        return upperCaseMode;
+    }
+}
@@ -0,0 +1,242 @@
+package com.igorivkin.blobstorage.database.pool;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.sql.Statement;
+import java.text.MessageFormat;
+import java.util.Deque;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A bounded pool of long-lived physical connections to the same SQLite database.
+ * The borrowed connection is a lightweight wrapper, its method close() returns the
+ * physical connection back to the pool instead of closing it, so the usual
+ * try-with-resources blocks keep working without any changes.
+ */
+public class ConnectionPool implements AutoCloseable {
+    private final String connectionString;
+    private final Properties connectionProperties;
+    private final List<String> initStatements;
+    private final int maxSize;
+    private final long timeoutMillis;
+
+    private final Semaphore permits;
+    private final Deque<Connection> idleConnections = new ConcurrentLinkedDeque<>();
+    private final ConnectionPoolMetrics metrics = new ConnectionPoolMetrics();
+
+    private volatile boolean closed;
+
+    public ConnectionPool(String connectionString,
+                          Properties connectionProperties,
+                          List<String> initStatements,
+                          int maxSize,
+                          long timeoutMillis) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException(MessageFormat.format("Pool size should be positive, given {0}", maxSize));
+        }
+        this.connectionString = connectionString;
+        this.connectionProperties = connectionProperties;
+        this.initStatements = initStatements;
+        this.maxSize = maxSize;
+        this.timeoutMillis = timeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+    }
+
+    /**
+     * Borrows a connection from the pool. If there is no idle connection but the pool
+     * is not exhausted yet then a new physical connection will be opened.
+     * @return connection to interact with, close it to return back to the pool
+     * @throws SQLException it attempts to open connection or it is not possible to get one in time
+     */
+    public Connection acquire() throws SQLException {
+        if (this.closed) {
+            throw new SQLException(MessageFormat.format("Connection pool is closed: {0}", this.connectionString));
+        }
+
+        long waitStarted = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = this.permits.tryAcquire(this.timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a pooled connection", exception);
+        }
+        this.metrics.recordWait(System.nanoTime() - waitStarted);
+        if (!acquired) {
+            this.metrics.recordTimeout();
+            throw new SQLTimeoutException(
+                    MessageFormat.format("Cannot get connection to {0} in {1} ms", this.connectionString, this.timeoutMillis)
+            );
+        }
+
+        try {
+            Connection physicalConnection = this.pollIdleConnection();
+            if (physicalConnection == null) {
+                physicalConnection = this.openPhysicalConnection();
+                this.metrics.connectionOpened();
+            }
+            this.metrics.connectionAcquired();
+            return this.wrap(physicalConnection);
+        } catch (SQLException | RuntimeException exception) {
+            this.permits.release();
+            throw exception;
+        }
+    }
+
+    /**
+     * Closes all the idle connections and prevents new acquisitions. Active connections
+     * will be closed once they are returned back.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        Connection idleConnection;
+        while ((idleConnection = this.idleConnections.pollFirst()) != null) {
+            this.closePhysicalConnection(idleConnection);
+        }
+    }
+
+    public String getConnectionString() {
+        return connectionString;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getIdleConnections() {
+        return idleConnections.size();
+    }
+
+    public ConnectionPoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Returns physical connection back to the pool. Any unfinished transaction will be
+     * rolled back, broken connections are discarded.
+     * @param physicalConnection connection to return
+     */
+    private void release(Connection physicalConnection) {
+        try {
+            if (physicalConnection.isClosed()) {
+                this.metrics.connectionClosed();
+            } else {
+                if (!physicalConnection.getAutoCommit()) {
+                    physicalConnection.rollback();
+                    physicalConnection.setAutoCommit(true);
+                }
+                if (this.closed) {
+                    this.closePhysicalConnection(physicalConnection);
+                } else {
+                    // Last returned connection is the first to reuse, it keeps the hottest page cache
+                    this.idleConnections.offerFirst(physicalConnection);
+                }
+            }
+        } catch (SQLException exception) {
+            this.closePhysicalConnection(physicalConnection);
+        } finally {
+            this.metrics.connectionReleased();
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Opens a new physical connection and executes the init statements on it, e.g. the pragmas
+     * of the connection profile.
+     * @return physical connection
+     * @throws SQLException it attempts to open the connection and to execute the statements
+     */
+    private Connection openPhysicalConnection() throws SQLException {
+        Connection physicalConnection = DriverManager.getConnection(this.connectionString, this.connectionProperties);
+        try (Statement statement = physicalConnection.createStatement()) {
+            for (String initStatement : this.initStatements) {
+                statement.execute(initStatement);
+            }
+        } catch (SQLException | RuntimeException exception) {
+            physicalConnection.close();
+            throw exception;
+        }
+        return physicalConnection;
+    }
+
+    private Connection pollIdleConnection() throws SQLException {
+        Connection idleConnection = this.idleConnections.pollFirst();
+        while (idleConnection != null && idleConnection.isClosed()) {
+            this.metrics.connectionClosed();
+            idleConnection = this.idleConnections.pollFirst();
+        }
+        return idleConnection;
+    }
+
+    private void closePhysicalConnection(Connection physicalConnection) {
+        try {
+            if (!physicalConnection.isClosed()) {
+                physicalConnection.close();
+            }
+        } catch (SQLException ignored) {
+            // Nothing to do here, the connection is thrown away anyway
+        } finally {
+            this.metrics.connectionClosed();
+        }
+    }
+
+    private Connection wrap(Connection physicalConnection) {
+        return (Connection) Proxy.newProxyInstance(
+                Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class},
+                new PooledConnectionHandler(physicalConnection)
+        );
+    }
+
+    /**
+     * Delegates everything to the physical connection except closing.
+     */
+    private class PooledConnectionHandler implements InvocationHandler {
+        private final Connection physicalConnection;
+        private final AtomicBoolean released = new AtomicBoolean(false);
+
+        PooledConnectionHandler(Connection physicalConnection) {
+            this.physicalConnection = physicalConnection;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "close":
+                    if (this.released.compareAndSet(false, true)) {
+                        ConnectionPool.this.release(this.physicalConnection);
+                    }
+                    return null;
+                case "isClosed":
+                    return this.released.get() || this.physicalConnection.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "Pooled[" + this.physicalConnection + "]";
+                default:
+                    if (this.released.get()) {
+                        throw new SQLException("Connection is already returned to the pool");
+                    }
+                    try {
+                        return method.invoke(this.physicalConnection, args);
+                    } catch (InvocationTargetException exception) {
+                        throw exception.getCause();
+                    }
+            }
+        }
+    }
+}
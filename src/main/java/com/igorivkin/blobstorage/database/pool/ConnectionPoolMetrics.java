@@ -0,0 +1,92 @@
+package com.igorivkin.blobstorage.database.pool;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the counters of a single connection pool: how long the callers
+ * were waiting for a connection, how many connections are borrowed right now
+ * and how many physical connections are kept open.
+ */
+public class ConnectionPoolMetrics {
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicInteger openConnections = new AtomicInteger();
+
+    void recordWait(long waitNanos) {
+        this.totalWaitNanos.addAndGet(waitNanos);
+        this.maxWaitNanos.accumulateAndGet(waitNanos, Math::max);
+    }
+
+    void recordTimeout() {
+        this.timeouts.incrementAndGet();
+    }
+
+    void connectionAcquired() {
+        this.acquisitions.incrementAndGet();
+        this.activeConnections.incrementAndGet();
+    }
+
+    void connectionReleased() {
+        this.activeConnections.decrementAndGet();
+    }
+
+    void connectionOpened() {
+        this.openConnections.incrementAndGet();
+    }
+
+    void connectionClosed() {
+        this.openConnections.decrementAndGet();
+    }
+
+    /**
+     * Returns how many times a connection was borrowed from the pool.
+     * @return number of successful acquisitions
+     */
+    public long getAcquisitions() {
+        return acquisitions.get();
+    }
+
+    /**
+     * Returns how many times the caller gave up waiting for a free connection.
+     * @return number of acquisition timeouts
+     */
+    public long getTimeouts() {
+        return timeouts.get();
+    }
+
+    /**
+     * Returns the summary time spent by all the callers waiting for a connection.
+     * @return total wait time in nanoseconds
+     */
+    public long getTotalWaitNanos() {
+        return totalWaitNanos.get();
+    }
+
+    /**
+     * Returns the longest time a caller was waiting for a connection.
+     * @return maximal wait time in nanoseconds
+     */
+    public long getMaxWaitNanos() {
+        return maxWaitNanos.get();
+    }
+
+    /**
+     * Returns number of connections that are borrowed and not yet returned.
+     * @return number of active connections
+     */
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Returns number of physical connections kept by the pool (both idle and active).
+     * @return number of open connections
+     */
+    public int getOpenConnections() {
+        return openConnections.get();
+    }
+}
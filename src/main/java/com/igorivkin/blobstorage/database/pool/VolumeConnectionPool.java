@@ -0,0 +1,60 @@
+package com.igorivkin.blobstorage.database.pool;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Keeps the connections to a single blob volume. Readers and writers are pooled separately:
+ * SQLite allows only one writer at a time, so the writer connections are not mixed with the
+ * readers that can work concurrently thanks to WAL journal mode. Each of them gets
+ * the pragmas of its own profile, see {@link com.igorivkin.blobstorage.database.config.DatabaseConfig}.
+ */
+public class VolumeConnectionPool implements AutoCloseable {
+    private final ConnectionPool readPool;
+    private final ConnectionPool writePool;
+
+    public VolumeConnectionPool(String connectionString,
+                                Properties connectionProperties,
+                                List<String> readerPragmas,
+                                List<String> writerPragmas,
+                                int readersCount,
+                                int writersCount,
+                                long timeoutMillis) {
+        this.readPool = new ConnectionPool(connectionString, connectionProperties, readerPragmas, readersCount, timeoutMillis);
+        this.writePool = new ConnectionPool(connectionString, connectionProperties, writerPragmas, writersCount, timeoutMillis);
+    }
+
+    /**
+     * Borrows a connection intended for SELECT queries.
+     * @return pooled read connection
+     * @throws SQLException it attempts to get the connection
+     */
+    public Connection getReadConnection() throws SQLException {
+        return this.readPool.acquire();
+    }
+
+    /**
+     * Borrows a connection intended for modifying queries.
+     * @return pooled write connection
+     * @throws SQLException it attempts to get the connection
+     */
+    public Connection getWriteConnection() throws SQLException {
+        return this.writePool.acquire();
+    }
+
+    public ConnectionPoolMetrics getReadMetrics() {
+        return this.readPool.getMetrics();
+    }
+
+    public ConnectionPoolMetrics getWriteMetrics() {
+        return this.writePool.getMetrics();
+    }
+
+    @Override
+    public void close() {
+        this.readPool.close();
+        this.writePool.close();
+    }
+}
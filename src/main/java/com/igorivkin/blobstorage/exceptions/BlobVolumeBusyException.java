@@ -0,0 +1,7 @@
+package com.igorivkin.blobstorage.exceptions;
+
+public class BlobVolumeBusyException extends GenericBlobStorageException {
+    public BlobVolumeBusyException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,7 @@
+package com.igorivkin.blobstorage.exceptions;
+
+public class NoSuchBlobItemException extends GenericBlobStorageException {
+    public NoSuchBlobItemException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,85 @@
+package com.igorivkin.blobstorage.metrics;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Timers of the blob storage operations and of the operations of every blob volume. Each timer
+ * is tagged by the operation, the volume and the outcome, so its count is the number of operations
+ * with that outcome. The timers are exposed by the actuator, e.g. by the Prometheus endpoint.
+ */
+@Component
+public class BlobStorageMetrics {
+    public static final String OUTCOME_SUCCESS = "success";
+    public static final String OUTCOME_NOT_FOUND = "not_found";
+    public static final String OUTCOME_ERROR = "error";
+
+    private static final String STORAGE_OPERATION_METRIC = "blobstorage.operation";
+    private static final String VOLUME_OPERATION_METRIC = "blobstorage.volume.operation";
+
+    /**
+     * Volume tag of the operations that did not reach any volume.
+     */
+    private static final String NO_VOLUME = "none";
+
+    private final MeterRegistry meterRegistry;
+
+    public BlobStorageMetrics(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public MeterRegistry getMeterRegistry() {
+        return meterRegistry;
+    }
+
+    /**
+     * Starts timing of the blob storage operation, see {@link #recordOperation(Timer.Sample, String, int, String)}.
+     * @return started sample
+     */
+    public Timer.Sample startTimer() {
+        return Timer.start(this.meterRegistry);
+    }
+
+    /**
+     * Records the time of finished blob storage operation.
+     * @param sample sample started before the operation
+     * @param operation name of operation, e.g. storeItem
+     * @param volumeId ID of volume the operation was executed on, 0 if unknown
+     * @param outcome outcome of the operation
+     */
+    public void recordOperation(Timer.Sample sample, String operation, int volumeId, String outcome) {
+        sample.stop(this.timer(STORAGE_OPERATION_METRIC, operation, volumeId, outcome));
+    }
+
+    /**
+     * Records the time of finished blob volume operation.
+     * @param volumeId ID of volume
+     * @param operation name of operation, e.g. insert
+     * @param outcome outcome of the operation
+     * @param nanos duration of the operation in nanoseconds
+     */
+    public void recordVolumeOperation(int volumeId, String operation, String outcome, long nanos) {
+        this.timer(VOLUME_OPERATION_METRIC, operation, volumeId, outcome).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Returns the outcome of the operation that returned the given result.
+     * @param result result of the operation
+     * @return not found outcome for null result, success otherwise
+     */
+    public static String outcomeOf(Object result) {
+        return result != null ? OUTCOME_SUCCESS : OUTCOME_NOT_FOUND;
+    }
+
+    private Timer timer(String name, String operation, int volumeId, String outcome) {
+        // The registry keeps the registered timers, so the same timer is returned for the same tags
+        return Timer.builder(name)
+                .tag("operation", operation)
+                .tag("volume", volumeId > 0 ? Integer.toString(volumeId) : NO_VOLUME)
+                .tag("outcome", outcome)
+                .register(this.meterRegistry);
+    }
+}
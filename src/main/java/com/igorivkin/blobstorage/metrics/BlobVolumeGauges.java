@@ -0,0 +1,114 @@
+package com.igorivkin.blobstorage.metrics;
+
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import com.igorivkin.blobstorage.database.pool.ConnectionPoolMetrics;
+import com.igorivkin.blobstorage.database.pool.VolumeConnectionPool;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Gauges of every blob volume: used and free space, number of items, size of WAL-file and
+ * the state of the connection pool. The space is tracked by the volume in memory and read
+ * on every scrape, the other values require a query or a file lookup, so they are refreshed
+ * periodically and the scrape returns the last refreshed values. The gauges of new volumes
+ * are registered and the ones of removed volumes are dropped by the same refresh.
+ */
+@Component
+public class BlobVolumeGauges {
+    private final MeterRegistry meterRegistry;
+    private final BlobStorageConfigProvider configProvider;
+
+    private final Map<Integer, VolumeGauges> gaugesByVolume = new ConcurrentHashMap<>();
+
+    public BlobVolumeGauges(MeterRegistry meterRegistry, BlobStorageConfigProvider configProvider) {
+        this.meterRegistry = meterRegistry;
+        this.configProvider = configProvider;
+    }
+
+    /**
+     * Registers the gauges of new volumes, drops the gauges of removed ones and refreshes
+     * the values that are not tracked in memory.
+     * @throws SQLException it attempts to count the items of volumes
+     */
+    @PostConstruct
+    @Scheduled(fixedDelayString = "${blobstorage.metrics.refresh:15000}")
+    public void refresh() throws SQLException {
+        for (BlobVolume blobVolume : this.configProvider.getBlobVolumes().values()) {
+            this.gaugesByVolume.computeIfAbsent(blobVolume.getVolumeId(), volumeId -> new VolumeGauges(blobVolume)).refresh();
+        }
+        this.gaugesByVolume.entrySet().removeIf(volumeGauges -> {
+            if (this.configProvider.getBlobVolumes().containsValue(volumeGauges.getValue().blobVolume)) {
+                return false;
+            }
+            volumeGauges.getValue().meters.forEach(this.meterRegistry::remove);
+            return true;
+        });
+    }
+
+    /**
+     * Gauges of a single volume together with the last refreshed values.
+     */
+    private class VolumeGauges {
+        private final BlobVolume blobVolume;
+        private final List<Meter> meters = new ArrayList<>();
+
+        private volatile long itemCount;
+        private volatile long walSize;
+        private volatile ConnectionPoolMetrics readMetrics;
+        private volatile ConnectionPoolMetrics writeMetrics;
+
+        private VolumeGauges(BlobVolume blobVolume) {
+            this.blobVolume = blobVolume;
+            String volume = Integer.toString(blobVolume.getVolumeId());
+            this.meters.add(Gauge.builder("blobstorage.volume.used", blobVolume, BlobVolume::getUsedBytes)
+                    .tag("volume", volume).baseUnit("bytes").register(meterRegistry));
+            this.meters.add(Gauge.builder("blobstorage.volume.free", blobVolume, BlobVolume::getFreeBytes)
+                    .tag("volume", volume).baseUnit("bytes").register(meterRegistry));
+            this.meters.add(Gauge.builder("blobstorage.volume.write.queue", blobVolume, BlobVolume::getWriteQueueDepth)
+                    .tag("volume", volume).register(meterRegistry));
+            this.meters.add(Gauge.builder("blobstorage.volume.items", this, gauges -> gauges.itemCount)
+                    .tag("volume", volume).register(meterRegistry));
+            this.meters.add(Gauge.builder("blobstorage.volume.wal", this, gauges -> gauges.walSize)
+                    .tag("volume", volume).baseUnit("bytes").register(meterRegistry));
+            this.registerPoolMeters(volume, "read");
+            this.registerPoolMeters(volume, "write");
+        }
+
+        private void registerPoolMeters(String volume, String mode) {
+            this.meters.add(Gauge.builder("blobstorage.volume.pool.active", this, gauges -> gauges.poolMetrics(mode).getActiveConnections())
+                    .tag("volume", volume).tag("mode", mode).register(meterRegistry));
+            this.meters.add(Gauge.builder("blobstorage.volume.pool.open", this, gauges -> gauges.poolMetrics(mode).getOpenConnections())
+                    .tag("volume", volume).tag("mode", mode).register(meterRegistry));
+            this.meters.add(FunctionCounter.builder("blobstorage.volume.pool.acquisitions", this, gauges -> gauges.poolMetrics(mode).getAcquisitions())
+                    .tag("volume", volume).tag("mode", mode).register(meterRegistry));
+            this.meters.add(FunctionCounter.builder("blobstorage.volume.pool.timeouts", this, gauges -> gauges.poolMetrics(mode).getTimeouts())
+                    .tag("volume", volume).tag("mode", mode).register(meterRegistry));
+        }
+
+        private void refresh() throws SQLException {
+            // The volumes that are not open yet are not opened just for the gauge
+            this.itemCount = configProvider.getItemCount(this.blobVolume);
+            this.walSize = this.blobVolume.getWalSizeInBytes();
+            // The pool is taken only here, so a scrape never opens the pool of a removed volume
+            VolumeConnectionPool connectionPool = this.blobVolume.getConnectionPool();
+            this.readMetrics = connectionPool.getReadMetrics();
+            this.writeMetrics = connectionPool.getWriteMetrics();
+        }
+
+        private ConnectionPoolMetrics poolMetrics(String mode) {
+            return "read".equals(mode) ? this.readMetrics : this.writeMetrics;
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.igorivkin.blobstorage.responses;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.text.MessageFormat;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Writes the multipart/mixed body (RFC 2046) part by part straight to the output stream,
+ * so the parts are never collected in memory.
+ */
+public class MultipartMixedWriter {
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.US_ASCII);
+
+    private final OutputStream outputStream;
+    private final String boundary;
+
+    public MultipartMixedWriter(OutputStream outputStream, String boundary) {
+        this.outputStream = outputStream;
+        this.boundary = boundary;
+    }
+
+    /**
+     * Generates a boundary that can't appear inside the parts by accident.
+     * @return boundary of parts
+     */
+    public static String newBoundary() {
+        return "blob-" + UUID.randomUUID().toString();
+    }
+
+    /**
+     * Returns the value of Content-Type header of the whole body.
+     * @param boundary boundary of parts
+     * @return content type
+     */
+    public static String contentType(String boundary) {
+        return "multipart/mixed; boundary=" + boundary;
+    }
+
+    /**
+     * Writes a single part.
+     * @param headers headers of the part, Content-Length is added automatically
+     * @param content content of the part
+     * @throws IOException it attempts to write to the output stream
+     */
+    public void writePart(Map<String, String> headers, byte[] content) throws IOException {
+        this.writePartHeaders(headers, content.length);
+        this.outputStream.write(content);
+        this.outputStream.write(CRLF);
+    }
+
+    /**
+     * Writes a single part copying its content from a given stream, so the content
+     * is never kept in memory as a whole.
+     * @param headers       headers of the part, Content-Length is added automatically
+     * @param content       stream of the content of the part, it's not closed
+     * @param contentLength length of the content
+     * @throws IOException it attempts to read the content and to write to the output stream,
+     * the content shorter or longer than its declared length breaks the body
+     */
+    public void writePart(Map<String, String> headers, InputStream content, long contentLength) throws IOException {
+        this.writePartHeaders(headers, contentLength);
+        long copiedLength = content.transferTo(this.outputStream);
+        if (copiedLength != contentLength) {
+            throw new IOException(MessageFormat.format(
+                    "The part has {0} bytes instead of {1} declared", copiedLength, contentLength
+            ));
+        }
+        this.outputStream.write(CRLF);
+    }
+
+    /**
+     * Writes the closing boundary, nothing should be written after it.
+     * @throws IOException it attempts to write to the output stream
+     */
+    public void close() throws IOException {
+        this.writeLine("--" + this.boundary + "--");
+        this.outputStream.flush();
+    }
+
+    private void writePartHeaders(Map<String, String> headers, long contentLength) throws IOException {
+        this.writeLine("--" + this.boundary);
+        for (Map.Entry<String, String> header : headers.entrySet()) {
+            this.writeLine(header.getKey() + ": " + header.getValue());
+        }
+        this.writeLine("Content-Length: " + contentLength);
+        this.outputStream.write(CRLF);
+    }
+
+    private void writeLine(String line) throws IOException {
+        this.outputStream.write(line.getBytes(StandardCharsets.US_ASCII));
+        this.outputStream.write(CRLF);
+    }
+}
@@ -71,4 +71,20 @@ public class ResponseHelper {
                 HttpStatus.OK
         );
     }
+
+    /**
+     * This version is intended to tell the client that the storage is busy at the moment
+     * and the request can be repeated later, so it's sent with 503 status.
+     *
+     * @param reason string representation of error
+     * @return a response object providing detailed information about error
+     */
+    public static ResponseEntity<JsonResponse> busyJsonResponse(String reason) {
+        return new ResponseEntity<>(
+                new ErrorJsonResponse(
+                        null
+                ).setReason(reason),
+                HttpStatus.SERVICE_UNAVAILABLE
+        );
+    }
 }
@@ -1,13 +1,30 @@
 package com.igorivkin.blobstorage;
 
 import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemBatchRead;
+import com.igorivkin.blobstorage.blobitem.BlobItemBatchResult;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfo;
+import com.igorivkin.blobstorage.blobitem.BlobItemInfoBatchRead;
+import com.igorivkin.blobstorage.blobitem.BlobItemSource;
+import com.igorivkin.blobstorage.blobitem.BlobItemStatus;
 import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobstorage.async.AsyncBlobStorage;
+import com.igorivkin.blobstorage.blobstorage.compaction.BlobVolumeCompactor;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobstorage.config.BlobVolumeManifest;
+import com.igorivkin.blobstorage.blobstorage.config.BlobVolumeManifestEntry;
+import com.igorivkin.blobstorage.blobstorage.reclaim.BlobVolumeReclaimer;
 import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobitem.codec.BlobContentCodecs;
+import com.igorivkin.blobstorage.blobvolume.BlobFileRegion;
 import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import com.igorivkin.blobstorage.cache.BlobItemCache;
 import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
 import com.igorivkin.blobstorage.exceptions.GenericDatabaseException;
 import com.igorivkin.blobstorage.exceptions.IncorrectMimeTypeException;
+import com.igorivkin.blobstorage.exceptions.NoSuchBlobVolumeException;
 import com.igorivkin.blobstorage.exceptions.TooBigItemException;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
@@ -17,10 +34,26 @@ import org.springframework.boot.test.context.SpringBootTest;
 import static org.junit.jupiter.api.Assertions.*;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 // TODO: prepare dedicated config file for testing
 // at the moment it uses default config file and if the default values will be changed then tests could be failed
@@ -31,6 +64,24 @@ public class BlobStorageTests {
     @Autowired
     BlobStorage blobStorage;
 
+    @Autowired
+    BlobItemCache blobItemCache;
+
+    @Autowired
+    BlobStorageConfigProvider configProvider;
+
+    @Autowired
+    BlobVolumeReclaimer blobVolumeReclaimer;
+
+    @Autowired
+    BlobVolumeCompactor blobVolumeCompactor;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Autowired
+    AsyncBlobStorage asyncBlobStorage;
+
     @BeforeAll
     public void setup() throws SQLException {
         blobStorage.createNewBlobVolume();
@@ -52,6 +103,80 @@ public class BlobStorageTests {
         assertNull(suitableVolume);
     }
 
+    @Test
+    public void checkBlobVolumeSpaceReservation() throws GenericBlobStorageException {
+        BlobVolume suitableVolume = blobStorage.getSuitableBlobVolume(1_000L);
+        assertNotNull(suitableVolume);
+        long freeBytes = suitableVolume.getFreeBytes();
+
+        assertTrue(suitableVolume.tryReserve(1_000L));
+        assertEquals(freeBytes - 1_000L, suitableVolume.getFreeBytes());
+        suitableVolume.releaseReservation(1_000L);
+        assertEquals(freeBytes, suitableVolume.getFreeBytes());
+
+        // It is not possible to reserve more than the volume is able to hold
+        assertFalse(suitableVolume.tryReserve(suitableVolume.getMaxSizeInBytes() + 1));
+    }
+
+    @Test
+    public void checkGroupCommitInserts() throws Exception {
+        BlobVolume blobVolume = blobStorage.createNewBlobVolume();
+        blobVolume.enableGroupCommit(20, 4);
+        try {
+            // Ten concurrent inserts should be committed in several batches
+            // and every caller should get its own address back
+            List<CompletableFuture<BlobStoredItemAddress>> futures = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                BlobItem item = new BlobItem();
+                item.setMimeType("text/plain");
+                item.setStatus(BlobItemStatus.COMMITTED);
+                item.setContent(("Item " + i).getBytes());
+                futures.add(blobVolume.insertAsync(item));
+            }
+            for (int i = 0; i < 10; i++) {
+                BlobStoredItemAddress storedItemAddress = futures.get(i).get();
+                assertEquals(blobVolume.getVolumeId(), storedItemAddress.getVolumeId());
+                assertArrayEquals(("Item " + i).getBytes(), blobVolume.getById(storedItemAddress.getId()).getContent());
+            }
+        } finally {
+            blobVolume.close();
+        }
+    }
+
+    @Test
+    public void checkGroupCommitWriterRunsOnlyWhileWritten() throws Exception {
+        BlobVolume blobVolume = blobStorage.createNewBlobVolume();
+        String writerThreadName = "blob-volume-writer-" + blobVolume.getVolumeId();
+        blobVolume.enableGroupCommit(20, 4);
+        try {
+            assertFalse(isThreadRunning(writerThreadName));
+
+            BlobItem item = new BlobItem();
+            item.setMimeType("text/plain");
+            item.setStatus(BlobItemStatus.COMMITTED);
+            item.setContent("Item written by the writer thread".getBytes());
+            BlobStoredItemAddress storedItemAddress = blobVolume.insertAsync(item).get(10, TimeUnit.SECONDS);
+            assertArrayEquals(item.getContent(), blobVolume.getById(storedItemAddress.getId()).getContent());
+
+            // The idle writer thread stops after its keep-alive time
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (isThreadRunning(writerThreadName) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(100);
+            }
+            assertFalse(isThreadRunning(writerThreadName));
+
+            // The next write starts the thread again
+            BlobItem nextItem = new BlobItem();
+            nextItem.setMimeType("text/plain");
+            nextItem.setStatus(BlobItemStatus.COMMITTED);
+            nextItem.setContent("Item written after the writer was idle".getBytes());
+            storedItemAddress = blobVolume.insertAsync(nextItem).get(10, TimeUnit.SECONDS);
+            assertArrayEquals(nextItem.getContent(), blobVolume.getById(storedItemAddress.getId()).getContent());
+        } finally {
+            blobVolume.close();
+        }
+    }
+
     @Test
     public void checkNotAllowedMimeType() {
         Exception exception = assertThrows(IncorrectMimeTypeException.class, () -> {
@@ -72,6 +197,81 @@ public class BlobStorageTests {
         assertArrayEquals(databaseItem.getContent(), "Text content".getBytes());
     }
 
+    @Test
+    public void checkReadItemContentRange() throws SQLException, GenericBlobStorageException, IOException {
+        byte[] content = "0123456789".repeat(100_000).getBytes();
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "text/plain");
+
+        BlobItemInfo itemInfo = blobStorage.getItemInfo(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertEquals(content.length, itemInfo.getSize());
+        assertEquals("text/plain", itemInfo.getMimeType());
+
+        // The range is longer than a single chunk so the stream has to read it in several steps
+        try (InputStream contentStream = blobStorage.getItemContent(storedItemAddress.getId(), storedItemAddress.getVolumeId(), 5, 600_000)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 5, 600_005), contentStream.readAllBytes());
+        }
+    }
+
+    @Test
+    public void checkContentOfDeletedItemIsNotStreamed() throws SQLException, GenericBlobStorageException, IOException {
+        // The item is too big for the cache, so its content is read from the volume
+        byte[] content = new byte[1_000_000];
+        new Random(5).nextBytes(content);
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "image/png");
+        BlobVolume blobVolume = configProvider.getBlobVolumeById(storedItemAddress.getVolumeId());
+        blobStorage.deleteItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+
+        // The deleted item is kept by the volume until it's purged, but its content is not served anymore
+        assertNull(blobStorage.getItemContent(storedItemAddress.getId(), storedItemAddress.getVolumeId(), 0, content.length));
+        assertNull(blobVolume.openContentStream(storedItemAddress.getId(), 0, content.length));
+        assertNull(blobVolume.openContentStream(Long.MAX_VALUE, 0, 10));
+    }
+
+    @Test
+    public void checkRangeOfInlineItemIsReadByOneQuery() throws SQLException, GenericBlobStorageException, IOException {
+        // Images are never compressed, so the stored range is as long as the requested one
+        byte[] content = new byte[1_000_000];
+        new Random(3).nextBytes(content);
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "image/png");
+        String volume = Integer.toString(storedItemAddress.getVolumeId());
+        double readsBefore = meterRegistry.find("blobstorage.volume.operation")
+                .tags("operation", "readContent", "volume", volume).timers().stream().mapToDouble(timer -> timer.count()).sum();
+
+        try (InputStream contentStream = blobStorage.getItemContent(storedItemAddress.getId(), storedItemAddress.getVolumeId(), 5, 600_000)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 5, 600_005), contentStream.readAllBytes());
+        }
+        double readsAfter = meterRegistry.find("blobstorage.volume.operation")
+                .tags("operation", "readContent", "volume", volume).timers().stream().mapToDouble(timer -> timer.count()).sum();
+        assertEquals(readsBefore + 1, readsAfter);
+    }
+
+    @Test
+    public void checkShortRangeOfBigItemIsNotCached() throws SQLException, GenericBlobStorageException, IOException {
+        // To be working this test is required for configuration file that defines "hotCacheMaxItemSize" lesser than 1 Mb
+        byte[] content = "0123456789".repeat(100_000).getBytes();
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "text/plain");
+        String volume = Integer.toString(storedItemAddress.getVolumeId());
+        double loadsBefore = meterRegistry.find("blobstorage.volume.operation")
+                .tags("operation", "getById", "volume", volume).timers().stream().mapToDouble(timer -> timer.count()).sum();
+
+        // The range is small, but the item is not, so it's streamed without loading the whole item
+        try (InputStream contentStream = blobStorage.getItemContent(storedItemAddress.getId(), storedItemAddress.getVolumeId(), 0, 100)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 0, 100), contentStream.readAllBytes());
+        }
+        double loadsAfter = meterRegistry.find("blobstorage.volume.operation")
+                .tags("operation", "getById", "volume", volume).timers().stream().mapToDouble(timer -> timer.count()).sum();
+        assertEquals(loadsBefore, loadsAfter);
+        assertNull(blobItemCache.get(storedItemAddress));
+
+        // Any range of a small item puts the whole item into the cache
+        byte[] smallContent = "small item".getBytes();
+        BlobStoredItemAddress smallItemAddress = blobStorage.storeItem(new ByteArrayInputStream(smallContent), "text/plain");
+        try (InputStream contentStream = blobStorage.getItemContent(smallItemAddress.getId(), smallItemAddress.getVolumeId(), 6, 4)) {
+            assertArrayEquals("item".getBytes(), contentStream.readAllBytes());
+        }
+        assertNotNull(blobItemCache.get(smallItemAddress));
+    }
+
     @Test
     public void checkStoreTooBigItem() throws SQLException, GenericBlobStorageException, GenericDatabaseException, IOException {
         byte[] tooBigItem = new byte[30_000_000];
@@ -82,6 +282,29 @@ public class BlobStorageTests {
         assertTrue(exception.getMessage().startsWith("Size to store is too big"));
     }
 
+    @Test
+    public void checkStoreTooBigItemWithDeclaredSize() {
+        // The declared size is enough to reject the item, the stream should not be touched at all
+        InputStream untouchableStream = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                throw new IOException("Stream should not be read");
+            }
+        };
+        Exception exception = assertThrows(TooBigItemException.class, () -> {
+            blobStorage.storeItem(untouchableStream, "text/plain", 30_000_000L);
+        });
+        assertTrue(exception.getMessage().startsWith("Size to store is too big"));
+    }
+
+    @Test
+    public void checkStoreValidItemWithDeclaredSize() throws SQLException, GenericBlobStorageException, IOException {
+        byte[] content = "Declared content".getBytes();
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "text/plain", content.length);
+        BlobItem databaseItem = blobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertArrayEquals(databaseItem.getContent(), content);
+    }
+
     @Test
     public void checkTooLongMimeType() {
         String veryLongMimeType = String.join("", Collections.nCopies(260, "n"));
@@ -105,4 +328,536 @@ public class BlobStorageTests {
         BlobItem expectedlyDeletedItem = blobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
         assertNull(expectedlyDeletedItem);
     }
+
+    @Test
+    public void checkDeletedItemIsReclaimed() throws GenericBlobStorageException, SQLException, IOException {
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(new byte[400]), "image/png");
+        BlobVolume blobVolume = configProvider.getBlobVolumeById(storedItemAddress.getVolumeId());
+
+        // The deleted item is not visible anymore, but its content is purged later
+        blobStorage.deleteItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertNull(blobStorage.stat(storedItemAddress.getId(), storedItemAddress.getVolumeId()));
+        assertNotNull(blobVolume.readContent(storedItemAddress.getId(), 0, 400));
+
+        blobVolumeReclaimer.reclaimDeletedItems();
+        assertNull(blobVolume.readContent(storedItemAddress.getId(), 0, 400));
+        assertTrue(blobVolumeReclaimer.getReclaimedItems() > 0);
+    }
+
+    @Test
+    public void checkCompactedItemIsForwarded() throws GenericBlobStorageException, SQLException {
+        List<BlobVolume> sparseVolumes = new ArrayList<>();
+        List<BlobStoredItemAddress> keptAddresses = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            BlobVolume blobVolume = blobStorage.createNewBlobVolume();
+            sparseVolumes.add(blobVolume);
+            for (int j = 0; j < 3; j++) {
+                BlobItem item = new BlobItem();
+                item.setMimeType("text/plain");
+                item.setStatus(BlobItemStatus.COMMITTED);
+                item.setContent(("Compacted item " + i + "-" + j).getBytes());
+                BlobStoredItemAddress storedItemAddress = blobVolume.insert(item);
+                if (j == 0) {
+                    keptAddresses.add(storedItemAddress);
+                } else {
+                    blobStorage.deleteItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+                }
+            }
+        }
+
+        assertTrue(blobVolumeCompactor.compact(sparseVolumes));
+        assertEquals(2, blobVolumeCompactor.getProgress().getItemsMoved());
+        for (int i = 0; i < sparseVolumes.size(); i++) {
+            BlobVolume sparseVolume = sparseVolumes.get(i);
+            assertThrows(NoSuchBlobVolumeException.class, () -> configProvider.getBlobVolumeById(sparseVolume.getVolumeId()));
+            assertFalse(sparseVolume.getVolumeFile().exists());
+
+            // The old address keeps resolving to the moved item
+            BlobStoredItemAddress keptAddress = keptAddresses.get(i);
+            BlobItem movedItem = blobStorage.getItem(keptAddress.getId(), keptAddress.getVolumeId());
+            assertNotNull(movedItem);
+            assertArrayEquals(("Compacted item " + i + "-0").getBytes(), movedItem.getContent());
+        }
+        // IDs of retired volumes are never given to new volumes
+        assertTrue(configProvider.getNextBlobVolumeId() > sparseVolumes.get(1).getVolumeId());
+    }
+
+    @Test
+    public void checkItemsStoredDuringCompactionAreKept() throws Exception {
+        List<BlobVolume> sparseVolumes = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            BlobVolume blobVolume = blobStorage.createNewBlobVolume();
+            sparseVolumes.add(blobVolume);
+            BlobItem item = new BlobItem();
+            item.setMimeType("text/plain");
+            item.setStatus(BlobItemStatus.COMMITTED);
+            item.setContent(("Sealed item " + i).getBytes());
+            blobVolume.insert(item);
+        }
+
+        // The store has reserved the space before the compaction started, but is not finished yet
+        BlobVolume inFlightVolume = sparseVolumes.get(0);
+        byte[] lateContent = "Item stored during compaction".getBytes();
+        long lateStoredSize = BlobVolume.estimateStoredSize(lateContent.length);
+        assertTrue(inFlightVolume.tryReserve(lateStoredSize));
+
+        CompletableFuture<Boolean> compaction = CompletableFuture.supplyAsync(() -> {
+            try {
+                return blobVolumeCompactor.compact(sparseVolumes);
+            } catch (SQLException exception) {
+                throw new CompletionException(exception);
+            }
+        });
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!inFlightVolume.isSealed() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // The sealed volume takes no more items, the concurrent stores go to the other volumes
+        assertTrue(inFlightVolume.isSealed());
+        assertFalse(inFlightVolume.tryReserve(1));
+        assertFalse(configProvider.getWritableBlobVolumes().contains(inFlightVolume));
+        List<BlobStoredItemAddress> concurrentAddresses = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            byte[] content = ("Concurrent item " + i).getBytes();
+            BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "text/plain");
+            assertNotEquals(inFlightVolume.getVolumeId(), storedItemAddress.getVolumeId());
+            concurrentAddresses.add(storedItemAddress);
+        }
+
+        // The volume is not retired until the started store is finished
+        assertFalse(compaction.isDone());
+        BlobItem lateItem = new BlobItem();
+        lateItem.setMimeType("text/plain");
+        lateItem.setStatus(BlobItemStatus.COMMITTED);
+        lateItem.setContent(lateContent);
+        BlobStoredItemAddress lateAddress = inFlightVolume.insert(lateItem);
+        inFlightVolume.commitReservation(lateStoredSize);
+
+        assertTrue(compaction.get(30, TimeUnit.SECONDS));
+        assertFalse(inFlightVolume.getVolumeFile().exists());
+        BlobItem movedItem = blobStorage.getItem(lateAddress.getId(), lateAddress.getVolumeId());
+        assertNotNull(movedItem);
+        assertArrayEquals(lateContent, movedItem.getContent());
+        for (int i = 0; i < concurrentAddresses.size(); i++) {
+            BlobStoredItemAddress storedItemAddress = concurrentAddresses.get(i);
+            assertArrayEquals(("Concurrent item " + i).getBytes(),
+                    blobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId()).getContent());
+        }
+    }
+
+    @Test
+    public void checkAsyncStorageRunsOnVolumeExecutors() throws Exception {
+        byte[] content = "Item stored asynchronously".getBytes();
+        BlobStoredItemAddress storedItemAddress = asyncBlobStorage
+                .storeItem(new ByteArrayInputStream(content), "text/plain", content.length)
+                .get(10, TimeUnit.SECONDS);
+        assertNotNull(storedItemAddress);
+
+        BlobItemInfo itemInfo = asyncBlobStorage
+                .stat(storedItemAddress.getId(), storedItemAddress.getVolumeId())
+                .get(10, TimeUnit.SECONDS);
+        assertEquals(content.length, itemInfo.getSize());
+
+        asyncBlobStorage.deleteItem(storedItemAddress.getId(), storedItemAddress.getVolumeId()).get(10, TimeUnit.SECONDS);
+        assertNull(asyncBlobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId()).get(10, TimeUnit.SECONDS));
+
+        // Unknown volume fails the future without making a new executor
+        ExecutionException exception = assertThrows(
+                ExecutionException.class,
+                () -> asyncBlobStorage.stat(1, Integer.MAX_VALUE).get(10, TimeUnit.SECONDS)
+        );
+        assertTrue(exception.getCause() instanceof NoSuchBlobVolumeException);
+    }
+
+    @Test
+    public void checkOperationsAreTimed() throws GenericBlobStorageException, SQLException, IOException {
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(new byte[100]), "image/png");
+        String volume = Integer.toString(storedItemAddress.getVolumeId());
+        blobStorage.deleteItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        blobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+
+        assertTrue(meterRegistry.get("blobstorage.operation")
+                .tags("operation", "storeItem", "volume", volume, "outcome", "success").timer().count() > 0);
+        assertTrue(meterRegistry.get("blobstorage.volume.operation")
+                .tags("operation", "insert", "volume", volume, "outcome", "success").timer().count() > 0);
+        assertTrue(meterRegistry.get("blobstorage.operation")
+                .tags("operation", "getItem", "volume", volume, "outcome", "not_found").timer().count() > 0);
+    }
+
+    @Test
+    public void checkGetItemFromUnknownVolume() {
+        assertThrows(NoSuchBlobVolumeException.class, () -> {
+            blobStorage.getItem(1, Integer.MAX_VALUE);
+        });
+        assertThrows(NoSuchBlobVolumeException.class, () -> {
+            blobStorage.getItem(1, -1);
+        });
+    }
+
+    @Test
+    public void checkHotItemIsCachedAndInvalidated() throws GenericBlobStorageException, SQLException, IOException {
+        // To be working this test is required for configuration file that enables "hotCacheSize"
+        byte[] itemToStore = "hot item".getBytes();
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(itemToStore), "text/plain");
+
+        long hitsBefore = blobItemCache.getHits();
+        blobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        BlobItem cachedItem = blobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertArrayEquals(itemToStore, cachedItem.getContent());
+        assertEquals(hitsBefore + 1, blobItemCache.getHits());
+
+        // Deleted item must not be served from the cache
+        blobStorage.deleteItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertNull(blobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId()));
+    }
+
+    @Test
+    public void checkSharedContentIsRemovedWithLastReference() throws GenericBlobStorageException, SQLException {
+        BlobVolume blobVolume = blobStorage.getSuitableBlobVolume(1_000L);
+        assertNotNull(blobVolume);
+
+        BlobItem item = new BlobItem();
+        item.setMimeType("text/plain");
+        item.setStatus(BlobItemStatus.COMMITTED);
+        item.setContent("shared content".getBytes());
+        item.setContentHash("test-shared-content-hash");
+        BlobStoredItemAddress storedItemAddress = blobVolume.insert(item);
+
+        assertTrue(blobVolume.addReference(storedItemAddress.getId(), "test-shared-content-hash", "text/plain"));
+        assertFalse(blobVolume.addReference(storedItemAddress.getId(), "another-hash", "text/plain"));
+
+        // The first deletion drops one reference only
+        assertFalse(blobVolume.delete(storedItemAddress.getId()));
+        assertNotNull(blobVolume.getById(storedItemAddress.getId()));
+
+        assertTrue(blobVolume.delete(storedItemAddress.getId()));
+        assertNull(blobVolume.getById(storedItemAddress.getId()));
+    }
+
+    @Test
+    public void checkTextItemIsStoredCompressed() throws GenericBlobStorageException, SQLException, IOException {
+        // To be working this test is required for configuration file that defines
+        // compression rule for "text/plain" or "text/*"
+        byte[] content = "Compressible text content. ".repeat(10_000).getBytes();
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "text/plain");
+
+        BlobItem storedItem = blobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertArrayEquals(content, storedItem.getContent());
+        BlobItemInfo itemInfo = blobStorage.getItemInfo(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertEquals(content.length, itemInfo.getSize());
+
+        // The range is decoded from the beginning of the compressed content
+        try (InputStream contentStream = blobStorage.getItemContent(storedItemAddress.getId(), storedItemAddress.getVolumeId(), 100, 1_000)) {
+            assertArrayEquals(Arrays.copyOfRange(content, 100, 1_100), contentStream.readAllBytes());
+        }
+
+        // The volume keeps the compressed content
+        BlobVolume blobVolume = configProvider.getBlobVolumeById(storedItemAddress.getVolumeId());
+        byte[] storedContent = blobVolume.readContent(storedItemAddress.getId(), 0, content.length);
+        assertTrue(storedContent.length < content.length / 10);
+    }
+
+    @Test
+    public void checkStoreAndGetItemsInBatch() {
+        List<BlobItemSource> itemSources = new ArrayList<>();
+        itemSources.add(new BlobItemSource(new ByteArrayInputStream("First item".getBytes()), "text/plain", -1));
+        itemSources.add(new BlobItemSource(new ByteArrayInputStream("Second item".getBytes()), "application/unknown", -1));
+        itemSources.add(new BlobItemSource(new ByteArrayInputStream("Third item".getBytes()), "text/plain", -1));
+
+        // The item with incorrect mime-type fails alone
+        List<BlobItemBatchResult> storeResults = blobStorage.storeItems(itemSources);
+        assertEquals(3, storeResults.size());
+        assertEquals(BlobItemBatchResult.STATUS_OK, storeResults.get(0).getStatus());
+        assertEquals(BlobItemBatchResult.STATUS_ERROR, storeResults.get(1).getStatus());
+        assertEquals(BlobItemBatchResult.STATUS_OK, storeResults.get(2).getStatus());
+
+        List<BlobStoredItemAddress> addresses = new ArrayList<>();
+        addresses.add(storeResults.get(2).getAddress());
+        addresses.add(new BlobStoredItemAddress(Long.MAX_VALUE, storeResults.get(0).getAddress().getVolumeId()));
+        addresses.add(storeResults.get(0).getAddress());
+        List<BlobItemBatchRead> readResults = blobStorage.getItems(addresses);
+        assertArrayEquals("Third item".getBytes(), readResults.get(0).getItem().getContent());
+        assertEquals(BlobItemBatchResult.STATUS_NOT_FOUND, readResults.get(1).getStatus());
+        assertArrayEquals("First item".getBytes(), readResults.get(2).getItem().getContent());
+    }
+
+    @Test
+    public void checkBatchOfUnknownSizeIsDescribedAndStreamed() throws GenericBlobStorageException, SQLException, IOException {
+        // The size of the big item is not declared, so the read ahead decides to store it in chunks
+        byte[] bigContent = new byte[(int) configProvider.getChunkedItemThresholdInBytes() + 100_000];
+        new Random(17).nextBytes(bigContent);
+        List<BlobItemSource> itemSources = new ArrayList<>();
+        itemSources.add(new BlobItemSource(new ByteArrayInputStream(bigContent), "image/png", -1));
+        itemSources.add(new BlobItemSource(new ByteArrayInputStream("Small item".getBytes()), "text/plain", -1));
+        List<BlobItemBatchResult> storeResults = blobStorage.storeItems(itemSources);
+        assertEquals(BlobItemBatchResult.STATUS_OK, storeResults.get(0).getStatus());
+        assertEquals(BlobItemBatchResult.STATUS_OK, storeResults.get(1).getStatus());
+
+        List<BlobStoredItemAddress> addresses = new ArrayList<>();
+        addresses.add(storeResults.get(0).getAddress());
+        addresses.add(new BlobStoredItemAddress(Long.MAX_VALUE, storeResults.get(0).getAddress().getVolumeId()));
+        addresses.add(storeResults.get(1).getAddress());
+        List<BlobItemInfoBatchRead> infoResults = blobStorage.getItemInfos(addresses);
+        assertEquals(bigContent.length, infoResults.get(0).getItemInfo().getSize());
+        assertEquals(BlobItemBatchResult.STATUS_NOT_FOUND, infoResults.get(1).getStatus());
+        assertNull(infoResults.get(1).getItemInfo());
+        assertEquals("text/plain", infoResults.get(2).getItemInfo().getMimeType());
+
+        BlobStoredItemAddress bigItemAddress = storeResults.get(0).getAddress();
+        try (InputStream contentStream = blobStorage.getItemContent(bigItemAddress.getId(), bigItemAddress.getVolumeId(), 0, bigContent.length)) {
+            assertArrayEquals(bigContent, contentStream.readAllBytes());
+        }
+        blobStorage.deleteItem(bigItemAddress.getId(), bigItemAddress.getVolumeId());
+    }
+
+    @Test
+    public void checkStatItem() throws GenericBlobStorageException, SQLException, IOException {
+        byte[] content = "Item to describe".getBytes();
+        long storedBefore = System.currentTimeMillis();
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "text/plain");
+
+        BlobItemInfo itemInfo = blobStorage.stat(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertEquals("text/plain", itemInfo.getMimeType());
+        assertEquals(content.length, itemInfo.getSize());
+        assertEquals(64, itemInfo.getContentHash().length());
+        assertTrue(itemInfo.getCreatedAt() >= storedBefore);
+
+        assertNull(blobStorage.stat(Long.MAX_VALUE, storedItemAddress.getVolumeId()));
+    }
+
+    @Test
+    public void checkBigItemIsStoredInChunks() throws GenericBlobStorageException, SQLException, IOException {
+        // The item is bigger than the chunked item threshold, so it's stored as chunks
+        byte[] content = new byte[(int) configProvider.getChunkedItemThresholdInBytes() + 100_000];
+        new Random(15).nextBytes(content);
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "image/png", content.length);
+
+        BlobItemInfo itemInfo = blobStorage.stat(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertEquals(content.length, itemInfo.getSize());
+        assertEquals(BlobItemStatus.COMMITTED, itemInfo.getStatus());
+
+        // The range crosses the border of two chunks
+        int chunkSize = configProvider.getChunkSizeInBytes();
+        try (InputStream contentStream = blobStorage.getItemContent(storedItemAddress.getId(), storedItemAddress.getVolumeId(), chunkSize - 10, 20)) {
+            assertArrayEquals(Arrays.copyOfRange(content, chunkSize - 10, chunkSize + 10), contentStream.readAllBytes());
+        }
+        try (InputStream contentStream = blobStorage.getItemContent(storedItemAddress.getId(), storedItemAddress.getVolumeId(), 0, content.length)) {
+            assertArrayEquals(content, contentStream.readAllBytes());
+        }
+        BlobItem storedItem = blobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertArrayEquals(content, storedItem.getContent());
+
+        blobStorage.deleteItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertNull(blobStorage.stat(storedItemAddress.getId(), storedItemAddress.getVolumeId()));
+    }
+
+    @Test
+    public void checkBigItemIsStoredInSegmentFile() throws GenericBlobStorageException, SQLException, IOException {
+        // To be working this test is required for configuration file that enables segment files
+        // for the items not bigger than maxBlobItemSize
+        byte[] content = new byte[(int) configProvider.getSegmentItemThresholdInBytes() + 1_000];
+        new Random(16).nextBytes(content);
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "image/png", content.length);
+
+        BlobFileRegion fileRegion = blobStorage.getItemFileRegion(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertNotNull(fileRegion);
+        assertEquals(content.length, fileRegion.getLength());
+        ByteArrayOutputStream transferredContent = new ByteArrayOutputStream();
+        fileRegion.transferTo(100, 1_000, transferredContent);
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 1_100), transferredContent.toByteArray());
+
+        try (InputStream contentStream = blobStorage.getItemContent(storedItemAddress.getId(), storedItemAddress.getVolumeId(), 0, content.length)) {
+            assertArrayEquals(content, contentStream.readAllBytes());
+        }
+        BlobItem storedItem = blobStorage.getItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertArrayEquals(content, storedItem.getContent());
+
+        blobStorage.deleteItem(storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertNull(blobStorage.getItemFileRegion(storedItemAddress.getId(), storedItemAddress.getVolumeId()));
+    }
+
+    @Test
+    public void checkVolumeManifestAndLazyOpening() throws Exception {
+        configProvider.getManifestCheck().get(30, TimeUnit.SECONDS);
+        byte[] content = "Item listed in the manifest".getBytes();
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "text/plain", content.length);
+        BlobVolume blobVolume = configProvider.getBlobVolumeById(storedItemAddress.getVolumeId());
+        configProvider.saveVolumeManifest();
+
+        BlobVolumeManifest savedManifest = new BlobVolumeManifest(configProvider.getVolumeManifest().getManifestFile());
+        assertTrue(savedManifest.load());
+        BlobVolumeManifestEntry entry = savedManifest.get(blobVolume.getVolumeId());
+        assertNotNull(entry);
+        assertEquals(blobVolume.getVolumeName(), entry.getPath());
+        assertTrue(entry.getItemCount() > 0);
+        assertEquals(blobVolume.getUsedBytes(), entry.getUsedBytes());
+
+        // The volume registered by the manifest is opened on the first access only
+        BlobVolume restoredVolume = configProvider.getBlobVolumeProvider().getObject();
+        restoredVolume.setVolumeFile(blobVolume.getVolumeFile());
+        restoredVolume.setVolumeName(blobVolume.getVolumeName());
+        restoredVolume.setVolumeId(blobVolume.getVolumeId());
+        restoredVolume.restoreUsedSpace(entry.getUsedBytes());
+        assertFalse(restoredVolume.isOpened());
+        assertEquals(entry.getUsedBytes(), restoredVolume.getUsedBytes());
+
+        // The compaction sizes the volume by the manifest without opening it
+        assertEquals(entry.getUsedBytes(), configProvider.getLiveBytes(restoredVolume));
+        assertEquals(entry.getItemCount(), configProvider.getItemCount(restoredVolume));
+        assertFalse(restoredVolume.isOpened());
+
+        // The items of the volume are indexed for deduplication once it's opened, not at startup
+        List<BlobVolume> openedVolumes = new ArrayList<>();
+        restoredVolume.setOpenListener(openedVolume -> {
+            openedVolume.forEachItemInfo(itemInfo -> assertNotNull(itemInfo.getContentHash()));
+            openedVolumes.add(openedVolume);
+        });
+        assertArrayEquals(content, restoredVolume.getById(storedItemAddress.getId()).getContent());
+        assertTrue(restoredVolume.isOpened());
+        restoredVolume.getById(storedItemAddress.getId());
+        assertEquals(Collections.singletonList(restoredVolume), openedVolumes);
+
+        // The seal of the compaction is kept by the manifest, so the volume is not writable after restart
+        assertFalse(entry.isSealed());
+        blobVolume.seal();
+        try {
+            configProvider.saveVolumeManifest();
+            assertTrue(savedManifest.load());
+            assertTrue(savedManifest.get(blobVolume.getVolumeId()).isSealed());
+        } finally {
+            blobVolume.unseal();
+            configProvider.updateBlobVolumeWritability(blobVolume);
+        }
+        configProvider.saveVolumeManifest();
+        assertTrue(savedManifest.load());
+        assertFalse(savedManifest.get(blobVolume.getVolumeId()).isSealed());
+    }
+
+    @Test
+    public void checkExistingVolumeIsConvertedByMaintenanceOnly() throws SQLException {
+        BlobVolume legacyVolume = newLegacyVolume(
+                "CREATE TABLE legacy(value text)",
+                "INSERT INTO legacy(value) VALUES('created without incremental vacuum')"
+        );
+        try {
+            // Opening does not rebuild the volume
+            legacyVolume.open();
+            assertEquals(0, queryPragma(legacyVolume, "auto_vacuum"));
+
+            assertTrue(legacyVolume.convertToIncrementalVacuum());
+            assertEquals(2, queryPragma(legacyVolume, "auto_vacuum"));
+            assertFalse(legacyVolume.convertToIncrementalVacuum());
+        } finally {
+            legacyVolume.deleteFiles();
+        }
+    }
+
+    @Test
+    public void checkVolumeOfSchemaVersion4IsMigrated() throws SQLException, IOException {
+        byte[] plainContent = "Item stored before the split of items and contents".getBytes();
+        byte[] encodedOriginal = "Compressed item stored before the split, ".repeat(20).getBytes();
+        byte[] encodedContent = BlobContentCodecs.forName(BlobContentCodecs.DEFLATE).encode(encodedOriginal);
+        BlobVolume legacyVolume = newLegacyVolume(
+                "CREATE TABLE entities (id integer PRIMARY KEY, mime_type text NOT NULL, status integer NOT NULL, "
+                + "content blob, content_hash text, ref_count integer NOT NULL DEFAULT 1, codec text, "
+                + "original_size integer, content_size integer, created_at integer)",
+                "CREATE INDEX entities_content_hash ON entities (content_hash)",
+                "CREATE INDEX entities_stat ON entities (id, mime_type, status, content_size, content_hash, created_at)",
+                "PRAGMA user_version = 4"
+        );
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + legacyVolume.getVolumeFile().getPath());
+             PreparedStatement statement = connection.prepareStatement(
+                     "INSERT INTO entities (id, mime_type, status, content, content_hash, ref_count, codec, original_size, content_size, created_at) "
+                     + "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+            insertLegacyEntity(statement, 1, BlobItemStatus.COMMITTED, plainContent, "hash-1", 2, null, plainContent.length);
+            insertLegacyEntity(statement, 2, BlobItemStatus.COMMITTED, encodedContent, "hash-2", 1, BlobContentCodecs.DEFLATE, encodedOriginal.length);
+            insertLegacyEntity(statement, 3, BlobItemStatus.DELETED, "deleted".getBytes(), "hash-3", 0, null, 7);
+        }
+        try {
+            assertEquals(Arrays.asList(1L, 2L), legacyVolume.getItemIds());
+
+            BlobItem plainItem = legacyVolume.getById(1);
+            assertArrayEquals(plainContent, plainItem.getContent());
+            BlobItemInfo plainItemInfo = legacyVolume.getInfoById(1);
+            assertEquals(plainContent.length, plainItemInfo.getSize());
+            assertEquals("hash-1", plainItemInfo.getContentHash());
+            assertEquals(2, legacyVolume.getReferenceCount(1));
+            try (InputStream contentStream = legacyVolume.openContentStream(1, 0, plainContent.length)) {
+                assertArrayEquals(plainContent, contentStream.readAllBytes());
+            }
+
+            assertArrayEquals(encodedOriginal, legacyVolume.getById(2).getContent());
+            assertEquals(encodedOriginal.length, legacyVolume.getInfoById(2).getSize());
+            try (InputStream contentStream = legacyVolume.openContentStream(2, 5, 10)) {
+                assertArrayEquals(Arrays.copyOfRange(encodedOriginal, 5, 15), contentStream.readAllBytes());
+            }
+            assertNull(legacyVolume.getById(3));
+            // The old table is dropped, so it has no columns
+            assertEquals(-1, queryPragma(legacyVolume, "table_info(entities)"));
+
+            // The IDs of the purged items are not given to the new ones
+            assertTrue(legacyVolume.delete(2));
+            legacyVolume.purgeDeletedItems(100);
+            BlobItem item = new BlobItem();
+            item.setMimeType("text/plain");
+            item.setStatus(BlobItemStatus.COMMITTED);
+            item.setContent("Item stored after the migration".getBytes());
+            assertTrue(legacyVolume.insert(item).getId() > 3);
+        } finally {
+            legacyVolume.deleteFiles();
+        }
+    }
+
+    private static boolean isThreadRunning(String threadName) {
+        return Thread.getAllStackTraces().keySet().stream().anyMatch(thread -> thread.getName().equals(threadName));
+    }
+
+    private static void insertLegacyEntity(PreparedStatement statement, long id, int status, byte[] content, String contentHash,
+                                           int refCount, String codec, long originalSize) throws SQLException {
+        statement.setLong(1, id);
+        statement.setString(2, "text/plain");
+        statement.setInt(3, status);
+        statement.setBytes(4, content);
+        statement.setString(5, contentHash);
+        statement.setInt(6, refCount);
+        statement.setString(7, codec);
+        if (codec != null) {
+            statement.setLong(8, originalSize);
+        } else {
+            statement.setNull(8, Types.INTEGER);
+        }
+        statement.setLong(9, originalSize);
+        statement.setLong(10, System.currentTimeMillis());
+        statement.executeUpdate();
+    }
+
+    /**
+     * Creates the database file of a volume by plain JDBC, as an older version would leave it.
+     * The volume is not registered and is not opened yet.
+     */
+    private BlobVolume newLegacyVolume(String... statements) throws SQLException {
+        int volumeId = configProvider.getNextBlobVolumeId();
+        String volumeName = String.format("blob_volume_%d.db", volumeId);
+        File volumeFile = new File("test_database", volumeName);
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + volumeFile.getPath());
+             Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        }
+        BlobVolume blobVolume = configProvider.getBlobVolumeProvider().getObject();
+        blobVolume.setVolumeFile(volumeFile);
+        blobVolume.setVolumeName(volumeName);
+        blobVolume.setVolumeId(volumeId);
+        return blobVolume;
+    }
+
+    private static long queryPragma(BlobVolume blobVolume, String pragma) throws SQLException {
+        try (Connection connection = DriverManager.getConnection("jdbc:sqlite:" + blobVolume.getVolumeFile().getPath());
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA " + pragma)) {
+            return resultSet.next() ? resultSet.getLong(1) : -1;
+        }
+    }
 }
@@ -0,0 +1,136 @@
+package com.igorivkin.blobstorage;
+
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobstorage.config.BlobStorageConfigProvider;
+import com.igorivkin.blobstorage.blobstorage.placement.BlobVolumePlacementStrategies;
+import com.igorivkin.blobstorage.blobstorage.placement.BlobVolumePlacementStrategy;
+import com.igorivkin.blobstorage.blobstorage.placement.FirstFitPlacementStrategy;
+import com.igorivkin.blobstorage.blobstorage.placement.LeastQueueDepthPlacementStrategy;
+import com.igorivkin.blobstorage.blobstorage.placement.LeastRecentlyLockedPlacementStrategy;
+import com.igorivkin.blobstorage.blobstorage.placement.RoundRobinPlacementStrategy;
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import com.igorivkin.blobstorage.exceptions.GenericBlobStorageException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// The dedicated config opens three volumes for writes and spreads the items by round-robin
+@SpringBootTest(properties = "blobstorage.configpath=src/test/resources/blobstorage-striped.json")
+public class BlobVolumePlacementTests {
+    @Autowired
+    BlobStorage blobStorage;
+
+    @Autowired
+    BlobStorageConfigProvider configProvider;
+
+    @Test
+    public void checkFirstFitTakesFirstVolumeWithSpace() {
+        BlobVolume full = volume(false, 0, 0);
+        BlobVolume first = volume(true, 0, 0);
+        BlobVolume second = volume(true, 0, 0);
+        BlobVolumePlacementStrategy strategy = new FirstFitPlacementStrategy();
+
+        assertSame(first, strategy.reserve(Arrays.asList(full, first, second), 100));
+        assertSame(first, strategy.reserve(Arrays.asList(full, first, second), 100));
+        assertNull(strategy.reserve(Arrays.asList(full, volume(false, 0, 0)), 100));
+    }
+
+    @Test
+    public void checkRoundRobinRotatesVolumes() {
+        BlobVolume first = volume(true, 0, 0);
+        BlobVolume second = volume(true, 0, 0);
+        BlobVolume third = volume(true, 0, 0);
+        List<BlobVolume> openVolumes = Arrays.asList(first, second, third);
+        BlobVolumePlacementStrategy strategy = new RoundRobinPlacementStrategy();
+
+        assertSame(first, strategy.reserve(openVolumes, 100));
+        assertSame(second, strategy.reserve(openVolumes, 100));
+        assertSame(third, strategy.reserve(openVolumes, 100));
+        assertSame(first, strategy.reserve(openVolumes, 100));
+
+        // The full volume is skipped in favour of the next one
+        BlobVolume full = volume(false, 0, 0);
+        List<BlobVolume> partlyFullVolumes = Arrays.asList(first, full, third);
+        assertSame(third, strategy.reserve(partlyFullVolumes, 100));
+        assertSame(third, strategy.reserve(partlyFullVolumes, 100));
+        assertSame(first, strategy.reserve(partlyFullVolumes, 100));
+        assertNull(strategy.reserve(Arrays.asList(full), 100));
+        assertNull(strategy.reserve(new ArrayList<>(), 100));
+    }
+
+    @Test
+    public void checkLeastQueueDepthPrefersIdleVolume() {
+        BlobVolume busy = volume(true, 3, 0);
+        BlobVolume idle = volume(true, 0, 0);
+        BlobVolume loaded = volume(true, 1, 0);
+        BlobVolumePlacementStrategy strategy = new LeastQueueDepthPlacementStrategy();
+
+        assertSame(idle, strategy.reserve(Arrays.asList(busy, idle, loaded), 100));
+
+        // The idle volume is full, so the next least loaded one is taken
+        BlobVolume idleFull = volume(false, 0, 0);
+        assertSame(loaded, strategy.reserve(Arrays.asList(busy, idleFull, loaded), 100));
+    }
+
+    @Test
+    public void checkLeastRecentlyLockedPrefersLongestUnlockedVolume() {
+        BlobVolume recent = volume(true, 0, 300);
+        BlobVolume oldest = volume(true, 0, 100);
+        BlobVolume older = volume(true, 0, 200);
+        BlobVolumePlacementStrategy strategy = new LeastRecentlyLockedPlacementStrategy();
+
+        assertSame(oldest, strategy.reserve(Arrays.asList(recent, oldest, older), 100));
+
+        BlobVolume oldestFull = volume(false, 0, 100);
+        assertSame(older, strategy.reserve(Arrays.asList(recent, oldestFull, older), 100));
+    }
+
+    @Test
+    public void checkStrategiesAreCreatedByName() {
+        assertTrue(BlobVolumePlacementStrategies.forName(null) instanceof FirstFitPlacementStrategy);
+        assertTrue(BlobVolumePlacementStrategies.forName("firstFit") instanceof FirstFitPlacementStrategy);
+        assertTrue(BlobVolumePlacementStrategies.forName("roundRobin") instanceof RoundRobinPlacementStrategy);
+        assertTrue(BlobVolumePlacementStrategies.forName("leastQueueDepth") instanceof LeastQueueDepthPlacementStrategy);
+        assertTrue(BlobVolumePlacementStrategies.forName("leastRecentlyLocked") instanceof LeastRecentlyLockedPlacementStrategy);
+        assertThrows(GenericBlobStorageException.class, () -> BlobVolumePlacementStrategies.forName("random"));
+    }
+
+    @Test
+    public void checkWritesAreStripedAcrossOpenVolumes() throws Exception {
+        // The first store opens the missing volumes
+        Map<Integer, Integer> itemsByVolume = new HashMap<>();
+        for (int i = 0; i < 9; i++) {
+            byte[] content = ("Striped item " + i + " " + System.nanoTime()).getBytes();
+            BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "text/plain");
+            itemsByVolume.merge(storedItemAddress.getVolumeId(), 1, Integer::sum);
+        }
+
+        List<BlobVolume> openVolumes = configProvider.getOpenBlobVolumes();
+        assertEquals(3, openVolumes.size());
+        assertEquals(3, itemsByVolume.size());
+        for (BlobVolume openVolume : openVolumes) {
+            assertEquals(Integer.valueOf(3), itemsByVolume.get(openVolume.getVolumeId()));
+        }
+    }
+
+    private static BlobVolume volume(boolean hasSpace, int pendingWrites, long lastWriteLockedNanos) {
+        BlobVolume blobVolume = mock(BlobVolume.class);
+        when(blobVolume.tryReserve(anyLong())).thenReturn(hasSpace);
+        when(blobVolume.getPendingWrites()).thenReturn(pendingWrites);
+        when(blobVolume.getLastWriteLockedNanos()).thenReturn(lastWriteLockedNanos);
+        return blobVolume;
+    }
+}
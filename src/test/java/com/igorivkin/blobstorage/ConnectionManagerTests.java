@@ -1,6 +1,8 @@
 package com.igorivkin.blobstorage;
 
 import com.igorivkin.blobstorage.database.ConnectionManager;
+import com.igorivkin.blobstorage.database.config.DatabaseConfig;
+import com.igorivkin.blobstorage.database.pool.ConnectionPoolMetrics;
 import com.igorivkin.blobstorage.exceptions.GenericDatabaseException;
 import org.junit.jupiter.api.Test;
 import static org.junit.jupiter.api.Assertions.*;
@@ -9,13 +11,18 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
 
 import java.sql.Connection;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 @SpringBootTest
 public class ConnectionManagerTests {
     @Autowired
     private ConnectionManager connectionManager;
 
+    @Autowired
+    private DatabaseConfig databaseConfig;
+
     @Test
     public void connectionManagerGetConnection() throws SQLException {
         try (Connection newConnection = this.connectionManager.getConnection()) {
@@ -46,4 +53,51 @@ public class ConnectionManagerTests {
         }
         assertTrue(newConnection.isClosed());
     }
+
+    @Test
+    public void connectionManagerReusesPooledConnection() throws SQLException {
+        String volumeName = String.format(this.connectionManager.getVolumeName(), 1);
+        ConnectionPoolMetrics readMetrics = this.connectionManager.getConnectionPool(volumeName).getReadMetrics();
+
+        Connection firstConnection = this.connectionManager.getReadConnection(volumeName);
+        firstConnection.close();
+        // Closed pooled connection is just returned back, it's not usable anymore
+        assertTrue(firstConnection.isClosed());
+        int openConnections = readMetrics.getOpenConnections();
+
+        try (Connection secondConnection = this.connectionManager.getReadConnection(volumeName)) {
+            assertFalse(secondConnection.isClosed());
+            assertEquals(1, readMetrics.getActiveConnections());
+        }
+        assertEquals(openConnections, readMetrics.getOpenConnections());
+        assertEquals(0, readMetrics.getActiveConnections());
+    }
+
+    @Test
+    public void connectionManagerAppliesProfilePerRole() throws SQLException {
+        // To be working this test is required for configuration file that binds the profiles
+        // with different busy timeouts to the writers and the maintenance connections
+        String volumeName = String.format(this.connectionManager.getVolumeName(), 1);
+        assertTrue(this.databaseConfig.getPragmas(DatabaseConfig.ROLE_WRITER).contains("PRAGMA busy_timeout = 5000"));
+        try (Connection writeConnection = this.connectionManager.getWriteConnection(volumeName)) {
+            assertEquals(5000, this.queryPragma(writeConnection, "busy_timeout"));
+        }
+        try (Connection maintenanceConnection = this.connectionManager.getMaintenanceConnection(volumeName)) {
+            assertEquals(30000, this.queryPragma(maintenanceConnection, "busy_timeout"));
+            // The maintenance connection keeps the journal mode of the volume
+            try (Statement statement = maintenanceConnection.createStatement();
+                 ResultSet resultSet = statement.executeQuery("PRAGMA journal_mode")) {
+                assertTrue(resultSet.next());
+                assertEquals("wal", resultSet.getString(1));
+            }
+        }
+    }
+
+    private long queryPragma(Connection connection, String pragma) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("PRAGMA " + pragma)) {
+            assertTrue(resultSet.next());
+            return resultSet.getLong(1);
+        }
+    }
 }
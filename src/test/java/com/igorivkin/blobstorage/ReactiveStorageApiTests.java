@@ -0,0 +1,81 @@
+package com.igorivkin.blobstorage;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.reactive.AutoConfigureWebTestClient;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.MultipartBodyBuilder;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.web.reactive.function.BodyInserters;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = "spring.main.web-application-type=reactive")
+@AutoConfigureWebTestClient
+public class ReactiveStorageApiTests {
+    @Autowired
+    WebTestClient webTestClient;
+
+    @Test
+    public void checkFileIsStoredAndStreamedBack() {
+        byte[] content = "Item uploaded to the reactive API".getBytes();
+        MultipartBodyBuilder bodyBuilder = new MultipartBodyBuilder();
+        bodyBuilder.part("file_to_store", new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return "item.txt";
+            }
+        }).contentType(MediaType.TEXT_PLAIN);
+
+        long[] storedItemAddress = new long[2];
+        webTestClient.post()
+                .uri("/api/store_file/")
+                .body(BodyInserters.fromMultipartData(bodyBuilder.build()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("ok")
+                .jsonPath("$.result.id").value(id -> storedItemAddress[0] = ((Number) id).longValue())
+                .jsonPath("$.result.volumeId").value(volumeId -> storedItemAddress[1] = ((Number) volumeId).longValue());
+
+        byte[] returnedContent = webTestClient.get()
+                .uri("/api/get_file?id={id}&volume_id={volumeId}", storedItemAddress[0], storedItemAddress[1])
+                .exchange()
+                .expectStatus().isOk()
+                .expectHeader().exists(HttpHeaders.ETAG)
+                .expectBody(byte[].class)
+                .returnResult()
+                .getResponseBody();
+        assertArrayEquals(content, returnedContent);
+
+        webTestClient.get()
+                .uri("/api/get_file?id={id}&volume_id={volumeId}", storedItemAddress[0], Integer.MAX_VALUE)
+                .exchange()
+                .expectStatus().isNotFound();
+    }
+
+    @Test
+    public void checkTooBigUploadIsRejected() {
+        // To be working this test is required for configuration file that defines "maxBlobItemSize" lesser than 21 Mb
+        byte[] content = new byte[21 * 1024 * 1024];
+        MultipartBodyBuilder bodyBuilder = new MultipartBodyBuilder();
+        bodyBuilder.part("file_to_store", new ByteArrayResource(content) {
+            @Override
+            public String getFilename() {
+                return "item.png";
+            }
+        }).contentType(MediaType.IMAGE_PNG);
+
+        webTestClient.post()
+                .uri("/api/store_file/")
+                .body(BodyInserters.fromMultipartData(bodyBuilder.build()))
+                .exchange()
+                .expectStatus().isOk()
+                .expectBody()
+                .jsonPath("$.status").isEqualTo("error")
+                .jsonPath("$.reason").value(reason -> assertTrue(((String) reason).startsWith("The item is too big to store")));
+    }
+}
@@ -0,0 +1,167 @@
+package com.igorivkin.blobstorage;
+
+import com.igorivkin.blobstorage.blobitem.BlobItem;
+import com.igorivkin.blobstorage.blobitem.BlobItemStatus;
+import com.igorivkin.blobstorage.blobitem.MimeTypeRules;
+import com.igorivkin.blobstorage.blobitem.BlobStoredItemAddress;
+import com.igorivkin.blobstorage.blobstorage.BlobStorage;
+import com.igorivkin.blobstorage.blobstorage.async.AsyncBlobStorage;
+import com.igorivkin.blobstorage.blobstorage.async.BlobVolumeExecutors;
+import com.igorivkin.blobstorage.blobvolume.BlobVolume;
+import com.igorivkin.blobstorage.cache.BlobItemCache;
+import com.igorivkin.blobstorage.exceptions.BlobVolumeBusyException;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import java.io.ByteArrayInputStream;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT)
+public class StorageApiControllerTests {
+    private static final String GET_FILE_URL = "/api/get_file?id={id}&volume_id={volumeId}";
+
+    @Autowired
+    TestRestTemplate restTemplate;
+
+    @Autowired
+    BlobStorage blobStorage;
+
+    @Autowired
+    AsyncBlobStorage asyncBlobStorage;
+
+    @Autowired
+    BlobVolumeExecutors volumeExecutors;
+
+    @Autowired
+    BlobItemCache blobItemCache;
+
+    @Autowired
+    MeterRegistry meterRegistry;
+
+    @Test
+    public void checkFileIsSentWithETagAndCacheControl() throws Exception {
+        byte[] content = "Item sent with its entity tag".getBytes();
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "text/plain");
+        String contentHash = blobStorage.stat(storedItemAddress.getId(), storedItemAddress.getVolumeId()).getContentHash();
+
+        ResponseEntity<byte[]> response = restTemplate.getForEntity(
+                GET_FILE_URL, byte[].class, storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(content, response.getBody());
+        assertEquals("\"" + contentHash + "\"", response.getHeaders().getETag());
+        assertEquals("bytes", response.getHeaders().getFirst(HttpHeaders.ACCEPT_RANGES));
+        // text/plain has no profile of its own, so the */* one is taken
+        assertEquals("no-cache", response.getHeaders().getCacheControl());
+    }
+
+    @Test
+    public void checkCacheControlProfileIsChosenByMimeType() throws Exception {
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(new byte[100]), "image/png");
+        ResponseEntity<byte[]> response = restTemplate.getForEntity(
+                GET_FILE_URL, byte[].class, storedItemAddress.getId(), storedItemAddress.getVolumeId());
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("public, max-age=31536000, immutable", response.getHeaders().getCacheControl());
+
+        MimeTypeRules<String> rules = new MimeTypeRules<>();
+        rules.put("image/png", "exact");
+        rules.put("image/*", "type");
+        rules.put("*/*", "any");
+        assertEquals("exact", rules.get("image/png"));
+        assertEquals("type", rules.get("image/gif"));
+        assertEquals("any", rules.get("text/plain"));
+        assertEquals("any", rules.get(null));
+    }
+
+    @Test
+    public void checkMatchingETagIsAnsweredWithoutContent() throws Exception {
+        byte[] content = "Item the client already has".getBytes();
+        BlobStoredItemAddress storedItemAddress = blobStorage.storeItem(new ByteArrayInputStream(content), "text/plain");
+        String eTag = "\"" + blobStorage.stat(storedItemAddress.getId(), storedItemAddress.getVolumeId()).getContentHash() + "\"";
+        double contentReadsBefore = volumeOperationCount("openContentStream", storedItemAddress.getVolumeId())
+                + volumeOperationCount("getById", storedItemAddress.getVolumeId());
+
+        for (String ifNoneMatch : Arrays.asList(eTag, "W/" + eTag, "*", "\"other\", " + eTag)) {
+            ResponseEntity<byte[]> response = getFile(storedItemAddress, ifNoneMatch);
+            assertEquals(HttpStatus.NOT_MODIFIED, response.getStatusCode(), ifNoneMatch);
+            assertNull(response.getBody());
+            assertEquals(eTag, response.getHeaders().getETag());
+        }
+        // The content is neither read nor cached
+        assertEquals(contentReadsBefore, volumeOperationCount("openContentStream", storedItemAddress.getVolumeId())
+                + volumeOperationCount("getById", storedItemAddress.getVolumeId()));
+        assertNull(blobItemCache.get(storedItemAddress));
+
+        ResponseEntity<byte[]> response = getFile(storedItemAddress, "\"other\", W/\"another\"");
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertArrayEquals(content, response.getBody());
+    }
+
+    @Test
+    public void checkBusyVolumeIsAnsweredWhileOthersAreServed() throws Exception {
+        BlobVolume busyVolume = blobStorage.createNewBlobVolume();
+        BlobVolume otherVolume = blobStorage.createNewBlobVolume();
+        BlobStoredItemAddress busyItemAddress = busyVolume.insert(textItem("Item of busy volume"));
+        BlobStoredItemAddress otherItemAddress = otherVolume.insert(textItem("Item of another volume"));
+
+        CountDownLatch release = new CountDownLatch(1);
+        try {
+            // The threads of the volume are blocked and its queue is filled up
+            int submitted = 0;
+            while (!volumeExecutors.submit(busyVolume.getVolumeId(), () -> release.await(30, TimeUnit.SECONDS))
+                    .isCompletedExceptionally()) {
+                assertTrue(++submitted < 10_000);
+            }
+
+            // The content is read by the executor of its volume as well
+            CompletableFuture<?> content = asyncBlobStorage.getItemContent(busyItemAddress.getId(), busyItemAddress.getVolumeId(), 0, 1);
+            ExecutionException exception = assertThrows(ExecutionException.class, () -> content.get(10, TimeUnit.SECONDS));
+            assertTrue(exception.getCause() instanceof BlobVolumeBusyException);
+
+            ResponseEntity<byte[]> busyResponse = restTemplate.getForEntity(
+                    GET_FILE_URL, byte[].class, busyItemAddress.getId(), busyItemAddress.getVolumeId());
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, busyResponse.getStatusCode());
+
+            ResponseEntity<byte[]> otherResponse = restTemplate.getForEntity(
+                    GET_FILE_URL, byte[].class, otherItemAddress.getId(), otherItemAddress.getVolumeId());
+            assertEquals(HttpStatus.OK, otherResponse.getStatusCode());
+            assertArrayEquals("Item of another volume".getBytes(), otherResponse.getBody());
+        } finally {
+            release.countDown();
+        }
+    }
+
+    private ResponseEntity<byte[]> getFile(BlobStoredItemAddress address, String ifNoneMatch) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(HttpHeaders.IF_NONE_MATCH, ifNoneMatch);
+        return restTemplate.exchange(
+                GET_FILE_URL, HttpMethod.GET, new HttpEntity<>(headers), byte[].class, address.getId(), address.getVolumeId());
+    }
+
+    private double volumeOperationCount(String operation, int volumeId) {
+        return meterRegistry.find("blobstorage.volume.operation")
+                .tags("operation", operation, "volume", Integer.toString(volumeId))
+                .timers().stream().mapToDouble(timer -> timer.count()).sum();
+    }
+
+    private static BlobItem textItem(String content) {
+        BlobItem item = new BlobItem();
+        item.setMimeType("text/plain");
+        item.setStatus(BlobItemStatus.COMMITTED);
+        item.setContent(content.getBytes());
+        return item;
+    }
+}